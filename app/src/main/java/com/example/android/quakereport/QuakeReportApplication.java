@@ -0,0 +1,29 @@
+package com.example.android.quakereport;
+
+import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.android.quakereport.utils.TaskScheduler;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Sets up what the whole app shares before any activity or worker starts.
+ */
+public class QuakeReportApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // Loaders and activities get the results of their tasks on the main thread.
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        TaskScheduler.getInstance().setResultExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mainHandler.post(command);
+            }
+        });
+    }
+}
@@ -5,125 +5,235 @@ import android.graphics.drawable.GradientDrawable;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 import android.widget.TextView;
 
+import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.android.quakereport.R;
 import com.example.android.quakereport.data.Earthquake;
+import com.example.android.quakereport.utils.Metrics;
 
-import java.text.DecimalFormat;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
+import java.util.List;
 
-public class EarthquakeAdapter extends ArrayAdapter<Earthquake> {
+/**
+ * Binds {@link EarthquakeRow}s to the rows of a RecyclerView. New lists are diffed against the
+ * current one on a background thread, so only the rows that actually changed are re-bound.
+ */
+public class EarthquakeAdapter
+        extends RecyclerView.Adapter<EarthquakeAdapter.EarthquakeViewHolder> {
 
-    // Location offset and primary location separator.
-    private static final String LOCATION_SEPARATOR = " of ";
-
-    public EarthquakeAdapter(Context context, ArrayList<Earthquake> earthquakes) {
-        super(context, 0, earthquakes);
+    /**
+     * Told when the user taps a row.
+     */
+    public interface OnEarthquakeClickListener {
+        void onEarthquakeClick(Earthquake earthquake);
     }
 
-    @Override
-    public View getView(int position, View convertView, ViewGroup parent) {
-
-        // Reuse an existing View.
-        View quakeItemLayout = convertView;
-
-        // If it doesn't exist, create it.
-        if (quakeItemLayout == null) {
-            quakeItemLayout = LayoutInflater.from(getContext())
-                    .inflate(R.layout.earthquake_list_item, parent, false);
-        }
+    private static final DiffUtil.ItemCallback<EarthquakeRow> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<EarthquakeRow>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull EarthquakeRow oldItem,
+                                               @NonNull EarthquakeRow newItem) {
+                    String oldId = oldItem.getEarthquake().getId();
+                    String newId = newItem.getEarthquake().getId();
+                    if (oldId == null || newId == null) {
+                        return oldItem == newItem;
+                    }
+                    return oldId.equals(newId);
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull EarthquakeRow oldItem,
+                                                  @NonNull EarthquakeRow newItem) {
+                    return oldItem.hasSameContent(newItem);
+                }
+            };
+
+    private static final Metrics.Timer BIND_TIMER = Metrics.getInstance().timer("adapter.bind");
+
+    private final Context context;
+
+    private final OnEarthquakeClickListener clickListener;
+
+    private final AsyncListDiffer<EarthquakeRow> differ =
+            new AsyncListDiffer<>(this, DIFF_CALLBACK);
+
+    public EarthquakeAdapter(Context context, OnEarthquakeClickListener clickListener) {
+        this.context = context;
+        this.clickListener = clickListener;
+        setHasStableIds(true);
+    }
 
-        Earthquake currentEarthquake = getItem(position);
+    /**
+     * Show a new list. It is diffed against the current list in the background and the changes
+     * are dispatched once the diff is done.
+     *
+     * @param rows to show; must not be modified afterwards. May contain nulls for rows which are
+     *             still loading.
+     */
+    public void submitList(List<EarthquakeRow> rows) {
+        differ.submitList(rows);
+    }
 
-        /* Fill the details of the currentEarthquake in quakeItemLayout contents. */
-        TextView magnitudeTV = quakeItemLayout.findViewById(R.id.magnitude_tv);
-        magnitudeTV.setText(formatMag(currentEarthquake.getMagnitude()));
+    public EarthquakeRow getItem(int position) {
+        return differ.getCurrentList().get(position);
+    }
 
-        /* Set the proper background color on the magnitude circle.
-         * Fetch the background from the TextView, which is a GradientDrawable. */
-        GradientDrawable magnitudeCircle = (GradientDrawable) magnitudeTV.getBackground();
+    @Override
+    public int getItemCount() {
+        return differ.getCurrentList().size();
+    }
 
-        // Set the color on the magnitude circle.
-        magnitudeCircle.setColor(getMagnitudeColor(currentEarthquake.getMagnitude()));
+    /**
+     * Ids are derived from the USGS event id, rows that are still loading get an id from their
+     * position.
+     */
+    @Override
+    public long getItemId(int position) {
+        EarthquakeRow row = getItem(position);
+        if (row == null || row.getEarthquake().getId() == null) {
+            return Long.MIN_VALUE + position;
+        }
+        return eventIdHash(row.getEarthquake().getId());
+    }
 
-        String[] location = currentEarthquake.getLocation().split(LOCATION_SEPARATOR);
+    @NonNull
+    @Override
+    public EarthquakeViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View quakeItemLayout = LayoutInflater.from(context)
+                .inflate(R.layout.earthquake_list_item, parent, false);
+        return new EarthquakeViewHolder(quakeItemLayout);
+    }
 
-        TextView offsetLocation = quakeItemLayout.findViewById(R.id.location_offset);
-        TextView primaryLocation = quakeItemLayout.findViewById(R.id.primary_location);
+    /**
+     * Everything shown was formatted in the background, so this only hands ready-made strings
+     * and a color int to the views.
+     */
+    @Override
+    public void onBindViewHolder(@NonNull EarthquakeViewHolder holder, int position) {
+        long bindStart = BIND_TIMER.start();
+        EarthquakeRow row = getItem(position);
 
-        /* If the location string specifies both an offset and a primary location. */
-        if (location.length > 1) {
-            location[0] += LOCATION_SEPARATOR;
-            offsetLocation.setText(location[0]);
-            primaryLocation.setText(location[1]);
+        /* The page holding this row is still being fetched, show an empty row until it is. */
+        if (row == null) {
+            holder.clear();
         } else {
-            offsetLocation.setText(R.string.near_the);
-            primaryLocation.setText(location[0]);
+            row.bindTo(holder);
         }
-
-        Date dateObject = new Date(currentEarthquake.getTime());
-
-        TextView dateTV = quakeItemLayout.findViewById(R.id.date_tv);
-        dateTV.setText(formatDate(dateObject));
-
-        TextView timeTV = quakeItemLayout.findViewById(R.id.time_tv);
-        timeTV.setText(formatTime(dateObject));
-
-        return quakeItemLayout;
-    }
-
-    private String formatMag(double mag) {
-        return new DecimalFormat("0.0").format(mag);
+        BIND_TIMER.stop(bindStart);
     }
 
-    private int getMagnitudeColor(double magnitude) {
-        int magnitudeColorResId;
-        if (magnitude >= 0.0 && magnitude <= 2.0) {
-            magnitudeColorResId = R.color.magnitude1;
-        } else if (magnitude >= 2.0 && magnitude <= 3.0) {
-            magnitudeColorResId = R.color.magnitude2;
-        } else if (magnitude >= 3.0 && magnitude <= 4.0) {
-            magnitudeColorResId = R.color.magnitude3;
-        } else if (magnitude >= 4.0 && magnitude <= 5.0) {
-            magnitudeColorResId = R.color.magnitude4;
-        } else if (magnitude >= 5.0 && magnitude <= 6.0) {
-            magnitudeColorResId = R.color.magnitude5;
-        } else if (magnitude >= 6.0 && magnitude <= 7.0) {
-            magnitudeColorResId = R.color.magnitude6;
-        } else if (magnitude >= 7.0 && magnitude <= 8.0) {
-            magnitudeColorResId = R.color.magnitude7;
-        } else if (magnitude >= 8.0 && magnitude <= 9.0) {
-            magnitudeColorResId = R.color.magnitude8;
-        } else if (magnitude >= 9.0 && magnitude <= 10.0) {
-            magnitudeColorResId = R.color.magnitude9;
-        } else {
-            magnitudeColorResId = R.color.magnitude10plus;
+    /**
+     * Create a formatter which resolves the magnitude colors of this app once, up front.
+     */
+    public static EarthquakeRowFormatter createRowFormatter(Context context) {
+        int[] magnitudeColorResIds = {
+                R.color.magnitude1,
+                R.color.magnitude2,
+                R.color.magnitude3,
+                R.color.magnitude4,
+                R.color.magnitude5,
+                R.color.magnitude6,
+                R.color.magnitude7,
+                R.color.magnitude8,
+                R.color.magnitude9,
+                R.color.magnitude10plus
+        };
+
+        int[] magnitudeColors = new int[magnitudeColorResIds.length];
+        for (int i = 0; i < magnitudeColorResIds.length; i++) {
+            magnitudeColors[i] = ContextCompat.getColor(context, magnitudeColorResIds[i]);
         }
 
-        return ContextCompat.getColor(getContext(), magnitudeColorResId);
+        return new EarthquakeRowFormatter(magnitudeColors, context.getString(R.string.near_the));
     }
 
     /**
-     * Return the formatted date string (i.e. "Mar 3, 1984") from a Date object.
+     * 64-bit FNV-1a hash of the event id, so that collisions between ids are practically
+     * impossible.
      */
-    private String formatDate(Date date) {
-        return new SimpleDateFormat("MMM dd, yyyy").format(date);
-        /*SimpleDateFormat simpleDateFormat = new SimpleDateFormat("MMM dd, yyyy");
-        String formattedDate = simpleDateFormat.format(date);
-        return formattedDate;*/
+    private static long eventIdHash(String eventId) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < eventId.length(); i++) {
+            hash ^= eventId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
     }
 
     /**
-     * Return the formatted date string (i.e. "4:30 PM") from a Date object.
+     * Holds the views of one row so they are looked up once, not on every bind.
      */
-    private String formatTime(Date date) {
-        return new SimpleDateFormat("h:mm a").format(date);
-    }
+    class EarthquakeViewHolder extends RecyclerView.ViewHolder
+            implements View.OnClickListener, EarthquakeRow.Target {
+
+        private final TextView magnitudeTV;
+        private final TextView offsetLocation;
+        private final TextView primaryLocation;
+        private final TextView dateTV;
+        private final TextView timeTV;
+
+        /* The magnitude circle, a GradientDrawable, and the color it was last given. */
+        private final GradientDrawable magnitudeCircle;
+        private int magnitudeColor;
+
+        EarthquakeViewHolder(View quakeItemLayout) {
+            super(quakeItemLayout);
+            magnitudeTV = quakeItemLayout.findViewById(R.id.magnitude_tv);
+            offsetLocation = quakeItemLayout.findViewById(R.id.location_offset);
+            primaryLocation = quakeItemLayout.findViewById(R.id.primary_location);
+            dateTV = quakeItemLayout.findViewById(R.id.date_tv);
+            timeTV = quakeItemLayout.findViewById(R.id.time_tv);
+            // Mutated so that rows don't share (and overwrite) one drawable state.
+            magnitudeCircle = (GradientDrawable) magnitudeTV.getBackground().mutate();
+            quakeItemLayout.setOnClickListener(this);
+        }
+
+        @Override
+        public void setMagnitude(String magnitude, int magnitudeColor) {
+            magnitudeTV.setText(magnitude);
+            if (magnitudeColor != this.magnitudeColor) {
+                this.magnitudeColor = magnitudeColor;
+                magnitudeCircle.setColor(magnitudeColor);
+            }
+        }
 
-}
\ No newline at end of file
+        @Override
+        public void setLocation(String locationOffset, String primaryLocation) {
+            offsetLocation.setText(locationOffset);
+            this.primaryLocation.setText(primaryLocation);
+        }
+
+        @Override
+        public void setDateTime(String date, String time) {
+            dateTV.setText(date);
+            timeTV.setText(time);
+        }
+
+        void clear() {
+            magnitudeTV.setText(null);
+            offsetLocation.setText(null);
+            primaryLocation.setText(null);
+            dateTV.setText(null);
+            timeTV.setText(null);
+        }
+
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) {
+                return;
+            }
+
+            EarthquakeRow clickedRow = getItem(position);
+            // Rows whose page is still loading can't be opened yet.
+            if (clickedRow != null) {
+                clickListener.onEarthquakeClick(clickedRow.getEarthquake());
+            }
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.android.quakereport.adapters;
+
+import android.content.Context;
+import android.graphics.drawable.GradientDrawable;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.android.quakereport.R;
+import com.example.android.quakereport.data.Earthquake;
+import com.example.android.quakereport.data.EarthquakeQueryEngine;
+import com.example.android.quakereport.data.EarthquakeRegions.Region;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Lists the earthquakes in memory grouped by region. A region row shows the count, largest
+ * magnitude and latest date kept by {@link EarthquakeQueryEngine#regions()}; tapping it expands
+ * the region's earthquakes, newest first, below it.
+ * <p>
+ * Expanding reads and formats only the earthquakes of that region, never the whole catalog.
+ */
+public class RegionAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+
+    private static final int TYPE_REGION = 0;
+    private static final int TYPE_EARTHQUAKE = 1;
+
+    private final Context context;
+
+    private final EarthquakeRowFormatter rowFormatter;
+
+    private final EarthquakeQueryEngine queryEngine;
+
+    private final EarthquakeAdapter.OnEarthquakeClickListener clickListener;
+
+    /* Regions and, below the expanded ones, their EarthquakeRows. */
+    private final List<Object> items = new ArrayList<>();
+
+    /* Codes of the expanded regions, kept when the regions are refreshed. */
+    private final Set<Integer> expandedRegions = new HashSet<>();
+
+    public RegionAdapter(Context context, EarthquakeRowFormatter rowFormatter,
+                         EarthquakeQueryEngine queryEngine,
+                         EarthquakeAdapter.OnEarthquakeClickListener clickListener) {
+        this.context = context;
+        this.rowFormatter = rowFormatter;
+        this.queryEngine = queryEngine;
+        this.clickListener = clickListener;
+    }
+
+    /**
+     * Show new regions. Regions that were expanded stay expanded with their current earthquakes.
+     */
+    public void submitRegions(List<Region> regions) {
+        items.clear();
+        for (Region region : regions) {
+            items.add(region);
+            if (expandedRegions.contains(region.getCode())) {
+                items.addAll(rowFormatter.formatAll(queryEngine.eventsInRegion(region.getCode())));
+            }
+        }
+        notifyDataSetChanged();
+    }
+
+    /**
+     * @return the earthquake of the row at the position, or null if it is a region row.
+     */
+    public Earthquake getEarthquake(int position) {
+        Object item = items.get(position);
+        return item instanceof EarthquakeRow ? ((EarthquakeRow) item).getEarthquake() : null;
+    }
+
+    @Override
+    public int getItemCount() {
+        return items.size();
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return items.get(position) instanceof Region ? TYPE_REGION : TYPE_EARTHQUAKE;
+    }
+
+    @NonNull
+    @Override
+    public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        LayoutInflater inflater = LayoutInflater.from(context);
+        if (viewType == TYPE_REGION) {
+            return new RegionViewHolder(
+                    inflater.inflate(R.layout.region_list_item, parent, false));
+        }
+        return new RowViewHolder(inflater.inflate(R.layout.earthquake_list_item, parent, false));
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+        Object item = items.get(position);
+        if (item instanceof Region) {
+            ((RegionViewHolder) holder).bind((Region) item);
+        } else {
+            ((EarthquakeRow) item).bindTo((RowViewHolder) holder);
+        }
+    }
+
+    /**
+     * Expand the region at the position, or collapse it if it is expanded.
+     */
+    private void toggle(int position) {
+        Region region = (Region) items.get(position);
+        if (expandedRegions.remove(region.getCode())) {
+            int end = position + 1;
+            while (end < items.size() && !(items.get(end) instanceof Region)) {
+                end++;
+            }
+            items.subList(position + 1, end).clear();
+            notifyItemRangeRemoved(position + 1, end - position - 1);
+        } else {
+            expandedRegions.add(region.getCode());
+            List<EarthquakeRow> rows =
+                    rowFormatter.formatAll(queryEngine.eventsInRegion(region.getCode()));
+            items.addAll(position + 1, rows);
+            notifyItemRangeInserted(position + 1, rows.size());
+        }
+    }
+
+    /**
+     * Holds the views of a region row.
+     */
+    class RegionViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+
+        private final TextView magnitudeTV;
+        private final TextView countTV;
+        private final TextView nameTV;
+        private final TextView latestTV;
+        private final GradientDrawable magnitudeCircle;
+
+        RegionViewHolder(View regionItemLayout) {
+            super(regionItemLayout);
+            magnitudeTV = regionItemLayout.findViewById(R.id.region_magnitude_tv);
+            countTV = regionItemLayout.findViewById(R.id.region_count_tv);
+            nameTV = regionItemLayout.findViewById(R.id.region_name_tv);
+            latestTV = regionItemLayout.findViewById(R.id.region_latest_tv);
+            magnitudeCircle = (GradientDrawable) magnitudeTV.getBackground().mutate();
+            regionItemLayout.setOnClickListener(this);
+        }
+
+        void bind(Region region) {
+            // A region of unsized events shows "?" on the same color as their rows.
+            double maxMagnitude = region.getMaxMagnitude();
+            magnitudeTV.setText(rowFormatter.formatMagnitude(maxMagnitude));
+            magnitudeCircle.setColor(rowFormatter.magnitudeColor(maxMagnitude));
+            countTV.setText(context.getResources().getQuantityString(
+                    R.plurals.region_earthquakes, region.getCount(), region.getCount()));
+            nameTV.setText(region.getName().isEmpty()
+                    ? context.getString(R.string.unknown_region) : region.getName());
+            latestTV.setText(rowFormatter.formatDate(region.getLatestTime()));
+        }
+
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                toggle(position);
+            }
+        }
+    }
+
+    /**
+     * Holds the views of an earthquake row below an expanded region.
+     */
+    class RowViewHolder extends RecyclerView.ViewHolder
+            implements View.OnClickListener, EarthquakeRow.Target {
+
+        private final TextView magnitudeTV;
+        private final TextView offsetLocation;
+        private final TextView primaryLocation;
+        private final TextView dateTV;
+        private final TextView timeTV;
+        private final GradientDrawable magnitudeCircle;
+
+        RowViewHolder(View quakeItemLayout) {
+            super(quakeItemLayout);
+            magnitudeTV = quakeItemLayout.findViewById(R.id.magnitude_tv);
+            offsetLocation = quakeItemLayout.findViewById(R.id.location_offset);
+            primaryLocation = quakeItemLayout.findViewById(R.id.primary_location);
+            dateTV = quakeItemLayout.findViewById(R.id.date_tv);
+            timeTV = quakeItemLayout.findViewById(R.id.time_tv);
+            magnitudeCircle = (GradientDrawable) magnitudeTV.getBackground().mutate();
+            quakeItemLayout.setOnClickListener(this);
+        }
+
+        @Override
+        public void setMagnitude(String magnitude, int magnitudeColor) {
+            magnitudeTV.setText(magnitude);
+            magnitudeCircle.setColor(magnitudeColor);
+        }
+
+        @Override
+        public void setLocation(String locationOffset, String primaryLocation) {
+            offsetLocation.setText(locationOffset);
+            this.primaryLocation.setText(primaryLocation);
+        }
+
+        @Override
+        public void setDateTime(String date, String time) {
+            dateTV.setText(date);
+            timeTV.setText(time);
+        }
+
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                clickListener.onEarthquakeClick(((EarthquakeRow) items.get(position))
+                        .getEarthquake());
+            }
+        }
+    }
+}
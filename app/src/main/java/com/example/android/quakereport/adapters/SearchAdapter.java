@@ -0,0 +1,284 @@
+package com.example.android.quakereport.adapters;
+
+import android.content.Context;
+import android.graphics.drawable.GradientDrawable;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.example.android.quakereport.R;
+import com.example.android.quakereport.data.Earthquake;
+import com.example.android.quakereport.data.EarthquakeQueryEngine;
+import com.example.android.quakereport.utils.Metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+/**
+ * Lists the earthquakes a place search found, straight from the engine's
+ * {@link EarthquakeQueryEngine.SearchResults}. Only the rows that are bound are read and
+ * formatted, so showing the results of a keystroke costs the same for ten matches as for 50,000.
+ * <p>
+ * Reading and formatting happen in the background, like for the other lists: a row that is bound
+ * before it is formatted shows empty, and the rows it was missing are formatted together and
+ * bound again. Formatted rows are kept by catalog position until a merge may have revised them,
+ * so narrowing the search and scrolling back don't format anything again.
+ */
+public class SearchAdapter extends RecyclerView.Adapter<SearchAdapter.SearchViewHolder> {
+
+    private static final Metrics.Timer BIND_TIMER = Metrics.getInstance().timer("search.bind");
+
+    private final Context context;
+
+    private final EarthquakeRowFormatter rowFormatter;
+
+    private final EarthquakeQueryEngine queryEngine;
+
+    private final EarthquakeAdapter.OnEarthquakeClickListener clickListener;
+
+    private final Executor backgroundExecutor;
+
+    private final Executor mainExecutor;
+
+    private final EarthquakeQueryEngine.SearchResults results =
+            new EarthquakeQueryEngine.SearchResults();
+
+    /* Formatted rows by catalog position, for the revision of the results they were made at. */
+    private final SparseArray<EarthquakeRow> rows = new SparseArray<>();
+    private long rowsRevision;
+
+    /* Rows bound before they were formatted, by adapter and catalog position, waiting to be
+     * formatted. */
+    private int[] missingPositions = new int[16];
+    private int[] missingCatalogPositions = new int[16];
+    private int missingCount;
+
+    /* Catalog positions being formatted, so a row bound again meanwhile isn't asked for twice. */
+    private final SparseBooleanArray formatting = new SparseBooleanArray();
+
+    public SearchAdapter(Context context, EarthquakeRowFormatter rowFormatter,
+                         EarthquakeQueryEngine queryEngine,
+                         EarthquakeAdapter.OnEarthquakeClickListener clickListener,
+                         Executor backgroundExecutor, Executor mainExecutor) {
+        this.context = context;
+        this.rowFormatter = rowFormatter;
+        this.queryEngine = queryEngine;
+        this.clickListener = clickListener;
+        this.backgroundExecutor = backgroundExecutor;
+        this.mainExecutor = mainExecutor;
+    }
+
+    /**
+     * @return the results to search into; call {@link #onSearched()} after a search.
+     */
+    public EarthquakeQueryEngine.SearchResults getResults() {
+        return results;
+    }
+
+    /**
+     * Show the results of the last search. Formatted rows are dropped if a merge came in since
+     * they were made.
+     */
+    public void onSearched() {
+        if (results.getRevision() != rowsRevision) {
+            rowsRevision = results.getRevision();
+            rows.clear();
+            formatting.clear();
+            missingCount = 0;
+        }
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Show no rows, e.g. while the engine isn't searching.
+     */
+    public void clear() {
+        results.clear();
+        onSearched();
+    }
+
+    /**
+     * @return the earthquake of the row at the position, or null if it is not formatted yet.
+     */
+    public Earthquake getEarthquake(int position) {
+        EarthquakeRow row = rows.get(results.getPosition(position));
+        return row == null ? null : row.getEarthquake();
+    }
+
+    @Override
+    public int getItemCount() {
+        return results.size();
+    }
+
+    @NonNull
+    @Override
+    public SearchViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View quakeItemLayout = LayoutInflater.from(context)
+                .inflate(R.layout.earthquake_list_item, parent, false);
+        return new SearchViewHolder(quakeItemLayout);
+    }
+
+    /**
+     * Rows that are formatted already are bound from memory, without touching the engine.
+     */
+    @Override
+    public void onBindViewHolder(@NonNull SearchViewHolder holder, int position) {
+        long bindStart = BIND_TIMER.start();
+        int catalogPosition = results.getPosition(position);
+        EarthquakeRow row = rows.get(catalogPosition);
+        if (row != null) {
+            row.bindTo(holder);
+        } else {
+            holder.clear();
+            requestRow(position, catalogPosition);
+        }
+        BIND_TIMER.stop(bindStart);
+    }
+
+    /**
+     * Ask for the row to be formatted, together with the others bound in the same layout pass.
+     */
+    private void requestRow(int position, int catalogPosition) {
+        if (formatting.get(catalogPosition)) {
+            return;
+        }
+        formatting.put(catalogPosition, true);
+
+        if (missingCount == missingPositions.length) {
+            missingPositions = Arrays.copyOf(missingPositions, missingCount * 2);
+            missingCatalogPositions = Arrays.copyOf(missingCatalogPositions, missingCount * 2);
+        }
+        missingPositions[missingCount] = position;
+        missingCatalogPositions[missingCount] = catalogPosition;
+        if (missingCount++ == 0) {
+            mainExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    formatMissingRows();
+                }
+            });
+        }
+    }
+
+    private void formatMissingRows() {
+        if (missingCount == 0) {
+            return;
+        }
+        final int[] positions = Arrays.copyOf(missingPositions, missingCount);
+        final int[] catalogPositions = Arrays.copyOf(missingCatalogPositions, missingCount);
+        final long revision = rowsRevision;
+        missingCount = 0;
+
+        backgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final EarthquakeRow[] formatted = new EarthquakeRow[catalogPositions.length];
+                for (int i = 0; i < catalogPositions.length; i++) {
+                    formatted[i] = rowFormatter.format(
+                            queryEngine.getEarthquake(catalogPositions[i]));
+                }
+                mainExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        onRowsFormatted(revision, positions, catalogPositions, formatted);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onRowsFormatted(long revision, int[] positions, int[] catalogPositions,
+                                 EarthquakeRow[] formatted) {
+        // A merge came in meanwhile, the rows will be asked for again when they are bound.
+        if (revision != rowsRevision) {
+            return;
+        }
+
+        boolean moved = false;
+        for (int i = 0; i < positions.length; i++) {
+            rows.put(catalogPositions[i], formatted[i]);
+            formatting.delete(catalogPositions[i]);
+            moved |= positions[i] >= results.size()
+                    || results.getPosition(positions[i]) != catalogPositions[i];
+        }
+
+        // Another search may have moved the rows since they were bound; rebinding the others
+        // only reads formatted rows.
+        if (moved) {
+            notifyDataSetChanged();
+            return;
+        }
+        for (int position : positions) {
+            notifyItemChanged(position);
+        }
+    }
+
+    /**
+     * Holds the views of an earthquake row.
+     */
+    class SearchViewHolder extends RecyclerView.ViewHolder
+            implements View.OnClickListener, EarthquakeRow.Target {
+
+        private final TextView magnitudeTV;
+        private final TextView offsetLocation;
+        private final TextView primaryLocation;
+        private final TextView dateTV;
+        private final TextView timeTV;
+        private final GradientDrawable magnitudeCircle;
+
+        SearchViewHolder(View quakeItemLayout) {
+            super(quakeItemLayout);
+            magnitudeTV = quakeItemLayout.findViewById(R.id.magnitude_tv);
+            offsetLocation = quakeItemLayout.findViewById(R.id.location_offset);
+            primaryLocation = quakeItemLayout.findViewById(R.id.primary_location);
+            dateTV = quakeItemLayout.findViewById(R.id.date_tv);
+            timeTV = quakeItemLayout.findViewById(R.id.time_tv);
+            magnitudeCircle = (GradientDrawable) magnitudeTV.getBackground().mutate();
+            quakeItemLayout.setOnClickListener(this);
+        }
+
+        void clear() {
+            magnitudeTV.setText(null);
+            offsetLocation.setText(null);
+            primaryLocation.setText(null);
+            dateTV.setText(null);
+            timeTV.setText(null);
+        }
+
+        @Override
+        public void setMagnitude(String magnitude, int magnitudeColor) {
+            magnitudeTV.setText(magnitude);
+            magnitudeCircle.setColor(magnitudeColor);
+        }
+
+        @Override
+        public void setLocation(String locationOffset, String primaryLocation) {
+            offsetLocation.setText(locationOffset);
+            this.primaryLocation.setText(primaryLocation);
+        }
+
+        @Override
+        public void setDateTime(String date, String time) {
+            dateTV.setText(date);
+            timeTV.setText(time);
+        }
+
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) {
+                return;
+            }
+            Earthquake earthquake = getEarthquake(position);
+            if (earthquake != null) {
+                clickListener.onEarthquakeClick(earthquake);
+            }
+        }
+    }
+}
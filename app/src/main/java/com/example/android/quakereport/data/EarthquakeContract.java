@@ -0,0 +1,46 @@
+package com.example.android.quakereport.data;
+
+/**
+ * Table and column names of the local earthquake database.
+ */
+public final class EarthquakeContract {
+
+    private EarthquakeContract() {
+    }
+
+    public static final class EarthquakeEntry {
+
+        public static final String TABLE_NAME = "earthquakes";
+
+        /* USGS event id, the primary key. */
+        public static final String COLUMN_EVENT_ID = "event_id";
+        public static final String COLUMN_MAGNITUDE = "magnitude";
+        public static final String COLUMN_PLACE = "place";
+        public static final String COLUMN_TIME = "time";
+        public static final String COLUMN_UPDATED = "updated";
+        public static final String COLUMN_URL = "url";
+
+        /* Epicenter in degrees and depth in km, NULL if unknown. */
+        public static final String COLUMN_LONGITUDE = "longitude";
+        public static final String COLUMN_LATITUDE = "latitude";
+        public static final String COLUMN_DEPTH = "depth";
+
+        private EarthquakeEntry() {
+        }
+    }
+
+    /**
+     * Remembers, per query URL, the newest "updated" time seen so that the next sync only asks
+     * USGS for what changed after it.
+     */
+    public static final class SyncStateEntry {
+
+        public static final String TABLE_NAME = "sync_state";
+
+        public static final String COLUMN_QUERY = "query";
+        public static final String COLUMN_UPDATED_AFTER = "updated_after";
+
+        private SyncStateEntry() {
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.android.quakereport.data;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.example.android.quakereport.data.EarthquakeContract.EarthquakeEntry;
+import com.example.android.quakereport.data.EarthquakeContract.SyncStateEntry;
+
+/**
+ * Creates and upgrades the local earthquake database.
+ */
+public class EarthquakeDbHelper extends SQLiteOpenHelper {
+
+    private static final String DATABASE_NAME = "earthquakes.db";
+
+    private static final int DATABASE_VERSION = 3;
+
+    public EarthquakeDbHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + EarthquakeEntry.TABLE_NAME + " ("
+                + EarthquakeEntry.COLUMN_EVENT_ID + " TEXT PRIMARY KEY NOT NULL, "
+                // NULL for events USGS hasn't sized yet.
+                + EarthquakeEntry.COLUMN_MAGNITUDE + " REAL, "
+                + EarthquakeEntry.COLUMN_PLACE + " TEXT, "
+                + EarthquakeEntry.COLUMN_TIME + " INTEGER NOT NULL, "
+                + EarthquakeEntry.COLUMN_UPDATED + " INTEGER NOT NULL, "
+                + EarthquakeEntry.COLUMN_URL + " TEXT, "
+                + EarthquakeEntry.COLUMN_LONGITUDE + " REAL, "
+                + EarthquakeEntry.COLUMN_LATITUDE + " REAL, "
+                + EarthquakeEntry.COLUMN_DEPTH + " REAL);");
+
+        db.execSQL("CREATE INDEX earthquakes_time_idx ON " + EarthquakeEntry.TABLE_NAME
+                + " (" + EarthquakeEntry.COLUMN_TIME + ");");
+        db.execSQL("CREATE INDEX earthquakes_magnitude_idx ON " + EarthquakeEntry.TABLE_NAME
+                + " (" + EarthquakeEntry.COLUMN_MAGNITUDE + ");");
+
+        db.execSQL("CREATE TABLE " + SyncStateEntry.TABLE_NAME + " ("
+                + SyncStateEntry.COLUMN_QUERY + " TEXT PRIMARY KEY NOT NULL, "
+                + SyncStateEntry.COLUMN_UPDATED_AFTER + " INTEGER NOT NULL);");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The database is only a cache of USGS data, so it is simply rebuilt.
+        db.execSQL("DROP TABLE IF EXISTS " + EarthquakeEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + SyncStateEntry.TABLE_NAME);
+        onCreate(db);
+    }
+}
@@ -0,0 +1,239 @@
+package com.example.android.quakereport.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.quakereport.data.EarthquakeContract.EarthquakeEntry;
+import com.example.android.quakereport.data.EarthquakeContract.SyncStateEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent on-device copy of the earthquakes fetched from USGS, keyed by event id.
+ * <p>
+ * Like USGS without a start time, the store only covers the last 30 days
+ * ({@link EarthquakeQueryEngine#DEFAULT_WINDOW_MILLIS}): queries leave older events out and
+ * every upsert deletes them, since no sync would ever bring their revisions.
+ * <p>
+ * All methods do disk I/O and must be called off the main thread.
+ */
+public class EarthquakeStore {
+
+    private static final String[] EARTHQUAKE_COLUMNS = {
+            EarthquakeEntry.COLUMN_EVENT_ID,
+            EarthquakeEntry.COLUMN_MAGNITUDE,
+            EarthquakeEntry.COLUMN_PLACE,
+            EarthquakeEntry.COLUMN_TIME,
+            EarthquakeEntry.COLUMN_UPDATED,
+            EarthquakeEntry.COLUMN_URL,
+            EarthquakeEntry.COLUMN_LONGITUDE,
+            EarthquakeEntry.COLUMN_LATITUDE,
+            EarthquakeEntry.COLUMN_DEPTH
+    };
+
+    /* SQLite allows 999 bound arguments per statement. */
+    private static final int MAX_IDS_PER_QUERY = 500;
+
+    private static EarthquakeStore instance;
+
+    private final EarthquakeDbHelper dbHelper;
+
+    private EarthquakeStore(Context context) {
+        dbHelper = new EarthquakeDbHelper(context.getApplicationContext());
+    }
+
+    public static synchronized EarthquakeStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new EarthquakeStore(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Return the stored earthquakes of the last 30 days matching the query, ordered and limited
+     * the same way USGS would.
+     */
+    public List<Earthquake> query(EarthquakeQuery query) {
+        String orderBy = (query.isOrderedByTime()
+                ? EarthquakeEntry.COLUMN_TIME : EarthquakeEntry.COLUMN_MAGNITUDE) + " DESC";
+
+        List<Earthquake> earthquakeList = new ArrayList<>();
+        Cursor cursor = dbHelper.getReadableDatabase().query(
+                EarthquakeEntry.TABLE_NAME,
+                EARTHQUAKE_COLUMNS,
+                EarthquakeEntry.COLUMN_MAGNITUDE + " >= ? AND "
+                        + EarthquakeEntry.COLUMN_TIME + " >= ?",
+                new String[]{Double.toString(query.getMinMagnitude()),
+                        Long.toString(windowStart())},
+                null,
+                null,
+                orderBy,
+                Integer.toString(query.getLimit()));
+        try {
+            while (cursor.moveToNext()) {
+                earthquakeList.add(readEarthquake(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        return earthquakeList;
+    }
+
+    /**
+     * Return the stored earthquakes with the given event ids, by id. Ids that aren't stored are
+     * left out.
+     */
+    public Map<String, Earthquake> getByIds(List<String> ids) {
+        Map<String, Earthquake> earthquakes = new HashMap<>();
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        for (int from = 0; from < ids.size(); from += MAX_IDS_PER_QUERY) {
+            List<String> chunk = ids.subList(from, Math.min(ids.size(), from + MAX_IDS_PER_QUERY));
+
+            StringBuilder selection = new StringBuilder(EarthquakeEntry.COLUMN_EVENT_ID)
+                    .append(" IN (");
+            for (int i = 0; i < chunk.size(); i++) {
+                selection.append(i == 0 ? "?" : ",?");
+            }
+            selection.append(')');
+
+            Cursor cursor = db.query(
+                    EarthquakeEntry.TABLE_NAME,
+                    EARTHQUAKE_COLUMNS,
+                    selection.toString(),
+                    chunk.toArray(new String[0]),
+                    null,
+                    null,
+                    null);
+            try {
+                while (cursor.moveToNext()) {
+                    Earthquake earthquake = readEarthquake(cursor);
+                    earthquakes.put(earthquake.getId(), earthquake);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        return earthquakes;
+    }
+
+    /* Reads the row of a cursor over EARTHQUAKE_COLUMNS. */
+    private static Earthquake readEarthquake(Cursor cursor) {
+        return new Earthquake(
+                cursor.getString(0),
+                getDouble(cursor, 1),
+                cursor.getString(2),
+                cursor.getLong(3),
+                cursor.getLong(4),
+                cursor.getString(5),
+                getDouble(cursor, 6),
+                getDouble(cursor, 7),
+                getDouble(cursor, 8));
+    }
+
+    /**
+     * Insert new events and replace stored ones whose {@code updated} time is older than the
+     * incoming revision. Events that have left the 30-day window are deleted.
+     *
+     * @return the number of rows inserted or replaced.
+     */
+    public int upsert(List<Earthquake> earthquakes) {
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        int changed = 0;
+
+        db.beginTransaction();
+        try {
+            long windowStart = windowStart();
+            db.delete(EarthquakeEntry.TABLE_NAME, EarthquakeEntry.COLUMN_TIME + " < ?",
+                    new String[]{Long.toString(windowStart)});
+
+            ContentValues values = new ContentValues();
+            for (Earthquake earthquake : earthquakes) {
+                if (earthquake.getId() == null || earthquake.getTime() < windowStart) {
+                    continue;
+                }
+
+                values.clear();
+                values.put(EarthquakeEntry.COLUMN_EVENT_ID, earthquake.getId());
+                putDouble(values, EarthquakeEntry.COLUMN_MAGNITUDE, earthquake.getMagnitude());
+                values.put(EarthquakeEntry.COLUMN_PLACE, earthquake.getLocation());
+                values.put(EarthquakeEntry.COLUMN_TIME, earthquake.getTime());
+                values.put(EarthquakeEntry.COLUMN_UPDATED, earthquake.getUpdated());
+                values.put(EarthquakeEntry.COLUMN_URL, earthquake.getUrl());
+                putDouble(values, EarthquakeEntry.COLUMN_LONGITUDE, earthquake.getLongitude());
+                putDouble(values, EarthquakeEntry.COLUMN_LATITUDE, earthquake.getLatitude());
+                putDouble(values, EarthquakeEntry.COLUMN_DEPTH, earthquake.getDepth());
+
+                int updatedRows = db.update(
+                        EarthquakeEntry.TABLE_NAME,
+                        values,
+                        EarthquakeEntry.COLUMN_EVENT_ID + " = ? AND "
+                                + EarthquakeEntry.COLUMN_UPDATED + " < ?",
+                        new String[]{earthquake.getId(), Long.toString(earthquake.getUpdated())});
+                if (updatedRows > 0) {
+                    changed += updatedRows;
+                } else if (db.insertWithOnConflict(EarthquakeEntry.TABLE_NAME, null, values,
+                        SQLiteDatabase.CONFLICT_IGNORE) != -1) {
+                    changed++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        return changed;
+    }
+
+    /**
+     * Return the newest "updated" time already synced for the query URL, or 0 if it has never
+     * been synced.
+     */
+    public long getUpdatedAfter(String queryUrl) {
+        Cursor cursor = dbHelper.getReadableDatabase().query(
+                SyncStateEntry.TABLE_NAME,
+                new String[]{SyncStateEntry.COLUMN_UPDATED_AFTER},
+                SyncStateEntry.COLUMN_QUERY + " = ?",
+                new String[]{queryUrl},
+                null,
+                null,
+                null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void setUpdatedAfter(String queryUrl, long updatedAfter) {
+        ContentValues values = new ContentValues();
+        values.put(SyncStateEntry.COLUMN_QUERY, queryUrl);
+        values.put(SyncStateEntry.COLUMN_UPDATED_AFTER, updatedAfter);
+        dbHelper.getWritableDatabase().insertWithOnConflict(
+                SyncStateEntry.TABLE_NAME, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    private static long windowStart() {
+        return System.currentTimeMillis() - EarthquakeQueryEngine.DEFAULT_WINDOW_MILLIS;
+    }
+
+    /* Unknown values are NaN in the model and NULL in the database. */
+    private static void putDouble(ContentValues values, String column, double value) {
+        if (Double.isNaN(value)) {
+            values.putNull(column);
+        } else {
+            values.put(column, value);
+        }
+    }
+
+    private static double getDouble(Cursor cursor, int column) {
+        return cursor.isNull(column) ? Double.NaN : cursor.getDouble(column);
+    }
+}
@@ -1,48 +1,494 @@
 package com.example.android.quakereport.loaders;
 
 import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
 
-import androidx.loader.content.AsyncTaskLoader;
+import androidx.loader.content.Loader;
 
+import com.example.android.quakereport.adapters.EarthquakeRow;
+import com.example.android.quakereport.adapters.EarthquakeRowFormatter;
 import com.example.android.quakereport.data.Earthquake;
+import com.example.android.quakereport.data.EarthquakeQuery;
+import com.example.android.quakereport.data.EarthquakeQueryEngine;
+import com.example.android.quakereport.data.EarthquakeSnapshot;
+import com.example.android.quakereport.data.EarthquakeStore;
+import com.example.android.quakereport.utils.EarthquakeBatcher;
+import com.example.android.quakereport.utils.EarthquakeFormats;
+import com.example.android.quakereport.utils.FetchCancellation;
+import com.example.android.quakereport.utils.FormatSelector;
+import com.example.android.quakereport.utils.Metrics;
 import com.example.android.quakereport.utils.QueryUtils;
+import com.example.android.quakereport.utils.ResultCache;
+import com.example.android.quakereport.utils.TaskScheduler;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
-public class EarthquakeLoader extends AsyncTaskLoader<List<Earthquake>> {
+/**
+ * Loads earthquakes from the local {@link EarthquakeStore} first and then syncs the store with
+ * USGS, delivering the list a second time once the sync is done. Queries the
+ * {@link EarthquakeQueryEngine} can answer with data fetched within {@link #RESULT_TTL_MILLIS}
+ * skip both. The earthquakes are delivered
+ * as ready-to-bind {@link EarthquakeRow}s.
+ * <p>
+ * Synced results are kept in a {@link ResultCache} shared by all loaders, so a loader that is
+ * started again, or recreated for the same URL, delivers the cached rows right away and only
+ * syncs once they are older than {@link #RESULT_TTL_MILLIS}.
+ * <p>
+ * When there is nothing to show yet, the rows of the first sync are delivered in batches while
+ * the response is still downloading.
+ * <p>
+ * Loads run as high priority tasks in the {@link TaskScheduler.Lane#FOREGROUND} lane, ahead of
+ * prefetches and background syncs. Cancelling or resetting the loader, or forcing a new load,
+ * cancels the running one and aborts its download.
+ * <p>
+ * Every synced result is also saved as an {@link EarthquakeSnapshot}, which the activity shows
+ * on the next launch before the loader has even started. The snapshot is written in the
+ * {@link TaskScheduler.Lane#MAINTENANCE} lane, after the rows are delivered.
+ */
+public class EarthquakeLoader extends Loader<List<EarthquakeRow>> {
 
     private static final String TAG = EarthquakeLoader.class.getName();
 
+    /* Synced results are shown again without a sync for this long, like the HTTP cache does. */
+    private static final long RESULT_TTL_MILLIS = 60 * 1000;
+
+    /* One per query the user switches between in the settings is plenty. */
+    private static final int MAX_CACHED_RESULTS = 8;
+
+    private static final ResultCache<List<EarthquakeRow>> RESULTS =
+            new ResultCache<>(MAX_CACHED_RESULTS, RESULT_TTL_MILLIS);
+
+    /* About a screen of rows. */
+    private static final int FIRST_BATCH_SIZE = 20;
+
+    private static final int MAX_BATCH_SIZE = 200;
+
+    /* The most rows USGS returns per request; deltas are paged in requests of this many. */
+    private static final int DELTA_PAGE_SIZE = 20000;
+
+    private static final String SNAPSHOT_FILE_NAME = "last_result.snapshot";
+
+    private static final Metrics METRICS = Metrics.getInstance();
+
+    /* From forceLoad() until the load starts, the wait for a free foreground lane thread. */
+    private static final Metrics.Timer QUEUE_TIMER = METRICS.timer("loader.queue");
+    private static final Metrics.Timer LOAD_TIMER = METRICS.timer("loader.load");
+    private static final Metrics.Histogram TIME_TO_FIRST_ROW =
+            METRICS.histogram("loader.time_to_first_row", "ms");
+
+    static {
+        METRICS.gauge("result_cache.hits", new Metrics.Gauge() {
+            @Override
+            public long getValue() {
+                return RESULTS.getHitCount();
+            }
+        });
+        METRICS.gauge("result_cache.misses", new Metrics.Gauge() {
+            @Override
+            public long getValue() {
+                return RESULTS.getMissCount();
+            }
+        });
+        METRICS.gauge("result_cache.coalesced", new Metrics.Gauge() {
+            @Override
+            public long getValue() {
+                return RESULTS.getCoalescedCount();
+            }
+        });
+    }
+
     /**
      * The url used to fetch quake data from the internet.
      */
     private final String url;
 
+    /**
+     * The same query as {@link #url}, used to read the matching rows from the local store.
+     */
+    private final EarthquakeQuery query;
+
+    /**
+     * Formats the loaded earthquakes on the loader's background thread.
+     */
+    private final EarthquakeRowFormatter rowFormatter;
+
+    /* Set once the local rows have been delivered, so later loads go to the network. */
+    private volatile boolean localDelivered;
+
+    /* Set when the delivered result came from the store and a sync should follow it. */
+    private volatile boolean syncPending;
+
+    /* The rows delivered last, so the same rows are not delivered twice. */
+    private List<EarthquakeRow> deliveredRows;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /* The running load, only touched on the main thread. */
+    private TaskScheduler.Task<List<EarthquakeRow>> loadTask;
+
+    /* True while the running load may still deliver partial results. */
+    private volatile boolean partialsOpen;
+
+    /* When the loader was started, while no rows have been delivered since. */
+    private long startedAtMillis = -1;
+
+    private long timeToFirstRowMillis = -1;
+
     /**
      * Constructs a new {@link EarthquakeLoader}.
      *
      * @param context of the activity
      * @param url     to load data from
+     * @param query   the url describes, to read the cached rows with
+     * @param rowFormatter to turn the earthquakes into rows with
      */
-    public EarthquakeLoader(Context context, String url) {
+    public EarthquakeLoader(Context context, String url, EarthquakeQuery query,
+                            EarthquakeRowFormatter rowFormatter) {
         super(context);
         this.url = url;
+        this.query = query;
+        this.rowFormatter = rowFormatter;
     }
 
     /**
-     * This is on a background thread.
+     * This is on a foreground lane thread.
+     *
+     * @return the rows, or null if there is no URL or the load was cancelled.
      */
-    @Override
-    public List<Earthquake> loadInBackground() {
+    private List<EarthquakeRow> load(FetchCancellation cancellation) {
         if (this.url == null) {
             return null;
         }
 
-        return QueryUtils.fetchEarthquakeData(url);
+        EarthquakeQueryEngine queryEngine = EarthquakeQueryEngine.getInstance();
+        long now = System.currentTimeMillis();
+
+        // Data fetched within the result TTL is answered from memory, without touching disk or
+        // network. The engine keeps data for longer, but a stale cached result has to be
+        // revalidated by a sync rather than answered again with rows just as old. The rows are
+        // cached with the time they were fetched, so they are revalidated on schedule too.
+        long fetchedAt = queryEngine.getFetchedAt(query, now);
+        if (fetchedAt >= 0 && now - fetchedAt < RESULT_TTL_MILLIS) {
+            List<Earthquake> cachedEarthquakes =
+                    queryEngine.query(query, 0, query.getLimit(), now);
+            if (cachedEarthquakes != null) {
+                List<EarthquakeRow> rows = rowFormatter.formatAll(cachedEarthquakes);
+                RESULTS.put(url, rows, fetchedAt);
+                return rows;
+            }
+        }
+
+        QueryUtils.initResponseCache(getContext().getCacheDir());
+        final EarthquakeStore store = EarthquakeStore.getInstance(getContext());
+
+        if (!localDelivered) {
+            localDelivered = true;
+            List<Earthquake> localEarthquakes = store.query(query);
+            if (!localEarthquakes.isEmpty()) {
+                queryEngine.merge(localEarthquakes);
+                syncPending = true;
+                return rowFormatter.formatAll(localEarthquakes);
+            }
+        }
+
+        // Loaders syncing the same URL at the same time share one sync.
+        final FetchCancellation syncCancellation = cancellation;
+        partialsOpen = true;
+        List<EarthquakeRow> syncedRows;
+        try {
+            syncedRows = RESULTS.load(url, new Callable<List<EarthquakeRow>>() {
+                @Override
+                public List<EarthquakeRow> call() {
+                    return syncAndFormat(store, syncCancellation);
+                }
+            });
+        } catch (Exception e) {
+            Log.e(TAG, "load: " + e.getMessage());
+            syncedRows = null;
+        } finally {
+            partialsOpen = false;
+        }
+        if (cancellation.isCancelled()) {
+            return null;
+        }
+        if (syncedRows != null) {
+            return syncedRows;
+        }
+
+        // The sync failed, show whatever the store has.
+        List<Earthquake> earthquakes = store.query(query);
+        queryEngine.merge(earthquakes);
+        return rowFormatter.formatAll(earthquakes);
+    }
+
+    /**
+     * @return the synced rows, or null if the sync failed.
+     */
+    private List<EarthquakeRow> syncAndFormat(EarthquakeStore store,
+                                              FetchCancellation cancellation) {
+        long now = System.currentTimeMillis();
+        if (!sync(store, cancellation)) {
+            return null;
+        }
+
+        // The store now holds what USGS would return for the query.
+        List<Earthquake> earthquakes = store.query(query);
+        EarthquakeQueryEngine.getInstance().recordFetch(query, 0, earthquakes, now);
+
+        writeSnapshot(earthquakes);
+        return rowFormatter.formatAll(earthquakes);
+    }
+
+    /**
+     * Save the earthquakes as the snapshot once nothing the user waits for is running.
+     */
+    private void writeSnapshot(final List<Earthquake> earthquakes) {
+        final File snapshotFile = getSnapshotFile(getContext());
+        TaskScheduler.getInstance().submit(TaskScheduler.Lane.MAINTENANCE,
+                TaskScheduler.PRIORITY_NORMAL, new TaskScheduler.Job<Void>() {
+                    @Override
+                    public Void run(FetchCancellation cancellation) {
+                        try {
+                            EarthquakeSnapshot.write(snapshotFile, url, earthquakes);
+                        } catch (IOException e) {
+                            Log.e(TAG, "writeSnapshot: can't save the snapshot "
+                                    + e.getMessage());
+                        }
+                        return null;
+                    }
+                }, null);
+    }
+
+    /**
+     * @return the file holding the snapshot of the last synced result, keyed by its URL.
+     */
+    public static File getSnapshotFile(Context context) {
+        return new File(context.getCacheDir(), SNAPSHOT_FILE_NAME);
+    }
+
+    /**
+     * Fetch only the events USGS added or revised since the last sync of this query and merge
+     * them into the store. Failures leave the store as it is.
+     *
+     * @return true if the store is up to date with USGS.
+     */
+    private boolean sync(EarthquakeStore store, final FetchCancellation cancellation) {
+        long updatedAfter = store.getUpdatedAfter(url);
+        if (updatedAfter > 0) {
+            return syncChanges(store, updatedAfter, cancellation);
+        }
+
+        // Nothing is on screen yet and the whole list is downloaded, show it as it arrives.
+        EarthquakeBatcher batcher = new EarthquakeBatcher(FIRST_BATCH_SIZE, MAX_BATCH_SIZE,
+                new EarthquakeBatcher.Listener() {
+                    private final List<EarthquakeRow> rows = new ArrayList<>();
+
+                    @Override
+                    public void onBatch(List<Earthquake> batch) {
+                        rows.addAll(rowFormatter.formatAll(batch));
+                        deliverPartialResult(new ArrayList<>(rows), cancellation);
+                    }
+                });
+
+        // The store keeps the query URL as it is, only the request picks the wire format.
+        // The revision times are what the next sync continues from.
+        String syncUrl = EarthquakeFormats.withFormat(url,
+                FormatSelector.getInstance().choose(true));
+        // The store has none of the rows yet, so even an unchanged response has to be parsed.
+        List<Earthquake> earthquakes = QueryUtils.fetchEarthquakeData(syncUrl, cancellation,
+                batcher);
+        if (earthquakes == null) {
+            return false;
+        }
+
+        store.upsert(earthquakes);
+        store.setUpdatedAfter(url, latestUpdate(earthquakes, 0));
+        return true;
+    }
+
+    /**
+     * Fetch every event revised after updatedAfter, not only the first rows of the query's
+     * order and limit, a page at a time until a page comes back short. The store only moves on
+     * from updatedAfter once all of them are in, so a failed page is retried by the next sync.
+     */
+    private boolean syncChanges(EarthquakeStore store, long updatedAfter,
+                                FetchCancellation cancellation) {
+        long latestUpdate = updatedAfter;
+        for (int offset = 0; ; offset += DELTA_PAGE_SIZE) {
+            String pageUrl = EarthquakeFormats.withFormat(deltaUrl(updatedAfter, offset),
+                    FormatSelector.getInstance().choose(true));
+            // A revalidated page is parsed too: the page count depends on its size, and an
+            // earlier sync that failed part way may not have stored it.
+            List<Earthquake> changes =
+                    QueryUtils.fetchEarthquakeData(pageUrl, cancellation, null);
+            if (changes == null) {
+                return false;
+            }
+
+            store.upsert(changes);
+            latestUpdate = latestUpdate(changes, latestUpdate);
+            if (changes.size() < DELTA_PAGE_SIZE) {
+                break;
+            }
+        }
+        store.setUpdatedAfter(url, latestUpdate);
+        return true;
+    }
+
+    /**
+     * @return the query URL for a page of the events revised after updatedAfter: the same
+     * filters, but ordered by time and paged instead of cut off at the query's limit.
+     */
+    private String deltaUrl(long updatedAfter, int offset) {
+        Uri queryUri = Uri.parse(url);
+        Uri.Builder builder = queryUri.buildUpon().clearQuery();
+        for (String name : queryUri.getQueryParameterNames()) {
+            if ("limit".equals(name) || "orderby".equals(name) || "offset".equals(name)) {
+                continue;
+            }
+            for (String value : queryUri.getQueryParameters(name)) {
+                builder.appendQueryParameter(name, value);
+            }
+        }
+        // FDSN offsets count from 1.
+        return builder.appendQueryParameter("orderby", EarthquakeQuery.ORDER_BY_TIME)
+                .appendQueryParameter("limit", Integer.toString(DELTA_PAGE_SIZE))
+                .appendQueryParameter("offset", Integer.toString(offset + 1))
+                .appendQueryParameter("updatedafter", QueryUtils.formatFdsnTime(updatedAfter))
+                .toString();
+    }
+
+    private static long latestUpdate(List<Earthquake> earthquakes, long latestUpdate) {
+        for (Earthquake earthquake : earthquakes) {
+            latestUpdate = Math.max(latestUpdate, earthquake.getUpdated());
+        }
+        return latestUpdate;
+    }
+
+    /**
+     * Deliver the rows parsed so far on the main thread, unless the load has finished or was
+     * cancelled by then.
+     */
+    private void deliverPartialResult(final List<EarthquakeRow> rows,
+                                      final FetchCancellation cancellation) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (partialsOpen && isStarted() && !cancellation.isCancelled()) {
+                    deliverResult(rows);
+                }
+            }
+        });
+    }
+
+    /**
+     * Cancel the running load, if any.
+     *
+     * @return true if a load was cancelled.
+     */
+    private boolean cancelLoadTask() {
+        TaskScheduler.Task<List<EarthquakeRow>> task = loadTask;
+        loadTask = null;
+        return task != null && task.cancel();
+    }
+
+    @Override
+    protected boolean onCancelLoad() {
+        if (cancelLoadTask()) {
+            // The change that started it wasn't loaded, so it is still pending.
+            rollbackContentChanged();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    protected void onReset() {
+        cancelLoadTask();
+    }
+
+    /**
+     * @return how long the last start took to put the first rows on screen in milliseconds, or
+     * -1 if none have been delivered yet.
+     */
+    public long getTimeToFirstRowMillis() {
+        return timeToFirstRowMillis;
+    }
+
+    @Override
+    public void deliverResult(List<EarthquakeRow> data) {
+        deliveredRows = data;
+        if (startedAtMillis >= 0 && data != null && !data.isEmpty()) {
+            timeToFirstRowMillis = SystemClock.elapsedRealtime() - startedAtMillis;
+            startedAtMillis = -1;
+            Log.i(TAG, "Time to first row: " + timeToFirstRowMillis + " ms");
+            TIME_TO_FIRST_ROW.record(timeToFirstRowMillis);
+        }
+        super.deliverResult(data);
+
+        // The cached rows are on screen, now bring them up to date.
+        if (syncPending) {
+            syncPending = false;
+            onContentChanged();
+        }
+    }
+
+    @Override
+    protected void onForceLoad() {
+        super.onForceLoad();
+        cancelLoadTask();
+
+        final long queuedAt = QUEUE_TIMER.start();
+        loadTask = TaskScheduler.getInstance().submit(TaskScheduler.Lane.FOREGROUND,
+                TaskScheduler.PRIORITY_HIGH, new TaskScheduler.Job<List<EarthquakeRow>>() {
+                    @Override
+                    public List<EarthquakeRow> run(FetchCancellation cancellation) {
+                        QUEUE_TIMER.stop(queuedAt);
+                        long loadStart = LOAD_TIMER.start();
+                        try {
+                            return load(cancellation);
+                        } finally {
+                            LOAD_TIMER.stop(loadStart);
+                        }
+                    }
+                }, new TaskScheduler.Callback<List<EarthquakeRow>>() {
+                    @Override
+                    public void onResult(List<EarthquakeRow> rows) {
+                        // Cancelled loads never get here, so this is the current one.
+                        loadTask = null;
+                        if (isAbandoned()) {
+                            return;
+                        }
+                        commitContentChanged();
+                        deliverResult(rows);
+                    }
+                });
     }
 
     @Override
     protected void onStartLoading() {
+        boolean rowsShown = deliveredRows != null && !deliveredRows.isEmpty();
+        startedAtMillis = rowsShown ? -1 : SystemClock.elapsedRealtime();
+
+        ResultCache.Entry<List<EarthquakeRow>> cached = url == null ? null : RESULTS.get(url);
+        if (cached != null) {
+            // The cached rows are newer than the store's, there is no need to show those first.
+            localDelivered = true;
+            if (cached.getValue() != deliveredRows) {
+                deliverResult(cached.getValue());
+            }
+            if (RESULTS.isFresh(cached, System.currentTimeMillis()) && !takeContentChanged()) {
+                return;
+            }
+        }
         forceLoad();
     }
-}
\ No newline at end of file
+}
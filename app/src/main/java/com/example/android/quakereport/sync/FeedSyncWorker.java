@@ -0,0 +1,235 @@
+package com.example.android.quakereport.sync;
+
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.preference.PreferenceManager;
+
+import androidx.annotation.NonNull;
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.example.android.quakereport.R;
+import com.example.android.quakereport.data.Earthquake;
+import com.example.android.quakereport.data.EarthquakeQueryEngine;
+import com.example.android.quakereport.data.EarthquakeStore;
+import com.example.android.quakereport.ui.EarthquakeActivity;
+import com.example.android.quakereport.utils.FetchCancellation;
+import com.example.android.quakereport.utils.QueryUtils;
+import com.example.android.quakereport.utils.TaskScheduler;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls the USGS "all earthquakes, past hour" feed in the background, merges new and revised
+ * events into the local store and notifies about significant ones in a single notification.
+ * <p>
+ * Every run schedules the next one. The delay shrinks to
+ * {@link FeedPoller#MIN_INTERVAL_MILLIS} while the feed keeps changing and doubles up to
+ * {@link FeedPoller#MAX_INTERVAL_MILLIS} while it doesn't, so quiet periods cost one conditional
+ * request every hour. Runs only happen on a network connection and with enough battery.
+ * <p>
+ * The poll itself runs in the {@link TaskScheduler.Lane#SYNC} lane, so it waits while the user
+ * is waiting for the list, and stopping the worker aborts it.
+ */
+public class FeedSyncWorker extends Worker {
+
+    private static final String WORK_NAME = "feed_sync";
+
+    /* Input and output key holding the delay used to schedule the current run. */
+    private static final String KEY_INTERVAL = "interval";
+
+    private static final String NOTIFICATION_CHANNEL_ID = "significant_earthquakes";
+
+    private static final int NOTIFICATION_ID = 1;
+
+    /* Lines listed in the notification before it just says how many more there are. */
+    private static final int MAX_NOTIFICATION_LINES = 5;
+
+    /* The running poll, cancelled when the worker is stopped. */
+    private volatile TaskScheduler.Task<FeedPoller.Result> pollTask;
+
+    public FeedSyncWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+        super(context, workerParams);
+    }
+
+    /**
+     * Start polling, unless it is already scheduled.
+     */
+    public static void schedule(Context context) {
+        WorkManager.getInstance(context).enqueueUniqueWork(WORK_NAME, ExistingWorkPolicy.KEEP,
+                createRequest(FeedPoller.MIN_INTERVAL_MILLIS));
+    }
+
+    public static void cancel(Context context) {
+        WorkManager.getInstance(context).cancelUniqueWork(WORK_NAME);
+    }
+
+    /**
+     * @return true if the user turned background sync on in the settings.
+     */
+    public static boolean isEnabled(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(
+                context.getString(R.string.settings_background_sync_key),
+                context.getResources().getBoolean(R.bool.settings_background_sync_default));
+    }
+
+    private static OneTimeWorkRequest createRequest(long delayMillis) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .setRequiresBatteryNotLow(true)
+                .build();
+
+        return new OneTimeWorkRequest.Builder(FeedSyncWorker.class)
+                .setConstraints(constraints)
+                .setInitialDelay(delayMillis, TimeUnit.MILLISECONDS)
+                .setInputData(new Data.Builder().putLong(KEY_INTERVAL, delayMillis).build())
+                .build();
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+
+        // Always ask USGS whether the feed changed; an unchanged feed is a cheap 304.
+        QueryUtils.initResponseCache(context.getCacheDir())
+                .setTtl(FeedPoller.ALL_HOUR_FEED_URL, 0);
+
+        final EarthquakeStore store = EarthquakeStore.getInstance(context);
+        final FeedPoller poller = new FeedPoller(FeedPoller.ALL_HOUR_FEED_URL,
+                new FeedPoller.EventStore() {
+                    @Override
+                    public Map<String, Earthquake> getByIds(List<String> ids) {
+                        return store.getByIds(ids);
+                    }
+
+                    @Override
+                    public void upsert(List<Earthquake> earthquakes) {
+                        store.upsert(earthquakes);
+                        EarthquakeQueryEngine.getInstance().merge(earthquakes);
+                    }
+                },
+                getNotifyMagnitude(context));
+
+        pollTask = TaskScheduler.getInstance().submit(TaskScheduler.Lane.SYNC,
+                TaskScheduler.PRIORITY_NORMAL, new TaskScheduler.Job<FeedPoller.Result>() {
+                    @Override
+                    public FeedPoller.Result run(FetchCancellation cancellation) {
+                        return poller.poll(cancellation);
+                    }
+                }, null);
+        if (isStopped()) {
+            pollTask.cancel();
+        }
+
+        FeedPoller.Result result;
+        try {
+            result = pollTask.get();
+        } catch (InterruptedException e) {
+            pollTask.cancel();
+            Thread.currentThread().interrupt();
+            result = null;
+        }
+        if (result != null && !result.getSignificant().isEmpty()) {
+            notifySignificant(context, result.getSignificant());
+        }
+
+        // A failed poll counts as unchanged, which also backs off while USGS is unreachable.
+        long interval = getInputData().getLong(KEY_INTERVAL, FeedPoller.MIN_INTERVAL_MILLIS);
+        long nextInterval = FeedPoller.nextInterval(interval,
+                result != null && result.isFeedChanged(), FeedPoller.MIN_INTERVAL_MILLIS,
+                FeedPoller.MAX_INTERVAL_MILLIS);
+
+        if (!isStopped() && isEnabled(context)) {
+            // Appended, so it starts once this run has finished.
+            WorkManager.getInstance(context).enqueueUniqueWork(WORK_NAME,
+                    ExistingWorkPolicy.APPEND_OR_REPLACE, createRequest(nextInterval));
+        }
+
+        return Result.success(new Data.Builder().putLong(KEY_INTERVAL, nextInterval).build());
+    }
+
+    @Override
+    public void onStopped() {
+        TaskScheduler.Task<FeedPoller.Result> task = pollTask;
+        if (task != null) {
+            task.cancel();
+        }
+    }
+
+    private static double getNotifyMagnitude(Context context) {
+        SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String notifyMagnitudePref = sharedPrefs.getString(
+                context.getString(R.string.settings_notify_magnitude_key),
+                context.getString(R.string.settings_notify_magnitude_default));
+        return Double.parseDouble(notifyMagnitudePref);
+    }
+
+    /**
+     * Show one notification for all significant earthquakes of this poll, replacing the
+     * previous one.
+     */
+    private static void notifySignificant(Context context, List<Earthquake> earthquakes) {
+        createNotificationChannel(context);
+
+        String title = context.getResources().getQuantityString(
+                R.plurals.significant_earthquakes, earthquakes.size(), earthquakes.size());
+
+        NotificationCompat.InboxStyle inboxStyle = new NotificationCompat.InboxStyle();
+        for (int i = 0; i < Math.min(earthquakes.size(), MAX_NOTIFICATION_LINES); i++) {
+            inboxStyle.addLine(formatLine(earthquakes.get(i)));
+        }
+        if (earthquakes.size() > MAX_NOTIFICATION_LINES) {
+            inboxStyle.setSummaryText(context.getString(R.string.significant_earthquakes_more,
+                    earthquakes.size() - MAX_NOTIFICATION_LINES));
+        }
+
+        PendingIntent contentIntent = PendingIntent.getActivity(context, 0,
+                new Intent(context, EarthquakeActivity.class),
+                PendingIntent.FLAG_UPDATE_CURRENT);
+
+        NotificationCompat.Builder builder =
+                new NotificationCompat.Builder(context, NOTIFICATION_CHANNEL_ID)
+                        .setSmallIcon(android.R.drawable.stat_notify_error)
+                        .setContentTitle(title)
+                        .setContentText(formatLine(earthquakes.get(0)))
+                        .setStyle(inboxStyle)
+                        .setNumber(earthquakes.size())
+                        .setContentIntent(contentIntent)
+                        .setAutoCancel(true);
+
+        NotificationManagerCompat.from(context).notify(NOTIFICATION_ID, builder.build());
+    }
+
+    private static String formatLine(Earthquake earthquake) {
+        return String.format(Locale.getDefault(), "M %.1f  %s", earthquake.getMagnitude(),
+                earthquake.getLocation());
+    }
+
+    private static void createNotificationChannel(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return;
+        }
+
+        NotificationChannel channel = new NotificationChannel(NOTIFICATION_CHANNEL_ID,
+                context.getString(R.string.significant_earthquakes_channel),
+                NotificationManager.IMPORTANCE_DEFAULT);
+        context.getSystemService(NotificationManager.class).createNotificationChannel(channel);
+    }
+}
@@ -6,33 +6,63 @@ import android.content.SharedPreferences;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.Uri;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.preference.PreferenceManager;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.SearchView;
 import androidx.loader.app.LoaderManager;
 import androidx.loader.content.Loader;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.android.quakereport.BuildConfig;
 import com.example.android.quakereport.R;
 import com.example.android.quakereport.adapters.EarthquakeAdapter;
+import com.example.android.quakereport.adapters.EarthquakeRow;
+import com.example.android.quakereport.adapters.EarthquakeRowFormatter;
+import com.example.android.quakereport.adapters.RegionAdapter;
+import com.example.android.quakereport.adapters.SearchAdapter;
 import com.example.android.quakereport.data.Earthquake;
+import com.example.android.quakereport.data.EarthquakeQuery;
+import com.example.android.quakereport.data.EarthquakeQueryEngine;
+import com.example.android.quakereport.data.EarthquakeRollups;
+import com.example.android.quakereport.data.EarthquakeSnapshot;
+import com.example.android.quakereport.data.EarthquakeStore;
+import com.example.android.quakereport.data.PagedList;
 import com.example.android.quakereport.loaders.EarthquakeLoader;
-
+import com.example.android.quakereport.sync.FeedSyncWorker;
+import com.example.android.quakereport.utils.DetailPrefetcher;
+import com.example.android.quakereport.utils.EarthquakeFormats;
+import com.example.android.quakereport.utils.FormatSelector;
+import com.example.android.quakereport.utils.Metrics;
+import com.example.android.quakereport.utils.QueryUtils;
+import com.example.android.quakereport.utils.ShardedFetcher;
+import com.example.android.quakereport.utils.TaskScheduler;
+
+import org.json.JSONException;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * MainActivity
  */
 public class EarthquakeActivity extends AppCompatActivity
-        implements LoaderManager.LoaderCallbacks<List<Earthquake>> {
+        implements LoaderManager.LoaderCallbacks<List<EarthquakeRow>> {
 
     private static final String TAG = EarthquakeActivity.class.getName();
 
@@ -42,49 +72,295 @@ public class EarthquakeActivity extends AppCompatActivity
     /* Base URL for getting data from USGS website. */
     private static final String USGS_REQUEST_URL = "https://earthquake.usgs.gov/fdsnws/event/1/query";
 
+    /* Number of earthquakes fetched per request. */
+    private static final int PAGE_SIZE = 100;
+
+    /* Number of pages kept in memory while scrolling. */
+    private static final int MAX_PAGES = 5;
+
+    /* The next page is fetched once the user scrolls within this many rows of the end. */
+    private static final int PREFETCH_DISTANCE = 30;
+
+    /* Requests in flight at once when a query is fetched as time shards. */
+    private static final int SHARD_PARALLELISM = 4;
+
+    /* How often the metrics overlay is redrawn while it is shown. */
+    private static final long METRICS_REFRESH_MILLIS = 1000;
+
+    /* Saved state key of whether the earthquakes are grouped by region. */
+    private static final String STATE_GROUPED = "grouped_by_region";
+
+    private static final Metrics.Timer SEARCH_TIMER = Metrics.getInstance().timer("search");
+
     /**
      * Lists the fetched earthquakes.
      */
-    private ListView earthquakeLV;
+    private RecyclerView earthquakeRV;
+
+    private LinearLayoutManager earthquakeLayoutManager;
 
     /**
      * A progress bar to show while fetching earthquake data from the web.
      */
     private ProgressBar fetchingEarthquakesBP;
 
+    /**
+     * Header with statistics of the recently loaded earthquakes.
+     */
+    private TextView summaryTV;
+
     /**
      * TextView that is displayed when the list is empty.
      */
     private TextView emptyStateTV;
 
+    /**
+     * Debug overlay with the recorded metrics.
+     */
+    private TextView metricsOverlayTV;
+
+    private final Handler metricsHandler = new Handler(Looper.getMainLooper());
+
+    private final Runnable refreshMetrics = new Runnable() {
+        @Override
+        public void run() {
+            metricsOverlayTV.setText(Metrics.getInstance().toText());
+            metricsHandler.postDelayed(this, METRICS_REFRESH_MILLIS);
+        }
+    };
+
     private EarthquakeAdapter earthquakeAdapter;
 
+    /**
+     * Lists the earthquakes in memory grouped by region, in place of the earthquake list.
+     */
+    private RegionAdapter regionAdapter;
+
+    private boolean groupedByRegion;
+
+    /**
+     * The revision of the regions the region list shows, -1 if it shows none yet.
+     */
+    private long shownRegionsRevision = -1;
+
+    /**
+     * Lists the earthquakes in memory whose place matches the search, in place of the others.
+     */
+    private SearchAdapter searchAdapter;
+
+    /**
+     * The text in the search box, null while it is closed.
+     */
+    private String searchText;
+
+    /**
+     * Counts the times the search box opened, so a search started for an earlier opening is
+     * stopped again. The engine is searching for this one once searchStarted is set.
+     */
+    private int searchOpenings;
+    private boolean searchStarted;
+
+    /**
+     * The earthquakes shown in the list, fetched page by page while scrolling.
+     */
+    private PagedList<EarthquakeRow> pagedEarthquakes;
+
+    /**
+     * The settings the list on screen was loaded with.
+     */
+    private EarthquakeQuery shownQuery;
+
+    /**
+     * Formats earthquakes into rows, shared by the loader and the page fetches.
+     */
+    private EarthquakeRowFormatter rowFormatter;
+
+    /**
+     * Runs the page fetches in the foreground lane, behind loads the user is waiting for.
+     */
+    private final Executor pageExecutor = TaskScheduler.getInstance()
+            .asExecutor(TaskScheduler.Lane.FOREGROUND, TaskScheduler.PRIORITY_NORMAL);
+
+    /**
+     * Runs page results on the main thread.
+     */
+    private final Executor mainExecutor = new Executor() {
+        private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable command) {
+            mainHandler.post(command);
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.earthquake_activity);
 
-        earthquakeLV = findViewById(R.id.quakes_list);
+        // Recording is next to free while disabled, so release builds leave it off.
+        if (BuildConfig.DEBUG) {
+            Metrics.getInstance().setEnabled(true);
+        }
+
+        // Big page and shard responses are parsed on all cores where ForkJoinPool exists.
+        QueryUtils.setParallelParsing(
+                Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP);
+
+        rowFormatter = EarthquakeAdapter.createRowFormatter(this);
+
+        earthquakeRV = findViewById(R.id.quakes_list);
+        earthquakeLayoutManager = (LinearLayoutManager) earthquakeRV.getLayoutManager();
+
+        EarthquakeAdapter.OnEarthquakeClickListener clickListener =
+                new EarthquakeAdapter.OnEarthquakeClickListener() {
+                    @Override
+                    public void onEarthquakeClick(Earthquake clickedEarthquake) {
+                        startActivity(EarthquakeDetailActivity.newIntent(
+                                EarthquakeActivity.this, clickedEarthquake));
+                    }
+                };
+        earthquakeAdapter = new EarthquakeAdapter(EarthquakeActivity.this, clickListener);
+        regionAdapter = new RegionAdapter(EarthquakeActivity.this, rowFormatter,
+                EarthquakeQueryEngine.getInstance(), clickListener);
+        searchAdapter = new SearchAdapter(EarthquakeActivity.this, rowFormatter,
+                EarthquakeQueryEngine.getInstance(), clickListener, pageExecutor, mainExecutor);
+        groupedByRegion = savedInstanceState != null
+                && savedInstanceState.getBoolean(STATE_GROUPED);
+        earthquakeRV.setAdapter(groupedByRegion ? regionAdapter : earthquakeAdapter);
 
         emptyStateTV = findViewById(R.id.no_data_found_text_view);
-        earthquakeLV.setEmptyView(emptyStateTV);
+        metricsOverlayTV = findViewById(R.id.metrics_overlay_tv);
+        summaryTV = findViewById(R.id.activity_summary_tv);
+
+        earthquakeRV.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                onVisibleRowsChanged();
+                // Also called after layouts that change the visible rows, without scrolling.
+                if (recyclerView.getScrollState() == RecyclerView.SCROLL_STATE_IDLE) {
+                    prefetchVisibleDetails();
+                }
+            }
+
+            @Override
+            public void onScrollStateChanged(@NonNull RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    prefetchVisibleDetails();
+                }
+            }
+        });
 
         fetchingEarthquakesBP = findViewById(R.id.fetching_earthquakes_progress_bar);
-        if (isNetworkConnected()) {
-            /* Initialize the loader. Pass in the ID constant defined above and pass in null for
-             * the bundle. Pass in this activity for the LoaderCallbacks parameter (which is valid
-             * because this activity implements the LoaderCallbacks interface).
-             * */
-            getSupportLoaderManager().initLoader(EARTHQUAKE_LOADER_ID, null, this);
-        } else {
-            fetchingEarthquakesBP.setVisibility(View.GONE);
-            emptyStateTV.setText(R.string.no_internet_connection);
+
+        showSnapshot();
+        applyFormatPreference();
+
+        /* Initialize the loader. Pass in the ID constant defined above and pass in null for
+         * the bundle. Pass in this activity for the LoaderCallbacks parameter (which is valid
+         * because this activity implements the LoaderCallbacks interface).
+         * The loader serves the locally stored earthquakes even without a connection.
+         * */
+        getSupportLoaderManager().initLoader(EARTHQUAKE_LOADER_ID, null, this);
+
+        // Leaves a scheduled poll alone and only restarts polling that was lost.
+        if (FeedSyncWorker.isEnabled(this)) {
+            FeedSyncWorker.schedule(this);
         }
     }
 
+    /**
+     * Apply settings changed while the activity was in the background. If the earthquakes are
+     * already in memory the list is updated right away, without waiting for the loader.
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+        applyFormatPreference();
+
+        EarthquakeQuery query = getQuery();
+        if (shownQuery == null || query.equals(shownQuery)) {
+            return;
+        }
+
+        List<Earthquake> firstPage = EarthquakeQueryEngine.getInstance().query(
+                query, 0, PAGE_SIZE, System.currentTimeMillis());
+        if (firstPage != null) {
+            shownQuery = query;
+            updateUI(rowFormatter.formatAll(firstPage));
+        }
+        getSupportLoaderManager().restartLoader(EARTHQUAKE_LOADER_ID, null, this);
+    }
+
+    @Override
+    protected void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putBoolean(STATE_GROUPED, groupedByRegion);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (pagedEarthquakes != null) {
+            pagedEarthquakes.detach();
+        }
+        DetailPrefetcher.getInstance().cancelAll();
+        metricsHandler.removeCallbacks(refreshMetrics);
+        stopSearching();
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.earthquake_options_menu, menu);
+        menu.findItem(R.id.group_menu_itm).setChecked(groupedByRegion);
+        menu.findItem(R.id.metrics_menu_itm).setVisible(BuildConfig.DEBUG);
+
+        MenuItem searchItem = menu.findItem(R.id.search_menu_itm);
+        final SearchView searchView = (SearchView) searchItem.getActionView();
+        searchView.setQueryHint(getString(R.string.search_hint));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                // The results are already on screen, only the keyboard has to go.
+                searchView.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                // Closing the search box clears it too, after the search has ended.
+                if (searchText != null) {
+                    searchText = newText;
+                    updateSearch();
+                    earthquakeRV.scrollToPosition(0);
+                }
+                return true;
+            }
+        });
+        searchItem.setOnActionExpandListener(new MenuItem.OnActionExpandListener() {
+            @Override
+            public boolean onMenuItemActionExpand(MenuItem item) {
+                searchText = "";
+                earthquakeRV.setAdapter(searchAdapter);
+                startSearching();
+                return true;
+            }
+
+            @Override
+            public boolean onMenuItemActionCollapse(MenuItem item) {
+                searchText = null;
+                stopSearching();
+                earthquakeRV.setAdapter(groupedByRegion ? regionAdapter : earthquakeAdapter);
+                emptyStateTV.setVisibility(View.GONE);
+                if (pagedEarthquakes == null
+                        && fetchingEarthquakesBP.getVisibility() != View.VISIBLE) {
+                    showEmptyList();
+                }
+                updateRegions();
+                onVisibleRowsChanged();
+                return true;
+            }
+        });
         return true;
     }
 
@@ -95,47 +371,369 @@ public class EarthquakeActivity extends AppCompatActivity
             Intent settingsIntent = new Intent(this, SettingsActivity.class);
             startActivity(settingsIntent);
             return true;
+        } else if (id == R.id.group_menu_itm) {
+            setGroupedByRegion(!groupedByRegion);
+            item.setChecked(groupedByRegion);
+            return true;
+        } else if (id == R.id.metrics_menu_itm) {
+            toggleMetricsOverlay();
+            return true;
         }
 
         return super.onOptionsItemSelected(item);
     }
 
-    private void updateUI(ArrayList<Earthquake> earthquakes) {
-        if (earthquakes == null) {
+    /**
+     * Switch between the earthquake list and the regions. Both are kept up to date as
+     * earthquakes come in, so switching only swaps the adapter.
+     */
+    private void setGroupedByRegion(boolean grouped) {
+        groupedByRegion = grouped;
+        // The search results stay on screen until the search is closed.
+        if (searchText == null) {
+            earthquakeRV.setAdapter(grouped ? regionAdapter : earthquakeAdapter);
+        }
+        updateRegions();
+        onVisibleRowsChanged();
+    }
+
+    /**
+     * Show the current regions if they changed since they were last shown. The counts, largest
+     * magnitudes and latest times are kept by the query engine as earthquakes merge in, so this
+     * costs O(regions) and doesn't look at the earthquakes themselves.
+     */
+    private void updateRegions() {
+        if (!groupedByRegion) {
+            return;
+        }
+
+        EarthquakeQueryEngine queryEngine = EarthquakeQueryEngine.getInstance();
+        long revision = queryEngine.getRegionsRevision();
+        if (revision != shownRegionsRevision) {
+            shownRegionsRevision = revision;
+            regionAdapter.submitRegions(queryEngine.regions());
+        }
+    }
+
+    /**
+     * Have the engine sort what it has for searching, in the background, and search once it
+     * has. Until then typing searches nothing.
+     */
+    private void startSearching() {
+        final int opening = ++searchOpenings;
+        pageExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                EarthquakeQueryEngine.getInstance().startSearching();
+                mainExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (opening != searchOpenings) {
+                            // The box closed meanwhile, or the activity went away.
+                            EarthquakeQueryEngine.getInstance().stopSearching();
+                            return;
+                        }
+                        searchStarted = true;
+                        updateSearch();
+                    }
+                });
+            }
+        });
+    }
+
+    private void stopSearching() {
+        searchOpenings++;
+        if (searchStarted) {
+            searchStarted = false;
+            EarthquakeQueryEngine.getInstance().stopSearching();
+        }
+        searchAdapter.clear();
+    }
+
+    /**
+     * Show the earthquakes in memory whose place matches the search text, with the minimum
+     * magnitude and order of the settings. The query engine keeps a prefix index of the words of
+     * the places, and narrows down the previous results while the text is being extended, so
+     * this fits in a frame on every keystroke even with tens of thousands of earthquakes.
+     */
+    private void updateSearch() {
+        if (searchText == null || !searchStarted) {
+            return;
+        }
+
+        EarthquakeQuery query = shownQuery != null ? shownQuery : getQuery();
+        long startToken = SEARCH_TIMER.start();
+        EarthquakeQueryEngine.getInstance().search(searchText, query,
+                System.currentTimeMillis(), searchAdapter.getResults());
+        SEARCH_TIMER.stop(startToken);
+
+        searchAdapter.onSearched();
+        if (searchAdapter.getItemCount() == 0) {
+            emptyStateTV.setText(R.string.search_no_results);
+            emptyStateTV.setVisibility(View.VISIBLE);
+        } else {
+            emptyStateTV.setVisibility(View.GONE);
+        }
+    }
+
+    private void toggleMetricsOverlay() {
+        metricsHandler.removeCallbacks(refreshMetrics);
+        if (metricsOverlayTV.getVisibility() == View.VISIBLE) {
+            metricsOverlayTV.setVisibility(View.GONE);
+        } else {
+            metricsOverlayTV.setVisibility(View.VISIBLE);
+            refreshMetrics.run();
+        }
+    }
+
+    /**
+     * Print the recorded metrics as JSON with
+     * {@code adb shell dumpsys activity com.example.android.quakereport metrics}. Add "reset" to
+     * start over afterwards, or "on"/"off" to switch recording, also in release builds.
+     */
+    @Override
+    public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args) {
+        if (args == null || args.length == 0 || !"metrics".equals(args[0])) {
+            super.dump(prefix, fd, writer, args);
+            return;
+        }
+
+        List<String> options = Arrays.asList(args);
+        Metrics metrics = Metrics.getInstance();
+        if (options.contains("on") || options.contains("off")) {
+            metrics.setEnabled(options.contains("on"));
+        }
+        try {
+            writer.println(metrics.toJson().toString(2));
+        } catch (JSONException e) {
+            writer.println(metrics.toJson());
+        }
+        if (options.contains("reset")) {
+            metrics.reset();
+        }
+    }
+
+    private void updateUI(List<EarthquakeRow> firstPage) {
+        if (firstPage == null) {
             throw new IllegalStateException("updateUI(): earthquakes is null!");
         }
 
-        if (earthquakes.isEmpty()) {
-            emptyStateTV.setText(R.string.no_earthquakes);
+        if (pagedEarthquakes != null) {
+            pagedEarthquakes.detach();
+        }
+
+        if (firstPage.isEmpty()) {
+            pagedEarthquakes = null;
+            earthquakeAdapter.submitList(null);
+            showEmptyList();
         } else {
-            earthquakeAdapter =
-                    new EarthquakeAdapter(EarthquakeActivity.this, earthquakes);
-            earthquakeLV.setAdapter(earthquakeAdapter);
-
-            earthquakeLV.setOnItemClickListener(new AdapterView.OnItemClickListener() {
-                @Override
-                public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-                    Earthquake clickedEarthquake = earthquakes.get(position);
-                    /*
-                     * Another two ways to get the clickedEarthquake:
-                     * clickedEarthquake = earthquakeAdapter.getItem(position);
-                     * clickedEarthquake = (Earthquake) earthquakeLV.getItemAtPosition(position);
-                     * */
-                    startActivity(new Intent(
-                            Intent.ACTION_VIEW,
-                            Uri.parse(clickedEarthquake.getUrl())
-                    ));
-                }
-            });
+            pagedEarthquakes = new PagedList<>(
+                    firstPage,
+                    createPageSource(shownQuery),
+                    PAGE_SIZE,
+                    MAX_PAGES,
+                    PREFETCH_DISTANCE,
+                    shownQuery.getLimit(),
+                    pageExecutor,
+                    mainExecutor,
+                    new PagedList.Listener() {
+                        @Override
+                        public void onPagedListChanged() {
+                            earthquakeAdapter.submitList(pagedEarthquakes.snapshot());
+                            updateSummary();
+                            updateRegions();
+                            updateSearch();
+                        }
+                    });
+
+            /* The adapter is kept across loads; the new list is diffed against the one on
+             * screen so only changed rows are re-bound and the scroll position stays put. */
+            earthquakeAdapter.submitList(pagedEarthquakes.snapshot());
+            emptyStateTV.setVisibility(View.GONE);
+            onVisibleRowsChanged();
+        }
+
+        updateSummary();
+        updateRegions();
+        updateSearch();
+    }
+
+    private void showEmptyList() {
+        emptyStateTV.setText(isNetworkConnected()
+                ? R.string.no_earthquakes : R.string.no_internet_connection);
+        emptyStateTV.setVisibility(View.VISIBLE);
+    }
+
+    /**
+     * Show the statistics of the last 24 hours of loaded earthquakes. They are read from the
+     * hourly rollups, so this is cheap enough for every update of the list.
+     */
+    private void updateSummary() {
+        long now = System.currentTimeMillis();
+        EarthquakeRollups.Summary summary = EarthquakeQueryEngine.getInstance().summarize(
+                EarthquakeRollups.Resolution.HOUR,
+                now - EarthquakeRollups.Resolution.DAY.getMillis(),
+                now);
+
+        if (summary.getCount() == 0) {
+            summaryTV.setVisibility(View.GONE);
+            return;
+        }
+
+        summaryTV.setText(getString(R.string.activity_summary,
+                summary.getCount(),
+                summary.getMaxMagnitude(),
+                summary.getMeanMagnitude(),
+                summary.getEnergyJoules()));
+        summaryTV.setVisibility(View.VISIBLE);
+    }
+
+    /**
+     * Let the paged list know which rows are on screen so it can fetch what they need.
+     */
+    private void onVisibleRowsChanged() {
+        // The rows of the regions and the search are not those of the paged list.
+        if (pagedEarthquakes == null || groupedByRegion || searchText != null) {
+            return;
+        }
+
+        int firstVisible = earthquakeLayoutManager.findFirstVisibleItemPosition();
+        int lastVisible = earthquakeLayoutManager.findLastVisibleItemPosition();
+        if (firstVisible != RecyclerView.NO_POSITION) {
+            pagedEarthquakes.onRowsVisible(firstVisible, lastVisible);
+        }
+    }
+
+    /**
+     * Prefetch the details of the earthquakes on screen, so opening one is instant, and cancel
+     * the prefetches of rows that were scrolled away.
+     */
+    private void prefetchVisibleDetails() {
+        int firstVisible = earthquakeLayoutManager.findFirstVisibleItemPosition();
+        // The list may have shrunk since the last layout.
+        int lastVisible = Math.min(earthquakeLayoutManager.findLastVisibleItemPosition(),
+                earthquakeRV.getAdapter().getItemCount() - 1);
+        List<Earthquake> visible = new ArrayList<>();
+        for (int position = Math.max(firstVisible, 0); position <= lastVisible; position++) {
+            if (searchText != null) {
+                visible.add(searchAdapter.getEarthquake(position));
+            } else if (groupedByRegion) {
+                visible.add(regionAdapter.getEarthquake(position));
+            } else {
+                EarthquakeRow row = earthquakeAdapter.getItem(position);
+                visible.add(row == null ? null : row.getEarthquake());
+            }
         }
+        DetailPrefetcher.getInstance().onRowsVisible(visible, true);
+    }
+
+    /**
+     * Reads the pages after the first one from the query engine when they are in memory, and
+     * otherwise fetches them from USGS using the FDSN offset parameter and keeps them in the
+     * local store too. USGS won't return rows past its result cap by offset, so a page reaching
+     * past it fetches the whole query as parallel time shards instead, and the pages after it
+     * are read from the query engine.
+     */
+    private PagedList.PageSource<EarthquakeRow> createPageSource(final EarthquakeQuery query) {
+        final EarthquakeStore store = EarthquakeStore.getInstance(this);
+        final EarthquakeQueryEngine queryEngine = EarthquakeQueryEngine.getInstance();
+        final EarthquakeRowFormatter formatter = rowFormatter;
+        final ShardedFetcher shardedFetcher = new ShardedFetcher(
+                ShardedFetcher.USGS_FDSN_BASE_URL, SHARD_PARALLELISM,
+                ShardedFetcher.FDSN_MAX_RESULTS);
+        return new PagedList.PageSource<EarthquakeRow>() {
+            @Override
+            public List<EarthquakeRow> loadPage(int offset, int count) {
+                long now = System.currentTimeMillis();
+                List<Earthquake> cachedPage = queryEngine.query(query, offset, count, now);
+                if (cachedPage != null) {
+                    return formatter.formatAll(cachedPage);
+                }
+
+                if ((long) offset + count > ShardedFetcher.FDSN_MAX_RESULTS) {
+                    return loadDeepPage(offset, count, now);
+                }
+
+                // FDSN offsets count from 1. Pages don't need revision times, so any format will
+                // do; stored rows without them are replaced by the next sync's revisions.
+                String pageUrl = Uri.parse(getUrlString(query.withLimit(count))).buildUpon()
+                        .appendQueryParameter("offset", Integer.toString(offset + 1))
+                        .toString();
+                pageUrl = EarthquakeFormats.withFormat(pageUrl,
+                        FormatSelector.getInstance().choose(false));
+
+                List<Earthquake> page = QueryUtils.fetchEarthquakeData(pageUrl);
+                if (page == null) {
+                    return null;
+                }
+                store.upsert(page);
+                queryEngine.recordFetch(query.withLimit(count), offset, page, now);
+                return formatter.formatAll(page);
+            }
+
+            private List<EarthquakeRow> loadDeepPage(int offset, int count, long now) {
+                List<Earthquake> earthquakes = shardedFetcher.fetch(query,
+                        now - EarthquakeQueryEngine.DEFAULT_WINDOW_MILLIS, now);
+                if (earthquakes == null) {
+                    return null;
+                }
+                store.upsert(earthquakes);
+                queryEngine.recordFetch(query, 0, earthquakes, now);
+                List<Earthquake> page = queryEngine.query(query, offset, count, now);
+                return page == null ? null : formatter.formatAll(page);
+            }
+
+            @Override
+            public Object getKey(EarthquakeRow row) {
+                return row.getEarthquake().getId();
+            }
+        };
     }
 
     @Override
-    public Loader<List<Earthquake>> onCreateLoader(int id, Bundle bundle) {
-        return new EarthquakeLoader(EarthquakeActivity.this, getUrlString());
+    public Loader<List<EarthquakeRow>> onCreateLoader(int id, Bundle bundle) {
+        // The loader only brings in the first page, the rest is paged in while scrolling.
+        EarthquakeQuery query = getQuery();
+        shownQuery = query;
+        EarthquakeQuery firstPageQuery = getFirstPageQuery(query);
+        return new EarthquakeLoader(EarthquakeActivity.this, getUrlString(firstPageQuery),
+                firstPageQuery, rowFormatter);
     }
 
-    private String getUrlString() {
+    private EarthquakeQuery getFirstPageQuery(EarthquakeQuery query) {
+        return query.withLimit(Math.min(query.getLimit(), PAGE_SIZE));
+    }
+
+    /**
+     * Show the rows saved by the last sync of the current query right away, without any
+     * network or database work. The loader replaces them with fresh ones.
+     */
+    private void showSnapshot() {
+        EarthquakeSnapshot snapshot =
+                EarthquakeSnapshot.open(EarthquakeLoader.getSnapshotFile(this));
+        EarthquakeQuery query = getQuery();
+        if (snapshot == null || snapshot.isEmpty()
+                || !getUrlString(getFirstPageQuery(query)).equals(snapshot.getKey())) {
+            return;
+        }
+
+        shownQuery = query;
+        updateUI(rowFormatter.formatAll(snapshot));
+        fetchingEarthquakesBP.setVisibility(View.GONE);
+    }
+
+    /**
+     * Download in the format picked in the settings, or let the {@link FormatSelector} pick
+     * the cheapest one.
+     */
+    private void applyFormatPreference() {
+        String formatPref = PreferenceManager.getDefaultSharedPreferences(this).getString(
+                getString(R.string.settings_format_key),
+                getString(R.string.settings_format_default));
+        FormatSelector.getInstance().setPreferred(EarthquakeFormats.forName(formatPref));
+    }
+
+    private EarthquakeQuery getQuery() {
         SharedPreferences sharedPrefs =
                 PreferenceManager.getDefaultSharedPreferences(this);
 
@@ -151,26 +749,35 @@ public class EarthquakeActivity extends AppCompatActivity
                 getString(R.string.settings_limit_key),
                 getString(R.string.settings_limit_default));
 
+        return new EarthquakeQuery(
+                Double.parseDouble(minMagPref), orderByPref, Integer.parseInt(limitPref));
+    }
+
+    private String getUrlString(EarthquakeQuery query) {
         Uri baseUri = Uri.parse(USGS_REQUEST_URL);
         Uri.Builder uriBuilder = baseUri.buildUpon();
 
         uriBuilder.appendQueryParameter("format", "geojson")
-                .appendQueryParameter("limit", limitPref)
-                .appendQueryParameter("minmag", minMagPref)
-                .appendQueryParameter("orderby", orderByPref);
+                .appendQueryParameter("limit", Integer.toString(query.getLimit()))
+                .appendQueryParameter("minmag", Double.toString(query.getMinMagnitude()))
+                .appendQueryParameter("orderby", query.getOrderBy());
 
         return uriBuilder.toString();
     }
 
     @Override
-    public void onLoadFinished(Loader<List<Earthquake>> loader, List<Earthquake> earthquakeList) {
+    public void onLoadFinished(Loader<List<EarthquakeRow>> loader, List<EarthquakeRow> rows) {
         fetchingEarthquakesBP.setVisibility(View.GONE);
-        updateUI((ArrayList<Earthquake>) earthquakeList);
+        updateUI(rows);
     }
 
     @Override
-    public void onLoaderReset(Loader<List<Earthquake>> loader) {
-        earthquakeAdapter.clear();
+    public void onLoaderReset(Loader<List<EarthquakeRow>> loader) {
+        if (pagedEarthquakes != null) {
+            pagedEarthquakes.detach();
+            pagedEarthquakes = null;
+        }
+        earthquakeAdapter.submitList(null);
     }
 
     /**
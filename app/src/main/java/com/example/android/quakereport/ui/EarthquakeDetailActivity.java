@@ -0,0 +1,218 @@
+package com.example.android.quakereport.ui;
+
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.drawable.GradientDrawable;
+import android.net.Uri;
+import android.os.Bundle;
+import android.view.View;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.example.android.quakereport.R;
+import com.example.android.quakereport.adapters.EarthquakeAdapter;
+import com.example.android.quakereport.adapters.EarthquakeRow;
+import com.example.android.quakereport.adapters.EarthquakeRowFormatter;
+import com.example.android.quakereport.data.Earthquake;
+import com.example.android.quakereport.data.EarthquakeDetail;
+import com.example.android.quakereport.utils.DetailPrefetcher;
+import com.example.android.quakereport.utils.FetchCancellation;
+import com.example.android.quakereport.utils.TaskScheduler;
+
+/**
+ * Shows the USGS detail of one earthquake. What the list row knew is shown right away; the rest
+ * usually comes from the {@link DetailPrefetcher} cache, and is fetched here otherwise, as a
+ * high priority foreground task.
+ */
+public class EarthquakeDetailActivity extends AppCompatActivity {
+
+    private static final String EXTRA_ID = "id";
+    private static final String EXTRA_MAGNITUDE = "magnitude";
+    private static final String EXTRA_PLACE = "place";
+    private static final String EXTRA_TIME = "time";
+    private static final String EXTRA_UPDATED = "updated";
+    private static final String EXTRA_URL = "url";
+    private static final String EXTRA_LONGITUDE = "longitude";
+    private static final String EXTRA_LATITUDE = "latitude";
+    private static final String EXTRA_DEPTH = "depth";
+
+    private Earthquake earthquake;
+
+    private EarthquakeRowFormatter rowFormatter;
+
+    private TextView magnitudeTV;
+    private TextView magnitudeTypeTV;
+    private TextView titleTV;
+    private TextView timeTV;
+    private TextView locationTV;
+    private TextView factsTV;
+    private ProgressBar loadingPB;
+
+    /* Fetches the detail when it isn't cached, cancelled in onDestroy. */
+    private TaskScheduler.Task<EarthquakeDetail> detailTask;
+
+    /**
+     * @return an intent showing the detail of the earthquake.
+     */
+    public static Intent newIntent(Context context, Earthquake earthquake) {
+        return new Intent(context, EarthquakeDetailActivity.class)
+                .putExtra(EXTRA_ID, earthquake.getId())
+                .putExtra(EXTRA_MAGNITUDE, earthquake.getMagnitude())
+                .putExtra(EXTRA_PLACE, earthquake.getLocation())
+                .putExtra(EXTRA_TIME, earthquake.getTime())
+                .putExtra(EXTRA_UPDATED, earthquake.getUpdated())
+                .putExtra(EXTRA_URL, earthquake.getUrl())
+                .putExtra(EXTRA_LONGITUDE, earthquake.getLongitude())
+                .putExtra(EXTRA_LATITUDE, earthquake.getLatitude())
+                .putExtra(EXTRA_DEPTH, earthquake.getDepth());
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.earthquake_detail_activity);
+
+        Intent intent = getIntent();
+        earthquake = new Earthquake(
+                intent.getStringExtra(EXTRA_ID),
+                intent.getDoubleExtra(EXTRA_MAGNITUDE, 0),
+                intent.getStringExtra(EXTRA_PLACE),
+                intent.getLongExtra(EXTRA_TIME, 0),
+                intent.getLongExtra(EXTRA_UPDATED, 0),
+                intent.getStringExtra(EXTRA_URL),
+                intent.getDoubleExtra(EXTRA_LONGITUDE, Double.NaN),
+                intent.getDoubleExtra(EXTRA_LATITUDE, Double.NaN),
+                intent.getDoubleExtra(EXTRA_DEPTH, Double.NaN));
+        rowFormatter = EarthquakeAdapter.createRowFormatter(this);
+
+        magnitudeTV = findViewById(R.id.detail_magnitude_tv);
+        magnitudeTypeTV = findViewById(R.id.detail_magnitude_type_tv);
+        titleTV = findViewById(R.id.detail_title_tv);
+        timeTV = findViewById(R.id.detail_time_tv);
+        locationTV = findViewById(R.id.detail_location_tv);
+        factsTV = findViewById(R.id.detail_facts_tv);
+        loadingPB = findViewById(R.id.detail_progress_bar);
+
+        findViewById(R.id.detail_web_button).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                startActivity(new Intent(Intent.ACTION_VIEW, Uri.parse(earthquake.getUrl())));
+            }
+        });
+
+        showEarthquake(earthquake, earthquake.getLocation());
+
+        // Usually prefetched while the row was on screen.
+        EarthquakeDetail cached = DetailPrefetcher.getInstance().getCached(earthquake);
+        if (cached != null) {
+            showDetail(cached);
+        } else if (earthquake.getDetailUrl() == null) {
+            showDetail(null);
+        } else {
+            loadDetail();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (detailTask != null) {
+            detailTask.cancel();
+        }
+    }
+
+    private void loadDetail() {
+        final Earthquake earthquake = this.earthquake;
+        detailTask = TaskScheduler.getInstance().submit(TaskScheduler.Lane.FOREGROUND,
+                TaskScheduler.PRIORITY_HIGH, new TaskScheduler.Job<EarthquakeDetail>() {
+                    @Override
+                    public EarthquakeDetail run(FetchCancellation cancellation)
+                            throws Exception {
+                        return DetailPrefetcher.getInstance().load(earthquake, cancellation);
+                    }
+                }, new TaskScheduler.Callback<EarthquakeDetail>() {
+                    @Override
+                    public void onResult(EarthquakeDetail detail) {
+                        detailTask = null;
+                        showDetail(detail);
+                    }
+                });
+    }
+
+    private void showEarthquake(Earthquake earthquake, String title) {
+        EarthquakeRow row = rowFormatter.format(earthquake);
+        magnitudeTV.setText(row.getMagnitude());
+        ((GradientDrawable) magnitudeTV.getBackground().mutate())
+                .setColor(row.getMagnitudeColor());
+        titleTV.setText(title);
+        timeTV.setText(row.getDate() + " " + row.getTime());
+
+        if (earthquake.hasCoordinates()) {
+            locationTV.setText(getString(R.string.detail_location, earthquake.getLatitude(),
+                    earthquake.getLongitude(), earthquake.getDepth()));
+            locationTV.setVisibility(View.VISIBLE);
+        } else {
+            locationTV.setVisibility(View.GONE);
+        }
+    }
+
+    /**
+     * @param detail to show, or null if it could not be loaded
+     */
+    private void showDetail(EarthquakeDetail detail) {
+        loadingPB.setVisibility(View.GONE);
+        factsTV.setVisibility(View.VISIBLE);
+        if (detail == null) {
+            factsTV.setText(R.string.detail_unavailable);
+            return;
+        }
+
+        showEarthquake(detail.getEarthquake(), detail.getTitle());
+        if (detail.getMagnitudeType() != null) {
+            magnitudeTypeTV.setText(detail.getMagnitudeType());
+        }
+
+        StringBuilder facts = new StringBuilder();
+        if (detail.getFeltReports() >= 0) {
+            appendLine(facts, getResources().getQuantityString(R.plurals.detail_felt_reports,
+                    detail.getFeltReports(), detail.getFeltReports()));
+        }
+        if (!Double.isNaN(detail.getReportedIntensity())) {
+            appendLine(facts, getString(R.string.detail_reported_intensity,
+                    detail.getReportedIntensity()));
+        }
+        if (!Double.isNaN(detail.getInstrumentalIntensity())) {
+            appendLine(facts, getString(R.string.detail_instrumental_intensity,
+                    detail.getInstrumentalIntensity()));
+        }
+        if (detail.getAlert() != null) {
+            appendLine(facts, getString(R.string.detail_alert, detail.getAlert()));
+        }
+        if (detail.isTsunami()) {
+            appendLine(facts, getString(R.string.detail_tsunami));
+        }
+        if (detail.getSignificance() >= 0) {
+            appendLine(facts, getString(R.string.detail_significance,
+                    detail.getSignificance()));
+        }
+        if (detail.getStatus() != null) {
+            appendLine(facts, getString(R.string.detail_status, detail.getStatus()));
+        }
+        if (detail.getStationCount() >= 0) {
+            appendLine(facts, getString(R.string.detail_stations, detail.getStationCount()));
+        }
+        if (!Double.isNaN(detail.getAzimuthalGap())) {
+            appendLine(facts, getString(R.string.detail_gap, detail.getAzimuthalGap()));
+        }
+        factsTV.setText(facts);
+    }
+
+    private static void appendLine(StringBuilder text, String line) {
+        if (text.length() > 0) {
+            text.append('\n');
+        }
+        text.append(line);
+    }
+}
@@ -11,6 +11,7 @@ import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.example.android.quakereport.R;
+import com.example.android.quakereport.sync.FeedSyncWorker;
 
 public class SettingsActivity extends AppCompatActivity {
 
@@ -35,6 +36,18 @@ public class SettingsActivity extends AppCompatActivity {
 
             Preference limitPref = findPreference(getString(R.string.settings_limit_key));
             bindPreferenceSummaryToValue(limitPref);
+
+            Preference formatPref = findPreference(getString(R.string.settings_format_key));
+            bindPreferenceSummaryToValue(formatPref);
+
+            // A switch has no text value to show, it only starts and stops the polling.
+            Preference backgroundSyncPref =
+                    findPreference(getString(R.string.settings_background_sync_key));
+            backgroundSyncPref.setOnPreferenceChangeListener(this);
+
+            Preference notifyMagPref =
+                    findPreference(getString(R.string.settings_notify_magnitude_key));
+            bindPreferenceSummaryToValue(notifyMagPref);
         }
 
         @Override
@@ -42,6 +55,15 @@ public class SettingsActivity extends AppCompatActivity {
             String prefKey = preference.getKey();
             String newVal = newValue.toString();
 
+            if (prefKey.equals(getString(R.string.settings_background_sync_key))) {
+                if ((Boolean) newValue) {
+                    FeedSyncWorker.schedule(preference.getContext());
+                } else {
+                    FeedSyncWorker.cancel(preference.getContext());
+                }
+                return true;
+            }
+
             // Works for all list preferences regardless of the key
             if (preference instanceof ListPreference) {
                 ListPreference listPreference = (ListPreference) preference;
@@ -61,12 +83,23 @@ public class SettingsActivity extends AppCompatActivity {
                             .show();
                     return false;
                 }
+            } else if (prefKey.equals(getString(R.string.settings_notify_magnitude_key))) {
+                double newNotifyMag = Double.parseDouble(newVal);
+                if (newNotifyMag < 0.0 || newNotifyMag > 10.0) {
+                    Toast.makeText(
+                            preference.getContext(),
+                            "Notify magnitude is between 0 and 10",
+                            Toast.LENGTH_SHORT)
+                            .show();
+                    return false;
+                }
             } else if (prefKey.equals(getString(R.string.settings_limit_key))) {
                 int newLimit = Integer.parseInt(newVal);
-                if (newLimit < 1 || newLimit > 99) {
+                // The list is fetched page by page, so there is no upper bound.
+                if (newLimit < 1) {
                     Toast.makeText(
                             preference.getContext(),
-                            "Min limit is 1 and max is 99",
+                            "Min limit is 1",
                             Toast.LENGTH_SHORT)
                             .show();
                     return false;
@@ -0,0 +1,82 @@
+package com.example.android.quakereport.benchmarks;
+
+import com.example.android.quakereport.data.Earthquake;
+import com.example.android.quakereport.data.EarthquakeCatalog;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link EarthquakeCatalog} against a plain {@code ArrayList<Earthquake>}: building one from
+ * parsed events (the gc profiler's alloc.rate.norm is the footprint that costs) and scanning
+ * every magnitude and time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CatalogBenchmark {
+
+    @Param({"1000", "20000", "100000"})
+    public int eventCount;
+
+    private List<Earthquake> parsed;
+
+    private List<Earthquake> list;
+
+    private EarthquakeCatalog catalog;
+
+    @Setup
+    public void setUp() {
+        parsed = UsgsPayloads.earthquakes(eventCount);
+        list = buildList();
+        catalog = buildCatalog();
+    }
+
+    @Benchmark
+    public List<Earthquake> buildList() {
+        // What holding the events as objects costs: one copy of every field per event.
+        List<Earthquake> copies = new ArrayList<>(parsed.size());
+        for (Earthquake earthquake : parsed) {
+            copies.add(new Earthquake(earthquake.getId(), earthquake.getMagnitude(),
+                    new String(earthquake.getLocation()), earthquake.getTime(),
+                    earthquake.getUpdated(), new String(earthquake.getUrl()),
+                    earthquake.getLongitude(), earthquake.getLatitude(), earthquake.getDepth()));
+        }
+        return copies;
+    }
+
+    @Benchmark
+    public EarthquakeCatalog buildCatalog() {
+        EarthquakeCatalog built = new EarthquakeCatalog();
+        built.mergeAll(parsed);
+        return built;
+    }
+
+    @Benchmark
+    public double scanList() {
+        double sum = 0;
+        for (Earthquake earthquake : list) {
+            sum += earthquake.getMagnitude() + earthquake.getTime();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double scanCatalog() {
+        double sum = 0;
+        for (int i = 0; i < catalog.size(); i++) {
+            sum += catalog.getMagnitude(i) + catalog.getTime(i);
+        }
+        return sum;
+    }
+}
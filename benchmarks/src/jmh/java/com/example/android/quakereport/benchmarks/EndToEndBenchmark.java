@@ -0,0 +1,290 @@
+package com.example.android.quakereport.benchmarks;
+
+import com.example.android.quakereport.data.Earthquake;
+import com.example.android.quakereport.utils.DiskResponseCache;
+import com.example.android.quakereport.utils.EarthquakeBatcher;
+import com.example.android.quakereport.utils.QueryUtils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Fetches the list the way the loader does, over the network of a {@link MockFdsnServer}, and
+ * reports for every payload size and network profile
+ * <ul>
+ * <li>the time to the first row, when the first batch of 20 parsed earthquakes would go on
+ * screen;</li>
+ * <li>the time to complete, when the last one is parsed;</li>
+ * <li>the peak heap, how far the heap grew above its size before the fetch.</li>
+ * </ul>
+ * It also fetches with a response cache that USGS answers with "304 Not Modified", and through
+ * a server that fails a share of the requests with 503.
+ * <p>
+ * This measures whole fetches of tens of milliseconds to seconds, so it is a plain program rather
+ * than a JMH benchmark:
+ * <pre>
+ *   ./gradlew :benchmarks:endToEnd [-Precording=path/to/usgs-response.geojson]
+ * </pre>
+ * Without a recording the events are the synthetic ones of {@link UsgsPayloads}. The results are
+ * also written as JSON to build/reports/e2e/results.json.
+ */
+public final class EndToEndBenchmark {
+
+    private static final int[] FEATURE_COUNTS = {100, 1000, 5000, 20000};
+
+    /* Like EarthquakeLoader's batches. */
+    private static final int FIRST_BATCH_SIZE = 20;
+    private static final int MAX_BATCH_SIZE = 200;
+
+    private static final int WARMUP_RUNS = 2;
+    private static final int MEASURED_RUNS = 5;
+
+    /* The slow profile takes seconds per large fetch, it is run fewer times. */
+    private static final int SLOW_WARMUP_RUNS = 1;
+    private static final int SLOW_MEASURED_RUNS = 2;
+
+    /* Share of the requests the flaky server fails. */
+    private static final double ERROR_RATE = 0.2;
+
+    private static final String RESULTS_PROPERTY = "e2e.results";
+
+    private EndToEndBenchmark() {
+    }
+
+    /**
+     * @param args optionally the path of a recorded USGS GeoJSON response to serve
+     */
+    public static void main(String[] args) throws Exception {
+        List<Earthquake> catalog;
+        if (args.length > 0) {
+            catalog = MockFdsnServer.loadRecording(new File(args[0]));
+            System.out.println("Serving " + catalog.size() + " recorded events from " + args[0]);
+        } else {
+            catalog = UsgsPayloads.earthquakes(FEATURE_COUNTS[FEATURE_COUNTS.length - 1]);
+        }
+
+        MockFdsnServer server = new MockFdsnServer(catalog);
+        JSONArray results = new JSONArray();
+        try {
+            System.out.println(String.format(Locale.US, "%-10s %7s %6s %10s %12s %12s %9s %8s",
+                    "scenario", "events", "reqs", "kB sent", "first row ms", "complete ms",
+                    "(max)", "heap MB"));
+            for (int featureCount : FEATURE_COUNTS) {
+                if (featureCount > catalog.size()) {
+                    continue;
+                }
+                for (MockFdsnServer.NetworkProfile profile
+                        : MockFdsnServer.NetworkProfile.all()) {
+                    server.setProfile(profile);
+                    boolean slow = profile == MockFdsnServer.NetworkProfile.SLOW_3G;
+                    results.put(run(server, profile.name, featureCount,
+                            slow ? SLOW_WARMUP_RUNS : WARMUP_RUNS,
+                            slow ? SLOW_MEASURED_RUNS : MEASURED_RUNS, null));
+                }
+
+                server.setProfile(MockFdsnServer.NetworkProfile.LTE);
+                server.setErrorRate(ERROR_RATE, 503);
+                results.put(run(server, "lte+503", featureCount, WARMUP_RUNS, MEASURED_RUNS,
+                        null));
+                server.setErrorRate(0, 503);
+
+                File cacheDir = createTempDir();
+                try {
+                    DiskResponseCache cache =
+                            new DiskResponseCache(cacheDir, 64 * 1024 * 1024, 0);
+                    server.setAlwaysNotModified(true);
+                    results.put(run(server, "lte+304", featureCount, WARMUP_RUNS,
+                            MEASURED_RUNS, cache));
+                    server.setAlwaysNotModified(false);
+                } finally {
+                    deleteRecursively(cacheDir);
+                }
+            }
+        } finally {
+            server.stop();
+        }
+
+        writeResults(results);
+    }
+
+    /**
+     * Fetch the newest featureCount events a few times and print the medians.
+     *
+     * @param cache to install while fetching, or null to fetch without one
+     */
+    private static JSONObject run(MockFdsnServer server, String scenario, int featureCount,
+                                  int warmupRuns, int measuredRuns, DiskResponseCache cache)
+            throws IOException {
+        String url = server.getQueryUrl() + "?format=geojson&limit=" + featureCount
+                + "&minmag=0.0&orderby=time";
+        QueryUtils.setResponseCache(cache);
+        try {
+            // Also fills the cache, so the measured runs are all revalidations.
+            for (int i = 0; i < warmupRuns; i++) {
+                fetch(url);
+            }
+
+            server.resetCounts();
+            long[] firstRow = new long[measuredRuns];
+            long[] complete = new long[measuredRuns];
+            long[] heap = new long[measuredRuns];
+            int failures = 0;
+            for (int i = 0; i < measuredRuns; i++) {
+                Fetch fetch = fetch(url);
+                firstRow[i] = fetch.firstRowMillis;
+                complete[i] = fetch.completeMillis;
+                heap[i] = fetch.peakHeapBytes;
+                if (!fetch.succeeded) {
+                    failures++;
+                }
+            }
+
+            long bytesPerFetch = server.getBytesSent() / measuredRuns;
+            // Retries of failed requests show in the request count and the slowest fetch.
+            System.out.println(String.format(Locale.US,
+                    "%-10s %7d %6d %10.1f %12s %12d %9d %8.1f%s",
+                    scenario, featureCount, server.getRequestCount(), bytesPerFetch / 1024.0,
+                    median(firstRow) < 0 ? "-" : String.valueOf(median(firstRow)),
+                    median(complete), max(complete), max(heap) / (1024.0 * 1024.0),
+                    failures == 0 ? "" : "  " + failures + " failed"));
+
+            JSONObject result = new JSONObject();
+            result.put("scenario", scenario);
+            result.put("events", featureCount);
+            result.put("runs", measuredRuns);
+            result.put("failures", failures);
+            result.put("requests", server.getRequestCount());
+            result.put("bytesPerFetch", bytesPerFetch);
+            result.put("timeToFirstRowMillis", median(firstRow));
+            result.put("timeToCompleteMillis", median(complete));
+            result.put("maxTimeToCompleteMillis", max(complete));
+            result.put("peakHeapBytes", max(heap));
+            return result;
+        } finally {
+            QueryUtils.setResponseCache(null);
+        }
+    }
+
+    /**
+     * One fetch of the URL, as the loader's first sync does it.
+     */
+    private static Fetch fetch(String url) {
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = heapPools();
+        long heapBefore = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            pool.resetPeakUsage();
+            heapBefore += pool.getUsage().getUsed();
+        }
+
+        final Fetch fetch = new Fetch();
+        final long startNanos = System.nanoTime();
+        EarthquakeBatcher batcher = new EarthquakeBatcher(FIRST_BATCH_SIZE, MAX_BATCH_SIZE,
+                new EarthquakeBatcher.Listener() {
+                    @Override
+                    public void onBatch(List<Earthquake> batch) {
+                        if (fetch.firstRowMillis < 0) {
+                            fetch.firstRowMillis = (System.nanoTime() - startNanos) / 1000000;
+                        }
+                    }
+                });
+        List<Earthquake> earthquakes = QueryUtils.fetchEarthquakeChanges(url, null, batcher);
+        batcher.flush();
+        fetch.completeMillis = (System.nanoTime() - startNanos) / 1000000;
+        fetch.succeeded = earthquakes != null;
+
+        // The peaks of the pools may not coincide, their sum is an upper bound.
+        long heapPeak = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            heapPeak += pool.getPeakUsage().getUsed();
+        }
+        fetch.peakHeapBytes = Math.max(0, heapPeak - heapBefore);
+        return fetch;
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                heapPools.add(pool);
+            }
+        }
+        return heapPools;
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = Arrays.copyOf(values, values.length);
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static long max(long[] values) {
+        long max = Long.MIN_VALUE;
+        for (long value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+    private static void writeResults(JSONArray results) throws IOException {
+        String path = System.getProperty(RESULTS_PROPERTY);
+        if (path == null) {
+            return;
+        }
+        File file = new File(path);
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Can't create " + parent);
+        }
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(results.toString(2).getBytes(Charset.forName("UTF-8")));
+        } finally {
+            out.close();
+        }
+        System.out.println("Results written to " + file);
+    }
+
+    private static File createTempDir() throws IOException {
+        File dir = File.createTempFile("e2e-cache", "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("Can't create " + dir);
+        }
+        return dir;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * The measurements of one fetch.
+     */
+    private static final class Fetch {
+        long firstRowMillis = -1;
+        long completeMillis;
+        long peakHeapBytes;
+        boolean succeeded;
+    }
+}
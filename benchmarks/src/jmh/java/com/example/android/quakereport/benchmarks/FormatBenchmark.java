@@ -0,0 +1,79 @@
+package com.example.android.quakereport.benchmarks;
+
+import com.example.android.quakereport.data.Earthquake;
+import com.example.android.quakereport.utils.EarthquakeFormat;
+import com.example.android.quakereport.utils.EarthquakeFormats;
+import com.example.android.quakereport.utils.EarthquakeStreamParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Parsing the same events from each wire format. The setup prints how many bytes each format
+ * takes, raw and gzipped, since on a slow network that matters more than the parse time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FormatBenchmark {
+
+    @Param({"geojson", "csv", "text"})
+    public String formatName;
+
+    @Param({"1000", "20000"})
+    public int featureCount;
+
+    private EarthquakeFormat format;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws IOException {
+        format = EarthquakeFormats.forName(formatName);
+        List<Earthquake> earthquakes = UsgsPayloads.earthquakes(featureCount);
+        String payload;
+        if (format == EarthquakeFormats.CSV) {
+            payload = UsgsPayloads.csv(earthquakes);
+        } else if (format == EarthquakeFormats.TEXT) {
+            payload = UsgsPayloads.text(earthquakes);
+        } else {
+            payload = UsgsPayloads.geoJson(earthquakes);
+        }
+        body = payload.getBytes(Charset.forName("UTF-8"));
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(compressed);
+        gzip.write(body);
+        gzip.close();
+        System.out.println(String.format(Locale.US, "%n%s, %d events: %d bytes, %d gzipped",
+                formatName, featureCount, body.length, compressed.size()));
+    }
+
+    @Benchmark
+    public List<Earthquake> parse() throws IOException {
+        final List<Earthquake> earthquakes = new ArrayList<>(featureCount);
+        format.parse(new ByteArrayInputStream(body), new EarthquakeStreamParser.Callback() {
+            @Override
+            public void onEarthquake(Earthquake earthquake) {
+                earthquakes.add(earthquake);
+            }
+        });
+        return earthquakes;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.android.quakereport.benchmarks;
+
+import com.example.android.quakereport.adapters.EarthquakeRow;
+import com.example.android.quakereport.adapters.EarthquakeRowFormatter;
+import com.example.android.quakereport.data.Earthquake;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formatting list rows: the magnitude, date and time strings, the split place and the
+ * magnitude color of every earthquake.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FormattingBenchmark {
+
+    @Param({"100", "1000", "5000", "20000"})
+    public int featureCount;
+
+    private List<Earthquake> earthquakes;
+
+    private EarthquakeRowFormatter formatter;
+
+    @Setup
+    public void setUp() {
+        earthquakes = UsgsPayloads.earthquakes(featureCount);
+        int[] colors = new int[EarthquakeRowFormatter.MAGNITUDE_COLOR_COUNT];
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = 0xff000000 | i * 0x101010;
+        }
+        formatter = new EarthquakeRowFormatter(colors, "Near the");
+    }
+
+    @Benchmark
+    public List<EarthquakeRow> formatAll() {
+        return formatter.formatAll(earthquakes);
+    }
+
+    @Benchmark
+    public void magnitudeColorIndex(Blackhole blackhole) {
+        for (Earthquake earthquake : earthquakes) {
+            blackhole.consume(
+                    EarthquakeRowFormatter.magnitudeColorIndex(earthquake.getMagnitude()));
+        }
+    }
+}
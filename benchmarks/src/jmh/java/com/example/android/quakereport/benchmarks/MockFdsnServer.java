@@ -0,0 +1,478 @@
+package com.example.android.quakereport.benchmarks;
+
+import com.example.android.quakereport.data.Earthquake;
+import com.example.android.quakereport.utils.EarthquakeStreamParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An in-process stand-in for the USGS FDSN event service, so the fetch path can be measured
+ * offline and the same way every time.
+ * <p>
+ * It answers "/fdsnws/event/1/query" and "/fdsnws/event/1/count" from a fixed catalog, synthetic
+ * or recorded from USGS, with the parameters the app sends: format, minmag, orderby, limit,
+ * offset, starttime, endtime and updatedafter. A {@link NetworkProfile} adds latency, limits the
+ * bandwidth and picks chunked or fixed length bodies; errors and "304 Not Modified" answers can
+ * be injected on top.
+ */
+final class MockFdsnServer {
+
+    static final String QUERY_PATH = "/fdsnws/event/1/query";
+
+    /* USGS refuses queries that match more events than this. */
+    private static final int MAX_RESULTS = 20000;
+
+    /* Throttled bodies are written in slices of this many milliseconds of transfer. */
+    private static final long THROTTLE_SLICE_MILLIS = 10;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /* Rendered bodies kept, enough for the queries of one benchmark. */
+    private static final int MAX_RENDERED = 16;
+
+    /**
+     * What the network between the app and USGS is like.
+     */
+    static final class NetworkProfile {
+        /* Loopback, the fastest the fetch path can possibly be. */
+        static final NetworkProfile IDEAL = new NetworkProfile("ideal", 0, 0, false, true);
+        static final NetworkProfile WIFI =
+                new NetworkProfile("wifi", 20, 4 * 1024 * 1024, true, true);
+        static final NetworkProfile LTE =
+                new NetworkProfile("lte", 70, 1024 * 1024, true, true);
+        static final NetworkProfile SLOW_3G =
+                new NetworkProfile("3g", 300, 50 * 1024, true, true);
+
+        final String name;
+        final long latencyMillis;
+        final long bytesPerSecond;
+        final boolean chunked;
+        final boolean gzip;
+
+        /**
+         * @param latencyMillis  before the response headers, round trip plus server time
+         * @param bytesPerSecond of the body on the wire, 0 for unlimited
+         * @param chunked        whether bodies are sent with chunked transfer encoding instead
+         *                       of a Content-Length
+         * @param gzip           whether bodies are compressed for clients that accept it
+         */
+        NetworkProfile(String name, long latencyMillis, long bytesPerSecond, boolean chunked,
+                       boolean gzip) {
+            this.name = name;
+            this.latencyMillis = latencyMillis;
+            this.bytesPerSecond = bytesPerSecond;
+            this.chunked = chunked;
+            this.gzip = gzip;
+        }
+
+        static List<NetworkProfile> all() {
+            return Arrays.asList(IDEAL, WIFI, LTE, SLOW_3G);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private final List<Earthquake> catalog;
+
+    private final HttpServer server;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private volatile NetworkProfile profile = NetworkProfile.IDEAL;
+
+    /* Share of the requests answered with errorCode, drawn from a seeded random. */
+    private volatile double errorRate;
+    private volatile int errorCode = 503;
+    private final Random errorRandom = new Random(7);
+
+    /* Requests still to be answered with failNextCode before the rest are served. */
+    private final AtomicInteger failNext = new AtomicInteger();
+    private volatile int failNextCode;
+
+    /* Answer every conditional request with 304, as if the data never changed. */
+    private volatile boolean alwaysNotModified;
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger errorCount = new AtomicInteger();
+    private final AtomicInteger notModifiedCount = new AtomicInteger();
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    /* Bodies by request path and query, so that once a query has been answered the server
+     * allocates next to nothing; it shares the heap with the client being measured. */
+    private final Map<String, Rendered> rendered =
+            new LinkedHashMap<String, Rendered>(MAX_RENDERED, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Rendered> eldest) {
+                    return size() > MAX_RENDERED;
+                }
+            };
+
+    /**
+     * @param catalog the events to serve, in any order
+     */
+    MockFdsnServer(List<Earthquake> catalog) throws IOException {
+        this.catalog = new ArrayList<>(catalog);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/fdsnws/event/1", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    answer(exchange);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (IOException e) {
+                    // The client went away, e.g. a cancelled fetch.
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * @return the events of a GeoJSON response recorded from USGS, e.g. with
+     * {@code curl -o recording.geojson "https://earthquake.usgs.gov/fdsnws/event/1/query?..."}.
+     */
+    static List<Earthquake> loadRecording(File geoJsonFile) throws IOException {
+        InputStream in = new FileInputStream(geoJsonFile);
+        try {
+            return EarthquakeStreamParser.parse(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return the query URL of the server, to use in place of the USGS one.
+     */
+    String getQueryUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + QUERY_PATH;
+    }
+
+    /**
+     * @return the base URL of the event service, for {@code ShardedFetcher}.
+     */
+    String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/fdsnws/event/1";
+    }
+
+    void setProfile(NetworkProfile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * Answer a share of the requests with an error code, e.g. 503, which clients retry.
+     */
+    void setErrorRate(double errorRate, int errorCode) {
+        this.errorRate = errorRate;
+        this.errorCode = errorCode;
+    }
+
+    /**
+     * Answer the next count requests with the error code.
+     */
+    void failNext(int count, int code) {
+        failNextCode = code;
+        failNext.set(count);
+    }
+
+    /**
+     * Answer every request carrying If-None-Match or If-Modified-Since with 304. Otherwise only
+     * requests whose ETag matches the current body get one.
+     */
+    void setAlwaysNotModified(boolean alwaysNotModified) {
+        this.alwaysNotModified = alwaysNotModified;
+    }
+
+    int getRequestCount() {
+        return requestCount.get();
+    }
+
+    int getErrorCount() {
+        return errorCount.get();
+    }
+
+    int getNotModifiedCount() {
+        return notModifiedCount.get();
+    }
+
+    /**
+     * @return the body bytes sent, compressed when they were.
+     */
+    long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    void resetCounts() {
+        requestCount.set(0);
+        errorCount.set(0);
+        notModifiedCount.set(0);
+        bytesSent.set(0);
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void answer(HttpExchange exchange) throws IOException, InterruptedException {
+        requestCount.incrementAndGet();
+        NetworkProfile profile = this.profile;
+        if (profile.latencyMillis > 0) {
+            Thread.sleep(profile.latencyMillis);
+        }
+
+        int remainingFailures = failNext.get();
+        while (remainingFailures > 0
+                && !failNext.compareAndSet(remainingFailures, remainingFailures - 1)) {
+            remainingFailures = failNext.get();
+        }
+        if (remainingFailures > 0) {
+            sendError(exchange, failNextCode);
+            return;
+        }
+        boolean failing;
+        synchronized (errorRandom) {
+            failing = errorRate > 0 && errorRandom.nextDouble() < errorRate;
+        }
+        if (failing) {
+            sendError(exchange, errorCode);
+            return;
+        }
+
+        String key = exchange.getRequestURI().getPath() + "?"
+                + exchange.getRequestURI().getRawQuery();
+        Rendered body;
+        synchronized (rendered) {
+            body = rendered.get(key);
+        }
+        if (body == null) {
+            try {
+                body = render(exchange.getRequestURI().getPath(),
+                        parseQuery(exchange.getRequestURI().getRawQuery()));
+            } catch (ParseException | NumberFormatException e) {
+                body = null;
+            }
+            if (body == null) {
+                sendError(exchange, 400);
+                return;
+            }
+            synchronized (rendered) {
+                rendered.put(key, body);
+            }
+        }
+
+        String etag = body.etag;
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        boolean conditional = ifNoneMatch != null
+                || exchange.getRequestHeaders().getFirst("If-Modified-Since") != null;
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (etag.equals(ifNoneMatch) || (conditional && alwaysNotModified)) {
+            notModifiedCount.incrementAndGet();
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        byte[] bytes = body.bytes;
+        if (profile.gzip && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            bytes = body.gzipped;
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().set("Content-Type", body.contentType);
+        exchange.sendResponseHeaders(200, profile.chunked ? 0 : bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        write(out, bytes, profile.bytesPerSecond);
+        out.close();
+    }
+
+    /**
+     * @return the body answering the request, or null if the request is invalid.
+     */
+    private Rendered render(String path, Map<String, String> params)
+            throws ParseException, IOException {
+        List<Earthquake> matching = select(params);
+        if (path.endsWith("/count")) {
+            return new Rendered(String.valueOf(matching.size()), "text/plain");
+        }
+
+        int offset = params.containsKey("offset")
+                ? Integer.parseInt(params.get("offset")) - 1 : 0;
+        int limit = params.containsKey("limit")
+                ? Integer.parseInt(params.get("limit")) : MAX_RESULTS;
+        if (offset < 0 || limit > MAX_RESULTS
+                || (!params.containsKey("limit") && matching.size() > MAX_RESULTS)) {
+            return null;
+        }
+        matching = matching.subList(Math.min(offset, matching.size()),
+                Math.min(offset + limit, matching.size()));
+
+        String format = params.containsKey("format") ? params.get("format") : "geojson";
+        if (format.equals("csv")) {
+            return new Rendered(UsgsPayloads.csv(matching), "text/csv");
+        } else if (format.equals("text")) {
+            return new Rendered(UsgsPayloads.text(matching), "text/plain");
+        }
+        return new Rendered(UsgsPayloads.geoJson(matching), "application/json");
+    }
+
+    private void sendError(HttpExchange exchange, int code) throws IOException {
+        errorCount.incrementAndGet();
+        if (code == 503 || code == 429) {
+            exchange.getResponseHeaders().set("Retry-After", "0");
+        }
+        exchange.sendResponseHeaders(code, -1);
+    }
+
+    /**
+     * Write the bytes at most bytesPerSecond fast, in slices, so the client sees them arrive
+     * bit by bit like on a slow network.
+     */
+    private void write(OutputStream out, byte[] bytes, long bytesPerSecond)
+            throws IOException, InterruptedException {
+        if (bytesPerSecond <= 0) {
+            out.write(bytes);
+            bytesSent.addAndGet(bytes.length);
+            return;
+        }
+
+        int slice = (int) Math.max(1, bytesPerSecond * THROTTLE_SLICE_MILLIS / 1000);
+        long startNanos = System.nanoTime();
+        for (int offset = 0; offset < bytes.length; offset += slice) {
+            int count = Math.min(slice, bytes.length - offset);
+            out.write(bytes, offset, count);
+            out.flush();
+            bytesSent.addAndGet(count);
+
+            // Sleep until the bytes written so far are due.
+            long dueNanos = (offset + count) * 1000000000L / bytesPerSecond;
+            long aheadNanos = dueNanos - (System.nanoTime() - startNanos);
+            if (aheadNanos > 0) {
+                Thread.sleep(aheadNanos / 1000000, (int) (aheadNanos % 1000000));
+            }
+        }
+    }
+
+    /**
+     * @return the catalog's events matching the filters, sorted like the query asks.
+     */
+    private List<Earthquake> select(Map<String, String> params) throws ParseException {
+        double minMagnitude = params.containsKey("minmag")
+                ? Double.parseDouble(params.get("minmag")) : Double.NEGATIVE_INFINITY;
+        long startTime = params.containsKey("starttime")
+                ? parseTime(params.get("starttime")) : Long.MIN_VALUE;
+        long endTime = params.containsKey("endtime")
+                ? parseTime(params.get("endtime")) : Long.MAX_VALUE;
+        long updatedAfter = params.containsKey("updatedafter")
+                ? parseTime(params.get("updatedafter")) : Long.MIN_VALUE;
+
+        List<Earthquake> matching = new ArrayList<>();
+        for (Earthquake earthquake : catalog) {
+            if (earthquake.getMagnitude() >= minMagnitude && earthquake.getTime() >= startTime
+                    && earthquake.getTime() <= endTime
+                    && earthquake.getUpdated() > updatedAfter) {
+                matching.add(earthquake);
+            }
+        }
+
+        final String orderBy = params.containsKey("orderby") ? params.get("orderby") : "time";
+        Collections.sort(matching, new Comparator<Earthquake>() {
+            @Override
+            public int compare(Earthquake a, Earthquake b) {
+                int byMagnitude = Double.compare(b.getMagnitude(), a.getMagnitude());
+                int byTime = Long.compare(b.getTime(), a.getTime());
+                switch (orderBy) {
+                    case "magnitude":
+                        return byMagnitude != 0 ? byMagnitude : byTime;
+                    case "magnitude-asc":
+                        return byMagnitude != 0 ? -byMagnitude : byTime;
+                    case "time-asc":
+                        return -byTime;
+                    default:
+                        return byTime;
+                }
+            }
+        });
+        return matching;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                params.put(pair.substring(0, equals),
+                        URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+            }
+        }
+        return params;
+    }
+
+    private static long parseTime(String fdsnTime) throws ParseException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.parse(fdsnTime).getTime();
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4);
+        GZIPOutputStream out = new GZIPOutputStream(compressed);
+        out.write(bytes);
+        out.close();
+        return compressed.toByteArray();
+    }
+
+    /**
+     * A response body, plain and compressed.
+     */
+    private static final class Rendered {
+        final byte[] bytes;
+        final byte[] gzipped;
+        final String etag;
+        final String contentType;
+
+        Rendered(String body, String contentType) throws IOException {
+            this.bytes = body.getBytes(UTF_8);
+            this.gzipped = gzip(bytes);
+            this.etag = "\"" + Integer.toHexString(Arrays.hashCode(bytes)) + "\"";
+            this.contentType = contentType;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.android.quakereport.benchmarks;
+
+import com.example.android.quakereport.data.Earthquake;
+import com.example.android.quakereport.data.EarthquakeCatalog;
+import com.example.android.quakereport.utils.EarthquakeStreamParser;
+import com.example.android.quakereport.utils.ParallelGeoJsonParser;
+import com.example.android.quakereport.utils.QueryUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning a downloaded response into earthquakes: reading it into a String and building a
+ * JSONObject tree, against parsing the bytes as they stream in, on one core or on all of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParsingBenchmark {
+
+    @Param({"100", "1000", "5000", "20000"})
+    public int featureCount;
+
+    private String json;
+
+    private byte[] body;
+
+    @Setup
+    public void setUp() {
+        json = UsgsPayloads.geoJson(featureCount);
+        body = json.getBytes(Charset.forName("UTF-8"));
+    }
+
+    @Benchmark
+    public String readFromStream() throws IOException {
+        return QueryUtils.readFromStream(new ByteArrayInputStream(body));
+    }
+
+    @Benchmark
+    public List<Earthquake> extractEarthquakeList() {
+        return QueryUtils.extractEarthquakeList(json);
+    }
+
+    /**
+     * What the app did before streaming: read the whole body, then parse it.
+     */
+    @Benchmark
+    public List<Earthquake> readAndExtract() throws IOException {
+        return QueryUtils.extractEarthquakeList(
+                QueryUtils.readFromStream(new ByteArrayInputStream(body)));
+    }
+
+    @Benchmark
+    public List<Earthquake> streamParse() throws IOException {
+        return EarthquakeStreamParser.parse(new ByteArrayInputStream(body));
+    }
+
+    /**
+     * Splits bodies above {@link ParallelGeoJsonParser}'s threshold into chunks parsed on all
+     * cores; compare with {@link #streamParse()} for the speedup.
+     */
+    @Benchmark
+    public List<Earthquake> parallelParse() throws IOException {
+        return ParallelGeoJsonParser.parse(body);
+    }
+
+    @Benchmark
+    public EarthquakeCatalog streamParseIntoCatalog() throws IOException {
+        EarthquakeCatalog catalog = new EarthquakeCatalog();
+        EarthquakeStreamParser.parse(new ByteArrayInputStream(body), catalog);
+        return catalog;
+    }
+}
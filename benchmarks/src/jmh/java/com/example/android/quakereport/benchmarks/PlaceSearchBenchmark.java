@@ -0,0 +1,74 @@
+package com.example.android.quakereport.benchmarks;
+
+import com.example.android.quakereport.data.EarthquakeQuery;
+import com.example.android.quakereport.data.EarthquakeQueryEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searching the places of the earthquakes in memory the way the search box does, once per
+ * keystroke. A frame is 16 ms.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PlaceSearchBenchmark {
+
+    /* What the user types, one keystroke after the other, starting from an empty box. */
+    private static final String[] KEYSTROKES = {
+            "", "t", "to", "tow", "town", "town ", "town 1", "town 12"
+    };
+
+    @Param({"1000", "50000"})
+    public int eventCount;
+
+    private EarthquakeQueryEngine engine;
+
+    private final EarthquakeQueryEngine.SearchResults results =
+            new EarthquakeQueryEngine.SearchResults();
+
+    private final EarthquakeQuery query =
+            new EarthquakeQuery(0, EarthquakeQuery.ORDER_BY_TIME, 20);
+
+    private boolean alternate;
+
+    @Setup
+    public void setUp() {
+        engine = new EarthquakeQueryEngine(EarthquakeQueryEngine.DEFAULT_MAX_AGE_MILLIS);
+        engine.merge(UsgsPayloads.earthquakes(eventCount));
+        // Sorts for searching and fills the results once, like opening the search box does.
+        engine.startSearching();
+        engine.search("", query, UsgsPayloads.START, results);
+    }
+
+    /**
+     * Typing "town 12", from the first keystroke that reads the whole index to the last one that
+     * only narrows down the results of the one before.
+     */
+    @Benchmark
+    public int typeQuery() {
+        for (String text : KEYSTROKES) {
+            engine.search(text, query, UsgsPayloads.START, results);
+        }
+        return results.size();
+    }
+
+    /**
+     * A keystroke that doesn't extend the text before it, so it reads the whole index.
+     */
+    @Benchmark
+    public int firstKeystroke() {
+        alternate = !alternate;
+        engine.search(alternate ? "r" : "t", query, UsgsPayloads.START, results);
+        return results.size();
+    }
+}
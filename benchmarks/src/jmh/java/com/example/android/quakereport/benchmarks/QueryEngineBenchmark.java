@@ -0,0 +1,63 @@
+package com.example.android.quakereport.benchmarks;
+
+import com.example.android.quakereport.data.Earthquake;
+import com.example.android.quakereport.data.EarthquakeQuery;
+import com.example.android.quakereport.data.EarthquakeQueryEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answering a changed query from memory: what the app does instead of going to the network
+ * when the user switches the order or raises the minimum magnitude.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QueryEngineBenchmark {
+
+    private static final long NOW = 1600000000000L;
+
+    @Param({"1000", "20000"})
+    public int eventCount;
+
+    private List<Earthquake> earthquakes;
+
+    private EarthquakeQueryEngine engine;
+
+    @Setup
+    public void setUp() {
+        earthquakes = UsgsPayloads.earthquakes(eventCount);
+        engine = recordFetch();
+    }
+
+    @Benchmark
+    public EarthquakeQueryEngine recordFetch() {
+        EarthquakeQueryEngine fresh = new EarthquakeQueryEngine(Long.MAX_VALUE / 2);
+        // Asking for more than there is makes the fetch complete, so any query is covered.
+        fresh.recordFetch(new EarthquakeQuery(0, EarthquakeQuery.ORDER_BY_TIME, eventCount + 1),
+                0, earthquakes, NOW);
+        return fresh;
+    }
+
+    @Benchmark
+    public List<Earthquake> queryByMagnitude() {
+        return engine.query(new EarthquakeQuery(0, EarthquakeQuery.ORDER_BY_MAGNITUDE, 20), 0,
+                20, NOW);
+    }
+
+    @Benchmark
+    public List<Earthquake> queryHigherMinimum() {
+        return engine.query(new EarthquakeQuery(6, EarthquakeQuery.ORDER_BY_TIME, 20), 0, 20,
+                NOW);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.android.quakereport.benchmarks;
+
+import com.example.android.quakereport.data.Earthquake;
+import com.example.android.quakereport.data.EarthquakeQuery;
+import com.example.android.quakereport.utils.ShardedFetcher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetching a month of events as time shards from a {@link MockFdsnServer} on a WiFi-like
+ * network, one shard after the other against several in flight.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ShardedFetchBenchmark {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private static final int EVENT_COUNT = 10000;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    @Param({"1000", "5000"})
+    public int maxPerShard;
+
+    private MockFdsnServer server;
+
+    private ShardedFetcher fetcher;
+
+    private final EarthquakeQuery query =
+            new EarthquakeQuery(0, EarthquakeQuery.ORDER_BY_TIME, EVENT_COUNT);
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new MockFdsnServer(UsgsPayloads.earthquakes(EVENT_COUNT));
+        server.setProfile(MockFdsnServer.NetworkProfile.WIFI);
+        fetcher = new ShardedFetcher(server.getBaseUrl(), parallelism, maxPerShard);
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Benchmark
+    public List<Earthquake> fetch() {
+        return fetcher.fetch(query, UsgsPayloads.START - 31 * DAY, UsgsPayloads.START);
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.android.quakereport.benchmarks;
+
+import com.example.android.quakereport.data.Earthquake;
+import com.example.android.quakereport.data.EarthquakeSnapshot;
+import com.example.android.quakereport.utils.EarthquakeStreamParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Showing the last result on launch: opening the {@link EarthquakeSnapshot} and reading the
+ * rows of one screen, or all of them, against parsing the same result from a cached response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SnapshotBenchmark {
+
+    /* The rows of one screen. */
+    private static final int VISIBLE_ROWS = 20;
+
+    @Param({"1000", "20000"})
+    public int featureCount;
+
+    private File snapshotFile;
+
+    private File responseFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<Earthquake> earthquakes = UsgsPayloads.earthquakes(featureCount);
+        snapshotFile = File.createTempFile("benchmark", ".snapshot");
+        EarthquakeSnapshot.write(snapshotFile, "key", earthquakes);
+        responseFile = File.createTempFile("benchmark", ".json");
+        OutputStream out = new FileOutputStream(responseFile);
+        try {
+            out.write(UsgsPayloads.geoJson(earthquakes).getBytes(Charset.forName("UTF-8")));
+        } finally {
+            out.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        snapshotFile.delete();
+        responseFile.delete();
+    }
+
+    @Benchmark
+    public void openSnapshotFirstScreen(Blackhole blackhole) {
+        EarthquakeSnapshot snapshot = EarthquakeSnapshot.open(snapshotFile);
+        for (int i = 0; i < Math.min(VISIBLE_ROWS, snapshot.size()); i++) {
+            blackhole.consume(snapshot.get(i));
+        }
+    }
+
+    @Benchmark
+    public void openSnapshotAllRows(Blackhole blackhole) {
+        EarthquakeSnapshot snapshot = EarthquakeSnapshot.open(snapshotFile);
+        for (int i = 0; i < snapshot.size(); i++) {
+            blackhole.consume(snapshot.get(i));
+        }
+    }
+
+    @Benchmark
+    public List<Earthquake> parseCachedResponse() throws IOException {
+        InputStream in = new FileInputStream(responseFile);
+        try {
+            return EarthquakeStreamParser.parse(in);
+        } finally {
+            in.close();
+        }
+    }
+}
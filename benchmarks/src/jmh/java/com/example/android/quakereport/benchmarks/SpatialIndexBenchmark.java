@@ -0,0 +1,73 @@
+package com.example.android.quakereport.benchmarks;
+
+import com.example.android.quakereport.data.EarthquakeCatalog;
+import com.example.android.quakereport.data.EarthquakeSpatialIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Region queries on {@link EarthquakeSpatialIndex} against checking the distance to every
+ * event, which is what answering them without the index costs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpatialIndexBenchmark {
+
+    /* Around Tokyo. */
+    private static final double LATITUDE = 35.7;
+    private static final double LONGITUDE = 139.7;
+
+    @Param({"10000", "50000"})
+    public int eventCount;
+
+    @Param({"100", "1000"})
+    public double radiusKm;
+
+    private EarthquakeCatalog catalog;
+
+    private EarthquakeSpatialIndex index;
+
+    @Setup
+    public void setUp() {
+        catalog = new EarthquakeCatalog();
+        catalog.mergeAll(UsgsPayloads.earthquakes(eventCount));
+        index = new EarthquakeSpatialIndex(catalog);
+    }
+
+    @Benchmark
+    public EarthquakeSpatialIndex buildIndex() {
+        return new EarthquakeSpatialIndex(catalog);
+    }
+
+    @Benchmark
+    public int[] withinRadius() {
+        return index.withinRadius(LATITUDE, LONGITUDE, radiusKm);
+    }
+
+    @Benchmark
+    public int withinRadiusBruteForce() {
+        int count = 0;
+        for (int i = 0; i < catalog.size(); i++) {
+            if (EarthquakeSpatialIndex.haversineKm(LATITUDE, LONGITUDE,
+                    catalog.getLatitude(i), catalog.getLongitude(i)) <= radiusKm) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int[] inBoundingBox() {
+        return index.inBoundingBox(30, 130, 45, 150);
+    }
+}
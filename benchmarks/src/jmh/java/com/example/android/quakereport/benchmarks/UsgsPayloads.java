@@ -0,0 +1,141 @@
+package com.example.android.quakereport.benchmarks;
+
+import com.example.android.quakereport.data.Earthquake;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Synthetic data shaped like real USGS responses, the same for every run.
+ */
+final class UsgsPayloads {
+
+    /* The time of the newest event, the others go back 30 days from it. */
+    static final long START = 1600000000000L;
+
+    private static final String[] DIRECTIONS = {"N", "NE", "E", "SE", "S", "SW", "W", "NW"};
+
+    private UsgsPayloads() {
+    }
+
+    /**
+     * @return a GeoJSON FDSN response with the given number of features, newest first, with all
+     * the properties USGS sends.
+     */
+    static String geoJson(int featureCount) {
+        return geoJson(earthquakes(featureCount));
+    }
+
+    static String geoJson(List<Earthquake> earthquakes) {
+        StringBuilder json = new StringBuilder(earthquakes.size() * 1200);
+        json.append("{\"type\":\"FeatureCollection\",\"metadata\":{\"generated\":1605000000000,")
+                .append("\"url\":\"https://earthquake.usgs.gov/fdsnws/event/1/query\",")
+                .append("\"title\":\"USGS Earthquakes\",\"status\":200,\"count\":")
+                .append(earthquakes.size()).append("},\"features\":[");
+        for (int i = 0; i < earthquakes.size(); i++) {
+            Earthquake earthquake = earthquakes.get(i);
+            String id = earthquake.getId();
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"type\":\"Feature\",\"properties\":{\"mag\":")
+                    .append(earthquake.getMagnitude())
+                    .append(",\"place\":\"").append(earthquake.getLocation())
+                    .append("\",\"time\":").append(earthquake.getTime())
+                    .append(",\"updated\":").append(earthquake.getUpdated())
+                    .append(",\"tz\":null,\"url\":\"").append(earthquake.getUrl())
+                    .append("\",\"detail\":\"https://earthquake.usgs.gov/fdsnws/event/1/")
+                    .append("query?eventid=").append(id).append("&format=geojson\",\"felt\":null,")
+                    .append("\"cdi\":null,\"mmi\":null,\"alert\":null,\"status\":\"reviewed\",")
+                    .append("\"tsunami\":0,\"sig\":").append(i % 900)
+                    .append(",\"net\":\"us\",\"code\":\"").append(id.substring(2))
+                    .append("\",\"ids\":\",").append(id).append(",\",\"sources\":\",us,\",")
+                    .append("\"types\":\",origin,phase-data,\",\"nst\":null,\"dmin\":1.2,")
+                    .append("\"rms\":0.8,\"gap\":40,\"magType\":\"mb\",\"type\":\"earthquake\",")
+                    .append("\"title\":\"M ").append(earthquake.getMagnitude())
+                    .append(" - ").append(earthquake.getLocation()).append("\"},")
+                    .append("\"geometry\":{\"type\":\"Point\",\"coordinates\":[")
+                    .append(earthquake.getLongitude()).append(',')
+                    .append(earthquake.getLatitude()).append(',')
+                    .append(earthquake.getDepth()).append("]},")
+                    .append("\"id\":\"").append(id).append("\"}");
+        }
+        json.append("],\"bbox\":[-180,-80,0,180,80,600]}");
+        return json.toString();
+    }
+
+    /**
+     * @return the same events as {@link #geoJson(List)} in the columns of the USGS CSV format.
+     */
+    static String csv(List<Earthquake> earthquakes) {
+        StringBuilder csv = new StringBuilder(earthquakes.size() * 250);
+        csv.append("time,latitude,longitude,depth,mag,magType,nst,gap,dmin,rms,net,id,updated,")
+                .append("place,type,horizontalError,depthError,magError,magNst,status,")
+                .append("locationSource,magSource\n");
+        for (int i = 0; i < earthquakes.size(); i++) {
+            Earthquake earthquake = earthquakes.get(i);
+            csv.append(isoTime(earthquake.getTime())).append(',')
+                    .append(earthquake.getLatitude()).append(',')
+                    .append(earthquake.getLongitude()).append(',')
+                    .append(earthquake.getDepth()).append(',')
+                    .append(earthquake.getMagnitude()).append(",mb,,40,1.2,0.8,us,")
+                    .append(earthquake.getId()).append(',')
+                    .append(isoTime(earthquake.getUpdated())).append(",\"")
+                    .append(earthquake.getLocation()).append("\",earthquake,5.1,1.9,0.05,")
+                    .append(i % 90).append(",reviewed,us,us\n");
+        }
+        return csv.toString();
+    }
+
+    /**
+     * @return the same events as {@link #geoJson(List)} in the FDSN text format.
+     */
+    static String text(List<Earthquake> earthquakes) {
+        StringBuilder text = new StringBuilder(earthquakes.size() * 200);
+        text.append("#EventID|Time|Latitude|Longitude|Depth/km|Author|Catalog|Contributor|")
+                .append("ContributorID|MagType|Magnitude|MagAuthor|EventLocationName|")
+                .append("EventType\n");
+        for (Earthquake earthquake : earthquakes) {
+            String id = earthquake.getId();
+            text.append(id).append('|')
+                    .append(isoTime(earthquake.getTime()), 0, 23).append('|')
+                    .append(earthquake.getLatitude()).append('|')
+                    .append(earthquake.getLongitude()).append('|')
+                    .append(earthquake.getDepth()).append("|us|us|us|")
+                    .append(id).append("|mb|")
+                    .append(earthquake.getMagnitude()).append("|us|")
+                    .append(earthquake.getLocation()).append("|earthquake\n");
+        }
+        return text.toString();
+    }
+
+    private static String isoTime(long millis) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(millis));
+    }
+
+    /**
+     * @return earthquakes spread over the globe and the last 30 days, newest first.
+     */
+    static List<Earthquake> earthquakes(int count) {
+        Random random = new Random(42);
+        List<Earthquake> earthquakes = new ArrayList<>(count);
+        long spacing = 30L * 24 * 60 * 60 * 1000 / Math.max(1, count);
+        for (int i = 0; i < count; i++) {
+            String id = "us" + (7000000 + i);
+            long time = START - i * spacing;
+            // Mostly small quakes, like the Gutenberg-Richter distribution.
+            double magnitude = Math.round(-Math.log(1 - random.nextDouble()) * 10 + 5) / 10.0;
+            String place = (random.nextInt(90) + 1) + "km " + DIRECTIONS[random.nextInt(8)]
+                    + " of Town " + random.nextInt(400) + ", Region " + random.nextInt(40);
+            earthquakes.add(new Earthquake(id, magnitude, place, time, time + 600000,
+                    Earthquake.eventPageUrl(id), -180 + random.nextDouble() * 360,
+                    -80 + random.nextDouble() * 160, random.nextDouble() * 600));
+        }
+        return earthquakes;
+    }
+}
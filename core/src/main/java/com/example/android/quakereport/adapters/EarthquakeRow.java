@@ -0,0 +1,93 @@
+package com.example.android.quakereport.adapters;
+
+import com.example.android.quakereport.data.Earthquake;
+
+/**
+ * An earthquake with every string and color its list row shows already worked out, so binding
+ * it to a row does no formatting and no allocation.
+ */
+public class EarthquakeRow {
+
+    /**
+     * The views of a row, as seen by {@link #bindTo(Target)}.
+     */
+    public interface Target {
+        void setMagnitude(String magnitude, int magnitudeColor);
+
+        void setLocation(String locationOffset, String primaryLocation);
+
+        void setDateTime(String date, String time);
+    }
+
+    private final Earthquake earthquake;
+
+    private final String magnitude;
+
+    private final int magnitudeColor;
+
+    private final String locationOffset;
+
+    private final String primaryLocation;
+
+    private final String date;
+
+    private final String time;
+
+    public EarthquakeRow(Earthquake earthquake, String magnitude, int magnitudeColor,
+                         String locationOffset, String primaryLocation, String date,
+                         String time) {
+        this.earthquake = earthquake;
+        this.magnitude = magnitude;
+        this.magnitudeColor = magnitudeColor;
+        this.locationOffset = locationOffset;
+        this.primaryLocation = primaryLocation;
+        this.date = date;
+        this.time = time;
+    }
+
+    public void bindTo(Target target) {
+        target.setMagnitude(magnitude, magnitudeColor);
+        target.setLocation(locationOffset, primaryLocation);
+        target.setDateTime(date, time);
+    }
+
+    public Earthquake getEarthquake() {
+        return earthquake;
+    }
+
+    public String getMagnitude() {
+        return magnitude;
+    }
+
+    public int getMagnitudeColor() {
+        return magnitudeColor;
+    }
+
+    public String getLocationOffset() {
+        return locationOffset;
+    }
+
+    public String getPrimaryLocation() {
+        return primaryLocation;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public String getTime() {
+        return time;
+    }
+
+    /**
+     * @return true if binding either row would put the same content on screen.
+     */
+    public boolean hasSameContent(EarthquakeRow other) {
+        return magnitudeColor == other.magnitudeColor
+                && magnitude.equals(other.magnitude)
+                && locationOffset.equals(other.locationOffset)
+                && primaryLocation.equals(other.primaryLocation)
+                && date.equals(other.date)
+                && time.equals(other.time);
+    }
+}
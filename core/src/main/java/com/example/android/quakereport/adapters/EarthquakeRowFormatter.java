@@ -0,0 +1,157 @@
+package com.example.android.quakereport.adapters;
+
+import com.example.android.quakereport.data.Earthquake;
+import com.example.android.quakereport.data.PlaceNames;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Turns earthquakes into {@link EarthquakeRow}s off the main thread.
+ * <p>
+ * The formatters are created once and reused; they are rebuilt when the default locale or time
+ * zone changes. Magnitude colors come from a table resolved up front.
+ */
+public class EarthquakeRowFormatter {
+
+    /* Number of entries magnitudeColorIndex() can return. */
+    public static final int MAGNITUDE_COLOR_COUNT = 10;
+
+    /* Shown in place of the magnitude of events USGS hasn't sized yet. */
+    public static final String UNKNOWN_MAGNITUDE = "?";
+
+    /* Color ints for magnitude1 .. magnitude9 and magnitude10plus. */
+    private final int[] magnitudeColors;
+
+    /* Offset shown when the place has no "of" in it, e.g. "Near the". */
+    private final String nearThe;
+
+    private Locale locale;
+    private TimeZone timeZone;
+
+    private DecimalFormat magnitudeFormat;
+    private SimpleDateFormat dateFormat;
+    private SimpleDateFormat timeFormat;
+
+    private final Date date = new Date();
+
+    /**
+     * @param magnitudeColors resolved color ints, indexed by {@link #magnitudeColorIndex(double)}
+     * @param nearThe         offset text for places without a distance
+     */
+    public EarthquakeRowFormatter(int[] magnitudeColors, String nearThe) {
+        if (magnitudeColors.length != MAGNITUDE_COLOR_COUNT) {
+            throw new IllegalArgumentException("Expected " + MAGNITUDE_COLOR_COUNT + " colors");
+        }
+        this.magnitudeColors = magnitudeColors.clone();
+        this.nearThe = nearThe;
+    }
+
+    public synchronized List<EarthquakeRow> formatAll(List<Earthquake> earthquakes) {
+        refreshFormatters();
+        List<EarthquakeRow> rows = new ArrayList<>(earthquakes.size());
+        for (Earthquake earthquake : earthquakes) {
+            rows.add(formatRow(earthquake));
+        }
+        return rows;
+    }
+
+    public synchronized EarthquakeRow format(Earthquake earthquake) {
+        refreshFormatters();
+        return formatRow(earthquake);
+    }
+
+    /**
+     * @return the magnitude the way rows show it, e.g. "4.7", or "?" if it is NaN.
+     */
+    public synchronized String formatMagnitude(double magnitude) {
+        refreshFormatters();
+        return formatMagnitudeValue(magnitude);
+    }
+
+    public int magnitudeColor(double magnitude) {
+        return magnitudeColors[magnitudeColorIndex(magnitude)];
+    }
+
+    /**
+     * @return the date of the time the way rows show it, e.g. "Mar 03, 1984".
+     */
+    public synchronized String formatDate(long time) {
+        refreshFormatters();
+        date.setTime(time);
+        return dateFormat.format(date);
+    }
+
+    /**
+     * Return the index into the magnitude color table for the magnitude. Magnitudes up to 2 get
+     * the first color, each further whole magnitude the next one, and anything above 10 or below
+     * 0 the last one. Unknown magnitudes get the first color too, so events USGS hasn't sized yet
+     * don't look like the strongest ones.
+     */
+    public static int magnitudeColorIndex(double magnitude) {
+        if (Double.isNaN(magnitude)) {
+            return 0;
+        } else if (magnitude < 0.0 || magnitude > 10.0) {
+            return MAGNITUDE_COLOR_COUNT - 1;
+        } else if (magnitude <= 2.0) {
+            return 0;
+        }
+        return (int) Math.ceil(magnitude) - 2;
+    }
+
+    private EarthquakeRow formatRow(Earthquake earthquake) {
+        double magnitude = earthquake.getMagnitude();
+
+        String location = earthquake.getLocation();
+        String locationOffset;
+        String primaryLocation;
+        int primaryLocationStart = PlaceNames.primaryLocationStart(location);
+        /* If the location string specifies both an offset and a primary location. */
+        if (primaryLocationStart > 0) {
+            locationOffset = location.substring(0, primaryLocationStart);
+            primaryLocation = location.substring(primaryLocationStart);
+        } else {
+            locationOffset = nearThe;
+            primaryLocation = location;
+        }
+
+        date.setTime(earthquake.getTime());
+
+        return new EarthquakeRow(
+                earthquake,
+                formatMagnitudeValue(magnitude),
+                magnitudeColors[magnitudeColorIndex(magnitude)],
+                locationOffset,
+                primaryLocation,
+                dateFormat.format(date),
+                timeFormat.format(date));
+    }
+
+    private String formatMagnitudeValue(double magnitude) {
+        return Double.isNaN(magnitude) ? UNKNOWN_MAGNITUDE : magnitudeFormat.format(magnitude);
+    }
+
+    private void refreshFormatters() {
+        Locale currentLocale = Locale.getDefault();
+        TimeZone currentTimeZone = TimeZone.getDefault();
+        if (currentLocale.equals(locale) && currentTimeZone.equals(timeZone)) {
+            return;
+        }
+
+        locale = currentLocale;
+        timeZone = currentTimeZone;
+        magnitudeFormat = new DecimalFormat("0.0", DecimalFormatSymbols.getInstance(locale));
+        // i.e. "Mar 3, 1984"
+        dateFormat = new SimpleDateFormat("MMM dd, yyyy", locale);
+        dateFormat.setTimeZone(timeZone);
+        // i.e. "4:30 PM"
+        timeFormat = new SimpleDateFormat("h:mm a", locale);
+        timeFormat.setTimeZone(timeZone);
+    }
+}
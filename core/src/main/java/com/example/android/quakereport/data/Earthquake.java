@@ -0,0 +1,148 @@
+package com.example.android.quakereport.data;
+
+public class Earthquake {
+
+    /* Every USGS event page lives under this prefix, followed by the event id. */
+    public static final String EVENT_PAGE_URL_PREFIX =
+            "https://earthquake.usgs.gov/earthquakes/eventpage/";
+
+    /* The detail GeoJSON of every USGS event is this query, followed by the event id. */
+    public static final String DETAIL_URL_PREFIX =
+            "https://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&eventid=";
+
+    /* USGS event id of the quake, e.g. "us7000c7y0". */
+    private final String id;
+
+    /* Magnitude of the quake. */
+    private final double magnitude;
+
+    /* Location of the quake. */
+    private final String location;
+
+    /* Time in milliseconds of the earthquake. */
+    private final long time;
+
+    /* Time in milliseconds when USGS last revised the event. */
+    private final long updated;
+
+    /* Web page of the event, or null if it is the standard page for the id. */
+    private final String url;
+
+    /* Epicenter in degrees and depth in km, NaN if USGS didn't give them. */
+    private final double longitude;
+    private final double latitude;
+    private final double depth;
+
+    /**
+     * Constructs a new {@link Earthquake} object.
+     *
+     * @param magnitude is the magnitude (size) of the earthquake
+     * @param location  is the city location of the earthquake
+     * @param time      is the time in milliseconds (from the Epoch) when the
+     *                  earthquake happened
+     */
+    public Earthquake(double magnitude, String location, long time, String url) {
+        this(null, magnitude, location, time, time, url);
+    }
+
+    /**
+     * Constructs a new {@link Earthquake} object.
+     *
+     * @param id        is the USGS event id
+     * @param magnitude is the magnitude (size) of the earthquake
+     * @param location  is the city location of the earthquake
+     * @param time      is the time in milliseconds (from the Epoch) when the
+     *                  earthquake happened
+     * @param updated   is the time in milliseconds (from the Epoch) when the
+     *                  event was last revised
+     */
+    public Earthquake(String id, double magnitude, String location, long time, long updated,
+                      String url) {
+        this(id, magnitude, location, time, updated, url, Double.NaN, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * Constructs a new {@link Earthquake} object.
+     *
+     * @param longitude is the longitude of the epicenter in degrees
+     * @param latitude  is the latitude of the epicenter in degrees
+     * @param depth     is the depth of the hypocenter in km
+     */
+    public Earthquake(String id, double magnitude, String location, long time, long updated,
+                      String url, double longitude, double latitude, double depth) {
+        this.id = id;
+        this.magnitude = magnitude;
+        this.location = location;
+        this.time = time;
+        this.updated = updated;
+        this.url = url;
+        this.longitude = longitude;
+        this.latitude = latitude;
+        this.depth = depth;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public double getMagnitude() {
+        return magnitude;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public long getUpdated() {
+        return updated;
+    }
+
+    public String getUrl() {
+        if (url == null && id != null) {
+            return eventPageUrl(id);
+        }
+        return url;
+    }
+
+    /**
+     * @return the USGS detail GeoJSON of the event, or null if the event has no id.
+     */
+    public String getDetailUrl() {
+        return id == null ? null : detailUrl(id);
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getDepth() {
+        return depth;
+    }
+
+    public boolean hasCoordinates() {
+        return !Double.isNaN(longitude) && !Double.isNaN(latitude);
+    }
+
+    /**
+     * Return the standard USGS event page of the event id.
+     */
+    public static String eventPageUrl(String id) {
+        return EVENT_PAGE_URL_PREFIX + id;
+    }
+
+    /**
+     * Return the USGS detail GeoJSON URL of the event id. The feeds give the same URL as the
+     * "detail" property of every event, so it is not stored.
+     */
+    public static String detailUrl(String id) {
+        return DETAIL_URL_PREFIX + id;
+    }
+}
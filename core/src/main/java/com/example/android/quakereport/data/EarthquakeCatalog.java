@@ -0,0 +1,352 @@
+package com.example.android.quakereport.data;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact, column-oriented collection of earthquakes for large result sets.
+ * <p>
+ * Instead of one {@link Earthquake} object per event the catalog keeps parallel primitive
+ * arrays. Place strings are dictionary-encoded, and event ids are stored once: the event page
+ * URL is derived from the id when it is asked for, unless USGS sent a different one. The
+ * {@link PlaceNames#region region} of a place is worked out once, when the place is first
+ * seen, and dictionary-encoded as well.
+ * Events are keyed by id, so merging a revision replaces the event in place.
+ * <p>
+ * The catalog is not thread-safe.
+ */
+public class EarthquakeCatalog {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int size;
+
+    /* Incremented whenever an event is added or one of its values changes. */
+    private long revision;
+
+    private String[] ids = new String[INITIAL_CAPACITY];
+    private double[] magnitudes = new double[INITIAL_CAPACITY];
+    private long[] times = new long[INITIAL_CAPACITY];
+    private long[] updates = new long[INITIAL_CAPACITY];
+    private int[] placeCodes = new int[INITIAL_CAPACITY];
+    private double[] longitudes = new double[INITIAL_CAPACITY];
+    private double[] latitudes = new double[INITIAL_CAPACITY];
+    private double[] depths = new double[INITIAL_CAPACITY];
+
+    /* Distinct place strings, indexed by the codes in placeCodes. */
+    private String[] places = new String[INITIAL_CAPACITY];
+    private int placeCount;
+    private final Map<String, Integer> placeCodeByPlace = new HashMap<>();
+
+    /* Region code of every place, by place code, and the distinct regions. */
+    private int[] regionCodes = new int[INITIAL_CAPACITY];
+    private String[] regions = new String[INITIAL_CAPACITY];
+    private int regionCount;
+    private final Map<String, Integer> regionCodeByRegion = new HashMap<>();
+
+    /* Position of every event, by id. */
+    private final Map<String, Integer> indexById = new HashMap<>();
+
+    /* The few URLs that are not the standard event page of their id, by position. */
+    private final Map<Integer, String> urlOverrides = new HashMap<>();
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return a number that changes whenever an event is added or changed, but not when a merge
+     * only repeats what the catalog holds.
+     */
+    public long getRevision() {
+        return revision;
+    }
+
+    /**
+     * Add the event, or replace the stored one with the same id if this revision is newer.
+     *
+     * @return the position of the event.
+     */
+    public int merge(String id, double magnitude, String place, long time, long updated,
+                     String url, double longitude, double latitude, double depth) {
+        Integer existing = id == null ? null : indexById.get(id);
+        if (existing != null && updated < updates[existing]) {
+            return existing;
+        }
+
+        int placeCode = placeCode(place);
+        String urlOverride = url == null || url.isEmpty()
+                || (id != null && url.equals(Earthquake.eventPageUrl(id))) ? null : url;
+        int index;
+        if (existing != null) {
+            index = existing;
+            if (isUnchanged(index, magnitude, placeCode, time, updated, urlOverride, longitude,
+                    latitude, depth)) {
+                return index;
+            }
+        } else {
+            ensureCapacity(size + 1);
+            index = size++;
+            ids[index] = id;
+            if (id != null) {
+                indexById.put(id, index);
+            }
+        }
+
+        magnitudes[index] = magnitude;
+        times[index] = time;
+        updates[index] = updated;
+        placeCodes[index] = placeCode;
+        longitudes[index] = longitude;
+        latitudes[index] = latitude;
+        depths[index] = depth;
+        if (urlOverride == null) {
+            urlOverrides.remove(index);
+        } else {
+            urlOverrides.put(index, urlOverride);
+        }
+        revision++;
+
+        return index;
+    }
+
+    private boolean isUnchanged(int index, double magnitude, int placeCode, long time,
+                                long updated, String urlOverride, double longitude,
+                                double latitude, double depth) {
+        String storedOverride = urlOverrides.get(index);
+        return updates[index] == updated && times[index] == time
+                && placeCodes[index] == placeCode
+                && Double.compare(magnitudes[index], magnitude) == 0
+                && Double.compare(longitudes[index], longitude) == 0
+                && Double.compare(latitudes[index], latitude) == 0
+                && Double.compare(depths[index], depth) == 0
+                && (storedOverride == null ? urlOverride == null
+                : storedOverride.equals(urlOverride));
+    }
+
+    /**
+     * Merge the earthquakes in order.
+     *
+     * @return the position of every earthquake.
+     */
+    public int[] mergeAll(List<Earthquake> earthquakes) {
+        ensureCapacity(size + earthquakes.size());
+        int[] positions = new int[earthquakes.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = merge(earthquakes.get(i));
+        }
+        return positions;
+    }
+
+    public int merge(Earthquake earthquake) {
+        return merge(earthquake.getId(), earthquake.getMagnitude(), earthquake.getLocation(),
+                earthquake.getTime(), earthquake.getUpdated(), earthquake.getUrl(),
+                earthquake.getLongitude(), earthquake.getLatitude(), earthquake.getDepth());
+    }
+
+    /**
+     * @return the position of the event with the id, or -1 if it is not in the catalog.
+     */
+    public int indexOf(String id) {
+        Integer index = indexById.get(id);
+        return index == null ? -1 : index;
+    }
+
+    public String getId(int index) {
+        checkIndex(index);
+        return ids[index];
+    }
+
+    public double getMagnitude(int index) {
+        checkIndex(index);
+        return magnitudes[index];
+    }
+
+    public long getTime(int index) {
+        checkIndex(index);
+        return times[index];
+    }
+
+    public long getUpdated(int index) {
+        checkIndex(index);
+        return updates[index];
+    }
+
+    public String getPlace(int index) {
+        checkIndex(index);
+        return places[placeCodes[index]];
+    }
+
+    /**
+     * @return the dictionary code of the event's place. Events share a code exactly when they
+     * share a place string.
+     */
+    public int getPlaceCode(int index) {
+        checkIndex(index);
+        return placeCodes[index];
+    }
+
+    /**
+     * @return the place with the code.
+     */
+    public String getPlaceName(int placeCode) {
+        if (placeCode < 0 || placeCode >= placeCount) {
+            throw new IndexOutOfBoundsException("place " + placeCode + ", count " + placeCount);
+        }
+        return places[placeCode];
+    }
+
+    public int getPlaceCount() {
+        return placeCount;
+    }
+
+    /**
+     * @return the code of the event's region, see {@link #getRegion(int)}. Events share a code
+     * exactly when they share a region.
+     */
+    public int getRegionCode(int index) {
+        checkIndex(index);
+        return regionCodes[placeCodes[index]];
+    }
+
+    /**
+     * @return the region of the event's place, as {@link PlaceNames#region(String)} finds it.
+     */
+    public String getRegion(int index) {
+        return regions[getRegionCode(index)];
+    }
+
+    /**
+     * @return the region with the code.
+     */
+    public String getRegionName(int regionCode) {
+        if (regionCode < 0 || regionCode >= regionCount) {
+            throw new IndexOutOfBoundsException("region " + regionCode + ", count " + regionCount);
+        }
+        return regions[regionCode];
+    }
+
+    public int getRegionCount() {
+        return regionCount;
+    }
+
+    /**
+     * @return the longitude of the epicenter in degrees, NaN if unknown.
+     */
+    public double getLongitude(int index) {
+        checkIndex(index);
+        return longitudes[index];
+    }
+
+    /**
+     * @return the latitude of the epicenter in degrees, NaN if unknown.
+     */
+    public double getLatitude(int index) {
+        checkIndex(index);
+        return latitudes[index];
+    }
+
+    /**
+     * @return the depth in km, NaN if unknown.
+     */
+    public double getDepth(int index) {
+        checkIndex(index);
+        return depths[index];
+    }
+
+    public String getUrl(int index) {
+        checkIndex(index);
+        String override = urlOverrides.get(index);
+        if (override != null || ids[index] == null) {
+            return override;
+        }
+        return Earthquake.eventPageUrl(ids[index]);
+    }
+
+    /**
+     * @return a lightweight {@link Earthquake} holding the event's values.
+     */
+    public Earthquake get(int index) {
+        checkIndex(index);
+        return new Earthquake(ids[index], magnitudes[index], places[placeCodes[index]],
+                times[index], updates[index], urlOverrides.get(index), longitudes[index],
+                latitudes[index], depths[index]);
+    }
+
+    /**
+     * @return a read-only list view of the catalog, for code that works with earthquakes.
+     * Elements are created as they are accessed.
+     */
+    public List<Earthquake> asList() {
+        return new AbstractList<Earthquake>() {
+            @Override
+            public Earthquake get(int index) {
+                return EarthquakeCatalog.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private int placeCode(String place) {
+        if (place == null) {
+            place = "";
+        }
+
+        Integer code = placeCodeByPlace.get(place);
+        if (code != null) {
+            return code;
+        }
+
+        if (placeCount == places.length) {
+            places = Arrays.copyOf(places, placeCount * 2);
+            regionCodes = Arrays.copyOf(regionCodes, placeCount * 2);
+        }
+        places[placeCount] = place;
+        regionCodes[placeCount] = regionCode(PlaceNames.region(place));
+        placeCodeByPlace.put(place, placeCount);
+        return placeCount++;
+    }
+
+    private int regionCode(String region) {
+        Integer code = regionCodeByRegion.get(region);
+        if (code != null) {
+            return code;
+        }
+
+        if (regionCount == regions.length) {
+            regions = Arrays.copyOf(regions, regionCount * 2);
+        }
+        regions[regionCount] = region;
+        regionCodeByRegion.put(region, regionCount);
+        return regionCount++;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+
+        int newCapacity = Math.max(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, newCapacity);
+        magnitudes = Arrays.copyOf(magnitudes, newCapacity);
+        times = Arrays.copyOf(times, newCapacity);
+        updates = Arrays.copyOf(updates, newCapacity);
+        placeCodes = Arrays.copyOf(placeCodes, newCapacity);
+        longitudes = Arrays.copyOf(longitudes, newCapacity);
+        latitudes = Arrays.copyOf(latitudes, newCapacity);
+        depths = Arrays.copyOf(depths, newCapacity);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.android.quakereport.data;
+
+/**
+ * What the USGS detail GeoJSON of an event adds to its {@link Earthquake}: how it was measured,
+ * how strongly it was felt and whether it raised an alert. The products (ShakeMaps, moment
+ * tensors, ...) the detail also lists are not kept.
+ */
+public class EarthquakeDetail {
+
+    private final Earthquake earthquake;
+
+    /* E.g. "M 6.1 - 10km NNE of Ridgecrest, CA", or the place if USGS gave no title. */
+    private final String title;
+
+    /* How the magnitude was measured, e.g. "mww", or null. */
+    private final String magnitudeType;
+
+    /* Number of "Did You Feel It?" reports, -1 if unknown. */
+    private final int feltReports;
+
+    /* Largest reported and instrumental intensity, NaN if unknown. */
+    private final double reportedIntensity;
+    private final double instrumentalIntensity;
+
+    /* PAGER alert level, "green" to "red", or null. */
+    private final String alert;
+
+    private final boolean tsunami;
+
+    /* USGS significance, 0 to 1000 and more, -1 if unknown. */
+    private final int significance;
+
+    /* "automatic" or "reviewed", or null. */
+    private final String status;
+
+    /* Number of stations used to locate the event, -1 if unknown. */
+    private final int stationCount;
+
+    /* Largest azimuthal gap between the stations in degrees, NaN if unknown. */
+    private final double azimuthalGap;
+
+    public EarthquakeDetail(Earthquake earthquake, String title, String magnitudeType,
+                            int feltReports, double reportedIntensity,
+                            double instrumentalIntensity, String alert, boolean tsunami,
+                            int significance, String status, int stationCount,
+                            double azimuthalGap) {
+        this.earthquake = earthquake;
+        this.title = title;
+        this.magnitudeType = magnitudeType;
+        this.feltReports = feltReports;
+        this.reportedIntensity = reportedIntensity;
+        this.instrumentalIntensity = instrumentalIntensity;
+        this.alert = alert;
+        this.tsunami = tsunami;
+        this.significance = significance;
+        this.status = status;
+        this.stationCount = stationCount;
+        this.azimuthalGap = azimuthalGap;
+    }
+
+    public Earthquake getEarthquake() {
+        return earthquake;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getMagnitudeType() {
+        return magnitudeType;
+    }
+
+    public int getFeltReports() {
+        return feltReports;
+    }
+
+    public double getReportedIntensity() {
+        return reportedIntensity;
+    }
+
+    public double getInstrumentalIntensity() {
+        return instrumentalIntensity;
+    }
+
+    public String getAlert() {
+        return alert;
+    }
+
+    public boolean isTsunami() {
+        return tsunami;
+    }
+
+    public int getSignificance() {
+        return significance;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public int getStationCount() {
+        return stationCount;
+    }
+
+    public double getAzimuthalGap() {
+        return azimuthalGap;
+    }
+}
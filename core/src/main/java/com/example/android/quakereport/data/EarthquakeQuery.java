@@ -0,0 +1,69 @@
+package com.example.android.quakereport.data;
+
+/**
+ * The filter, ordering and limit the user picked in the settings screen.
+ */
+public class EarthquakeQuery {
+
+    /* Values of the "orderby" FDSN parameter. */
+    public static final String ORDER_BY_MAGNITUDE = "magnitude";
+    public static final String ORDER_BY_TIME = "time";
+
+    private final double minMagnitude;
+
+    private final String orderBy;
+
+    private final int limit;
+
+    public EarthquakeQuery(double minMagnitude, String orderBy, int limit) {
+        this.minMagnitude = minMagnitude;
+        this.orderBy = orderBy;
+        this.limit = limit;
+    }
+
+    public double getMinMagnitude() {
+        return minMagnitude;
+    }
+
+    public String getOrderBy() {
+        return orderBy;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the same query with a different limit.
+     */
+    public EarthquakeQuery withLimit(int limit) {
+        return new EarthquakeQuery(minMagnitude, orderBy, limit);
+    }
+
+    public boolean isOrderedByTime() {
+        return ORDER_BY_TIME.equals(orderBy);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof EarthquakeQuery)) {
+            return false;
+        }
+
+        EarthquakeQuery query = (EarthquakeQuery) other;
+        return Double.compare(minMagnitude, query.minMagnitude) == 0
+                && limit == query.limit
+                && (orderBy == null ? query.orderBy == null : orderBy.equals(query.orderBy));
+    }
+
+    @Override
+    public int hashCode() {
+        long magnitudeBits = Double.doubleToLongBits(minMagnitude);
+        int result = (int) (magnitudeBits ^ (magnitudeBits >>> 32));
+        result = 31 * result + (orderBy == null ? 0 : orderBy.hashCode());
+        return 31 * result + limit;
+    }
+}
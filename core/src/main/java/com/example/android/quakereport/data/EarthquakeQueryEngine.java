@@ -0,0 +1,726 @@
+package com.example.android.quakereport.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers {@link EarthquakeQuery}s from the earthquakes already fetched, so that changing the
+ * settings doesn't have to go to the network.
+ * <p>
+ * The engine remembers what every fetch covered: the ordered prefix of a query's result up to
+ * the last row returned, or everything if USGS returned fewer rows than asked for. A query is
+ * answered locally when those fetches prove that all of its rows are in memory, for example a
+ * higher minimum magnitude, a lower limit, or the time ordering of the magnitudes above what a
+ * magnitude-ordered fetch reached. Anything else, such as a lower minimum magnitude or a larger
+ * limit, returns null and has to be fetched.
+ * <p>
+ * Rows are read through indexes of the {@link EarthquakeCatalog} sorted by magnitude and time,
+ * which are rebuilt lazily after merges. Proximity queries over everything in memory go through
+ * an {@link EarthquakeSpatialIndex} that is rebuilt the same way, and activity statistics come
+ * from {@link EarthquakeRollups} kept up to date on every merge, as are the per region
+ * {@link EarthquakeRegions}. Searches by place name go through a {@link PlaceSearchIndex} that
+ * indexes the new places of every merge.
+ * <p>
+ * All methods are thread-safe. Searches don't take the engine's lock: between
+ * {@link #startSearching()} and {@link #stopSearching()} every merge that changes the catalog
+ * publishes a sorted copy of what they read, so a search never waits for a merge or sorts
+ * anything itself. The copy is sorted after the merge lets go of the lock.
+ */
+public class EarthquakeQueryEngine {
+
+    /* USGS only returns earthquakes from the last 30 days unless a start time is given. */
+    public static final long DEFAULT_WINDOW_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+    /* After this long a fetch no longer vouches for the data; new events may have come in. */
+    public static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static EarthquakeQueryEngine instance;
+
+    private final long maxAgeMillis;
+
+    private final EarthquakeCatalog catalog = new EarthquakeCatalog();
+
+    /* Catalog positions, by descending magnitude and by descending time. */
+    private int[] byMagnitude = new int[0];
+    private int[] byTime = new int[0];
+    private boolean magnitudeIndexStale;
+    private boolean timeIndexStale;
+
+    private EarthquakeSpatialIndex spatialIndex;
+
+    private final EarthquakeRollups rollups = new EarthquakeRollups();
+
+    private final EarthquakeRegions regions = new EarthquakeRegions(catalog);
+
+    private final PlaceSearchIndex placeIndex = new PlaceSearchIndex(catalog);
+
+    /* What searches read, replaced after merges while anyone is searching. */
+    private volatile SearchSnapshot searchSnapshot = emptySearchSnapshot();
+
+    /* Guards searchers and the replacing of the snapshot. Taken inside the engine's lock. */
+    private final Object searchLock = new Object();
+    private int searchers;
+
+    private final List<Coverage> coverages = new ArrayList<>();
+
+    public EarthquakeQueryEngine(long maxAgeMillis) {
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * @return the engine shared by the whole app.
+     */
+    public static synchronized EarthquakeQueryEngine getInstance() {
+        if (instance == null) {
+            instance = new EarthquakeQueryEngine(DEFAULT_MAX_AGE_MILLIS);
+        }
+        return instance;
+    }
+
+    /**
+     * Add earthquakes without claiming anything about what else exists, e.g. rows read back
+     * from the local store.
+     */
+    public void merge(List<Earthquake> earthquakes) {
+        SearchSnapshot unsorted;
+        synchronized (this) {
+            if (!mergeLocked(earthquakes)) {
+                return;
+            }
+            unsorted = copyForSearch();
+        }
+        publishSearchSnapshot(unsorted);
+    }
+
+    /**
+     * @return whether anything in the catalog changed.
+     */
+    private boolean mergeLocked(List<Earthquake> earthquakes) {
+        if (earthquakes.isEmpty()) {
+            return false;
+        }
+        long revision = catalog.getRevision();
+        for (int position : catalog.mergeAll(earthquakes)) {
+            regions.update(position);
+        }
+        rollups.mergeAll(earthquakes);
+        if (catalog.getRevision() == revision) {
+            // A refresh that only brought back what is already here.
+            return false;
+        }
+        placeIndex.update();
+        magnitudeIndexStale = true;
+        timeIndexStale = true;
+        spatialIndex = null;
+        return true;
+    }
+
+    /**
+     * Start searching, so that merges keep what {@link #search} reads up to date until
+     * {@link #stopSearching()}. This sorts the catalog if it changed since the last search, so
+     * call it off the main thread.
+     */
+    public void startSearching() {
+        SearchSnapshot unsorted;
+        synchronized (this) {
+            synchronized (searchLock) {
+                searchers++;
+            }
+            if (searchSnapshot.revision == catalog.getRevision()) {
+                return;
+            }
+            unsorted = copyForSearch();
+        }
+        publishSearchSnapshot(unsorted);
+    }
+
+    /**
+     * Stop searching. Once nobody searches any more merges stop publishing for searches, and
+     * what they read is let go.
+     */
+    public void stopSearching() {
+        synchronized (searchLock) {
+            if (searchers > 0 && --searchers == 0) {
+                searchSnapshot = emptySearchSnapshot();
+            }
+        }
+    }
+
+    /**
+     * Copy the columns a search reads, unless nobody is searching. The caller holds the lock;
+     * the sorting is left for {@link #publishSearchSnapshot} to do without it.
+     *
+     * @return the copy, not sorted yet, or null.
+     */
+    private SearchSnapshot copyForSearch() {
+        synchronized (searchLock) {
+            if (searchers == 0) {
+                return null;
+            }
+        }
+        int size = catalog.size();
+        double[] magnitudes = new double[size];
+        long[] times = new long[size];
+        int[] placeCodes = new int[size];
+        for (int position = 0; position < size; position++) {
+            magnitudes[position] = catalog.getMagnitude(position);
+            times[position] = catalog.getTime(position);
+            placeCodes[position] = catalog.getPlaceCode(position);
+        }
+        // The copy shares the postings until the next merge adds places.
+        return new SearchSnapshot(this, catalog.getRevision(), placeIndex.copy(), null, null,
+                magnitudes, times, placeCodes);
+    }
+
+    /**
+     * Sort the copy both ways and let searches read it, unless a later revision got there
+     * first or the searching stopped meanwhile.
+     */
+    private void publishSearchSnapshot(SearchSnapshot unsorted) {
+        if (unsorted == null) {
+            return;
+        }
+        int size = unsorted.times.length;
+        double[] keys = new double[size];
+        for (int position = 0; position < size; position++) {
+            keys[position] = unsorted.times[position];
+        }
+        int[] byTime = sortDescending(keys);
+        for (int position = 0; position < size; position++) {
+            keys[position] = magnitudeKey(unsorted.magnitudes[position]);
+        }
+        int[] byMagnitude = sortDescending(keys);
+
+        SearchSnapshot snapshot = new SearchSnapshot(this, unsorted.revision, unsorted.places,
+                byTime, byMagnitude, unsorted.magnitudes, unsorted.times, unsorted.placeCodes);
+        synchronized (searchLock) {
+            if (searchers > 0 && snapshot.revision > searchSnapshot.revision) {
+                searchSnapshot = snapshot;
+            }
+        }
+    }
+
+    private SearchSnapshot emptySearchSnapshot() {
+        return new SearchSnapshot(this, -1, new PlaceSearchIndex(new EarthquakeCatalog()),
+                new int[0], new int[0], new double[0], new long[0], new int[0]);
+    }
+
+    /**
+     * Add the rows USGS returned for the query, starting at the offset. The query's limit is the
+     * number of rows that were asked for. Rows that continue an earlier fetch of the same
+     * ordering and minimum magnitude extend what it covers; an offset of 0 starts over.
+     */
+    public void recordFetch(EarthquakeQuery query, int offset, List<Earthquake> rows, long now) {
+        SearchSnapshot unsorted = null;
+        synchronized (this) {
+            if (mergeLocked(rows)) {
+                unsorted = copyForSearch();
+            }
+            recordCoverage(query, offset, rows, now);
+        }
+        publishSearchSnapshot(unsorted);
+    }
+
+    private void recordCoverage(EarthquakeQuery query, int offset, List<Earthquake> rows,
+                                long now) {
+        Coverage coverage = findCoverage(query);
+        if (offset == 0) {
+            if (coverage == null) {
+                coverage = new Coverage(query.getOrderBy(), query.getMinMagnitude());
+                coverages.add(coverage);
+            }
+            coverage.rowCount = 0;
+            coverage.fetchedAt = now;
+        } else if (coverage == null || coverage.rowCount != offset || !isFresh(coverage, now)) {
+            // Nothing proves the rows before this page are local.
+            return;
+        }
+
+        coverage.rowCount += rows.size();
+        coverage.complete = rows.size() < query.getLimit();
+        if (!rows.isEmpty()) {
+            coverage.boundary = sortKey(rows.get(rows.size() - 1), query.isOrderedByTime());
+        }
+    }
+
+    /**
+     * @return when the fetch that proves the first rows of the query, up to its limit, are
+     * local was made, or -1 if none does and {@link #query} would go to the network.
+     */
+    public synchronized long getFetchedAt(EarthquakeQuery query, long now) {
+        Coverage covering = findCovering(query, query.getLimit(), now - DEFAULT_WINDOW_MILLIS,
+                now);
+        return covering == null ? -1 : covering.fetchedAt;
+    }
+
+    /**
+     * Answer the rows of the query from offset on, at most count of them and never past the
+     * query's limit.
+     *
+     * @return the rows, or null if they aren't known to be local.
+     */
+    public synchronized List<Earthquake> query(EarthquakeQuery query, int offset, int count,
+                                               long now) {
+        int end = (int) Math.min((long) offset + count, query.getLimit());
+        if (end <= offset) {
+            return Collections.emptyList();
+        }
+
+        long windowStart = now - DEFAULT_WINDOW_MILLIS;
+        if (findCovering(query, end, windowStart, now) == null) {
+            return null;
+        }
+
+        int[] index = query.isOrderedByTime() ? timeIndex() : magnitudeIndex();
+        List<Earthquake> rows = new ArrayList<>(end - offset);
+        int matched = 0;
+        for (int i = 0; i < index.length && matched < end; i++) {
+            int position = index[i];
+            if (!query.isOrderedByTime()
+                    && catalog.getMagnitude(position) < query.getMinMagnitude()) {
+                break;
+            }
+            if (query.isOrderedByTime() && catalog.getTime(position) < windowStart) {
+                break;
+            }
+            if (!matches(position, query.getMinMagnitude(), windowStart)) {
+                continue;
+            }
+            if (matched++ >= offset) {
+                rows.add(catalog.get(position));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Find the earthquakes in memory whose place has a word starting with every word of the
+     * text, ignoring case, e.g. "ala" or "ridge ca". Like {@link #query} only the earthquakes
+     * of the last 30 days at or above the query's minimum magnitude are found, in the query's
+     * order, but all of them rather than up to its limit, and without vouching that nothing
+     * else exists.
+     * <p>
+     * This is meant to run on every keystroke, between {@link #startSearching()} and
+     * {@link #stopSearching()}; outside of them nothing is found. It reads what the last merge
+     * published, without waiting for a merge that is running. The results are put into the caller's
+     * {@link SearchResults}, which are reused: when the text extends the one they were found
+     * for and nothing merged in since, only they are filtered again, otherwise the index of the
+     * order is read once. Neither allocates, except to grow the results as the catalog grows.
+     */
+    public void search(String text, EarthquakeQuery query, long now, SearchResults results) {
+        SearchSnapshot snapshot = searchSnapshot;
+        long windowStart = now - DEFAULT_WINDOW_MILLIS;
+        boolean narrowing = results.snapshot == snapshot && query.equals(results.query)
+                && text.startsWith(results.text);
+        results.snapshot = snapshot;
+        results.text = text;
+        results.query = query;
+
+        PlaceSearchIndex.Matches matches = results.matches;
+        snapshot.places.find(text, matches);
+        if (matches.getCount() == 0) {
+            results.size = 0;
+            return;
+        }
+
+        if (narrowing) {
+            // Every word of the longer text starts with one of the shorter, so its matches
+            // are among the earlier ones.
+            int size = 0;
+            for (int i = 0; i < results.size; i++) {
+                int position = results.positions[i];
+                if (matches.isMatch(snapshot.placeCodes[position])
+                        && snapshot.matches(position, query.getMinMagnitude(), windowStart)) {
+                    results.positions[size++] = position;
+                }
+            }
+            results.size = size;
+            return;
+        }
+
+        int[] index = query.isOrderedByTime() ? snapshot.byTime : snapshot.byMagnitude;
+        if (results.positions.length < index.length) {
+            results.positions = new int[index.length];
+        }
+        int size = 0;
+        for (int position : index) {
+            if (!query.isOrderedByTime()
+                    && snapshot.magnitudes[position] < query.getMinMagnitude()) {
+                break;
+            }
+            if (query.isOrderedByTime() && snapshot.times[position] < windowStart) {
+                break;
+            }
+            if (matches.isMatch(snapshot.placeCodes[position])
+                    && snapshot.matches(position, query.getMinMagnitude(), windowStart)) {
+                results.positions[size++] = position;
+            }
+        }
+        results.size = size;
+    }
+
+    /**
+     * Find the earthquakes in memory within the distance of the point, from the last 30 days.
+     * Unlike {@link #query} this doesn't vouch that nothing else exists.
+     */
+    public synchronized List<Earthquake> withinRadius(double latitude, double longitude,
+                                                      double radiusKm, long now) {
+        return toEarthquakes(spatialIndex().withinRadius(latitude, longitude, radiusKm), now);
+    }
+
+    /**
+     * Find the earthquakes in memory inside the box, from the last 30 days.
+     *
+     * @see EarthquakeSpatialIndex#inBoundingBox(double, double, double, double)
+     */
+    public synchronized List<Earthquake> inBoundingBox(double south, double west, double north,
+                                                       double east, long now) {
+        return toEarthquakes(spatialIndex().inBoundingBox(south, west, north, east), now);
+    }
+
+    /**
+     * Summarize the earthquakes in memory from the buckets of the resolution.
+     *
+     * @see EarthquakeRollups#summarize(EarthquakeRollups.Resolution, long, long)
+     */
+    public synchronized EarthquakeRollups.Summary summarize(
+            EarthquakeRollups.Resolution resolution, long from, long to) {
+        return rollups.summarize(resolution, from, to);
+    }
+
+    /**
+     * @return every region of the earthquakes in memory with their counts, largest magnitude
+     * and latest event, the region with the latest event first.
+     */
+    public synchronized List<EarthquakeRegions.Region> regions() {
+        return regions.regions();
+    }
+
+    /**
+     * @return the earthquakes in memory in the region, newest first.
+     */
+    public synchronized List<Earthquake> eventsInRegion(int regionCode) {
+        return regions.eventsIn(regionCode);
+    }
+
+    /**
+     * @return a number that changes whenever the regions do.
+     */
+    public synchronized long getRegionsRevision() {
+        return regions.getRevision();
+    }
+
+    private List<Earthquake> toEarthquakes(int[] positions, long now) {
+        long windowStart = now - DEFAULT_WINDOW_MILLIS;
+        List<Earthquake> earthquakes = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            if (catalog.getTime(position) >= windowStart) {
+                earthquakes.add(catalog.get(position));
+            }
+        }
+        return earthquakes;
+    }
+
+    private EarthquakeSpatialIndex spatialIndex() {
+        if (spatialIndex == null) {
+            spatialIndex = new EarthquakeSpatialIndex(catalog);
+        }
+        return spatialIndex;
+    }
+
+    /**
+     * Forget all fetches, so every query goes to the network until it is fetched again.
+     */
+    public synchronized void invalidate() {
+        coverages.clear();
+    }
+
+    /**
+     * @return the most recent fetch that proves the first rowCount rows of the query are
+     * local, or null if none does.
+     */
+    private Coverage findCovering(EarthquakeQuery query, int rowCount, long windowStart,
+                                  long now) {
+        Coverage covering = null;
+        for (Coverage coverage : coverages) {
+            if (!isFresh(coverage, now) || coverage.minMagnitude > query.getMinMagnitude()
+                    || (covering != null && covering.fetchedAt >= coverage.fetchedAt)) {
+                continue;
+            }
+            if (covers(coverage, query, rowCount, windowStart)) {
+                covering = coverage;
+            }
+        }
+        return covering;
+    }
+
+    private boolean covers(Coverage coverage, EarthquakeQuery query, int rowCount,
+                           long windowStart) {
+        if (coverage.complete) {
+            return true;
+        }
+
+        boolean coverageByTime = EarthquakeQuery.ORDER_BY_TIME.equals(coverage.orderBy);
+        if (coverageByTime == query.isOrderedByTime()) {
+            // Every row ranked at or above the boundary is local. Rows tied with it may not all
+            // be, but USGS doesn't promise an order among ties either.
+            return countAtOrAbove(coverage.boundary, coverageByTime, query.getMinMagnitude(),
+                    windowStart, rowCount) >= rowCount;
+        }
+        // Every earthquake stronger than the weakest one fetched is local.
+        return !coverageByTime && query.getMinMagnitude() > coverage.boundary;
+    }
+
+    /**
+     * Count the matching rows whose sort key is at least the boundary, stopping at limit.
+     */
+    private int countAtOrAbove(double boundary, boolean byTime, double minMagnitude,
+                               long windowStart, int limit) {
+        int[] index = byTime ? timeIndex() : magnitudeIndex();
+        int count = 0;
+        for (int i = 0; i < index.length && count < limit; i++) {
+            int position = index[i];
+            if (sortKey(position, byTime) < boundary) {
+                break;
+            }
+            if (matches(position, minMagnitude, windowStart)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean matches(int position, double minMagnitude, long windowStart) {
+        return catalog.getMagnitude(position) >= minMagnitude
+                && catalog.getTime(position) >= windowStart;
+    }
+
+    private boolean isFresh(Coverage coverage, long now) {
+        return now - coverage.fetchedAt <= maxAgeMillis;
+    }
+
+    private Coverage findCoverage(EarthquakeQuery query) {
+        for (Coverage coverage : coverages) {
+            if (coverage.orderBy.equals(query.getOrderBy())
+                    && coverage.minMagnitude == query.getMinMagnitude()) {
+                return coverage;
+            }
+        }
+        return null;
+    }
+
+    private double sortKey(int position, boolean byTime) {
+        return byTime ? catalog.getTime(position) : magnitudeKey(catalog.getMagnitude(position));
+    }
+
+    private static double sortKey(Earthquake earthquake, boolean byTime) {
+        return byTime ? earthquake.getTime() : magnitudeKey(earthquake.getMagnitude());
+    }
+
+    /**
+     * Events without a magnitude (NaN) rank below all others, and no minimum lets them through.
+     */
+    private static double magnitudeKey(double magnitude) {
+        return Double.isNaN(magnitude) ? Double.NEGATIVE_INFINITY : magnitude;
+    }
+
+    private int[] magnitudeIndex() {
+        if (magnitudeIndexStale || byMagnitude.length != catalog.size()) {
+            byMagnitude = buildIndex(false);
+            magnitudeIndexStale = false;
+        }
+        return byMagnitude;
+    }
+
+    private int[] timeIndex() {
+        if (timeIndexStale || byTime.length != catalog.size()) {
+            byTime = buildIndex(true);
+            timeIndexStale = false;
+        }
+        return byTime;
+    }
+
+    /**
+     * Sort all catalog positions by descending key with a merge sort over primitive arrays.
+     */
+    private int[] buildIndex(boolean byTime) {
+        int size = catalog.size();
+        double[] keys = new double[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = sortKey(i, byTime);
+        }
+        return sortDescending(keys);
+    }
+
+    /**
+     * @return the positions of the keys, by descending key.
+     */
+    private static int[] sortDescending(double[] keys) {
+        int size = keys.length;
+        int[] index = new int[size];
+        for (int i = 0; i < size; i++) {
+            index[i] = i;
+        }
+        mergeSortDescending(index, new int[size], keys, 0, size);
+        return index;
+    }
+
+    private static void mergeSortDescending(int[] index, int[] scratch, double[] keys,
+                                            int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+
+        int middle = (from + to) >>> 1;
+        mergeSortDescending(index, scratch, keys, from, middle);
+        mergeSortDescending(index, scratch, keys, middle, to);
+
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && keys[index[left]] >= keys[index[right]])) {
+                scratch[i] = index[left++];
+            } else {
+                scratch[i] = index[right++];
+            }
+        }
+        System.arraycopy(scratch, from, index, from, to - from);
+    }
+
+    /**
+     * @return the earthquake at a catalog position a search found, see
+     * {@link SearchResults#getPosition(int)}.
+     */
+    public synchronized Earthquake getEarthquake(int position) {
+        return catalog.get(position);
+    }
+
+    /**
+     * What searches read: the catalog as of a merge, sorted both ways. Nothing in it changes once
+     * it is published. Before it is sorted the indexes are null.
+     */
+    private static final class SearchSnapshot {
+        final EarthquakeQueryEngine engine;
+
+        /* Revision of the catalog it was copied from, -1 if nothing was. */
+        final long revision;
+
+        final PlaceSearchIndex places;
+
+        /* Catalog positions, by descending time and by descending magnitude. */
+        final int[] byTime;
+        final int[] byMagnitude;
+
+        /* Columns of the catalog, by position. */
+        final double[] magnitudes;
+        final long[] times;
+        final int[] placeCodes;
+
+        SearchSnapshot(EarthquakeQueryEngine engine, long revision, PlaceSearchIndex places,
+                       int[] byTime, int[] byMagnitude, double[] magnitudes, long[] times,
+                       int[] placeCodes) {
+            this.engine = engine;
+            this.revision = revision;
+            this.places = places;
+            this.byTime = byTime;
+            this.byMagnitude = byMagnitude;
+            this.magnitudes = magnitudes;
+            this.times = times;
+            this.placeCodes = placeCodes;
+        }
+
+        boolean matches(int position, double minMagnitude, long windowStart) {
+            return magnitudes[position] >= minMagnitude && times[position] >= windowStart;
+        }
+    }
+
+    /**
+     * The earthquakes a {@link #search} found, kept by the caller from one search to the next.
+     * Catalog positions don't change, so the results read the latest revision of every
+     * earthquake. They are not thread-safe.
+     */
+    public static final class SearchResults {
+        private SearchSnapshot snapshot;
+
+        private final PlaceSearchIndex.Matches matches = new PlaceSearchIndex.Matches();
+
+        /* Catalog positions of the earthquakes found, in the order of the query. */
+        private int[] positions = new int[0];
+        private int size;
+
+        /* What the results were found for. */
+        private String text;
+        private EarthquakeQuery query;
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return a lightweight {@link Earthquake} holding the values of the i-th one found.
+         */
+        public Earthquake get(int i) {
+            return snapshot.engine.getEarthquake(getPosition(i));
+        }
+
+        /**
+         * @return the catalog position of the i-th one found. The same earthquake keeps its
+         * position in later searches of the same engine.
+         */
+        public int getPosition(int i) {
+            if (i < 0 || i >= size) {
+                throw new IndexOutOfBoundsException("index " + i + ", size " + size);
+            }
+            return positions[i];
+        }
+
+        /**
+         * @return a number that changes when a merge since the last search may have revised
+         * the earthquakes at the positions, so anything made from them should be made again.
+         */
+        public long getRevision() {
+            return snapshot == null ? 0 : snapshot.revision;
+        }
+
+        /**
+         * Forget what was found, as if nothing had been searched yet.
+         */
+        public void clear() {
+            snapshot = null;
+            size = 0;
+            text = null;
+            query = null;
+        }
+
+        /**
+         * @return the text the results were found for, null before the first search.
+         */
+        public String getText() {
+            return text;
+        }
+    }
+
+    /**
+     * What the fetches of one ordering and minimum magnitude have brought in.
+     */
+    private static final class Coverage {
+        final String orderBy;
+        final double minMagnitude;
+
+        /* Number of leading rows fetched and the sort key of the last one. */
+        int rowCount;
+        double boundary;
+
+        /* USGS returned fewer rows than asked for, so every match is local. */
+        boolean complete;
+
+        long fetchedAt;
+
+        Coverage(String orderBy, double minMagnitude) {
+            this.orderBy = orderBy;
+            this.minMagnitude = minMagnitude;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.example.android.quakereport.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Per region aggregates of the earthquakes in an {@link EarthquakeCatalog}: how many there are,
+ * the largest magnitude and the time of the latest one, with the events of every region kept
+ * newest first.
+ * <p>
+ * The aggregates are updated for every event as it is merged into the catalog. When USGS revises
+ * an event its old values are taken out of the region it was counted in and the new ones are
+ * added, like {@link EarthquakeRollups} does for time buckets. Listing the regions costs
+ * O(regions) and the events of a region O(events in the region); neither looks at the rest of
+ * the catalog.
+ * <p>
+ * The regions are not thread-safe.
+ */
+public class EarthquakeRegions {
+
+    /* Orders regions by their latest event, newest first. */
+    private static final Comparator<Region> BY_LATEST = new Comparator<Region>() {
+        @Override
+        public int compare(Region first, Region second) {
+            return Long.compare(second.latestTime, first.latestTime);
+        }
+    };
+
+    private final EarthquakeCatalog catalog;
+
+    /* The region, magnitude and time every catalog position was last counted with, so a
+     * revision can take them back out. Positions not counted yet have region -1. */
+    private int[] regionOf = new int[0];
+    private double[] magnitudeOf = new double[0];
+    private long[] timeOf = new long[0];
+
+    /* By region code, null for regions without events. */
+    private Group[] groups = new Group[0];
+
+    /* Incremented on every change, so readers can tell when to refresh. */
+    private long revision;
+
+    public EarthquakeRegions(EarthquakeCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    /**
+     * Count the event at the catalog position, or replace what it was counted as before. Call
+     * it after every merge into the catalog.
+     */
+    public void update(int position) {
+        ensureCapacity(position + 1);
+        int region = catalog.getRegionCode(position);
+        double magnitude = catalog.getMagnitude(position);
+        long time = catalog.getTime(position);
+
+        int previousRegion = regionOf[position];
+        if (previousRegion >= 0) {
+            if (previousRegion == region && timeOf[position] == time
+                    && Double.compare(magnitudeOf[position], magnitude) == 0) {
+                // An older revision that the catalog ignored, or one that changed nothing here.
+                return;
+            }
+            groups[previousRegion].remove(position, magnitudeOf[position], timeOf[position]);
+        }
+
+        if (region >= groups.length) {
+            groups = Arrays.copyOf(groups, Math.max(region + 1, groups.length * 2));
+        }
+        if (groups[region] == null) {
+            groups[region] = new Group();
+        }
+        groups[region].add(position, magnitude, time);
+
+        regionOf[position] = region;
+        magnitudeOf[position] = magnitude;
+        timeOf[position] = time;
+        revision++;
+    }
+
+    /**
+     * @return every region with at least one event, the one with the latest event first.
+     */
+    public List<Region> regions() {
+        List<Region> regions = new ArrayList<>();
+        for (int code = 0; code < groups.length; code++) {
+            Group group = groups[code];
+            if (group != null && group.size > 0) {
+                regions.add(new Region(code, catalog.getRegionName(code), group.size,
+                        group.maxMagnitude(), group.times[0]));
+            }
+        }
+        Collections.sort(regions, BY_LATEST);
+        return regions;
+    }
+
+    /**
+     * @return the catalog positions of the events in the region, newest first.
+     */
+    public int[] positionsIn(int regionCode) {
+        Group group = regionCode < groups.length ? groups[regionCode] : null;
+        return group == null ? new int[0] : Arrays.copyOf(group.positions, group.size);
+    }
+
+    /**
+     * @return the events in the region, newest first.
+     */
+    public List<Earthquake> eventsIn(int regionCode) {
+        int[] positions = positionsIn(regionCode);
+        List<Earthquake> earthquakes = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            earthquakes.add(catalog.get(position));
+        }
+        return earthquakes;
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    /**
+     * @return the larger magnitude, where NaN means there is none.
+     */
+    private static double max(double first, double second) {
+        if (Double.isNaN(first)) {
+            return second;
+        }
+        return Double.isNaN(second) ? first : Math.max(first, second);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= regionOf.length) {
+            return;
+        }
+
+        int oldCapacity = regionOf.length;
+        int newCapacity = Math.max(capacity, Math.max(64, oldCapacity * 2));
+        regionOf = Arrays.copyOf(regionOf, newCapacity);
+        Arrays.fill(regionOf, oldCapacity, newCapacity, -1);
+        magnitudeOf = Arrays.copyOf(magnitudeOf, newCapacity);
+        timeOf = Arrays.copyOf(timeOf, newCapacity);
+    }
+
+    /**
+     * What a region shows in the grouped list.
+     */
+    public static final class Region {
+        private final int code;
+        private final String name;
+        private final int count;
+        private final double maxMagnitude;
+        private final long latestTime;
+
+        Region(int code, String name, int count, double maxMagnitude, long latestTime) {
+            this.code = code;
+            this.name = name;
+            this.count = count;
+            this.maxMagnitude = maxMagnitude;
+            this.latestTime = latestTime;
+        }
+
+        /**
+         * @return the code to ask for the region's events with.
+         */
+        public int getCode() {
+            return code;
+        }
+
+        /**
+         * @return the name of the region, "" if the events have no place.
+         */
+        public String getName() {
+            return name;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return the largest magnitude, NaN if no event has one.
+         */
+        public double getMaxMagnitude() {
+            return maxMagnitude;
+        }
+
+        public long getLatestTime() {
+            return latestTime;
+        }
+    }
+
+    /**
+     * The events of one region, as catalog positions sorted by descending time.
+     */
+    private final class Group {
+        int[] positions = new int[4];
+        long[] times = new long[4];
+        int size;
+
+        double maxMagnitude = Double.NaN;
+
+        /* Set when the event with the largest magnitude was removed. */
+        boolean maxStale;
+
+        void add(int position, double magnitude, long time) {
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+                times = Arrays.copyOf(times, size * 2);
+            }
+            // USGS sends events newest first, which only ever appends here.
+            int index = insertionIndex(time);
+            System.arraycopy(positions, index, positions, index + 1, size - index);
+            System.arraycopy(times, index, times, index + 1, size - index);
+            positions[index] = position;
+            times[index] = time;
+            size++;
+
+            if (!maxStale) {
+                maxMagnitude = max(maxMagnitude, magnitude);
+            }
+        }
+
+        void remove(int position, double magnitude, long time) {
+            // Skip the newer events, then look among those at the same time.
+            int index = insertionIndex(time + 1);
+            while (index < size && positions[index] != position) {
+                index++;
+            }
+            if (index == size) {
+                return;
+            }
+            System.arraycopy(positions, index + 1, positions, index, size - index - 1);
+            System.arraycopy(times, index + 1, times, index, size - index - 1);
+            size--;
+
+            if (magnitude >= maxMagnitude) {
+                maxStale = true;
+            }
+        }
+
+        /**
+         * @return the index of the first event older than the time.
+         */
+        private int insertionIndex(long time) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (times[middle] >= time) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * The largest magnitude, found again from the events when the one holding it was
+         * revised away.
+         */
+        double maxMagnitude() {
+            if (maxStale) {
+                double max = Double.NaN;
+                for (int i = 0; i < size; i++) {
+                    max = max(max, magnitudeOf[positions[i]]);
+                }
+                maxMagnitude = max;
+                maxStale = false;
+            }
+            return maxMagnitude;
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.example.android.quakereport.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Per minute, hour and day rollups of the earthquakes merged into it: how many there were, the
+ * largest and mean magnitude, and the seismic energy released.
+ * <p>
+ * Rollups are updated as earthquakes are merged. When USGS revises an event its old values are
+ * taken out of the buckets they were counted in and the new ones are added, so the rollups always
+ * describe the latest revision of every event. Range queries add up whole buckets and cost
+ * O(buckets) no matter how many events they span.
+ * <p>
+ * Buckets are aligned to UTC. Earthquakes without a magnitude are not counted. The rollups are
+ * not thread-safe.
+ */
+public class EarthquakeRollups {
+
+    public enum Resolution {
+        MINUTE(60 * 1000L),
+        HOUR(60 * 60 * 1000L),
+        DAY(24 * 60 * 60 * 1000L);
+
+        private final long millis;
+
+        Resolution(long millis) {
+            this.millis = millis;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        /**
+         * @return the start of the bucket the time falls in.
+         */
+        public long bucketStart(long time) {
+            long start = time - time % millis;
+            return time < start ? start - millis : start;
+        }
+    }
+
+    /* Buckets with at least one event, by their start time. */
+    private final Map<Resolution, TreeMap<Long, Bucket>> buckets =
+            new EnumMap<>(Resolution.class);
+
+    /* What every event with an id currently contributes, so a revision can take it back out. */
+    private final Map<String, Contribution> contributions = new HashMap<>();
+
+    /* Incremented on every change, so readers can tell when to refresh. */
+    private long revision;
+
+    private int revisedEventCount;
+
+    public EarthquakeRollups() {
+        for (Resolution resolution : Resolution.values()) {
+            buckets.put(resolution, new TreeMap<Long, Bucket>());
+        }
+    }
+
+    public void mergeAll(List<Earthquake> earthquakes) {
+        for (Earthquake earthquake : earthquakes) {
+            merge(earthquake);
+        }
+    }
+
+    /**
+     * Count the earthquake, or replace its earlier revision with this one if it is newer.
+     */
+    public void merge(Earthquake earthquake) {
+        String id = earthquake.getId();
+        Contribution previous = id == null ? null : contributions.get(id);
+        if (previous != null) {
+            if (earthquake.getUpdated() <= previous.updated) {
+                return;
+            }
+            if (!Double.isNaN(previous.magnitude)) {
+                for (Resolution resolution : Resolution.values()) {
+                    remove(resolution, previous.time, previous.magnitude);
+                }
+            }
+            revisedEventCount++;
+        }
+
+        double magnitude = earthquake.getMagnitude();
+        if (!Double.isNaN(magnitude)) {
+            for (Resolution resolution : Resolution.values()) {
+                add(resolution, earthquake.getTime(), magnitude);
+            }
+        }
+
+        if (id != null) {
+            contributions.put(id, new Contribution(earthquake.getTime(), magnitude,
+                    earthquake.getUpdated()));
+        }
+        revision++;
+    }
+
+    /**
+     * Add up the buckets of the resolution that start in [from, to), with from rounded down to
+     * its bucket.
+     */
+    public Summary summarize(Resolution resolution, long from, long to) {
+        Summary total = new Summary(resolution.bucketStart(from), to, 0, Double.NaN, 0, 0);
+        for (Map.Entry<Long, Bucket> entry : range(resolution, from, to).entrySet()) {
+            total = total.plus(toSummary(resolution, entry.getKey(), entry.getValue()));
+        }
+        return total;
+    }
+
+    /**
+     * @return one summary per non-empty bucket of the resolution that starts in [from, to), in
+     * time order.
+     */
+    public List<Summary> series(Resolution resolution, long from, long to) {
+        List<Summary> series = new ArrayList<>();
+        for (Map.Entry<Long, Bucket> entry : range(resolution, from, to).entrySet()) {
+            series.add(toSummary(resolution, entry.getKey(), entry.getValue()));
+        }
+        return series;
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    /**
+     * @return how many times an event was replaced by a newer revision.
+     */
+    public int getRevisedEventCount() {
+        return revisedEventCount;
+    }
+
+    /**
+     * @return the energy released by an earthquake of the magnitude in joules, using the
+     * Gutenberg-Richter relation log10(E) = 1.5 M + 4.8.
+     */
+    public static double energyJoules(double magnitude) {
+        return Math.pow(10, 1.5 * magnitude + 4.8);
+    }
+
+    private NavigableMap<Long, Bucket> range(Resolution resolution, long from, long to) {
+        long start = resolution.bucketStart(from);
+        return buckets.get(resolution).subMap(start, true, Math.max(start, to), false);
+    }
+
+    private Summary toSummary(Resolution resolution, long start, Bucket bucket) {
+        return new Summary(start, start + resolution.millis, bucket.count,
+                maxMagnitude(resolution, start, bucket), bucket.magnitudeSum, bucket.energy());
+    }
+
+    private void add(Resolution resolution, long time, double magnitude) {
+        long start = resolution.bucketStart(time);
+        Bucket bucket = buckets.get(resolution).get(start);
+        if (bucket == null) {
+            bucket = new Bucket(resolution == Resolution.MINUTE);
+            buckets.get(resolution).put(start, bucket);
+        }
+        bucket.add(magnitude);
+    }
+
+    private void remove(Resolution resolution, long time, double magnitude) {
+        long start = resolution.bucketStart(time);
+        Bucket bucket = buckets.get(resolution).get(start);
+        if (bucket == null) {
+            return;
+        }
+        bucket.remove(magnitude);
+        if (bucket.count == 0) {
+            buckets.get(resolution).remove(start);
+        }
+    }
+
+    /**
+     * The largest magnitude of a bucket. If the event holding it was revised away, it is found
+     * again from the bucket's minutes, or from the finer buckets it is made of.
+     */
+    private double maxMagnitude(Resolution resolution, long start, Bucket bucket) {
+        if (!bucket.maxStale) {
+            return bucket.maxMagnitude;
+        }
+
+        double max = Double.NEGATIVE_INFINITY;
+        if (resolution == Resolution.MINUTE) {
+            for (int i = 0; i < bucket.magnitudeCount; i++) {
+                max = Math.max(max, bucket.magnitudes[i]);
+            }
+        } else {
+            Resolution finer = resolution == Resolution.DAY ? Resolution.HOUR : Resolution.MINUTE;
+            for (Map.Entry<Long, Bucket> entry : buckets.get(finer)
+                    .subMap(start, true, start + resolution.millis, false).entrySet()) {
+                max = Math.max(max, maxMagnitude(finer, entry.getKey(), entry.getValue()));
+            }
+        }
+
+        bucket.maxMagnitude = max;
+        bucket.maxStale = false;
+        return max;
+    }
+
+    /**
+     * Counts, sums and statistics of the events in a time range.
+     */
+    public static final class Summary {
+        private final long start;
+        private final long end;
+        private final int count;
+        private final double maxMagnitude;
+        private final double magnitudeSum;
+        private final double energyJoules;
+
+        Summary(long start, long end, int count, double maxMagnitude, double magnitudeSum,
+                double energyJoules) {
+            this.start = start;
+            this.end = end;
+            this.count = count;
+            this.maxMagnitude = maxMagnitude;
+            this.magnitudeSum = magnitudeSum;
+            this.energyJoules = energyJoules;
+        }
+
+        Summary plus(Summary other) {
+            double max = Double.isNaN(maxMagnitude)
+                    ? other.maxMagnitude : Math.max(maxMagnitude, other.maxMagnitude);
+            return new Summary(start, end, count + other.count, max,
+                    magnitudeSum + other.magnitudeSum, energyJoules + other.energyJoules);
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return the largest magnitude, NaN if there were no events.
+         */
+        public double getMaxMagnitude() {
+            return maxMagnitude;
+        }
+
+        /**
+         * @return the mean magnitude, NaN if there were no events.
+         */
+        public double getMeanMagnitude() {
+            return count == 0 ? Double.NaN : magnitudeSum / count;
+        }
+
+        public double getEnergyJoules() {
+            return energyJoules;
+        }
+    }
+
+    private static final class Bucket {
+        int count;
+        double magnitudeSum;
+
+        /* Energies span twenty orders of magnitude and are also taken back out again, so they
+         * are added up with Neumaier's compensated summation to keep small buckets exact. */
+        double energySum;
+        double energyCompensation;
+        double maxMagnitude = Double.NEGATIVE_INFINITY;
+
+        /* Set when the event with the largest magnitude was removed. */
+        boolean maxStale;
+
+        /* Minute buckets keep their magnitudes to find the largest one again. */
+        double[] magnitudes;
+        int magnitudeCount;
+
+        Bucket(boolean keepMagnitudes) {
+            if (keepMagnitudes) {
+                magnitudes = new double[4];
+            }
+        }
+
+        void add(double magnitude) {
+            count++;
+            magnitudeSum += magnitude;
+            addEnergy(energyJoules(magnitude));
+            if (!maxStale) {
+                maxMagnitude = Math.max(maxMagnitude, magnitude);
+            }
+
+            if (magnitudes != null) {
+                if (magnitudeCount == magnitudes.length) {
+                    magnitudes = Arrays.copyOf(magnitudes, magnitudeCount * 2);
+                }
+                magnitudes[magnitudeCount++] = magnitude;
+            }
+        }
+
+        double energy() {
+            return energySum + energyCompensation;
+        }
+
+        private void addEnergy(double value) {
+            double sum = energySum + value;
+            if (Math.abs(energySum) >= Math.abs(value)) {
+                energyCompensation += (energySum - sum) + value;
+            } else {
+                energyCompensation += (value - sum) + energySum;
+            }
+            energySum = sum;
+        }
+
+        void remove(double magnitude) {
+            count--;
+            magnitudeSum -= magnitude;
+            addEnergy(-energyJoules(magnitude));
+            if (magnitude >= maxMagnitude) {
+                maxStale = true;
+            }
+
+            if (magnitudes != null) {
+                for (int i = 0; i < magnitudeCount; i++) {
+                    if (magnitudes[i] == magnitude) {
+                        magnitudes[i] = magnitudes[--magnitudeCount];
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class Contribution {
+        final long time;
+        final double magnitude;
+        final long updated;
+
+        Contribution(long time, double magnitude, long updated) {
+            this.time = time;
+            this.magnitude = magnitude;
+            this.updated = updated;
+        }
+    }
+}
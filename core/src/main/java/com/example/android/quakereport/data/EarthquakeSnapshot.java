@@ -0,0 +1,282 @@
+package com.example.android.quakereport.data;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A binary snapshot of a list of earthquakes, read back through a memory-mapped file without
+ * parsing it.
+ * <p>
+ * The file starts with a header (magic number, format version, record and string counts, the key
+ * the snapshot was saved for and a CRC32 of everything after the header). Then come fixed-width
+ * records of primitive fields, one per earthquake, and a table of the distinct strings they
+ * refer to. Opening a snapshot only checks the header and the checksum; every earthquake is
+ * decoded when it is asked for, so the first rows can be bound before the rest is ever touched.
+ * <p>
+ * A snapshot is read-only. It is safe to read from several threads.
+ */
+public final class EarthquakeSnapshot extends AbstractList<Earthquake> {
+
+    public static final int VERSION = 1;
+
+    /* "EQSN" */
+    private static final int MAGIC = 0x4551534E;
+
+    private static final int HEADER_SIZE = 24;
+
+    /* id, place and url string indexes, magnitude, time, updated, longitude, latitude, depth. */
+    private static final int RECORD_SIZE = 3 * 4 + 6 * 8;
+
+    /* String index of a null string, or of a URL that is the standard event page. */
+    private static final int NO_STRING = -1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer buffer;
+
+    private final int recordCount;
+
+    private final int stringCount;
+
+    /* Where the string offsets and the string bytes start. */
+    private final int offsetsStart;
+    private final int stringsStart;
+
+    private final String key;
+
+    /* Strings decoded so far, places repeat a lot. */
+    private final String[] decodedStrings;
+
+    private EarthquakeSnapshot(ByteBuffer buffer, int recordCount, int stringCount,
+                               int keyIndex) {
+        this.buffer = buffer;
+        this.recordCount = recordCount;
+        this.stringCount = stringCount;
+        this.offsetsStart = HEADER_SIZE + recordCount * RECORD_SIZE;
+        this.stringsStart = offsetsStart + (stringCount + 1) * 4;
+        this.decodedStrings = new String[stringCount];
+        this.key = string(keyIndex);
+    }
+
+    /**
+     * Save the earthquakes to the file, replacing it atomically.
+     *
+     * @param key identifies what the earthquakes are, e.g. the URL they were loaded from
+     */
+    public static void write(File file, String key, List<Earthquake> earthquakes)
+            throws IOException {
+        List<String> strings = new ArrayList<>();
+        Map<String, Integer> indexByString = new HashMap<>();
+        int keyIndex = intern(key, strings, indexByString);
+
+        ByteBuffer records = ByteBuffer.allocate(earthquakes.size() * RECORD_SIZE);
+        for (Earthquake earthquake : earthquakes) {
+            String id = earthquake.getId();
+            String url = earthquake.getUrl();
+            if (id != null && Earthquake.eventPageUrl(id).equals(url)) {
+                url = null;
+            }
+            records.putInt(intern(id, strings, indexByString))
+                    .putInt(intern(earthquake.getLocation(), strings, indexByString))
+                    .putInt(intern(url, strings, indexByString))
+                    .putDouble(earthquake.getMagnitude())
+                    .putLong(earthquake.getTime())
+                    .putLong(earthquake.getUpdated())
+                    .putDouble(earthquake.getLongitude())
+                    .putDouble(earthquake.getLatitude())
+                    .putDouble(earthquake.getDepth());
+        }
+
+        byte[][] encoded = new byte[strings.size()][];
+        int stringBytes = 0;
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = strings.get(i).getBytes(UTF_8);
+            stringBytes += encoded[i].length;
+        }
+
+        ByteBuffer body = ByteBuffer.allocate(records.capacity() + (encoded.length + 1) * 4
+                + stringBytes);
+        body.put(records.array());
+        int offset = 0;
+        for (byte[] string : encoded) {
+            body.putInt(offset);
+            offset += string.length;
+        }
+        body.putInt(offset);
+        for (byte[] string : encoded) {
+            body.put(string);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(earthquakes.size())
+                .putInt(encoded.length)
+                .putInt(keyIndex)
+                .putInt(checksum(body, 0, body.capacity()));
+
+        File tempFile = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tempFile);
+        try {
+            out.write(header.array());
+            out.write(body.array());
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Can't replace " + file);
+        }
+    }
+
+    /**
+     * Map the snapshot file into memory.
+     *
+     * @return the snapshot, or null if there is none or it is from another format version,
+     * truncated or corrupt.
+     */
+    public static EarthquakeSnapshot open(File file) {
+        if (!file.isFile() || file.length() < HEADER_SIZE || file.length() > Integer.MAX_VALUE) {
+            return null;
+        }
+
+        MappedByteBuffer buffer;
+        try {
+            RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            try {
+                // The mapping stays valid after the file is closed.
+                buffer = randomAccessFile.getChannel()
+                        .map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length());
+            } finally {
+                randomAccessFile.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+
+        return wrap(buffer);
+    }
+
+    /**
+     * @return the snapshot stored in the buffer, or null if it is not a valid one.
+     */
+    static EarthquakeSnapshot wrap(ByteBuffer buffer) {
+        if (buffer.capacity() < HEADER_SIZE
+                || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            return null;
+        }
+
+        int recordCount = buffer.getInt(8);
+        int stringCount = buffer.getInt(12);
+        int keyIndex = buffer.getInt(16);
+        long offsetsStart = HEADER_SIZE + (long) recordCount * RECORD_SIZE;
+        long stringsStart = offsetsStart + ((long) stringCount + 1) * 4;
+        if (recordCount < 0 || stringCount < 0 || keyIndex < NO_STRING || keyIndex >= stringCount
+                || stringsStart > buffer.capacity()
+                || stringsStart + buffer.getInt((int) stringsStart - 4) != buffer.capacity()) {
+            return null;
+        }
+
+        if (checksum(buffer, HEADER_SIZE, buffer.capacity()) != buffer.getInt(20)) {
+            return null;
+        }
+        return new EarthquakeSnapshot(buffer, recordCount, stringCount, keyIndex);
+    }
+
+    /**
+     * @return the key the snapshot was written with.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public int size() {
+        return recordCount;
+    }
+
+    @Override
+    public Earthquake get(int index) {
+        if (index < 0 || index >= recordCount) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + recordCount);
+        }
+
+        int record = HEADER_SIZE + index * RECORD_SIZE;
+        return new Earthquake(
+                string(buffer.getInt(record)),
+                buffer.getDouble(record + 12),
+                string(buffer.getInt(record + 4)),
+                buffer.getLong(record + 20),
+                buffer.getLong(record + 28),
+                string(buffer.getInt(record + 8)),
+                buffer.getDouble(record + 36),
+                buffer.getDouble(record + 44),
+                buffer.getDouble(record + 52));
+    }
+
+    private String string(int index) {
+        if (index == NO_STRING) {
+            return null;
+        }
+        if (index < 0 || index >= stringCount) {
+            throw new IllegalStateException("Bad string index " + index);
+        }
+
+        String decoded = decodedStrings[index];
+        if (decoded == null) {
+            int start = buffer.getInt(offsetsStart + index * 4);
+            int end = buffer.getInt(offsetsStart + index * 4 + 4);
+            byte[] bytes = new byte[end - start];
+            ByteBuffer view = buffer.duplicate();
+            view.position(stringsStart + start);
+            view.get(bytes);
+            decoded = new String(bytes, UTF_8);
+            decodedStrings[index] = decoded;
+        }
+        return decoded;
+    }
+
+    private static int intern(String string, List<String> strings,
+                              Map<String, Integer> indexByString) {
+        if (string == null) {
+            return NO_STRING;
+        }
+        Integer index = indexByString.get(string);
+        if (index == null) {
+            index = strings.size();
+            strings.add(string);
+            indexByString.put(string, index);
+        }
+        return index;
+    }
+
+    /**
+     * CRC32 of the bytes in [from, to). ByteBuffers are copied out in chunks, CRC32 only reads
+     * ByteBuffers directly from API 26 on.
+     */
+    private static int checksum(ByteBuffer buffer, int from, int to) {
+        CRC32 crc = new CRC32();
+        ByteBuffer view = buffer.duplicate();
+        view.position(from);
+        byte[] chunk = new byte[8192];
+        while (view.position() < to) {
+            int length = Math.min(chunk.length, to - view.position());
+            view.get(chunk, 0, length);
+            crc.update(chunk, 0, length);
+        }
+        return (int) crc.getValue();
+    }
+}
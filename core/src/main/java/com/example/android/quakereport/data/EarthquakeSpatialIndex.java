@@ -0,0 +1,252 @@
+package com.example.android.quakereport.data;
+
+import java.util.Arrays;
+
+/**
+ * A fixed latitude/longitude grid over the epicenters of an {@link EarthquakeCatalog}, for
+ * radius and bounding box queries that only look at the cells the query touches.
+ * <p>
+ * The grid works like geohash cells of one size: every event goes into the cell its epicenter
+ * falls in, and the cells are laid out one after the other in a single array, so a query reads
+ * a few contiguous runs of coordinates instead of the whole catalog. Events without coordinates
+ * are left out.
+ * <p>
+ * The index is a snapshot; build a new one after the catalog changes.
+ */
+public class EarthquakeSpatialIndex {
+
+    /* Mean radius of the earth. */
+    public static final double EARTH_RADIUS_KM = 6371.0088;
+
+    /* One degree cells are about 111 km high, which suits the radii people search for. */
+    public static final double DEFAULT_CELL_DEGREES = 1.0;
+
+    private final double cellDegrees;
+    private final int latitudeCells;
+    private final int longitudeCells;
+
+    /* Events of cell c are at [cellStarts[c], cellStarts[c + 1]) of the arrays below. */
+    private final int[] cellStarts;
+
+    /* Catalog position and epicenter of every event, grouped by cell. */
+    private final int[] positions;
+    private final double[] latitudes;
+    private final double[] longitudes;
+
+    public EarthquakeSpatialIndex(EarthquakeCatalog catalog) {
+        this(catalog, DEFAULT_CELL_DEGREES);
+    }
+
+    public EarthquakeSpatialIndex(EarthquakeCatalog catalog, double cellDegrees) {
+        if (!(cellDegrees > 0 && cellDegrees <= 180)) {
+            throw new IllegalArgumentException("cellDegrees must be in (0, 180]: " + cellDegrees);
+        }
+
+        this.cellDegrees = cellDegrees;
+        latitudeCells = (int) Math.ceil(180 / cellDegrees);
+        longitudeCells = (int) Math.ceil(360 / cellDegrees);
+        cellStarts = new int[latitudeCells * longitudeCells + 1];
+
+        // Counting sort of the events by cell.
+        int size = catalog.size();
+        int[] cells = new int[size];
+        int indexed = 0;
+        for (int i = 0; i < size; i++) {
+            double latitude = catalog.getLatitude(i);
+            double longitude = catalog.getLongitude(i);
+            if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+                cells[i] = -1;
+                continue;
+            }
+            cells[i] = cellOf(latitude, longitude);
+            cellStarts[cells[i] + 1]++;
+            indexed++;
+        }
+        for (int c = 1; c < cellStarts.length; c++) {
+            cellStarts[c] += cellStarts[c - 1];
+        }
+
+        positions = new int[indexed];
+        latitudes = new double[indexed];
+        longitudes = new double[indexed];
+        int[] next = Arrays.copyOf(cellStarts, cellStarts.length - 1);
+        for (int i = 0; i < size; i++) {
+            if (cells[i] < 0) {
+                continue;
+            }
+            int slot = next[cells[i]]++;
+            positions[slot] = i;
+            latitudes[slot] = catalog.getLatitude(i);
+            longitudes[slot] = normalizeLongitude(catalog.getLongitude(i));
+        }
+    }
+
+    /**
+     * @return the number of events with coordinates.
+     */
+    public int size() {
+        return positions.length;
+    }
+
+    /**
+     * Find the events whose epicenter is within the great-circle distance of the point.
+     *
+     * @return their catalog positions, in no particular order.
+     */
+    public int[] withinRadius(double latitude, double longitude, double radiusKm) {
+        IntBuffer result = new IntBuffer();
+        if (!(radiusKm >= 0) || Double.isNaN(latitude) || Double.isNaN(longitude)) {
+            return result.toArray();
+        }
+
+        longitude = normalizeLongitude(longitude);
+        double radiusDegrees = Math.toDegrees(radiusKm / EARTH_RADIUS_KM);
+        double south = latitude - radiusDegrees;
+        double north = latitude + radiusDegrees;
+
+        // How far east and west the circle reaches; everything if it covers a pole.
+        double longitudeReach = 180;
+        if (south > -90 && north < 90) {
+            double sinReach = Math.sin(radiusKm / EARTH_RADIUS_KM)
+                    / Math.cos(Math.toRadians(latitude));
+            if (sinReach < 1) {
+                longitudeReach = Math.toDegrees(Math.asin(sinReach));
+            }
+        }
+
+        double cosLatitude = Math.cos(Math.toRadians(latitude));
+        int firstRow = latitudeRow(south);
+        int lastRow = latitudeRow(north);
+        int firstColumn = (int) Math.floor((longitude - longitudeReach + 180) / cellDegrees);
+        int lastColumn = (int) Math.floor((longitude + longitudeReach + 180) / cellDegrees);
+        if (lastColumn - firstColumn + 1 >= longitudeCells) {
+            firstColumn = 0;
+            lastColumn = longitudeCells - 1;
+        }
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int wrappedColumn = ((column % longitudeCells) + longitudeCells) % longitudeCells;
+                int cell = row * longitudeCells + wrappedColumn;
+                for (int slot = cellStarts[cell]; slot < cellStarts[cell + 1]; slot++) {
+                    if (haversineKm(latitude, longitude, cosLatitude, latitudes[slot],
+                            longitudes[slot]) <= radiusKm) {
+                        result.add(positions[slot]);
+                    }
+                }
+            }
+        }
+        return result.toArray();
+    }
+
+    /**
+     * Find the events whose epicenter is inside the box. A box whose west edge is east of its
+     * east edge crosses the antimeridian.
+     *
+     * @return their catalog positions, in no particular order.
+     */
+    public int[] inBoundingBox(double south, double west, double north, double east) {
+        IntBuffer result = new IntBuffer();
+        if (!(south <= north)) {
+            return result.toArray();
+        }
+
+        if (east - west >= 360) {
+            west = -180;
+            east = 180;
+        } else {
+            double normalizedEast = normalizeLongitude(east);
+            // An east edge on the antimeridian closes the box there instead of wrapping it.
+            east = normalizedEast == -180 && east != -180 ? 180 : normalizedEast;
+            west = normalizeLongitude(west);
+        }
+        boolean crossesAntimeridian = west > east;
+
+        int firstColumn = longitudeColumn(west);
+        int lastColumn = longitudeColumn(east);
+        int columnCount = crossesAntimeridian
+                ? longitudeCells - firstColumn + lastColumn + 1
+                : lastColumn - firstColumn + 1;
+
+        for (int row = latitudeRow(south); row <= latitudeRow(north); row++) {
+            for (int i = 0; i < columnCount; i++) {
+                int cell = row * longitudeCells + (firstColumn + i) % longitudeCells;
+                for (int slot = cellStarts[cell]; slot < cellStarts[cell + 1]; slot++) {
+                    double latitude = latitudes[slot];
+                    double longitude = longitudes[slot];
+                    boolean insideLongitudes = crossesAntimeridian
+                            ? longitude >= west || longitude <= east
+                            : longitude >= west && longitude <= east;
+                    if (insideLongitudes && latitude >= south && latitude <= north) {
+                        result.add(positions[slot]);
+                    }
+                }
+            }
+        }
+        return result.toArray();
+    }
+
+    /**
+     * @return the great-circle distance between two points in km.
+     */
+    public static double haversineKm(double latitude1, double longitude1, double latitude2,
+                                     double longitude2) {
+        return haversineKm(latitude1, longitude1, Math.cos(Math.toRadians(latitude1)),
+                latitude2, longitude2);
+    }
+
+    private static double haversineKm(double latitude1, double longitude1, double cosLatitude1,
+                                      double latitude2, double longitude2) {
+        double sinHalfLatitude = Math.sin(Math.toRadians(latitude2 - latitude1) / 2);
+        double sinHalfLongitude = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double a = sinHalfLatitude * sinHalfLatitude + cosLatitude1
+                * Math.cos(Math.toRadians(latitude2)) * sinHalfLongitude * sinHalfLongitude;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private int cellOf(double latitude, double longitude) {
+        return latitudeRow(latitude) * longitudeCells
+                + longitudeColumn(normalizeLongitude(longitude));
+    }
+
+    private int latitudeRow(double latitude) {
+        int row = (int) Math.floor((latitude + 90) / cellDegrees);
+        return Math.max(0, Math.min(latitudeCells - 1, row));
+    }
+
+    private int longitudeColumn(double longitude) {
+        int column = (int) Math.floor((longitude + 180) / cellDegrees);
+        return Math.max(0, Math.min(longitudeCells - 1, column));
+    }
+
+    /* Bring a longitude into [-180, 180). */
+    private static double normalizeLongitude(double longitude) {
+        if (longitude >= -180 && longitude < 180) {
+            return longitude;
+        }
+        double normalized = (longitude + 180) % 360;
+        if (normalized < 0) {
+            normalized += 360;
+        }
+        return normalized - 180;
+    }
+
+    /**
+     * A growable int array, to collect results without boxing.
+     */
+    private static final class IntBuffer {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
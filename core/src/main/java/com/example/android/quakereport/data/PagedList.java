@@ -0,0 +1,310 @@
+package com.example.android.quakereport.data;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * A list which is fetched page by page as the user scrolls.
+ * <p>
+ * Only a bounded window of pages is kept in memory. Pages far away from the rows being looked
+ * at are dropped and {@link #get(int)} returns null for their rows until they are loaded again.
+ * The list is confined to the thread that runs {@code mainExecutor}; pages are fetched on
+ * {@code backgroundExecutor}.
+ * <p>
+ * Pages are requested by offset, so when items are added at the head of the source between two
+ * requests, a page repeats the last items of the page before it. Items whose key is already in a
+ * loaded page are left out, so a page can hold fewer rows than were requested.
+ */
+public class PagedList<T> extends AbstractList<T> {
+
+    /**
+     * Fetches one page of items. Called on the background executor.
+     */
+    public interface PageSource<T> {
+        /**
+         * @param offset of the first item to fetch, counting from 0
+         * @param count  of items to fetch
+         * @return the items, or null if they could not be fetched
+         */
+        List<T> loadPage(int offset, int count);
+
+        /**
+         * @return what tells the item apart from the others across pages, or null if nothing
+         * does.
+         */
+        Object getKey(T item);
+    }
+
+    /**
+     * Told whenever rows were added, loaded or dropped. Called on the main executor.
+     */
+    public interface Listener {
+        void onPagedListChanged();
+    }
+
+    private final PageSource<T> source;
+    private final int pageSize;
+    private final int maxPages;
+    private final int prefetchDistance;
+
+    /* The most items this list will ever hold. */
+    private final int totalLimit;
+
+    private final Executor backgroundExecutor;
+    private final Executor mainExecutor;
+    private final Listener listener;
+
+    private final Map<Integer, List<T>> pages = new HashMap<>();
+    private final Set<Integer> loadingPages = new HashSet<>();
+
+    /* Position after the last row of every page loaded so far, including dropped ones. A page
+     * keeps the rows it first had when it is reloaded, so positions don't move. */
+    private int[] pageEnds = new int[16];
+    private int pageCount;
+
+    /* Number of rows known so far, including the rows of dropped pages. */
+    private int size;
+
+    /* Set once a short page has been returned, or the total limit has been reached. */
+    private boolean endReached;
+
+    /* Page the user looked at last, used to decide which pages are far away. */
+    private int anchorPage;
+
+    private boolean detached;
+
+    /**
+     * @param firstPage        the items at offset 0, usually already loaded
+     * @param pageSize         number of items per request
+     * @param maxPages         number of pages kept in memory
+     * @param prefetchDistance how close to the end (in rows) the next page is requested
+     * @param totalLimit       the most items to fetch in total
+     */
+    public PagedList(List<T> firstPage, PageSource<T> source, int pageSize, int maxPages,
+                     int prefetchDistance, int totalLimit, Executor backgroundExecutor,
+                     Executor mainExecutor, Listener listener) {
+        this.source = source;
+        this.pageSize = pageSize;
+        this.maxPages = Math.max(maxPages, 2);
+        this.prefetchDistance = prefetchDistance;
+        this.totalLimit = totalLimit;
+        this.backgroundExecutor = backgroundExecutor;
+        this.mainExecutor = mainExecutor;
+        this.listener = listener;
+
+        onPageLoaded(0, firstPage);
+    }
+
+    /**
+     * @return the item at the position, or null if its page is not in memory.
+     */
+    @Override
+    public T get(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("position " + position + ", size " + size);
+        }
+        return getRow(pages, pageEnds, pageCount, position);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return an immutable copy of the list as it is now, cheap to take because only the page
+     * references are copied. Used to hand the list to code that diffs old against new.
+     */
+    public List<T> snapshot() {
+        final Map<Integer, List<T>> pagesCopy = new HashMap<>(pages);
+        final int[] pageEndsCopy = Arrays.copyOf(pageEnds, pageCount);
+        final int sizeCopy = size;
+        return new AbstractList<T>() {
+            @Override
+            public T get(int position) {
+                if (position < 0 || position >= sizeCopy) {
+                    throw new IndexOutOfBoundsException(
+                            "position " + position + ", size " + sizeCopy);
+                }
+                return getRow(pagesCopy, pageEndsCopy, pageEndsCopy.length, position);
+            }
+
+            @Override
+            public int size() {
+                return sizeCopy;
+            }
+        };
+    }
+
+    public boolean isEndReached() {
+        return endReached;
+    }
+
+    /**
+     * Tell the list which rows are on screen. Loads their pages if they were dropped, and the
+     * next page if the last visible row is within the prefetch distance of the end.
+     */
+    public void onRowsVisible(int firstPosition, int lastPosition) {
+        if (size == 0) {
+            return;
+        }
+        firstPosition = Math.max(0, Math.min(firstPosition, size - 1));
+        lastPosition = Math.max(firstPosition, Math.min(lastPosition, size - 1));
+
+        anchorPage = pageOf(pageEnds, pageCount, firstPosition);
+        int lastPage = pageOf(pageEnds, pageCount, lastPosition);
+        for (int page = anchorPage; page <= lastPage; page++) {
+            loadPage(page);
+        }
+
+        if (!endReached && lastPosition >= size - prefetchDistance) {
+            loadPage(pageCount);
+        }
+    }
+
+    /**
+     * Stop delivering pages. Fetches that are already running are ignored when they finish.
+     */
+    public void detach() {
+        detached = true;
+    }
+
+    private void loadPage(final int pageIndex) {
+        if (pages.containsKey(pageIndex) || loadingPages.contains(pageIndex) || detached) {
+            return;
+        }
+
+        final int offset = pageIndex * pageSize;
+        final int count = Math.min(pageSize, totalLimit - offset);
+        if (count <= 0) {
+            return;
+        }
+
+        loadingPages.add(pageIndex);
+        backgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<T> page = source.loadPage(offset, count);
+                mainExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        loadingPages.remove(pageIndex);
+                        if (page != null && !detached) {
+                            onPageLoaded(pageIndex, page);
+                            listener.onPagedListChanged();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private void onPageLoaded(int pageIndex, List<T> page) {
+        // A page can't come after pages that aren't known to exist.
+        if (pageIndex > pageCount) {
+            return;
+        }
+
+        List<T> rows = withoutLoadedItems(pageIndex, page);
+        pages.put(pageIndex, rows);
+
+        boolean skipped = false;
+        if (pageIndex == pageCount) {
+            if (pageCount == pageEnds.length) {
+                pageEnds = Arrays.copyOf(pageEnds, pageCount * 2);
+            }
+            size += rows.size();
+            pageEnds[pageCount++] = size;
+            endReached = page.size() < pageSize || pageCount * pageSize >= totalLimit;
+            skipped = rows.isEmpty() && !endReached;
+        }
+
+        dropFarPages();
+
+        if (skipped) {
+            // Every item was a repeat, so no row is near the end to ask for the next page.
+            loadPage(pageCount);
+        }
+    }
+
+    /**
+     * @return the page without the items whose key is in another loaded page, or the page
+     * itself if it has none of them.
+     */
+    private List<T> withoutLoadedItems(int pageIndex, List<T> page) {
+        Set<Object> loadedKeys = new HashSet<>();
+        for (Map.Entry<Integer, List<T>> entry : pages.entrySet()) {
+            if (entry.getKey() != pageIndex) {
+                for (T item : entry.getValue()) {
+                    Object key = source.getKey(item);
+                    if (key != null) {
+                        loadedKeys.add(key);
+                    }
+                }
+            }
+        }
+
+        List<T> rows = null;
+        for (int i = 0; i < page.size(); i++) {
+            T item = page.get(i);
+            Object key = source.getKey(item);
+            boolean loaded = key != null && loadedKeys.contains(key);
+            if (loaded && rows == null) {
+                rows = new ArrayList<>(page.subList(0, i));
+            } else if (!loaded && rows != null) {
+                rows.add(item);
+            }
+        }
+        return rows == null ? page : rows;
+    }
+
+    private static <T> T getRow(Map<Integer, List<T>> pages, int[] pageEnds, int pageCount,
+                                int position) {
+        int pageIndex = pageOf(pageEnds, pageCount, position);
+        List<T> page = pages.get(pageIndex);
+        int index = pageIndex == 0 ? position : position - pageEnds[pageIndex - 1];
+        return page == null || index >= page.size() ? null : page.get(index);
+    }
+
+    /**
+     * @return the index of the page holding the row at the position.
+     */
+    private static int pageOf(int[] pageEnds, int pageCount, int position) {
+        int low = 0;
+        int high = pageCount - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (pageEnds[middle] <= position) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Drop the pages furthest from the anchor until the window fits.
+     */
+    private void dropFarPages() {
+        while (pages.size() > maxPages) {
+            int farthest = -1;
+            int farthestDistance = -1;
+            for (int page : pages.keySet()) {
+                int distance = Math.abs(page - anchorPage);
+                if (distance > farthestDistance) {
+                    farthest = page;
+                    farthestDistance = distance;
+                }
+            }
+            pages.remove(farthest);
+        }
+    }
+}
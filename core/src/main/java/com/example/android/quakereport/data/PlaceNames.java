@@ -0,0 +1,118 @@
+package com.example.android.quakereport.data;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Takes apart the place names USGS gives its events, e.g. "10km NNE of Ridgecrest, CA" or
+ * "south of the Fiji Islands".
+ */
+public final class PlaceNames {
+
+    // Location offset and primary location separator.
+    public static final String LOCATION_SEPARATOR = " of ";
+
+    /* The US states and territories USGS abbreviates, and Mexico. */
+    private static final String[] ABBREVIATIONS = {
+            "AK", "Alaska", "AL", "Alabama", "AR", "Arkansas", "AZ", "Arizona",
+            "CA", "California", "CO", "Colorado", "CT", "Connecticut", "DE", "Delaware",
+            "FL", "Florida", "GA", "Georgia", "HI", "Hawaii", "IA", "Iowa", "ID", "Idaho",
+            "IL", "Illinois", "IN", "Indiana", "KS", "Kansas", "KY", "Kentucky",
+            "LA", "Louisiana", "MA", "Massachusetts", "MD", "Maryland", "ME", "Maine",
+            "MI", "Michigan", "MN", "Minnesota", "MO", "Missouri", "MS", "Mississippi",
+            "MT", "Montana", "NC", "North Carolina", "ND", "North Dakota", "NE", "Nebraska",
+            "NH", "New Hampshire", "NJ", "New Jersey", "NM", "New Mexico", "NV", "Nevada",
+            "NY", "New York", "OH", "Ohio", "OK", "Oklahoma", "OR", "Oregon",
+            "PA", "Pennsylvania", "PR", "Puerto Rico", "RI", "Rhode Island",
+            "SC", "South Carolina", "SD", "South Dakota", "TN", "Tennessee", "TX", "Texas",
+            "UT", "Utah", "VA", "Virginia", "VT", "Vermont", "WA", "Washington",
+            "WI", "Wisconsin", "WV", "West Virginia", "WY", "Wyoming", "MX", "Mexico"
+    };
+
+    private static final Map<String, String> NAME_BY_ABBREVIATION = new HashMap<>();
+    private static final Set<String> NAMES = new HashSet<>();
+
+    static {
+        for (int i = 0; i < ABBREVIATIONS.length; i += 2) {
+            NAME_BY_ABBREVIATION.put(ABBREVIATIONS[i], ABBREVIATIONS[i + 1]);
+            NAMES.add(ABBREVIATIONS[i + 1]);
+        }
+    }
+
+    /* Prefixes of the parts of a state, e.g. "offshore Northern California". */
+    private static final String[] PARTS = {
+            "central ", "northern ", "southern ", "eastern ", "western ", "offshore "
+    };
+
+    private PlaceNames() {
+    }
+
+    /**
+     * @return where the primary location starts in the place, after the offset in front of
+     * it, or 0 if the place has no offset.
+     */
+    public static int primaryLocationStart(String place) {
+        int separatorIndex = place.indexOf(LOCATION_SEPARATOR);
+        return separatorIndex < 0 ? 0 : separatorIndex + LOCATION_SEPARATOR.length();
+    }
+
+    /**
+     * Find the region of a place: the last part of its primary location, spelled out, so that
+     * "10km NNE of Ridgecrest, CA", "Central California" and "5km W of Cobb, California" are
+     * all in "California" and "south of the Fiji Islands" and "Fiji Islands region" in
+     * "Fiji Islands".
+     *
+     * @return the region, or "" if the place is empty.
+     */
+    public static String region(String place) {
+        if (place == null) {
+            return "";
+        }
+
+        String region = place.substring(primaryLocationStart(place));
+        int comma = region.lastIndexOf(',');
+        if (comma >= 0) {
+            region = region.substring(comma + 1);
+        }
+        region = region.trim().replaceAll("\\s+", " ");
+        region = removePrefix(region, "the ");
+        if (region.toLowerCase(Locale.US).endsWith(" region")) {
+            region = region.substring(0, region.length() - " region".length());
+        }
+
+        String name = NAME_BY_ABBREVIATION.get(region);
+        if (name != null) {
+            return name;
+        }
+        // "Central California" and the like are in the state they name.
+        String state = region;
+        for (int i = 0; i < PARTS.length; i++) {
+            String rest = removePrefix(state, PARTS[i]);
+            if (rest != state) {
+                state = rest;
+                i = -1;
+            }
+        }
+        if (NAMES.contains(state)) {
+            return state;
+        }
+        if (!region.isEmpty() && Character.isLowerCase(region.charAt(0))) {
+            region = Character.toUpperCase(region.charAt(0)) + region.substring(1);
+        }
+        return region;
+    }
+
+    /**
+     * @return the text without the prefix, ignoring case, or the same instance if it doesn't
+     * start with it.
+     */
+    private static String removePrefix(String text, String prefix) {
+        if (text.regionMatches(true, 0, prefix, 0, prefix.length())) {
+            return text.substring(prefix.length());
+        }
+        return text;
+    }
+}
@@ -0,0 +1,289 @@
+package com.example.android.quakereport.data;
+
+import java.util.Arrays;
+
+/**
+ * A prefix index over the words of the place strings of an {@link EarthquakeCatalog}, for
+ * searching the places as the user types.
+ * <p>
+ * The words of every place, its runs of letters and digits, are kept lower-cased in one sorted
+ * array, each with the codes of the places it appears in. The words starting with a prefix are
+ * then a contiguous range of the array that two binary searches find, without looking at the
+ * places themselves. The catalog dictionary-encodes its places, so the index grows with the
+ * distinct places rather than the events, and only places added since the last
+ * {@link #update()} are indexed.
+ * <p>
+ * Finding the places allocates nothing: the query is read in place and the matches are marked in
+ * the caller's {@link Matches}, which are reused from one search to the next.
+ * <p>
+ * The index is not thread-safe while it is updated. A {@link #copy()} that is no longer updated
+ * can be searched by any number of threads at once, each with its own {@link Matches}.
+ */
+public class PlaceSearchIndex {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final EarthquakeCatalog catalog;
+
+    /* Place codes below this one are indexed. */
+    private int indexedPlaces;
+
+    /* Distinct lower-cased words in ascending order, and the codes of the places each one
+     * appears in, in ascending order. */
+    private String[] words = new String[INITIAL_CAPACITY];
+    private int[][] postings = new int[INITIAL_CAPACITY][];
+    private int[] postingCounts = new int[INITIAL_CAPACITY];
+    private int wordCount;
+
+    /* Set while a copy may read the arrays above, so the next update shifts words in new ones.
+     * The postings of a word are only ever appended to, past the count a copy reads up to, so
+     * they are shared for good. */
+    private boolean shared;
+
+    public PlaceSearchIndex(EarthquakeCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    /**
+     * @return an index of the places indexed so far, which later updates of this one don't
+     * change. The copy shares the arrays of this index, which copies the word arrays the next
+     * time it indexes new places.
+     */
+    public PlaceSearchIndex copy() {
+        PlaceSearchIndex copy = new PlaceSearchIndex(catalog);
+        copy.indexedPlaces = indexedPlaces;
+        copy.wordCount = wordCount;
+        copy.words = words;
+        copy.postings = postings;
+        copy.postingCounts = postingCounts;
+        copy.shared = true;
+        shared = true;
+        return copy;
+    }
+
+    /**
+     * Index the places the catalog gained since the last update. Call it after every merge into
+     * the catalog.
+     */
+    public void update() {
+        int placeCount = catalog.getPlaceCount();
+        if (indexedPlaces == placeCount) {
+            return;
+        }
+        if (shared) {
+            words = words.clone();
+            postings = postings.clone();
+            postingCounts = postingCounts.clone();
+            shared = false;
+        }
+
+        StringBuilder word = new StringBuilder();
+        for (; indexedPlaces < placeCount; indexedPlaces++) {
+            String place = catalog.getPlaceName(indexedPlaces);
+            for (int i = 0; i <= place.length(); i++) {
+                char c = i < place.length() ? place.charAt(i) : ' ';
+                if (Character.isLetterOrDigit(c)) {
+                    word.append(Character.toLowerCase(c));
+                } else if (word.length() > 0) {
+                    add(word.toString(), indexedPlaces);
+                    word.setLength(0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the places that have a word starting with every word of the text, ignoring case. The
+     * words of the text are split like those of the places, so "ridge ca" finds
+     * "10km NNE of Ridgecrest, CA". Check the places with {@link Matches#isMatch(int)}.
+     */
+    public void find(String text, Matches matches) {
+        matches.start(indexedPlaces);
+
+        int length = text.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            if (i < length && Character.isLetterOrDigit(text.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                markWord(text, start, i, matches);
+                start = -1;
+                if (matches.count == 0) {
+                    // No place has all the words so far; the rest can't change that.
+                    return;
+                }
+            }
+        }
+        if (matches.queryWordCount == 0) {
+            matches.count = indexedPlaces;
+        }
+    }
+
+    /**
+     * @return the number of places indexed so far.
+     */
+    public int getPlaceCount() {
+        return indexedPlaces;
+    }
+
+    public int getWordCount() {
+        return wordCount;
+    }
+
+    /**
+     * Count the query word text[from, to) for every place with a word starting with it.
+     */
+    private void markWord(String text, int from, int to, Matches matches) {
+        int first = lowerBound(text, from, to, false);
+        int last = lowerBound(text, from, to, true);
+        int previousWords = matches.queryWordCount++;
+        int[] stamps = matches.stamps;
+        int[] hits = matches.hits;
+        int generation = matches.generation;
+
+        int count = 0;
+        for (int w = first; w < last; w++) {
+            int[] places = postings[w];
+            for (int p = 0, postingCount = postingCounts[w]; p < postingCount; p++) {
+                int place = places[p];
+                if (previousWords == 0) {
+                    if (stamps[place] != generation) {
+                        stamps[place] = generation;
+                        hits[place] = 1;
+                        count++;
+                    }
+                } else if (stamps[place] == generation && hits[place] == previousWords) {
+                    // Several words of the place may start with the query word; count it once.
+                    hits[place] = previousWords + 1;
+                    count++;
+                }
+            }
+        }
+        matches.count = count;
+    }
+
+    /**
+     * Binary search for the first word that is not below the prefix text[from, to), or with
+     * past set, the first word above every word starting with it.
+     */
+    private int lowerBound(String text, int from, int to, boolean past) {
+        int low = 0;
+        int high = wordCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int comparison = comparePrefix(words[middle], text, from, to);
+            if (comparison < 0 || (past && comparison == 0)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compare the word with the lower-cased prefix text[from, to).
+     *
+     * @return 0 if the word starts with the prefix, otherwise the sign of the word's order
+     * relative to it.
+     */
+    private static int comparePrefix(String word, String text, int from, int to) {
+        int length = Math.min(word.length(), to - from);
+        for (int i = 0; i < length; i++) {
+            int difference = word.charAt(i) - Character.toLowerCase(text.charAt(from + i));
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return word.length() < to - from ? -1 : 0;
+    }
+
+    private void add(String word, int placeCode) {
+        int index = Arrays.binarySearch(words, 0, wordCount, word);
+        if (index < 0) {
+            index = -index - 1;
+            if (wordCount == words.length) {
+                words = Arrays.copyOf(words, wordCount * 2);
+                postings = Arrays.copyOf(postings, wordCount * 2);
+                postingCounts = Arrays.copyOf(postingCounts, wordCount * 2);
+            }
+            System.arraycopy(words, index, words, index + 1, wordCount - index);
+            System.arraycopy(postings, index, postings, index + 1, wordCount - index);
+            System.arraycopy(postingCounts, index, postingCounts, index + 1, wordCount - index);
+            words[index] = word;
+            postings[index] = new int[2];
+            postingCounts[index] = 0;
+            wordCount++;
+        }
+
+        // Places are indexed in code order, so a place repeating a word is the last one listed.
+        int count = postingCounts[index];
+        int[] places = postings[index];
+        if (count > 0 && places[count - 1] == placeCode) {
+            return;
+        }
+        if (count == places.length) {
+            places = Arrays.copyOf(places, count * 2);
+            postings[index] = places;
+        }
+        places[count] = placeCode;
+        postingCounts[index] = count + 1;
+    }
+
+    /**
+     * The places a {@link #find} matched, kept by the caller from one search to the next. They
+     * are not thread-safe.
+     */
+    public static final class Matches {
+
+        /* A place matches when its stamp is the search's generation and it had a word for every
+         * query word. */
+        private int[] stamps = new int[INITIAL_CAPACITY];
+        private int[] hits = new int[INITIAL_CAPACITY];
+        private int generation;
+        private int queryWordCount;
+        private int count;
+
+        /* Number of places the index searched had. */
+        private int placeCount;
+
+        /**
+         * @return true if the place with the code matched, which every place does when the
+         * text had no words.
+         */
+        public boolean isMatch(int placeCode) {
+            if (queryWordCount == 0) {
+                return true;
+            }
+            return placeCode < placeCount && stamps[placeCode] == generation
+                    && hits[placeCode] == queryWordCount;
+        }
+
+        /**
+         * @return the number of places that matched.
+         */
+        public int getCount() {
+            return count;
+        }
+
+        private void start(int placeCount) {
+            if (placeCount > stamps.length) {
+                int capacity = Math.max(placeCount, stamps.length * 2);
+                stamps = Arrays.copyOf(stamps, capacity);
+                hits = Arrays.copyOf(hits, capacity);
+            }
+            this.placeCount = placeCount;
+
+            generation++;
+            if (generation == 0) {
+                // Wrapped around, so old stamps could pass for new ones.
+                Arrays.fill(stamps, 0);
+                generation = 1;
+            }
+            queryWordCount = 0;
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.android.quakereport.sync;
+
+import com.example.android.quakereport.data.Earthquake;
+import com.example.android.quakereport.utils.FetchCancellation;
+import com.example.android.quakereport.utils.QueryUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls one of the small USGS summary feeds, such as {@link #ALL_HOUR_FEED_URL}, and merges
+ * what changed into an {@link EventStore}.
+ * <p>
+ * A feed that hasn't changed since the last poll costs one conditional request and no parsing,
+ * through the response cache. Of a changed feed only the events that are new or carry a newer
+ * revision than the stored one are merged. Those that reach the notification magnitude for the
+ * first time are reported as significant.
+ */
+public class FeedPoller {
+
+    /* All earthquakes of the past hour, refreshed by USGS every minute. */
+    public static final String ALL_HOUR_FEED_URL =
+            "https://earthquake.usgs.gov/earthquakes/feed/v1.0/summary/all_hour.geojson";
+
+    /* The feed is regenerated every minute; polling faster can't find anything new. */
+    public static final long MIN_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+    /* The longest a quiet feed goes unpolled. */
+    public static final long MAX_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Where polled events are kept.
+     */
+    public interface EventStore {
+
+        /**
+         * @return the stored events with the ids, by id. Unknown ids are left out.
+         */
+        Map<String, Earthquake> getByIds(List<String> ids);
+
+        void upsert(List<Earthquake> earthquakes);
+    }
+
+    private final String feedUrl;
+
+    private final EventStore eventStore;
+
+    private final double notifyMagnitude;
+
+    /**
+     * @param notifyMagnitude events at or above it are reported as significant
+     */
+    public FeedPoller(String feedUrl, EventStore eventStore, double notifyMagnitude) {
+        this.feedUrl = feedUrl;
+        this.eventStore = eventStore;
+        this.notifyMagnitude = notifyMagnitude;
+    }
+
+    /**
+     * Fetch the feed once and merge its changes.
+     *
+     * @return what changed, or null if the feed couldn't be fetched.
+     */
+    public Result poll() {
+        return poll(null);
+    }
+
+    /**
+     * Like {@link #poll()}, aborting the fetch when the cancellation is cancelled.
+     *
+     * @param cancellation of the run, or null
+     * @return what changed, or null if the feed couldn't be fetched or the poll was cancelled.
+     */
+    public Result poll(FetchCancellation cancellation) {
+        List<Earthquake> feedEarthquakes =
+                QueryUtils.fetchEarthquakeChanges(feedUrl, cancellation, null);
+        if (feedEarthquakes == null || (cancellation != null && cancellation.isCancelled())) {
+            return null;
+        }
+        if (feedEarthquakes.isEmpty()) {
+            return new Result(Collections.<Earthquake>emptyList(),
+                    Collections.<Earthquake>emptyList());
+        }
+
+        List<String> ids = new ArrayList<>(feedEarthquakes.size());
+        for (Earthquake earthquake : feedEarthquakes) {
+            if (earthquake.getId() != null) {
+                ids.add(earthquake.getId());
+            }
+        }
+        Map<String, Earthquake> stored = eventStore.getByIds(ids);
+
+        List<Earthquake> changed = new ArrayList<>();
+        List<Earthquake> significant = new ArrayList<>();
+        for (Earthquake earthquake : feedEarthquakes) {
+            if (earthquake.getId() == null) {
+                continue;
+            }
+
+            Earthquake previous = stored.get(earthquake.getId());
+            if (previous != null && previous.getUpdated() >= earthquake.getUpdated()) {
+                continue;
+            }
+            changed.add(earthquake);
+
+            // A revision only notifies if it is what lifted the event over the magnitude.
+            if (earthquake.getMagnitude() >= notifyMagnitude
+                    && (previous == null || previous.getMagnitude() < notifyMagnitude)) {
+                significant.add(earthquake);
+            }
+        }
+
+        if (!changed.isEmpty()) {
+            eventStore.upsert(changed);
+        }
+        return new Result(changed, significant);
+    }
+
+    /**
+     * Pick the delay before the next poll: back to the minimum as soon as the feed changes, and
+     * twice as long, up to the maximum, every time it doesn't.
+     */
+    public static long nextInterval(long currentMillis, boolean feedChanged, long minMillis,
+                                    long maxMillis) {
+        if (feedChanged) {
+            return minMillis;
+        }
+        return Math.max(minMillis, Math.min(maxMillis, currentMillis * 2));
+    }
+
+    /**
+     * The outcome of one poll.
+     */
+    public static final class Result {
+        private final List<Earthquake> changed;
+        private final List<Earthquake> significant;
+
+        Result(List<Earthquake> changed, List<Earthquake> significant) {
+            this.changed = changed;
+            this.significant = significant;
+        }
+
+        /**
+         * @return the new and revised events that were merged.
+         */
+        public List<Earthquake> getChanged() {
+            return changed;
+        }
+
+        /**
+         * @return the merged events to notify about.
+         */
+        public List<Earthquake> getSignificant() {
+            return significant;
+        }
+
+        public boolean isFeedChanged() {
+            return !changed.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package com.example.android.quakereport.utils;
+
+import com.example.android.quakereport.data.Earthquake;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/**
+ * The delimited formats of the FDSN event service: "csv", with a header row, comma separated and
+ * quoted where needed, and "text", pipe separated with a header row starting with '#'.
+ * <p>
+ * Columns are found by their header names, so their order doesn't matter. Only the values an
+ * {@link Earthquake} needs are turned into strings, the rest of each row is skipped.
+ */
+final class DelimitedEarthquakeFormat implements EarthquakeFormat {
+
+    private static final int ID = 0;
+    private static final int TIME = 1;
+    private static final int UPDATED = 2;
+    private static final int LATITUDE = 3;
+    private static final int LONGITUDE = 4;
+    private static final int DEPTH = 5;
+    private static final int MAGNITUDE = 6;
+    private static final int PLACE = 7;
+    private static final int FIELD_COUNT = 8;
+
+    /* Not a column this parser reads. */
+    private static final int SKIPPED = -1;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final String name;
+
+    private final char delimiter;
+
+    /* True if values may be enclosed in double quotes, with "" for a quote inside them. */
+    private final boolean quoted;
+
+    private final boolean hasUpdatedTimes;
+
+    DelimitedEarthquakeFormat(String name, char delimiter, boolean quoted,
+                              boolean hasUpdatedTimes) {
+        this.name = name;
+        this.delimiter = delimiter;
+        this.quoted = quoted;
+        this.hasUpdatedTimes = hasUpdatedTimes;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean hasUpdatedTimes() {
+        return hasUpdatedTimes;
+    }
+
+    @Override
+    public int parse(InputStream inputStream, EarthquakeStreamParser.Callback callback)
+            throws IOException {
+        RowReader rows =
+                new RowReader(new InputStreamReader(inputStream, Charset.forName("UTF-8")));
+
+        int[] fieldOfColumn = null;
+        String[] values = new String[FIELD_COUNT];
+        int count = 0;
+        while (rows.next()) {
+            if (fieldOfColumn == null) {
+                fieldOfColumn = readHeader(rows);
+                continue;
+            }
+            if (rows.isComment()) {
+                continue;
+            }
+
+            for (int field = 0; field < FIELD_COUNT; field++) {
+                values[field] = null;
+            }
+            for (int column = 0; rows.hasNextValue(); column++) {
+                int field = column < fieldOfColumn.length ? fieldOfColumn[column] : SKIPPED;
+                if (field == SKIPPED) {
+                    rows.skipValue();
+                } else {
+                    values[field] = rows.nextValue();
+                }
+            }
+            if (isBlank(values[ID]) && isBlank(values[TIME])) {
+                // Not an event, e.g. a row of whitespace.
+                continue;
+            }
+
+            callback.onEarthquake(toEarthquake(values));
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return the field read from every column, by column.
+     */
+    private int[] readHeader(RowReader rows) throws IOException {
+        int[] fieldOfColumn = new int[32];
+        int column = 0;
+        while (rows.hasNextValue()) {
+            String header = rows.nextValue().trim().toLowerCase(Locale.US);
+            if (column == 0 && header.startsWith("#")) {
+                header = header.substring(1).trim();
+            }
+            if (column == fieldOfColumn.length) {
+                int[] grown = new int[column * 2];
+                System.arraycopy(fieldOfColumn, 0, grown, 0, column);
+                fieldOfColumn = grown;
+            }
+            fieldOfColumn[column++] = fieldOf(header);
+        }
+        int[] header = new int[column];
+        System.arraycopy(fieldOfColumn, 0, header, 0, column);
+        return header;
+    }
+
+    /**
+     * Map the column names of both formats to fields.
+     */
+    private static int fieldOf(String header) {
+        switch (header) {
+            case "id":
+            case "eventid":
+                return ID;
+            case "time":
+                return TIME;
+            case "updated":
+                return UPDATED;
+            case "latitude":
+                return LATITUDE;
+            case "longitude":
+                return LONGITUDE;
+            case "depth":
+            case "depth/km":
+                return DEPTH;
+            case "mag":
+            case "magnitude":
+                return MAGNITUDE;
+            case "place":
+            case "eventlocationname":
+                return PLACE;
+            default:
+                return SKIPPED;
+        }
+    }
+
+    /**
+     * Missing values get the same defaults as a null in GeoJSON.
+     */
+    private static Earthquake toEarthquake(String[] values) {
+        String id = emptyToNull(values[ID]);
+        String place = values[PLACE] == null ? "" : values[PLACE];
+        return new Earthquake(id,
+                parseDouble(values[MAGNITUDE], Double.NaN),
+                place,
+                parseIsoTime(values[TIME]),
+                parseIsoTime(values[UPDATED]),
+                id == null ? "" : Earthquake.eventPageUrl(id),
+                parseDouble(values[LONGITUDE], Double.NaN),
+                parseDouble(values[LATITUDE], Double.NaN),
+                parseDouble(values[DEPTH], Double.NaN));
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    private static double parseDouble(String value, double missing) {
+        if (value == null || value.isEmpty()) {
+            return missing;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return missing;
+        }
+    }
+
+    /**
+     * Parse a UTC time like 2020-09-13T12:34:56.789Z, with or without the fraction and the Z,
+     * much faster than SimpleDateFormat would.
+     *
+     * @return the time in milliseconds since the epoch, or 0 if the value is missing or not a
+     * time.
+     */
+    static long parseIsoTime(String value) {
+        if (value == null || value.length() < 19 || value.charAt(4) != '-'
+                || value.charAt(7) != '-' || value.charAt(13) != ':' || value.charAt(16) != ':') {
+            return 0;
+        }
+        try {
+            int year = Integer.parseInt(value.substring(0, 4));
+            int month = Integer.parseInt(value.substring(5, 7));
+            int day = Integer.parseInt(value.substring(8, 10));
+            int hour = Integer.parseInt(value.substring(11, 13));
+            int minute = Integer.parseInt(value.substring(14, 16));
+            int second = Integer.parseInt(value.substring(17, 19));
+
+            int millis = 0;
+            if (value.length() > 20 && value.charAt(19) == '.') {
+                int scale = 100;
+                for (int i = 20; i < value.length() && i < 23; i++) {
+                    char c = value.charAt(i);
+                    if (c < '0' || c > '9') {
+                        break;
+                    }
+                    millis += (c - '0') * scale;
+                    scale /= 10;
+                }
+            }
+
+            long days = daysFromCivil(year, month, day);
+            return (((days * 24 + hour) * 60 + minute) * 60 + second) * 1000 + millis;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return the days from 1970-01-01 to the date in the proleptic Gregorian calendar.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        // Counts from March so that the leap day is the last day of the year.
+        int y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Reads the values of one row after the other, without building the rows.
+     */
+    private final class RowReader {
+
+        private final Reader reader;
+
+        /* Read in blocks, since Reader.read() of a single char is a call and a lock each. */
+        private final char[] buffer = new char[BUFFER_SIZE];
+        private int pos;
+        private int limit;
+
+        private final StringBuilder value = new StringBuilder();
+
+        /* The next character, or -1 at the end of the input. */
+        private int next;
+
+        /* True until the last value of the current row has been read. */
+        private boolean inRow;
+
+        private boolean comment;
+
+        RowReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * Move to the next row, skipping what is left of the current one.
+         *
+         * @return false at the end of the input.
+         */
+        boolean next() throws IOException {
+            while (inRow) {
+                skipValue();
+            }
+            next = read();
+            // A byte order mark, only ever at the start.
+            if (next == '\uFEFF') {
+                next = read();
+            }
+            while (next == '\r' || next == '\n') {
+                next = read();
+            }
+            if (next < 0) {
+                return false;
+            }
+            comment = next == '#';
+            inRow = true;
+            return true;
+        }
+
+        boolean isComment() {
+            return comment;
+        }
+
+        boolean hasNextValue() {
+            return inRow;
+        }
+
+        String nextValue() throws IOException {
+            value.setLength(0);
+            readValue(value);
+            return value.toString();
+        }
+
+        void skipValue() throws IOException {
+            readValue(null);
+        }
+
+        /**
+         * Read the value up to the next delimiter or the end of the row into the builder, or
+         * drop it if there is no builder.
+         */
+        private void readValue(StringBuilder out) throws IOException {
+            boolean inQuotes = false;
+            while (true) {
+                if (next < 0) {
+                    inRow = false;
+                    return;
+                }
+                char c = (char) next;
+                if (inQuotes) {
+                    next = read();
+                    if (c != '"') {
+                        append(out, c);
+                    } else if (next == '"') {
+                        append(out, '"');
+                        next = read();
+                    } else {
+                        inQuotes = false;
+                    }
+                } else if (c == delimiter) {
+                    next = read();
+                    return;
+                } else if (c == '\n' || c == '\r') {
+                    inRow = false;
+                    return;
+                } else {
+                    next = read();
+                    if (c == '"' && quoted) {
+                        inQuotes = true;
+                    } else {
+                        append(out, c);
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return the next character of the input, or -1 at its end.
+         */
+        private int read() throws IOException {
+            if (pos == limit) {
+                int read;
+                do {
+                    read = reader.read(buffer, 0, buffer.length);
+                } while (read == 0);
+                if (read < 0) {
+                    return -1;
+                }
+                pos = 0;
+                limit = read;
+            }
+            return buffer[pos++];
+        }
+
+        private void append(StringBuilder out, char c) {
+            if (out != null) {
+                out.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.android.quakereport.utils;
+
+import com.example.android.quakereport.data.Earthquake;
+import com.example.android.quakereport.data.EarthquakeDetail;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Keeps the details of recently seen earthquakes in a small LRU {@link ResultCache}, so that
+ * opening one is usually instant.
+ * <p>
+ * The list reports its visible rows with {@link #onRowsVisible}. Once scrolling settles the
+ * details of those rows are fetched in the {@link TaskScheduler.Lane#PREFETCH} lane, the top
+ * rows first, and prefetches of rows that have been scrolled away are cancelled, whether they
+ * are still queued or already downloading. {@link #load} shares a prefetch of the same event
+ * that is already running instead of fetching it a second time.
+ */
+public final class DetailPrefetcher {
+
+    /**
+     * Fetches the detail of an event.
+     */
+    public interface DetailSource {
+        /**
+         * @return the detail, or null if it could not be fetched.
+         * @throws InterruptedIOException if the fetch was cancelled.
+         */
+        EarthquakeDetail fetch(String detailUrl, FetchCancellation cancellation)
+                throws IOException;
+    }
+
+    /* Details are small once parsed, these cover a few screens of rows. */
+    private static final int MAX_ENTRIES = 64;
+
+    /* Felt reports keep coming in for a while, so details are fetched again after this. */
+    private static final long TTL_MILLIS = 10 * 60 * 1000;
+
+    private static final Metrics METRICS = Metrics.getInstance();
+    private static final Metrics.Counter PREFETCHES = METRICS.counter("detail.prefetches");
+    private static final Metrics.Counter CANCELLED = METRICS.counter("detail.cancelled");
+    private static final Metrics.Counter OPENED_CACHED = METRICS.counter("detail.open.cached");
+    private static final Metrics.Counter OPENED_FETCHED = METRICS.counter("detail.open.fetched");
+
+    private static DetailPrefetcher instance;
+
+    private final DetailSource source;
+
+    private final TaskScheduler scheduler;
+
+    private final ResultCache<EarthquakeDetail> cache;
+
+    /* Prefetches that are queued or running, by detail URL, in the order they were started.
+     * Guarded by this. */
+    private final Map<String, Prefetch> prefetches = new LinkedHashMap<>();
+
+    /**
+     * @param scheduler runs the prefetches in its prefetch lane
+     */
+    public DetailPrefetcher(DetailSource source, TaskScheduler scheduler, int maxEntries,
+                            long ttlMillis) {
+        this.source = source;
+        this.scheduler = scheduler;
+        this.cache = new ResultCache<>(maxEntries, ttlMillis);
+    }
+
+    /**
+     * @return the prefetcher shared by the app, fetching through {@link QueryUtils}.
+     */
+    public static synchronized DetailPrefetcher getInstance() {
+        if (instance == null) {
+            DetailSource source = new DetailSource() {
+                @Override
+                public EarthquakeDetail fetch(String detailUrl, FetchCancellation cancellation)
+                        throws IOException {
+                    return QueryUtils.fetchEarthquakeDetail(detailUrl, cancellation);
+                }
+            };
+            instance = new DetailPrefetcher(source, TaskScheduler.getInstance(), MAX_ENTRIES,
+                    TTL_MILLIS);
+        }
+        return instance;
+    }
+
+    /**
+     * @return the fresh cached detail of the earthquake, or null if there is none.
+     */
+    public EarthquakeDetail getCached(Earthquake earthquake) {
+        String detailUrl = earthquake.getDetailUrl();
+        if (detailUrl == null) {
+            return null;
+        }
+        ResultCache.Entry<EarthquakeDetail> entry = cache.get(detailUrl);
+        if (entry == null || !cache.isFresh(entry, System.currentTimeMillis())) {
+            return null;
+        }
+        return entry.getValue();
+    }
+
+    /**
+     * Return the detail of the earthquake, from the cache, from a prefetch of it that is
+     * running, or fetched right here. Call it on a background thread.
+     *
+     * @return the detail, or null if the earthquake has none or it could not be fetched.
+     */
+    public EarthquakeDetail load(Earthquake earthquake) throws IOException {
+        return load(earthquake, null);
+    }
+
+    /**
+     * Like {@link #load(Earthquake)}, aborting the fetch when the cancellation is cancelled.
+     *
+     * @param cancellation of the caller, or null
+     * @throws InterruptedIOException if it was cancelled.
+     */
+    public EarthquakeDetail load(Earthquake earthquake, FetchCancellation cancellation)
+            throws IOException {
+        EarthquakeDetail cached = getCached(earthquake);
+        if (cached != null) {
+            OPENED_CACHED.increment();
+            return cached;
+        }
+        String detailUrl = earthquake.getDetailUrl();
+        if (detailUrl == null) {
+            return null;
+        }
+
+        OPENED_FETCHED.increment();
+        try {
+            return fetch(detailUrl, cancellation);
+        } catch (InterruptedIOException e) {
+            if (cancellation != null && cancellation.isCancelled()) {
+                throw e;
+            }
+            // This waited for a prefetch that was cancelled, fetch it again.
+            return fetch(detailUrl, cancellation);
+        }
+    }
+
+    /**
+     * Tell the prefetcher which earthquakes are on screen, top first. Prefetches of any other
+     * earthquakes are cancelled.
+     *
+     * @param settled whether scrolling has stopped; only then are prefetches started, so a
+     *                fling doesn't queue up every row it passes
+     */
+    public synchronized void onRowsVisible(List<Earthquake> visible, boolean settled) {
+        Set<String> visibleUrls = new HashSet<>();
+        for (Earthquake earthquake : visible) {
+            if (earthquake != null && earthquake.getDetailUrl() != null) {
+                visibleUrls.add(earthquake.getDetailUrl());
+            }
+        }
+
+        Iterator<Prefetch> iterator = prefetches.values().iterator();
+        while (iterator.hasNext()) {
+            Prefetch prefetch = iterator.next();
+            if (!visibleUrls.contains(prefetch.detailUrl)) {
+                prefetch.cancel();
+                iterator.remove();
+                CANCELLED.increment();
+            }
+        }
+
+        if (!settled) {
+            return;
+        }
+        // The top row is the likeliest to be opened, it goes first.
+        int priority = TaskScheduler.PRIORITY_HIGH;
+        for (Earthquake earthquake : visible) {
+            if (earthquake == null || earthquake.getDetailUrl() == null
+                    || prefetches.containsKey(earthquake.getDetailUrl())
+                    || getCached(earthquake) != null) {
+                continue;
+            }
+            Prefetch prefetch = new Prefetch(earthquake.getDetailUrl());
+            prefetches.put(prefetch.detailUrl, prefetch);
+            prefetch.task = scheduler.submit(TaskScheduler.Lane.PREFETCH, priority, prefetch,
+                    null);
+            priority = Math.max(TaskScheduler.PRIORITY_LOW, priority - 1);
+            PREFETCHES.increment();
+        }
+    }
+
+    /**
+     * Cancel every prefetch, e.g. when the list goes away.
+     */
+    public void cancelAll() {
+        onRowsVisible(Collections.<Earthquake>emptyList(), false);
+    }
+
+    /**
+     * @return how many prefetches are queued or running.
+     */
+    public synchronized int getPendingCount() {
+        return prefetches.size();
+    }
+
+    /**
+     * Fetch through the cache, so that overlapping fetches of the same detail are coalesced.
+     */
+    private EarthquakeDetail fetch(final String detailUrl,
+                                   final FetchCancellation cancellation) throws IOException {
+        try {
+            return cache.load(detailUrl, new Callable<EarthquakeDetail>() {
+                @Override
+                public EarthquakeDetail call() throws Exception {
+                    return source.fetch(detailUrl, cancellation);
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * A queued or running prefetch of one detail.
+     */
+    private final class Prefetch implements TaskScheduler.Job<Void> {
+        final String detailUrl;
+        TaskScheduler.Task<Void> task;
+
+        Prefetch(String detailUrl) {
+            this.detailUrl = detailUrl;
+        }
+
+        @Override
+        public Void run(FetchCancellation cancellation) {
+            try {
+                fetch(detailUrl, cancellation);
+            } catch (IOException e) {
+                // Cancelled or failed; opening the detail fetches it again.
+            } finally {
+                synchronized (DetailPrefetcher.this) {
+                    if (prefetches.get(detailUrl) == this) {
+                        prefetches.remove(detailUrl);
+                    }
+                }
+            }
+            return null;
+        }
+
+        void cancel() {
+            // Drops it from the queue, or aborts the download if it is already running.
+            task.cancel();
+        }
+    }
+}
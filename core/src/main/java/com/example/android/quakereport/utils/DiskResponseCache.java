@@ -0,0 +1,480 @@
+package com.example.android.quakereport.utils;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded on-disk cache of HTTP response bodies, keyed by request URL.
+ * <p>
+ * Every entry keeps the validators ({@code ETag} and {@code Last-Modified}) the server sent so
+ * that a stale entry can be revalidated with a conditional request instead of downloaded again.
+ * When the cache grows past its size limit the least recently used entries are evicted.
+ */
+public final class DiskResponseCache {
+
+    private static final String BODY_SUFFIX = ".body";
+    private static final String META_SUFFIX = ".meta";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /* How much of an unread tail close() will drain so that the body can still be cached. */
+    private static final int MAX_DRAIN_BYTES = 8192;
+
+    /**
+     * A cached response body and the validators it was served with.
+     */
+    public static final class Entry {
+        private final String key;
+        private final String url;
+        private final String etag;
+        private final String lastModified;
+        private final long length;
+        private long fetchedAt;
+
+        private Entry(String key, String url, String etag, String lastModified, long length,
+                      long fetchedAt) {
+            this.key = key;
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.fetchedAt = fetchedAt;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        /**
+         * @return the ETag header of the cached response, or null if there was none.
+         */
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * @return the Last-Modified header of the cached response, or null if there was none.
+         */
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * @return the time in milliseconds the body was last downloaded or revalidated.
+         */
+        public synchronized long getFetchedAt() {
+            return fetchedAt;
+        }
+    }
+
+    private final File directory;
+
+    private final long maxBytes;
+
+    private long size;
+
+    /* Access-ordered, so iteration starts at the least recently used entry. */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long defaultTtlMillis;
+
+    /* Per URL prefix overrides of the default TTL. */
+    private final Map<String, Long> ttlByPrefix = new LinkedHashMap<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong revalidationCount = new AtomicLong();
+
+    /**
+     * Opens the cache in the given directory, picking up entries written by earlier instances.
+     *
+     * @param directory        to keep the cached bodies in
+     * @param maxBytes         the bodies may take up before entries are evicted
+     * @param defaultTtlMillis how long an entry is served without asking the server
+     */
+    public DiskResponseCache(File directory, long maxBytes, long defaultTtlMillis) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.defaultTtlMillis = defaultTtlMillis;
+        directory.mkdirs();
+        readIndex();
+    }
+
+    /**
+     * Return the entry cached for the URL, or null if there is none.
+     */
+    public synchronized Entry get(String url) {
+        return entries.get(keyFor(url));
+    }
+
+    public File getBodyFile(Entry entry) {
+        return new File(directory, entry.key + BODY_SUFFIX);
+    }
+
+    /**
+     * Use the given TTL for every URL starting with the prefix. The longest matching prefix wins.
+     */
+    public synchronized void setTtl(String urlPrefix, long ttlMillis) {
+        ttlByPrefix.put(urlPrefix, ttlMillis);
+    }
+
+    public synchronized void setDefaultTtl(long ttlMillis) {
+        defaultTtlMillis = ttlMillis;
+    }
+
+    public synchronized long getTtl(String url) {
+        long ttl = defaultTtlMillis;
+        int matchLength = -1;
+        for (Map.Entry<String, Long> prefixTtl : ttlByPrefix.entrySet()) {
+            String prefix = prefixTtl.getKey();
+            if (url.startsWith(prefix) && prefix.length() > matchLength) {
+                matchLength = prefix.length();
+                ttl = prefixTtl.getValue();
+            }
+        }
+        return ttl;
+    }
+
+    /**
+     * @return true if the entry is young enough to be used without revalidation.
+     */
+    public boolean isFresh(Entry entry, long now) {
+        return now - entry.getFetchedAt() < getTtl(entry.url);
+    }
+
+    /**
+     * Record that the server confirmed the entry is still current (HTTP 304).
+     */
+    public void markRevalidated(Entry entry, long now) {
+        synchronized (entry) {
+            entry.fetchedAt = now;
+        }
+        try {
+            writeMeta(entry);
+        } catch (IOException e) {
+            remove(entry.url);
+        }
+    }
+
+    /**
+     * Wrap a response body so that it is written to the cache while it is being read. The entry
+     * is only stored if the stream is read to the end before it is closed.
+     */
+    public InputStream cacheWhileReading(String url, String etag, String lastModified,
+                                         InputStream body) {
+        String key = keyFor(url);
+        File tempFile =
+                new File(directory, key + "." + Thread.currentThread().getId() + TEMP_SUFFIX);
+        try {
+            return new CachingInputStream(body, new FileOutputStream(tempFile), tempFile,
+                    url, etag, lastModified);
+        } catch (IOException e) {
+            // Can't cache this response, but it can still be read.
+            return body;
+        }
+    }
+
+    public synchronized void remove(String url) {
+        Entry entry = entries.remove(keyFor(url));
+        if (entry != null) {
+            size -= entry.length;
+            deleteFiles(entry.key);
+        }
+    }
+
+    /**
+     * @return the number of bytes the cached bodies take up.
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    public synchronized int entryCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return how many requests were served from a fresh entry without touching the network.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return how many requests downloaded a full response body.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return how many requests were answered with 304 Not Modified.
+     */
+    public long getRevalidationCount() {
+        return revalidationCount.get();
+    }
+
+    void recordHit() {
+        hitCount.incrementAndGet();
+    }
+
+    void recordMiss() {
+        missCount.incrementAndGet();
+    }
+
+    void recordRevalidation() {
+        revalidationCount.incrementAndGet();
+    }
+
+    private synchronized void commit(String url, String etag, String lastModified, File tempFile,
+                                     long length) {
+        String key = keyFor(url);
+        Entry previous = entries.remove(key);
+        if (previous != null) {
+            size -= previous.length;
+        }
+
+        Entry entry = new Entry(key, url, etag, lastModified, length, System.currentTimeMillis());
+        File bodyFile = new File(directory, key + BODY_SUFFIX);
+        try {
+            if (bodyFile.exists() && !bodyFile.delete()) {
+                throw new IOException("Can't replace " + bodyFile);
+            }
+            if (!tempFile.renameTo(bodyFile)) {
+                throw new IOException("Can't rename " + tempFile);
+            }
+            writeMeta(entry);
+        } catch (IOException e) {
+            tempFile.delete();
+            deleteFiles(key);
+            return;
+        }
+
+        entries.put(key, entry);
+        size += length;
+        trimToSize();
+    }
+
+    private void trimToSize() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (size > maxBytes && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            size -= eldest.length;
+            deleteFiles(eldest.key);
+        }
+    }
+
+    private void writeMeta(Entry entry) throws IOException {
+        DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(new File(directory, entry.key + META_SUFFIX)));
+        try {
+            out.writeUTF(entry.url);
+            out.writeUTF(entry.etag == null ? "" : entry.etag);
+            out.writeUTF(entry.lastModified == null ? "" : entry.lastModified);
+            out.writeLong(entry.length);
+            out.writeLong(entry.getFetchedAt());
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Rebuild the in-memory index from the meta files, oldest first so that the access order
+     * roughly survives restarts.
+     */
+    private void readIndex() {
+        File[] metaFiles = directory.listFiles();
+        if (metaFiles == null) {
+            return;
+        }
+
+        List<File> files = new ArrayList<>();
+        for (File file : metaFiles) {
+            if (file.getName().endsWith(META_SUFFIX)) {
+                files.add(file);
+            } else if (file.getName().endsWith(TEMP_SUFFIX)) {
+                file.delete();
+            }
+        }
+        Collections.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+
+        for (File metaFile : files) {
+            String name = metaFile.getName();
+            String key = name.substring(0, name.length() - META_SUFFIX.length());
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new FileInputStream(metaFile));
+                String url = in.readUTF();
+                String etag = in.readUTF();
+                String lastModified = in.readUTF();
+                long length = in.readLong();
+                long fetchedAt = in.readLong();
+                if (!new File(directory, key + BODY_SUFFIX).exists()) {
+                    throw new IOException("Missing body for " + url);
+                }
+                entries.put(key, new Entry(key, url, etag.isEmpty() ? null : etag,
+                        lastModified.isEmpty() ? null : lastModified, length, fetchedAt));
+                size += length;
+            } catch (IOException e) {
+                deleteFiles(key);
+            } finally {
+                closeQuietly(in);
+            }
+        }
+        trimToSize();
+    }
+
+    private void deleteFiles(String key) {
+        new File(directory, key + BODY_SUFFIX).delete();
+        new File(directory, key + META_SUFFIX).delete();
+    }
+
+    private static String keyFor(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] hash = digest.digest(url.getBytes(Charset.forName("UTF-8")));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16))
+                        .append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Copies everything read from the response into a temp file and commits it on close.
+     */
+    private final class CachingInputStream extends FilterInputStream {
+        private final File tempFile;
+        private final String url;
+        private final String etag;
+        private final String lastModified;
+
+        private OutputStream cacheOut;
+        private long length;
+        private boolean complete;
+        private boolean closed;
+
+        CachingInputStream(InputStream in, OutputStream cacheOut, File tempFile, String url,
+                           String etag, String lastModified) {
+            super(in);
+            this.cacheOut = cacheOut;
+            this.tempFile = tempFile;
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int read = read(single, 0, 1);
+            return read == -1 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = in.read(buffer, offset, count);
+            if (read == -1) {
+                complete = true;
+            } else if (cacheOut != null) {
+                try {
+                    cacheOut.write(buffer, offset, read);
+                    length += read;
+                } catch (IOException e) {
+                    abandon();
+                }
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long count) throws IOException {
+            // Skipped bytes would leave a hole in the cached copy, so read them instead.
+            byte[] buffer = new byte[(int) Math.min(count, 4096)];
+            int read = read(buffer, 0, buffer.length);
+            return Math.max(read, 0);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            // The parser stops at the closing brace, pick up any trailing whitespace.
+            byte[] buffer = new byte[1024];
+            int drained = 0;
+            try {
+                while (!complete && cacheOut != null && drained < MAX_DRAIN_BYTES) {
+                    int read = read(buffer, 0, buffer.length);
+                    if (read > 0) {
+                        drained += read;
+                    }
+                }
+            } catch (IOException e) {
+                abandon();
+            }
+
+            try {
+                in.close();
+            } finally {
+                if (cacheOut != null) {
+                    cacheOut.close();
+                    if (complete) {
+                        commit(url, etag, lastModified, tempFile, length);
+                    } else {
+                        tempFile.delete();
+                    }
+                }
+            }
+        }
+
+        private void abandon() {
+            closeQuietly(cacheOut);
+            cacheOut = null;
+            tempFile.delete();
+        }
+    }
+}
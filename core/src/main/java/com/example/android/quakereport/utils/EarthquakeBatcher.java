@@ -0,0 +1,81 @@
+package com.example.android.quakereport.utils;
+
+import com.example.android.quakereport.data.Earthquake;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the earthquakes of a response that is still being parsed into batches, so they can be
+ * shown while the rest is downloading.
+ * <p>
+ * The first batch is small, to put a screen of rows up as early as possible. Every later batch is
+ * twice the size of the one before, up to a maximum, so the UI is updated less often the longer
+ * the download takes.
+ */
+public final class EarthquakeBatcher implements EarthquakeStreamParser.Callback {
+
+    /**
+     * Receives the batches on the parsing thread.
+     */
+    public interface Listener {
+        void onBatch(List<Earthquake> batch);
+    }
+
+    private final Listener listener;
+
+    private final int maxBatchSize;
+
+    private int batchSize;
+
+    private List<Earthquake> batch;
+
+    private int batchCount;
+
+    /**
+     * @param firstBatchSize how many earthquakes the first batch holds
+     * @param maxBatchSize   how many earthquakes a batch holds at most
+     */
+    public EarthquakeBatcher(int firstBatchSize, int maxBatchSize, Listener listener) {
+        if (firstBatchSize < 1 || maxBatchSize < firstBatchSize) {
+            throw new IllegalArgumentException("Invalid batch sizes " + firstBatchSize + ", "
+                    + maxBatchSize);
+        }
+        this.batchSize = firstBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.listener = listener;
+        this.batch = new ArrayList<>(firstBatchSize);
+    }
+
+    @Override
+    public void onEarthquake(Earthquake earthquake) {
+        batch.add(earthquake);
+        if (batch.size() >= batchSize) {
+            publish();
+            batchSize = Math.min(batchSize * 2, maxBatchSize);
+        }
+    }
+
+    /**
+     * Publish what is left after the last full batch.
+     */
+    public void flush() {
+        if (!batch.isEmpty()) {
+            publish();
+        }
+    }
+
+    /**
+     * @return how many batches were published.
+     */
+    public int getBatchCount() {
+        return batchCount;
+    }
+
+    private void publish() {
+        List<Earthquake> full = batch;
+        batch = new ArrayList<>(Math.min(batchSize * 2, maxBatchSize));
+        batchCount++;
+        listener.onBatch(full);
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.android.quakereport.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A wire format USGS can send earthquakes in, selected with the FDSN "format" parameter. Every
+ * format parses into the same {@link com.example.android.quakereport.data.Earthquake}s;
+ * {@link EarthquakeFormats} has the ones the app knows.
+ */
+public interface EarthquakeFormat {
+
+    /**
+     * @return the value of the "format" parameter that asks for this format.
+     */
+    String getName();
+
+    /**
+     * @return true if the events carry the time of their last revision. Syncing with
+     * "updatedafter" needs it, formats without it report 0.
+     */
+    boolean hasUpdatedTimes();
+
+    /**
+     * Parse the stream and hand each earthquake to the callback as it is read.
+     *
+     * @return the number of earthquakes emitted.
+     */
+    int parse(InputStream inputStream, EarthquakeStreamParser.Callback callback)
+            throws IOException;
+}
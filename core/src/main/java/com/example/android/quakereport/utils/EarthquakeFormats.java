@@ -0,0 +1,126 @@
+package com.example.android.quakereport.utils;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The {@link EarthquakeFormat}s USGS serves, and telling them apart.
+ * <p>
+ * For the same events CSV is under a third of the size of GeoJSON, because every GeoJSON
+ * feature repeats all property names and carries fields the app never reads. Gzip takes away
+ * most of that repetition, but CSV still ends up about a third smaller and parses faster. Text
+ * is smaller still but has no revision times.
+ */
+public final class EarthquakeFormats {
+
+    public static final EarthquakeFormat GEOJSON = new EarthquakeFormat() {
+        @Override
+        public String getName() {
+            return "geojson";
+        }
+
+        @Override
+        public boolean hasUpdatedTimes() {
+            return true;
+        }
+
+        @Override
+        public int parse(InputStream inputStream, EarthquakeStreamParser.Callback callback)
+                throws IOException {
+            return EarthquakeStreamParser.parse(inputStream, callback);
+        }
+    };
+
+    public static final EarthquakeFormat CSV =
+            new DelimitedEarthquakeFormat("csv", ',', true, true);
+
+    public static final EarthquakeFormat TEXT =
+            new DelimitedEarthquakeFormat("text", '|', false, false);
+
+    private static final List<EarthquakeFormat> ALL =
+            Collections.unmodifiableList(Arrays.asList(GEOJSON, CSV, TEXT));
+
+    /* Enough to see the whole header row of either delimited format. */
+    private static final int SNIFF_LIMIT = 512;
+
+    private EarthquakeFormats() {
+    }
+
+    public static List<EarthquakeFormat> all() {
+        return ALL;
+    }
+
+    /**
+     * @return the format with the name, or null if there is none, e.g. for "auto".
+     */
+    public static EarthquakeFormat forName(String name) {
+        for (EarthquakeFormat format : ALL) {
+            if (format.getName().equals(name)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Tell the format of a body from its first bytes, which works the same for responses and
+     * for cached bodies that have no Content-Type. The stream is left where it was.
+     */
+    public static EarthquakeFormat detect(BufferedInputStream body) throws IOException {
+        body.mark(SNIFF_LIMIT);
+        try {
+            int first = -1;
+            boolean pipe = false;
+            for (int i = 0; i < SNIFF_LIMIT; i++) {
+                int b = body.read();
+                if (b < 0 || (b == '\n' && first >= 0)) {
+                    break;
+                }
+                // Skip leading whitespace and a UTF-8 byte order mark.
+                if (first < 0 && (Character.isWhitespace(b) || b >= 0x80)) {
+                    continue;
+                }
+                if (first < 0) {
+                    first = b;
+                }
+                pipe |= b == '|';
+            }
+
+            if (first == '{') {
+                return GEOJSON;
+            }
+            return first == '#' || pipe ? TEXT : CSV;
+        } finally {
+            body.reset();
+        }
+    }
+
+    /**
+     * @return the FDSN query URL with its "format" parameter set to the format.
+     */
+    public static String withFormat(String url, EarthquakeFormat format) {
+        int queryStart = url.indexOf('?');
+        if (queryStart < 0) {
+            return url + "?format=" + format.getName();
+        }
+
+        int paramStart = queryStart + 1;
+        while (paramStart < url.length()) {
+            int paramEnd = url.indexOf('&', paramStart);
+            if (paramEnd < 0) {
+                paramEnd = url.length();
+            }
+            if (url.startsWith("format=", paramStart)) {
+                return url.substring(0, paramStart) + "format=" + format.getName()
+                        + url.substring(paramEnd);
+            }
+            paramStart = paramEnd + 1;
+        }
+        return url + (url.endsWith("?") || url.endsWith("&") ? "" : "&")
+                + "format=" + format.getName();
+    }
+}
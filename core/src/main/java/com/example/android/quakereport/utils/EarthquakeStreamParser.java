@@ -0,0 +1,316 @@
+package com.example.android.quakereport.utils;
+
+import com.example.android.quakereport.data.Earthquake;
+import com.example.android.quakereport.data.EarthquakeCatalog;
+import com.example.android.quakereport.data.EarthquakeDetail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses a USGS GeoJSON response into {@link Earthquake} objects while it is being read.
+ * <p>
+ * Only the id, {@code properties} and point coordinates of each feature are looked at and every
+ * field {@link Earthquake} doesn't use is skipped, so memory use stays flat no matter how large the
+ * response is.
+ */
+public final class EarthquakeStreamParser {
+
+    /**
+     * Receives every {@link Earthquake} as soon as its feature has been parsed.
+     */
+    public interface Callback {
+        void onEarthquake(Earthquake earthquake);
+    }
+
+    private EarthquakeStreamParser() {
+    }
+
+    /**
+     * Parse the whole stream and return the earthquakes it contains.
+     */
+    public static List<Earthquake> parse(InputStream inputStream) throws IOException {
+        final List<Earthquake> earthquakeList = new ArrayList<>();
+        parse(inputStream, new Callback() {
+            @Override
+            public void onEarthquake(Earthquake earthquake) {
+                earthquakeList.add(earthquake);
+            }
+        });
+        return earthquakeList;
+    }
+
+    /**
+     * Parse the stream and hand each earthquake to the callback as it is read.
+     *
+     * @return the number of earthquakes emitted.
+     */
+    public static int parse(InputStream inputStream, Callback callback) throws IOException {
+        return parse(new InputStreamReader(inputStream, Charset.forName("UTF-8")), callback);
+    }
+
+    public static int parse(Reader reader, final Callback callback) throws IOException {
+        return parseFeatures(reader, new FeatureSink() {
+            @Override
+            public void onFeature(Fields fields) {
+                callback.onEarthquake(fields.toEarthquake());
+            }
+        });
+    }
+
+    /**
+     * Parse the stream straight into the catalog, without creating an {@link Earthquake} per
+     * feature.
+     *
+     * @return the number of features read.
+     */
+    public static int parse(InputStream inputStream, final EarthquakeCatalog catalog)
+            throws IOException {
+        Reader reader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
+        return parseFeatures(reader, new FeatureSink() {
+            @Override
+            public void onFeature(Fields fields) {
+                catalog.merge(fields.id, fields.mag, fields.place, fields.time, fields.updated,
+                        fields.url, fields.longitude, fields.latitude, fields.depth);
+            }
+        });
+    }
+
+    /**
+     * Parse the detail GeoJSON of one event, a single feature rather than a collection. The
+     * products it lists, most of the payload, are skipped without being kept.
+     */
+    public static EarthquakeDetail parseDetail(InputStream inputStream) throws IOException {
+        JsonPullReader jsonReader = new JsonPullReader(
+                new InputStreamReader(inputStream, Charset.forName("UTF-8")));
+        Fields fields = new Fields();
+        DetailFields detail = new DetailFields();
+        readFeature(jsonReader, fields, detail);
+        return detail.toDetail(fields);
+    }
+
+    private static int parseFeatures(Reader reader, FeatureSink sink) throws IOException {
+        JsonPullReader jsonReader = new JsonPullReader(reader);
+        int count = 0;
+
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            if (!"features".equals(jsonReader.nextName())) {
+                jsonReader.skipValue();
+                continue;
+            }
+
+            jsonReader.beginArray();
+            Fields fields = new Fields();
+            while (jsonReader.hasNext()) {
+                readFeature(jsonReader, fields, null);
+                sink.onFeature(fields);
+                count++;
+            }
+            jsonReader.endArray();
+        }
+        jsonReader.endObject();
+
+        return count;
+    }
+
+    /**
+     * @param detail to read the properties only the detail GeoJSON has into, or null to skip
+     *               them
+     */
+    private static void readFeature(JsonPullReader jsonReader, Fields fields,
+                                    DetailFields detail) throws IOException {
+        fields.clear();
+
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String name = jsonReader.nextName();
+            if ("properties".equals(name)) {
+                readProperties(jsonReader, fields, detail);
+            } else if ("geometry".equals(name)
+                    && jsonReader.peek() == JsonPullReader.Token.BEGIN_OBJECT) {
+                readGeometry(jsonReader, fields);
+            } else if ("id".equals(name) && jsonReader.peek() == JsonPullReader.Token.STRING) {
+                fields.id = jsonReader.nextString();
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+    }
+
+    /**
+     * Read the [longitude, latitude, depth] of a Point geometry.
+     */
+    private static void readGeometry(JsonPullReader jsonReader, Fields fields)
+            throws IOException {
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            if (!"coordinates".equals(jsonReader.nextName())
+                    || jsonReader.peek() != JsonPullReader.Token.BEGIN_ARRAY) {
+                jsonReader.skipValue();
+                continue;
+            }
+
+            jsonReader.beginArray();
+            for (int i = 0; jsonReader.hasNext(); i++) {
+                if (i > 2 || jsonReader.peek() != JsonPullReader.Token.NUMBER) {
+                    jsonReader.skipValue();
+                } else if (i == 0) {
+                    fields.longitude = jsonReader.nextDouble();
+                } else if (i == 1) {
+                    fields.latitude = jsonReader.nextDouble();
+                } else {
+                    fields.depth = jsonReader.nextDouble();
+                }
+            }
+            jsonReader.endArray();
+        }
+        jsonReader.endObject();
+    }
+
+    private static void readProperties(JsonPullReader jsonReader, Fields fields,
+                                       DetailFields detail) throws IOException {
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String name = jsonReader.nextName();
+            if (jsonReader.peek() == JsonPullReader.Token.NULL) {
+                jsonReader.nextNull();
+                continue;
+            }
+
+            switch (name) {
+                case "mag":
+                    fields.mag = jsonReader.nextDouble();
+                    break;
+                case "place":
+                    fields.place = jsonReader.nextString();
+                    break;
+                case "time":
+                    fields.time = jsonReader.nextLong();
+                    break;
+                case "updated":
+                    fields.updated = jsonReader.nextLong();
+                    break;
+                case "url":
+                    fields.url = jsonReader.nextString();
+                    break;
+                default:
+                    if (detail == null || !detail.read(name, jsonReader)) {
+                        jsonReader.skipValue();
+                    }
+                    break;
+            }
+        }
+        jsonReader.endObject();
+    }
+
+    private interface FeatureSink {
+        void onFeature(Fields fields);
+    }
+
+    /**
+     * The values collected for the feature currently being read. Reused across features.
+     */
+    private static final class Fields {
+        String id;
+        double mag;
+        String place;
+        long time;
+        long updated;
+        String url;
+        double longitude;
+        double latitude;
+        double depth;
+
+        void clear() {
+            id = null;
+            // USGS sends a null magnitude for events it hasn't sized yet.
+            mag = Double.NaN;
+            place = "";
+            time = 0;
+            updated = 0;
+            url = "";
+            longitude = Double.NaN;
+            latitude = Double.NaN;
+            depth = Double.NaN;
+        }
+
+        Earthquake toEarthquake() {
+            return new Earthquake(id, mag, place, time, updated, url, longitude, latitude,
+                    depth);
+        }
+    }
+
+    /**
+     * The properties of a detail GeoJSON that {@link Earthquake} doesn't have.
+     */
+    private static final class DetailFields {
+        String title;
+        String magnitudeType;
+        int feltReports = -1;
+        double reportedIntensity = Double.NaN;
+        double instrumentalIntensity = Double.NaN;
+        String alert;
+        boolean tsunami;
+        int significance = -1;
+        String status;
+        int stationCount = -1;
+        double azimuthalGap = Double.NaN;
+
+        /**
+         * @return true if the property was read, false if it is one to skip.
+         */
+        boolean read(String name, JsonPullReader jsonReader) throws IOException {
+            switch (name) {
+                case "title":
+                    title = jsonReader.nextString();
+                    return true;
+                case "magType":
+                    magnitudeType = jsonReader.nextString();
+                    return true;
+                case "felt":
+                    feltReports = (int) jsonReader.nextLong();
+                    return true;
+                case "cdi":
+                    reportedIntensity = jsonReader.nextDouble();
+                    return true;
+                case "mmi":
+                    instrumentalIntensity = jsonReader.nextDouble();
+                    return true;
+                case "alert":
+                    alert = jsonReader.nextString();
+                    return true;
+                case "tsunami":
+                    tsunami = jsonReader.nextLong() != 0;
+                    return true;
+                case "sig":
+                    significance = (int) jsonReader.nextLong();
+                    return true;
+                case "status":
+                    status = jsonReader.nextString();
+                    return true;
+                case "nst":
+                    stationCount = (int) jsonReader.nextLong();
+                    return true;
+                case "gap":
+                    azimuthalGap = jsonReader.nextDouble();
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        EarthquakeDetail toDetail(Fields fields) {
+            return new EarthquakeDetail(fields.toEarthquake(),
+                    title == null ? fields.place : title, magnitudeType, feltReports,
+                    reportedIntensity, instrumentalIntensity, alert, tsunami, significance,
+                    status, stationCount, azimuthalGap);
+        }
+    }
+}
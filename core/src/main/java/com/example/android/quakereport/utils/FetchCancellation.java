@@ -0,0 +1,91 @@
+package com.example.android.quakereport.utils;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+/**
+ * Lets another thread cancel a running fetch. Cancelling closes the connection the fetch is
+ * reading from, so a blocked socket read fails right away instead of waiting for its timeout,
+ * and every later read of the body fails too, which stops the parser.
+ */
+public final class FetchCancellation {
+
+    private volatile boolean cancelled;
+
+    /* Closed on cancel; guarded by this. */
+    private Closeable connection;
+
+    public void cancel() {
+        Closeable toClose;
+        synchronized (this) {
+            cancelled = true;
+            toClose = connection;
+            connection = null;
+        }
+        closeQuietly(toClose);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @throws InterruptedIOException if the fetch was cancelled.
+     */
+    public void throwIfCancelled() throws InterruptedIOException {
+        if (cancelled) {
+            throw new InterruptedIOException("Fetch cancelled");
+        }
+    }
+
+    /**
+     * Close the connection when the fetch is cancelled, or right away if it already was.
+     */
+    void attach(Closeable connection) {
+        synchronized (this) {
+            if (!cancelled) {
+                this.connection = connection;
+                return;
+            }
+        }
+        closeQuietly(connection);
+    }
+
+    synchronized void detach() {
+        connection = null;
+    }
+
+    /**
+     * @return the stream, failing every read once the fetch is cancelled. This also stops
+     * reads of cached bodies, which have no connection to close.
+     */
+    InputStream wrap(InputStream body) {
+        return new FilterInputStream(body) {
+            @Override
+            public int read() throws IOException {
+                throwIfCancelled();
+                return super.read();
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int count) throws IOException {
+                throwIfCancelled();
+                return super.read(buffer, offset, count);
+            }
+        };
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException | RuntimeException e) {
+            // Already closed or broken, either way the read is over.
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.android.quakereport.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Picks the {@link EarthquakeFormat} to download events in. Unless a format is preferred, it
+ * measures each one on real fetches and then uses the one with the lowest time per event from
+ * the first byte of the body to the last parsed event, which covers both the bytes on the wire
+ * and the parse. Every so often the format measured longest ago gets a fetch again, so the
+ * choice follows changing networks.
+ */
+public final class FormatSelector {
+
+    /* Every this many choices one goes to the format measured longest ago. */
+    private static final int EXPLORE_EVERY = 20;
+
+    /* Weight of a new measurement against the average of the ones before. */
+    private static final double SMOOTHING = 0.3;
+
+    private static FormatSelector instance;
+
+    private final List<EarthquakeFormat> formats;
+
+    private final Map<EarthquakeFormat, Cost> costs = new HashMap<>();
+
+    private EarthquakeFormat preferred;
+
+    private int choiceCount;
+
+    private long recordCount;
+
+    /**
+     * @param formats to choose from, the first is tried first
+     */
+    public FormatSelector(List<EarthquakeFormat> formats) {
+        this.formats = new ArrayList<>(formats);
+    }
+
+    /**
+     * @return the selector all fetches of the app share.
+     */
+    public static synchronized FormatSelector getInstance() {
+        if (instance == null) {
+            instance = new FormatSelector(EarthquakeFormats.all());
+        }
+        return instance;
+    }
+
+    /**
+     * Always choose the format where it can be used, or choose by measurement if null.
+     */
+    public synchronized void setPreferred(EarthquakeFormat format) {
+        preferred = format;
+    }
+
+    /**
+     * @param needsUpdatedTimes true if the events must carry their revision times
+     * @return the format to ask for next.
+     */
+    public synchronized EarthquakeFormat choose(boolean needsUpdatedTimes) {
+        if (preferred != null && (preferred.hasUpdatedTimes() || !needsUpdatedTimes)) {
+            return preferred;
+        }
+
+        List<EarthquakeFormat> candidates = new ArrayList<>();
+        for (EarthquakeFormat format : formats) {
+            if (format.hasUpdatedTimes() || !needsUpdatedTimes) {
+                candidates.add(format);
+            }
+        }
+
+        for (EarthquakeFormat format : candidates) {
+            if (!costs.containsKey(format)) {
+                return format;
+            }
+        }
+
+        choiceCount++;
+        boolean explore = choiceCount % EXPLORE_EVERY == 0;
+        EarthquakeFormat chosen = null;
+        for (EarthquakeFormat format : candidates) {
+            Cost cost = costs.get(format);
+            if (chosen == null) {
+                chosen = format;
+            } else if (explore ? cost.recordedAt < costs.get(chosen).recordedAt
+                    : cost.microsPerEvent < costs.get(chosen).microsPerEvent) {
+                chosen = format;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Record a fetch of events in the format.
+     *
+     * @param micros from the first byte of the body until the last event was parsed
+     */
+    public synchronized void record(EarthquakeFormat format, int eventCount, long micros) {
+        if (eventCount <= 0 || micros < 0) {
+            return;
+        }
+
+        double microsPerEvent = (double) micros / eventCount;
+        Cost cost = costs.get(format);
+        if (cost == null) {
+            cost = new Cost();
+            cost.microsPerEvent = microsPerEvent;
+            costs.put(format, cost);
+        } else {
+            cost.microsPerEvent += SMOOTHING * (microsPerEvent - cost.microsPerEvent);
+        }
+        cost.recordedAt = ++recordCount;
+    }
+
+    /**
+     * @return the average time per event of the format in microseconds, or NaN if it hasn't
+     * been measured.
+     */
+    public synchronized double getMicrosPerEvent(EarthquakeFormat format) {
+        Cost cost = costs.get(format);
+        return cost == null ? Double.NaN : cost.microsPerEvent;
+    }
+
+    private static final class Cost {
+        double microsPerEvent;
+
+        /* Sequence number of the last measurement, to find the one measured longest ago. */
+        long recordedAt;
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.android.quakereport.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Sends the GET requests of {@link QueryUtils}. {@link PooledHttpTransport} talks to the network,
+ * tests can install a fake with {@link QueryUtils#setTransport} that answers from memory.
+ */
+public interface HttpTransport {
+
+    /**
+     * Send a GET request and wait for the response headers.
+     *
+     * @param headers      request headers to add
+     * @param cancellation to abort the request with, or null
+     * @return the response, whatever its status code. The caller must close it.
+     * @throws IOException if no response could be read, or the request was cancelled.
+     */
+    Response get(URL url, Map<String, String> headers, FetchCancellation cancellation)
+            throws IOException;
+
+    /**
+     * A response with its decoded body.
+     */
+    final class Response implements Closeable {
+
+        private final int code;
+
+        private final Map<String, String> headers =
+                new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+        private final InputStream body;
+
+        private final Closeable connection;
+
+        /**
+         * @param headers    response headers, looked up ignoring case
+         * @param body       the body, or null if there is none
+         * @param connection released after the body is closed, or null
+         */
+        public Response(int code, Map<String, String> headers, InputStream body,
+                        Closeable connection) {
+            this.code = code;
+            if (headers != null) {
+                this.headers.putAll(headers);
+            }
+            this.body = body != null ? body : new ByteArrayInputStream(new byte[0]);
+            this.connection = connection;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        /**
+         * @return the value of the header, or null if the response doesn't have it.
+         */
+        public String getHeader(String name) {
+            return headers.get(name);
+        }
+
+        public Map<String, String> getHeaders() {
+            return Collections.unmodifiableMap(headers);
+        }
+
+        public InputStream getBody() {
+            return body;
+        }
+
+        /**
+         * Close the body, then hand the connection back.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                body.close();
+            } finally {
+                if (connection != null) {
+                    connection.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,445 @@
+package com.example.android.quakereport.utils;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A minimal pull-style JSON tokenizer which reads straight from a {@link Reader}.
+ * <p>
+ * Unlike {@link org.json.JSONObject} it never holds more than one small buffer of the document
+ * in memory, and values that are not needed can be skipped without being materialized.
+ * It has no Android dependencies so it can be exercised in plain JVM tests.
+ */
+public final class JsonPullReader implements Closeable {
+
+    public enum Token {
+        BEGIN_ARRAY, END_ARRAY, BEGIN_OBJECT, END_OBJECT, NAME, STRING, NUMBER, BOOLEAN, NULL,
+        END_DOCUMENT
+    }
+
+    /* Lexical scopes kept on the stack. */
+    private static final int EMPTY_ARRAY = 1;
+    private static final int NONEMPTY_ARRAY = 2;
+    private static final int EMPTY_OBJECT = 3;
+    private static final int DANGLING_NAME = 4;
+    private static final int NONEMPTY_OBJECT = 5;
+    private static final int EMPTY_DOCUMENT = 6;
+    private static final int NONEMPTY_DOCUMENT = 7;
+
+    private final Reader in;
+
+    private final char[] buffer = new char[8192];
+    private int pos;
+    private int limit;
+
+    private int[] stack = new int[32];
+    private int stackSize;
+
+    /* The token returned by the last call to peek(), or null if it has been consumed. */
+    private Token peeked;
+
+    /* Reused for strings and literals so that skipping does not allocate. */
+    private final StringBuilder scratch = new StringBuilder();
+
+    public JsonPullReader(Reader in) {
+        if (in == null) {
+            throw new NullPointerException("in == null");
+        }
+        this.in = in;
+        stack[stackSize++] = EMPTY_DOCUMENT;
+    }
+
+    public Token peek() throws IOException {
+        if (peeked != null) {
+            return peeked;
+        }
+
+        int scope = stack[stackSize - 1];
+        if (scope == EMPTY_ARRAY) {
+            stack[stackSize - 1] = NONEMPTY_ARRAY;
+        } else if (scope == NONEMPTY_ARRAY) {
+            int c = nextNonWhitespace(true);
+            if (c == ']') {
+                return peeked = Token.END_ARRAY;
+            } else if (c != ',') {
+                throw syntaxError("Unterminated array");
+            }
+        } else if (scope == EMPTY_OBJECT || scope == NONEMPTY_OBJECT) {
+            stack[stackSize - 1] = DANGLING_NAME;
+            if (scope == NONEMPTY_OBJECT) {
+                int c = nextNonWhitespace(true);
+                if (c == '}') {
+                    return peeked = Token.END_OBJECT;
+                } else if (c != ',') {
+                    throw syntaxError("Unterminated object");
+                }
+            }
+            int c = nextNonWhitespace(true);
+            if (c == '}' && scope == EMPTY_OBJECT) {
+                return peeked = Token.END_OBJECT;
+            } else if (c != '"') {
+                throw syntaxError("Expected name");
+            }
+            return peeked = Token.NAME;
+        } else if (scope == DANGLING_NAME) {
+            stack[stackSize - 1] = NONEMPTY_OBJECT;
+            if (nextNonWhitespace(true) != ':') {
+                throw syntaxError("Expected ':'");
+            }
+        } else if (scope == EMPTY_DOCUMENT) {
+            stack[stackSize - 1] = NONEMPTY_DOCUMENT;
+        } else if (scope == NONEMPTY_DOCUMENT) {
+            if (nextNonWhitespace(false) == -1) {
+                return peeked = Token.END_DOCUMENT;
+            }
+            throw syntaxError("Expected end of document");
+        }
+
+        int c = nextNonWhitespace(true);
+        switch (c) {
+            case '{':
+                return peeked = Token.BEGIN_OBJECT;
+            case '[':
+                return peeked = Token.BEGIN_ARRAY;
+            case ']':
+                if (scope == EMPTY_ARRAY) {
+                    return peeked = Token.END_ARRAY;
+                }
+                throw syntaxError("Unexpected ']'");
+            case '"':
+                return peeked = Token.STRING;
+            case 't':
+            case 'f':
+                pos--;
+                return peeked = Token.BOOLEAN;
+            case 'n':
+                pos--;
+                return peeked = Token.NULL;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    pos--;
+                    return peeked = Token.NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY
+                && token != Token.END_DOCUMENT;
+    }
+
+    public void beginObject() throws IOException {
+        expect(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        expect(Token.END_OBJECT);
+        stackSize--;
+    }
+
+    public void beginArray() throws IOException {
+        expect(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        expect(Token.END_ARRAY);
+        stackSize--;
+    }
+
+    public String nextName() throws IOException {
+        expect(Token.NAME);
+        return readQuoted();
+    }
+
+    /**
+     * Returns the next string value, or the literal text of a number.
+     */
+    public String nextString() throws IOException {
+        Token token = peek();
+        if (token == Token.STRING) {
+            peeked = null;
+            return readQuoted();
+        } else if (token == Token.NUMBER) {
+            peeked = null;
+            return readLiteral().toString();
+        }
+        throw syntaxError("Expected a string but was " + token);
+    }
+
+    public double nextDouble() throws IOException {
+        Token token = peek();
+        if (token == Token.NUMBER) {
+            peeked = null;
+            return Double.parseDouble(readLiteral().toString());
+        } else if (token == Token.STRING) {
+            peeked = null;
+            return Double.parseDouble(readQuoted());
+        }
+        throw syntaxError("Expected a double but was " + token);
+    }
+
+    public long nextLong() throws IOException {
+        Token token = peek();
+        if (token == Token.STRING) {
+            peeked = null;
+            return (long) Double.parseDouble(readQuoted());
+        } else if (token != Token.NUMBER) {
+            throw syntaxError("Expected a long but was " + token);
+        }
+        peeked = null;
+
+        CharSequence literal = readLiteral();
+        int length = literal.length();
+        boolean negative = length > 0 && literal.charAt(0) == '-';
+        long value = 0;
+        for (int i = negative ? 1 : 0; i < length; i++) {
+            char c = literal.charAt(i);
+            if (c < '0' || c > '9' || value > (Long.MAX_VALUE - 9) / 10) {
+                // Fractions, exponents and huge values take the slow path.
+                return (long) Double.parseDouble(literal.toString());
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    public boolean nextBoolean() throws IOException {
+        expect(Token.BOOLEAN);
+        CharSequence literal = readLiteral();
+        if ("true".contentEquals(literal)) {
+            return true;
+        } else if ("false".contentEquals(literal)) {
+            return false;
+        }
+        throw syntaxError("Expected a boolean but was " + literal);
+    }
+
+    public void nextNull() throws IOException {
+        expect(Token.NULL);
+        if (!"null".contentEquals(readLiteral())) {
+            throw syntaxError("Expected null");
+        }
+    }
+
+    /**
+     * Skips the next value, including nested arrays and objects, without building any strings.
+     */
+    public void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            switch (peek()) {
+                case BEGIN_ARRAY:
+                    beginArray();
+                    depth++;
+                    break;
+                case BEGIN_OBJECT:
+                    beginObject();
+                    depth++;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    depth--;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    depth--;
+                    break;
+                case NAME:
+                case STRING:
+                    peeked = null;
+                    skipQuoted();
+                    break;
+                case NUMBER:
+                case BOOLEAN:
+                case NULL:
+                    peeked = null;
+                    skipLiteral();
+                    break;
+                case END_DOCUMENT:
+                    throw syntaxError("Unexpected end of document");
+            }
+        } while (depth > 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        peeked = null;
+        stackSize = 0;
+        in.close();
+    }
+
+    private void expect(Token expected) throws IOException {
+        Token token = peek();
+        if (token != expected) {
+            throw syntaxError("Expected " + expected + " but was " + token);
+        }
+        peeked = null;
+    }
+
+    private void push(int scope) {
+        if (stackSize == stack.length) {
+            int[] newStack = new int[stackSize * 2];
+            System.arraycopy(stack, 0, newStack, 0, stackSize);
+            stack = newStack;
+        }
+        stack[stackSize++] = scope;
+    }
+
+    private boolean fillBuffer() throws IOException {
+        if (pos < limit) {
+            return true;
+        }
+        int read;
+        do {
+            read = in.read(buffer, 0, buffer.length);
+        } while (read == 0);
+        if (read < 0) {
+            return false;
+        }
+        pos = 0;
+        limit = read;
+        return true;
+    }
+
+    private int nextNonWhitespace(boolean throwOnEof) throws IOException {
+        while (fillBuffer()) {
+            char c = buffer[pos++];
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return c;
+            }
+        }
+        if (throwOnEof) {
+            throw new EOFException("End of input");
+        }
+        return -1;
+    }
+
+    /**
+     * Reads a quoted string whose opening quote has already been consumed.
+     */
+    private String readQuoted() throws IOException {
+        scratch.setLength(0);
+        while (true) {
+            if (!fillBuffer()) {
+                throw new EOFException("Unterminated string");
+            }
+            // Copy plain runs straight from the buffer.
+            int start = pos;
+            while (pos < limit) {
+                char c = buffer[pos];
+                if (c == '"' || c == '\\') {
+                    break;
+                }
+                pos++;
+            }
+            scratch.append(buffer, start, pos - start);
+            if (pos == limit) {
+                continue;
+            }
+
+            char c = buffer[pos++];
+            if (c == '"') {
+                return scratch.toString();
+            }
+            scratch.append(readEscape());
+        }
+    }
+
+    private void skipQuoted() throws IOException {
+        while (fillBuffer()) {
+            char c = buffer[pos++];
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                readEscape();
+            }
+        }
+        throw new EOFException("Unterminated string");
+    }
+
+    private char readEscape() throws IOException {
+        if (!fillBuffer()) {
+            throw new EOFException("Unterminated escape sequence");
+        }
+        char escaped = buffer[pos++];
+        switch (escaped) {
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    if (!fillBuffer()) {
+                        throw new EOFException("Unterminated escape sequence");
+                    }
+                    int digit = Character.digit(buffer[pos++], 16);
+                    if (digit < 0) {
+                        throw syntaxError("Malformed unicode escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            case 't':
+                return '\t';
+            case 'b':
+                return '\b';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 'f':
+                return '\f';
+            default:
+                // Covers '"', '\\' and '/'.
+                return escaped;
+        }
+    }
+
+    /**
+     * Reads an unquoted literal (number, true, false or null) into the scratch buffer.
+     */
+    private CharSequence readLiteral() throws IOException {
+        scratch.setLength(0);
+        while (fillBuffer()) {
+            char c = buffer[pos];
+            if (isLiteralEnd(c)) {
+                break;
+            }
+            scratch.append(c);
+            pos++;
+        }
+        return scratch;
+    }
+
+    private void skipLiteral() throws IOException {
+        while (fillBuffer()) {
+            if (isLiteralEnd(buffer[pos])) {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private static boolean isLiteralEnd(char c) {
+        switch (c) {
+            case ',':
+            case '}':
+            case ']':
+            case ':':
+            case ' ':
+            case '\t':
+            case '\n':
+            case '\r':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException(message);
+    }
+}
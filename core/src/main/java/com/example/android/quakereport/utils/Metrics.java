@@ -0,0 +1,351 @@
+package com.example.android.quakereport.utils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A small registry of counters, histograms and timers for the hot paths of the app: fetching,
+ * parsing, loading and binding.
+ * <p>
+ * Instruments are looked up once and kept in static fields. While the registry is disabled,
+ * which it is unless a debug build turns it on, recording only reads one volatile flag and
+ * {@link Timer#start()} doesn't even read the clock.
+ */
+public final class Metrics {
+
+    /* Returned by Timer.start() while disabled, so the matching stop() records nothing. */
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+
+    /* Histogram values are bucketed by their highest bit, 0 and 1 share the first bucket. */
+    private static final int BUCKET_COUNT = 64;
+
+    private static Metrics instance;
+
+    private volatile boolean enabled;
+
+    /* Every instrument by name, sorted so that reports list them in a stable order. */
+    private final Map<String, Counter> counters = new TreeMap<>();
+    private final Map<String, Histogram> histograms = new TreeMap<>();
+    private final Map<String, Gauge> gauges = new TreeMap<>();
+
+    /**
+     * A value that is read when a report is made, such as the hit count of a cache.
+     */
+    public interface Gauge {
+        long getValue();
+    }
+
+    /**
+     * Counts events, or adds up amounts such as bytes.
+     */
+    public final class Counter {
+        private final AtomicLong count = new AtomicLong();
+
+        private Counter() {
+        }
+
+        public void increment() {
+            add(1);
+        }
+
+        public void add(long amount) {
+            if (enabled) {
+                count.addAndGet(amount);
+            }
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        private void reset() {
+            count.set(0);
+        }
+    }
+
+    /**
+     * The distribution of recorded values, in power of two buckets. Percentiles are
+     * interpolated within a bucket, which is close enough to tell 2 ms from 20 ms.
+     */
+    public class Histogram {
+        private final String unit;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+        private Histogram(String unit) {
+            this.unit = unit;
+        }
+
+        /**
+         * @param value to record, negative values count as 0
+         */
+        public void record(long value) {
+            if (enabled) {
+                add(Math.max(0, value));
+            }
+        }
+
+        void add(long value) {
+            buckets.incrementAndGet(bucketOf(value));
+            count.incrementAndGet();
+            sum.addAndGet(value);
+            long current;
+            do {
+                current = min.get();
+            } while (value < current && !min.compareAndSet(current, value));
+            do {
+                current = max.get();
+            } while (value > current && !max.compareAndSet(current, value));
+        }
+
+        public String getUnit() {
+            return unit;
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getSum() {
+            return sum.get();
+        }
+
+        public long getMin() {
+            return getCount() == 0 ? 0 : min.get();
+        }
+
+        public long getMax() {
+            return getCount() == 0 ? 0 : max.get();
+        }
+
+        public double getMean() {
+            long count = getCount();
+            return count == 0 ? 0 : (double) getSum() / count;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return the estimated value below which that percentage of the recorded values fall.
+         */
+        public long getPercentile(double percentile) {
+            long count = getCount();
+            if (count == 0) {
+                return 0;
+            }
+
+            double rank = Math.max(1, Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                long inBucket = buckets.get(bucket);
+                if (inBucket == 0 || seen + inBucket < rank) {
+                    seen += inBucket;
+                    continue;
+                }
+                long low = bucket == 0 ? 0 : 1L << bucket;
+                long high = bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : (2L << bucket) - 1;
+                double fraction = (rank - seen) / inBucket;
+                long estimate = low + (long) ((high - low) * fraction);
+                return Math.max(getMin(), Math.min(getMax(), estimate));
+            }
+            return getMax();
+        }
+
+        private void reset() {
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                buckets.set(bucket, 0);
+            }
+            count.set(0);
+            sum.set(0);
+            min.set(Long.MAX_VALUE);
+            max.set(Long.MIN_VALUE);
+        }
+    }
+
+    /**
+     * A histogram of durations in microseconds.
+     */
+    public final class Timer extends Histogram {
+
+        private Timer() {
+            super("us");
+        }
+
+        /**
+         * @return the token to pass to {@link #stop(long)}.
+         */
+        public long start() {
+            return enabled ? System.nanoTime() : NOT_STARTED;
+        }
+
+        /**
+         * Record the time since {@link #start()} returned the token.
+         *
+         * @return the elapsed time in microseconds, or -1 if nothing was recorded.
+         */
+        public long stop(long startToken) {
+            if (startToken == NOT_STARTED || !enabled) {
+                return -1;
+            }
+            long micros = (System.nanoTime() - startToken) / 1000;
+            add(Math.max(0, micros));
+            return micros;
+        }
+    }
+
+    public Metrics() {
+    }
+
+    /**
+     * @return the registry the app records into.
+     */
+    public static synchronized Metrics getInstance() {
+        if (instance == null) {
+            instance = new Metrics();
+        }
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return the counter with the name, created on first use.
+     */
+    public synchronized Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            counter = new Counter();
+            counters.put(name, counter);
+        }
+        return counter;
+    }
+
+    /**
+     * @param unit of the recorded values, for the reports
+     * @return the histogram with the name, created on first use.
+     */
+    public synchronized Histogram histogram(String name, String unit) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = new Histogram(unit);
+            histograms.put(name, histogram);
+        }
+        return histogram;
+    }
+
+    /**
+     * @return the timer with the name, created on first use.
+     * @throws IllegalArgumentException if the name is taken by a plain histogram.
+     */
+    public synchronized Timer timer(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            histogram = new Timer();
+            histograms.put(name, histogram);
+        } else if (!(histogram instanceof Timer)) {
+            throw new IllegalArgumentException(name + " is not a timer");
+        }
+        return (Timer) histogram;
+    }
+
+    /**
+     * Report the gauge's value under the name, replacing any gauge registered before.
+     */
+    public synchronized void gauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * Forget everything recorded so far. Gauges are left alone.
+     */
+    public synchronized void reset() {
+        for (Counter counter : counters.values()) {
+            counter.reset();
+        }
+        for (Histogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * @return everything recorded, as a JSON object with "counters", "gauges" and "histograms".
+     */
+    public synchronized JSONObject toJson() {
+        JSONObject report = new JSONObject();
+        try {
+            report.put("enabled", enabled);
+
+            JSONObject countersJson = new JSONObject();
+            for (Map.Entry<String, Counter> counter : counters.entrySet()) {
+                countersJson.put(counter.getKey(), counter.getValue().getCount());
+            }
+            report.put("counters", countersJson);
+
+            JSONObject gaugesJson = new JSONObject();
+            for (Map.Entry<String, Gauge> gauge : gauges.entrySet()) {
+                gaugesJson.put(gauge.getKey(), gauge.getValue().getValue());
+            }
+            report.put("gauges", gaugesJson);
+
+            JSONObject histogramsJson = new JSONObject();
+            for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+                Histogram histogram = entry.getValue();
+                histogramsJson.put(entry.getKey(), new JSONObject()
+                        .put("unit", histogram.getUnit())
+                        .put("count", histogram.getCount())
+                        .put("min", histogram.getMin())
+                        .put("mean", histogram.getMean())
+                        .put("p50", histogram.getPercentile(50))
+                        .put("p90", histogram.getPercentile(90))
+                        .put("p99", histogram.getPercentile(99))
+                        .put("max", histogram.getMax()));
+            }
+            report.put("histograms", histogramsJson);
+        } catch (JSONException e) {
+            // Only thrown for NaN and infinite numbers, which no instrument produces.
+            throw new IllegalStateException(e);
+        }
+        return report;
+    }
+
+    /**
+     * @return a compact report with one line per instrument, for showing on screen.
+     */
+    public synchronized String toText() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Counter> counter : counters.entrySet()) {
+            text.append(counter.getKey()).append(' ')
+                    .append(counter.getValue().getCount()).append('\n');
+        }
+        for (Map.Entry<String, Gauge> gauge : gauges.entrySet()) {
+            text.append(gauge.getKey()).append(' ')
+                    .append(gauge.getValue().getValue()).append('\n');
+        }
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            Histogram histogram = entry.getValue();
+            text.append(String.format(Locale.US, "%s n=%d p50=%d p90=%d max=%d %s%n",
+                    entry.getKey(), histogram.getCount(), histogram.getPercentile(50),
+                    histogram.getPercentile(90), histogram.getMax(), histogram.getUnit()));
+        }
+        return text.toString();
+    }
+
+    private static int bucketOf(long value) {
+        return value <= 1 ? 0 : 63 - Long.numberOfLeadingZeros(value);
+    }
+}
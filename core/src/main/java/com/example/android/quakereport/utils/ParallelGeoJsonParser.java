@@ -0,0 +1,484 @@
+package com.example.android.quakereport.utils;
+
+import com.example.android.quakereport.data.Earthquake;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parses a whole GeoJSON response on several cores at once.
+ * <p>
+ * The bytes of the "features" array are cut into chunks at the commas between features, every
+ * chunk is parsed by {@link EarthquakeStreamParser} on a fork-join pool and the chunks are joined
+ * in order, so the result is the same list the sequential parser returns.
+ * <p>
+ * Finding those commas takes a scan of the whole array, which is done in parallel as well: the
+ * array is cut into slices anywhere, a first pass counts the quotes of every slice to tell
+ * whether it starts inside a string, and a second pass tracks the nesting within every slice.
+ * Adding up the nesting of the slices before one then tells which of its commas separate
+ * features. A quote is escaped if an odd number of backslashes precede it, which can be decided
+ * anywhere because JSON has no backslashes outside of strings. The scans work on the raw UTF-8
+ * bytes, which is safe because every byte of a multi-byte character is above 0x7F.
+ * <p>
+ * Below {@link #PARALLEL_THRESHOLD_BYTES}, or with a single core, the body is parsed
+ * sequentially, splitting it would cost more than it saves. ForkJoinPool needs API level 21.
+ */
+public final class ParallelGeoJsonParser {
+
+    /* About 700 USGS features. */
+    static final int PARALLEL_THRESHOLD_BYTES = 512 * 1024;
+
+    /* A chunk is at least this big, so that forking costs little next to parsing it. */
+    private static final int MIN_CHUNK_BYTES = 64 * 1024;
+
+    /* More chunks than threads, so that a thread that finishes early can steal work. */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte[] CHUNK_PREFIX = "{\"features\":[".getBytes(UTF_8);
+    private static final byte[] CHUNK_SUFFIX = "]}".getBytes(UTF_8);
+    private static final byte[] FEATURES = "features".getBytes(UTF_8);
+
+    private static final Metrics.Counter PARALLEL_PARSES =
+            Metrics.getInstance().counter("parse.parallel");
+
+    private static ForkJoinPool pool;
+
+    private ParallelGeoJsonParser() {
+    }
+
+    /**
+     * Parse a whole response body, on all cores if it is big enough.
+     *
+     * @throws IOException if the body is not a GeoJSON feature collection.
+     */
+    public static List<Earthquake> parse(byte[] body) throws IOException {
+        ForkJoinPool pool = getPool();
+        int chunkSize = Math.max(MIN_CHUNK_BYTES,
+                body.length / (pool.getParallelism() * CHUNKS_PER_THREAD));
+        return parse(body, pool, PARALLEL_THRESHOLD_BYTES, chunkSize);
+    }
+
+    /**
+     * @param threshold bodies smaller than this many bytes are parsed sequentially
+     * @param chunkSize the smallest chunk in bytes
+     */
+    static List<Earthquake> parse(byte[] body, ForkJoinPool pool, int threshold, int chunkSize)
+            throws IOException {
+        if (body.length < threshold || pool.getParallelism() < 2) {
+            return EarthquakeStreamParser.parse(new ByteArrayInputStream(body));
+        }
+
+        Split split = split(body, chunkSize, pool, pool.getParallelism() * CHUNKS_PER_THREAD);
+        if (split == null || split.chunks.size() < 2) {
+            // Nothing to split, or not the shape expected: let the parser deal with it.
+            return EarthquakeStreamParser.parse(new ByteArrayInputStream(body));
+        }
+
+        PARALLEL_PARSES.increment();
+        // Everything but the features, so that an error there throws like it would
+        // sequentially, and any further "features" array is read too.
+        List<Earthquake> rest = EarthquakeStreamParser.parse(new SequenceInputStream(
+                new ByteArrayInputStream(body, 0, split.arrayStart + 1),
+                new ByteArrayInputStream(body, split.arrayEnd, body.length - split.arrayEnd)));
+        try {
+            List<Earthquake> earthquakes =
+                    pool.invoke(new ChunkTask(body, split.chunks, 0, split.chunks.size()));
+            earthquakes.addAll(rest);
+            return earthquakes;
+        } catch (RuntimeException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private static synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        }
+        return pool;
+    }
+
+    /**
+     * Find the features of the top level "features" array and group them into chunks.
+     *
+     * @param chunkSize  the smallest chunk in bytes
+     * @param sliceCount how many slices to scan the array in
+     * @return where the array is and the chunks of whole features in it, or null if the body
+     * has no "features" array or it isn't well formed.
+     */
+    static Split split(byte[] body, int chunkSize, ForkJoinPool pool, int sliceCount) {
+        int arrayStart = findFeatures(body);
+        if (arrayStart < 0) {
+            return null;
+        }
+
+        // The array may be followed by more of the document, the scans stop where it ends.
+        int from = arrayStart + 1;
+        int sliceSize = Math.max(1, (body.length - from + sliceCount - 1) / sliceCount);
+        List<Slice> slices = new ArrayList<>();
+        for (int start = from; start < body.length; start += sliceSize) {
+            slices.add(new Slice(start, Math.min(body.length, start + sliceSize)));
+        }
+        if (slices.isEmpty()) {
+            return null;
+        }
+
+        pool.invoke(new ScanTask(body, slices, 0, slices.size(), true));
+        int quotes = 0;
+        for (Slice slice : slices) {
+            slice.inString = quotes % 2 == 1;
+            quotes += slice.quotes;
+        }
+        pool.invoke(new ScanTask(body, slices, 0, slices.size(), false));
+
+        // Depth 0 is inside the features array, its end takes it to -1.
+        int depth = 0;
+        IntList separators = new IntList();
+        int arrayEnd = -1;
+        for (Slice slice : slices) {
+            boolean endsArray = slice.minDepth < -depth;
+            int end = endsArray ? slice.depthDrops.get(depth) : slice.end;
+            for (int i = 0; i < slice.commas.size(); i++) {
+                if (slice.commaDepths.get(i) == -depth && slice.commas.get(i) < end) {
+                    separators.add(slice.commas.get(i));
+                }
+            }
+            if (endsArray) {
+                arrayEnd = end;
+                break;
+            }
+            depth += slice.depth;
+        }
+        if (arrayEnd < 0 || body[arrayEnd] != ']') {
+            return null;
+        }
+
+        List<int[]> chunks = new ArrayList<>();
+        int chunkStart = from;
+        for (int i = 0; i < separators.size(); i++) {
+            int separator = separators.get(i);
+            if (separator - chunkStart >= chunkSize) {
+                chunks.add(new int[]{chunkStart, separator});
+                chunkStart = separator + 1;
+            }
+        }
+        if (!isBlank(body, chunkStart, arrayEnd)) {
+            chunks.add(new int[]{chunkStart, arrayEnd});
+        } else if (!chunks.isEmpty()) {
+            // A comma before the closing bracket.
+            return null;
+        }
+        return new Split(arrayStart, arrayEnd, chunks);
+    }
+
+    /**
+     * @return the index of the '[' that opens the value of the top level "features" key, or -1.
+     */
+    private static int findFeatures(byte[] body) {
+        int depth = 0;
+        for (int i = 0; i < body.length; i++) {
+            byte b = body[i];
+            if (b == '"') {
+                int end = endOfString(body, i);
+                if (end < 0) {
+                    return -1;
+                }
+                if (depth == 1 && isFeatures(body, i + 1, end)) {
+                    int colon = skipBlanks(body, end + 1);
+                    if (colon < body.length && body[colon] == ':') {
+                        int value = skipBlanks(body, colon + 1);
+                        return value < body.length && body[value] == '[' ? value : -1;
+                    }
+                }
+                i = end;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                depth--;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the quote that closes the string opened at the index, or -1.
+     */
+    private static int endOfString(byte[] body, int openingQuote) {
+        for (int i = openingQuote + 1; i < body.length; i++) {
+            if (body[i] == '\\') {
+                i++;
+            } else if (body[i] == '"') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if an odd number of backslashes precede the index.
+     */
+    private static boolean isEscaped(byte[] body, int index) {
+        int backslash = index - 1;
+        while (backslash >= 0 && body[backslash] == '\\') {
+            backslash--;
+        }
+        return (index - 1 - backslash) % 2 == 1;
+    }
+
+    private static boolean isFeatures(byte[] body, int start, int end) {
+        if (end - start != FEATURES.length) {
+            return false;
+        }
+        for (int i = 0; i < FEATURES.length; i++) {
+            if (body[start + i] != FEATURES[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipBlanks(byte[] body, int index) {
+        while (index < body.length && isBlank(body[index])) {
+            index++;
+        }
+        return index;
+    }
+
+    private static boolean isBlank(byte[] body, int start, int end) {
+        return skipBlanks(body, start) >= end;
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    /**
+     * @return the IOException a task failed with, thrown out of it as a {@link ChunkException},
+     * or the exception itself if it is something else.
+     */
+    private static IOException unwrap(RuntimeException e) {
+        // The pool may rethrow a copy, the IOException is somewhere in its causes.
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return (IOException) cause;
+            }
+        }
+        throw e;
+    }
+
+    /**
+     * The features array of a body and the chunks of whole features it was cut into.
+     */
+    static final class Split {
+        /* The index of the '[' that opens the array and of the ']' that closes it. */
+        final int arrayStart;
+        final int arrayEnd;
+
+        /* The [start, end) byte ranges of the chunks, in order. */
+        final List<int[]> chunks;
+
+        Split(int arrayStart, int arrayEnd, List<int[]> chunks) {
+            this.arrayStart = arrayStart;
+            this.arrayEnd = arrayEnd;
+            this.chunks = chunks;
+        }
+    }
+
+    /**
+     * A piece of the features array, cut without regard to its structure, and what the scans
+     * found in it. Depths are counted from the start of the slice.
+     */
+    private static final class Slice {
+        final int start;
+        final int end;
+
+        /* The first pass: the number of quotes that start or end a string. */
+        int quotes;
+
+        /* Whether the slice starts inside a string, known between the passes. */
+        boolean inString;
+
+        /* The second pass: the depth at the end and the lowest depth on the way. */
+        int depth;
+        int minDepth;
+
+        /* Where the depth first fell to -1, -2 and so on. */
+        final IntList depthDrops = new IntList();
+
+        /* The commas at the lowest depth so far, with their depths. */
+        final IntList commas = new IntList();
+        final IntList commaDepths = new IntList();
+
+        Slice(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        void countQuotes(byte[] body) {
+            for (int i = start; i < end; i++) {
+                if (body[i] == '"' && !isEscaped(body, i)) {
+                    quotes++;
+                }
+            }
+        }
+
+        void scan(byte[] body) {
+            boolean inString = this.inString;
+            for (int i = start; i < end; i++) {
+                byte b = body[i];
+                if (b == '"') {
+                    if (!isEscaped(body, i)) {
+                        inString = !inString;
+                    }
+                } else if (inString) {
+                    continue;
+                } else if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    depth--;
+                    if (depth < minDepth) {
+                        minDepth = depth;
+                        depthDrops.add(i);
+                    }
+                } else if (b == ',' && depth == minDepth) {
+                    commas.add(i);
+                    commaDepths.add(depth);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs one of the passes over a run of slices, forking off half of them while there is more
+     * than one.
+     */
+    private static final class ScanTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] body;
+        private final List<Slice> slices;
+        private final int from;
+        private final int to;
+        private final boolean countQuotes;
+
+        ScanTask(byte[] body, List<Slice> slices, int from, int to, boolean countQuotes) {
+            this.body = body;
+            this.slices = slices;
+            this.from = from;
+            this.to = to;
+            this.countQuotes = countQuotes;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                if (countQuotes) {
+                    slices.get(from).countQuotes(body);
+                } else {
+                    slices.get(from).scan(body);
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new ScanTask(body, slices, from, middle, countQuotes),
+                    new ScanTask(body, slices, middle, to, countQuotes));
+        }
+    }
+
+    /**
+     * Parses a run of chunks, forking off half of them while there is more than one.
+     */
+    private static final class ChunkTask extends RecursiveTask<List<Earthquake>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] body;
+        private final List<int[]> chunks;
+        private final int from;
+        private final int to;
+
+        ChunkTask(byte[] body, List<int[]> chunks, int from, int to) {
+            this.body = body;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Earthquake> compute() {
+            if (to - from == 1) {
+                return parseChunk(chunks.get(from));
+            }
+
+            int middle = (from + to) >>> 1;
+            ChunkTask first = new ChunkTask(body, chunks, from, middle);
+            first.fork();
+            List<Earthquake> second = new ChunkTask(body, chunks, middle, to).compute();
+            List<Earthquake> earthquakes = first.join();
+            earthquakes.addAll(second);
+            return earthquakes;
+        }
+
+        /**
+         * Parse the features of the chunk as if they were the whole features array.
+         */
+        private List<Earthquake> parseChunk(int[] chunk) {
+            InputStream features = new SequenceInputStream(
+                    new SequenceInputStream(new ByteArrayInputStream(CHUNK_PREFIX),
+                            new ByteArrayInputStream(body, chunk[0], chunk[1] - chunk[0])),
+                    new ByteArrayInputStream(CHUNK_SUFFIX));
+            try {
+                return EarthquakeStreamParser.parse(features);
+            } catch (IOException e) {
+                throw new ChunkException(e);
+            }
+        }
+    }
+
+    /**
+     * Carries an IOException out of a {@link ChunkTask}, which can't throw checked exceptions.
+     */
+    private static final class ChunkException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ChunkException(IOException cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * A growable list of ints, without boxing every one of them.
+     */
+    private static final class IntList {
+        private int[] values = new int[8];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                int[] grown = new int[size * 2];
+                System.arraycopy(values, 0, grown, 0, size);
+                values = grown;
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
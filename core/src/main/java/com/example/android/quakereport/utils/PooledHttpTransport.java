@@ -0,0 +1,380 @@
+package com.example.android.quakereport.utils;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * {@link HttpTransport} on top of {@link HttpURLConnection}, which keeps idle connections to a
+ * host open and reuses them as long as every response body is read to its end and closed
+ * without disconnecting. This transport does that, and also
+ * <ul>
+ * <li>asks for gzip or deflate compressed bodies and decodes them, GeoJSON shrinks to about a
+ * tenth;</li>
+ * <li>gives up on connections and reads that stall longer than the timeouts;</li>
+ * <li>retries 5xx and 429 responses and timeouts a few times, after an exponentially growing,
+ * randomized delay so that clients which failed together don't retry together.</li>
+ * </ul>
+ */
+public final class PooledHttpTransport implements HttpTransport {
+
+    private static final Logger LOG = Logger.getLogger(PooledHttpTransport.class.getName());
+
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 15 * 1000;
+
+    public static final int DEFAULT_READ_TIMEOUT_MILLIS = 15 * 1000;
+
+    public static final int DEFAULT_MAX_RETRIES = 2;
+
+    public static final long DEFAULT_BASE_BACKOFF_MILLIS = 500;
+
+    /* No single delay between attempts is longer, whatever Retry-After says. */
+    private static final long MAX_BACKOFF_MILLIS = 10 * 1000;
+
+    /* Unread rest of a body that is still read to keep its connection, instead of dropping it. */
+    private static final int DRAIN_LIMIT_BYTES = 64 * 1024;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private static final Metrics METRICS = Metrics.getInstance();
+    private static final Metrics.Timer DNS_TIMER = METRICS.timer("http.dns");
+    private static final Metrics.Timer CONNECT_TIMER = METRICS.timer("http.connect");
+    private static final Metrics.Timer TTFB_TIMER = METRICS.timer("http.ttfb");
+    private static final Metrics.Timer DOWNLOAD_TIMER = METRICS.timer("http.download");
+    private static final Metrics.Counter DOWNLOADED_BYTES = METRICS.counter("http.bytes");
+    private static final Metrics.Counter REQUESTS = METRICS.counter("http.requests");
+    private static final Metrics.Counter RETRIES = METRICS.counter("http.retries");
+    private static final Metrics.Counter FAILED_REQUESTS = METRICS.counter("http.failures");
+
+    private final int connectTimeoutMillis;
+
+    private final int readTimeoutMillis;
+
+    private final int maxRetries;
+
+    private final long baseBackoffMillis;
+
+    private final Random jitter = new Random();
+
+    public PooledHttpTransport() {
+        this(DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS, DEFAULT_MAX_RETRIES,
+                DEFAULT_BASE_BACKOFF_MILLIS);
+    }
+
+    /**
+     * @param maxRetries        how many times a failed request is sent again
+     * @param baseBackoffMillis the longest delay before the first retry, doubled for each
+     *                          later one
+     */
+    public PooledHttpTransport(int connectTimeoutMillis, int readTimeoutMillis, int maxRetries,
+                               long baseBackoffMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+        this.maxRetries = maxRetries;
+        this.baseBackoffMillis = baseBackoffMillis;
+    }
+
+    @Override
+    public Response get(URL url, Map<String, String> headers, FetchCancellation cancellation)
+            throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            if (cancellation != null) {
+                cancellation.throwIfCancelled();
+            }
+
+            Response response;
+            try {
+                response = send(url, headers, cancellation);
+            } catch (SocketTimeoutException e) {
+                if (attempt >= maxRetries || isCancelled(cancellation)) {
+                    FAILED_REQUESTS.increment();
+                    throw e;
+                }
+                LOG.info("get: " + e.getMessage() + ", retrying " + url);
+                RETRIES.increment();
+                backOff(attempt, 0, cancellation);
+                continue;
+            } catch (IOException e) {
+                FAILED_REQUESTS.increment();
+                throw e;
+            }
+
+            int code = response.getCode();
+            boolean retryable = code >= 500 || code == 429;
+            if (!retryable || attempt >= maxRetries) {
+                if (code >= 400) {
+                    FAILED_REQUESTS.increment();
+                }
+                return response;
+            }
+
+            LOG.info("get: HTTP " + code + ", retrying " + url);
+            RETRIES.increment();
+            long retryAfterMillis = parseRetryAfterMillis(response.getHeader("Retry-After"));
+            response.close();
+            backOff(attempt, retryAfterMillis, cancellation);
+        }
+    }
+
+    private Response send(URL url, Map<String, String> headers, FetchCancellation cancellation)
+            throws IOException {
+        REQUESTS.increment();
+        if (METRICS.isEnabled()) {
+            // HttpURLConnection doesn't report its DNS lookup. Resolving the host up front times
+            // it and leaves the address in the resolver cache, where the connection finds it.
+            long dnsStart = DNS_TIMER.start();
+            InetAddress.getAllByName(url.getHost());
+            DNS_TIMER.stop(dnsStart);
+        }
+
+        final HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        if (cancellation != null) {
+            // Disconnecting from another thread makes the blocked read fail right away.
+            cancellation.attach(new Closeable() {
+                @Override
+                public void close() {
+                    urlConnection.disconnect();
+                }
+            });
+        }
+        try {
+            urlConnection.setRequestMethod("GET");
+            urlConnection.setConnectTimeout(connectTimeoutMillis);
+            urlConnection.setReadTimeout(readTimeoutMillis);
+            // Set explicitly, Android then leaves decoding to us, as the JVM always does.
+            urlConnection.setRequestProperty("Accept-Encoding", ACCEPT_ENCODING);
+            if (headers != null) {
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    urlConnection.setRequestProperty(header.getKey(), header.getValue());
+                }
+            }
+
+            long connectStart = CONNECT_TIMER.start();
+            urlConnection.connect();
+            CONNECT_TIMER.stop(connectStart);
+
+            long requestStart = TTFB_TIMER.start();
+            int code = urlConnection.getResponseCode();
+            TTFB_TIMER.stop(requestStart);
+
+            Map<String, String> responseHeaders = new HashMap<>();
+            for (Map.Entry<String, List<String>> header
+                    : urlConnection.getHeaderFields().entrySet()) {
+                // The status line comes with a null name.
+                if (header.getKey() != null && !header.getValue().isEmpty()) {
+                    List<String> values = header.getValue();
+                    responseHeaders.put(header.getKey(), values.get(values.size() - 1));
+                }
+            }
+
+            InputStream raw = code >= 400 ? urlConnection.getErrorStream()
+                    : urlConnection.getInputStream();
+            if (raw == null) {
+                urlConnection.disconnect();
+                return new Response(code, responseHeaders, null, null);
+            }
+
+            InputStream wire = new ConnectionStream(raw, urlConnection);
+            boolean hasBody = code != HttpURLConnection.HTTP_NO_CONTENT
+                    && code != HttpURLConnection.HTTP_NOT_MODIFIED;
+            InputStream body = hasBody
+                    ? decode(wire, urlConnection.getHeaderField("Content-Encoding")) : wire;
+            return new Response(code, responseHeaders, body, null);
+        } catch (IOException | RuntimeException e) {
+            urlConnection.disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * Wait before the next attempt: a random time up to the base delay doubled for every
+     * attempt so far, but at least as long as the server asked for. Cancelling ends the wait.
+     */
+    private void backOff(int attempt, long retryAfterMillis, FetchCancellation cancellation)
+            throws InterruptedIOException {
+        long ceiling = Math.min(MAX_BACKOFF_MILLIS, baseBackoffMillis << Math.min(attempt, 20));
+        long delay = Math.max(retryAfterMillis, (long) (jitter.nextDouble() * ceiling));
+        delay = Math.min(delay, MAX_BACKOFF_MILLIS);
+
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        if (cancellation != null) {
+            cancellation.attach(new Closeable() {
+                @Override
+                public void close() {
+                    cancelled.countDown();
+                }
+            });
+        }
+        try {
+            cancelled.await(delay, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while backing off");
+        } finally {
+            if (cancellation != null) {
+                cancellation.detach();
+            }
+        }
+        if (cancellation != null) {
+            cancellation.throwIfCancelled();
+        }
+    }
+
+    private static boolean isCancelled(FetchCancellation cancellation) {
+        return cancellation != null && cancellation.isCancelled();
+    }
+
+    /**
+     * @return the delay in a Retry-After header given in seconds, or 0 if there is none. The
+     * HTTP date form is ignored.
+     */
+    static long parseRetryAfterMillis(String retryAfter) {
+        if (retryAfter == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return the body decoded according to its Content-Encoding header.
+     */
+    static InputStream decode(InputStream body, String contentEncoding) throws IOException {
+        if (contentEncoding == null) {
+            return body;
+        }
+
+        String encoding = contentEncoding.trim().toLowerCase(Locale.US);
+        if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+            return new GZIPInputStream(body, BUFFER_SIZE);
+        }
+        if (encoding.equals("deflate")) {
+            // Servers disagree on whether deflate means zlib wrapped or raw, the header tells.
+            PushbackInputStream in = new PushbackInputStream(body, 2);
+            int first = in.read();
+            int second = first < 0 ? -1 : in.read();
+            if (second >= 0) {
+                in.unread(second);
+            }
+            if (first >= 0) {
+                in.unread(first);
+            }
+            boolean zlib = first >= 0 && second >= 0 && (first & 0x0f) == 8
+                    && ((first << 8) | second) % 31 == 0;
+            final Inflater inflater = new Inflater(!zlib);
+            return new InflaterInputStream(in, inflater, BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
+        }
+        return body;
+    }
+
+    /**
+     * The body as it comes off the connection. Counts the bytes for the metrics, and on close
+     * reads what's left of a short unread rest so the connection can be reused; only a
+     * connection with more left than that, or a broken one, is dropped.
+     */
+    private static final class ConnectionStream extends FilterInputStream {
+
+        private final HttpURLConnection urlConnection;
+
+        private final long downloadStart = DOWNLOAD_TIMER.start();
+
+        private long byteCount;
+
+        private boolean closed;
+
+        ConnectionStream(InputStream in, HttpURLConnection urlConnection) {
+            super(in);
+            this.urlConnection = urlConnection;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                byteCount++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int read = super.read(buffer, offset, count);
+            if (read > 0) {
+                byteCount += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            boolean reusable = false;
+            try {
+                reusable = drain();
+                super.close();
+            } finally {
+                DOWNLOAD_TIMER.stop(downloadStart);
+                DOWNLOADED_BYTES.add(byteCount);
+                if (!reusable) {
+                    urlConnection.disconnect();
+                }
+            }
+        }
+
+        /**
+         * @return true if the body was read to its end.
+         */
+        private boolean drain() {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long drained = 0;
+            try {
+                while (drained <= DRAIN_LIMIT_BYTES) {
+                    int read = in.read(buffer);
+                    if (read < 0) {
+                        return true;
+                    }
+                    drained += read;
+                }
+            } catch (IOException e) {
+                // Broken or cancelled, the connection can't be used again.
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,578 @@
+package com.example.android.quakereport.utils;
+
+import com.example.android.quakereport.data.Earthquake;
+import com.example.android.quakereport.data.EarthquakeDetail;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.logging.Logger;
+
+/**
+ * Helper methods related to requesting and receiving earthquake data from USGS.
+ */
+public final class QueryUtils {
+
+    /* java.util.logging keeps this class free of Android, on a device it still ends up in
+     * logcat. */
+    private static final Logger LOG = Logger.getLogger(QueryUtils.class.getName());
+
+    /* Sub-directory of the app cache directory used by the response cache. */
+    private static final String RESPONSE_CACHE_DIR = "http";
+
+    /* Room on disk for cached response bodies. */
+    private static final long RESPONSE_CACHE_BYTES = 10 * 1024 * 1024;
+
+    /* How long a cached response is used before asking USGS whether it changed. */
+    private static final long RESPONSE_CACHE_TTL_MILLIS = 60 * 1000;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /* Cache for response bodies, or null until one is installed. */
+    private static volatile DiskResponseCache responseCache;
+
+    /* Sends every request that the response cache can't answer. */
+    private static volatile HttpTransport transport = new PooledHttpTransport();
+
+    /* Off by default, ForkJoinPool needs API level 21. */
+    private static volatile boolean parallelParsing;
+
+    private static final Metrics METRICS = Metrics.getInstance();
+    private static final Metrics.Timer PARSE_TIMER = METRICS.timer("parse.time");
+    private static final Metrics.Histogram PARSE_RATE =
+            METRICS.histogram("parse.rate", "events/s");
+
+    static {
+        METRICS.gauge("http_cache.hits", new Metrics.Gauge() {
+            @Override
+            public long getValue() {
+                DiskResponseCache cache = responseCache;
+                return cache == null ? 0 : cache.getHitCount();
+            }
+        });
+        METRICS.gauge("http_cache.misses", new Metrics.Gauge() {
+            @Override
+            public long getValue() {
+                DiskResponseCache cache = responseCache;
+                return cache == null ? 0 : cache.getMissCount();
+            }
+        });
+        METRICS.gauge("http_cache.revalidations", new Metrics.Gauge() {
+            @Override
+            public long getValue() {
+                DiskResponseCache cache = responseCache;
+                return cache == null ? 0 : cache.getRevalidationCount();
+            }
+        });
+    }
+
+    /**
+     * Create a private constructor because no one should ever create a {@link QueryUtils} object.
+     * This class is only meant to hold static variables and methods, which can be accessed
+     * directly from the class name QueryUtils (and an object instance of QueryUtils is not needed).
+     */
+    private QueryUtils() {
+    }
+
+    /**
+     * Format a time in milliseconds the way FDSN time parameters such as "updatedafter" expect
+     * it (ISO 8601, UTC).
+     */
+    public static String formatFdsnTime(long timeInMillis) {
+        SimpleDateFormat fdsnFormatter =
+                new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US);
+        fdsnFormatter.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return fdsnFormatter.format(new Date(timeInMillis));
+    }
+
+    /**
+     * Use a {@link DiskResponseCache} in the given directory for all requests, unless one is
+     * already installed.
+     */
+    public static synchronized DiskResponseCache initResponseCache(File cacheDir) {
+        if (responseCache == null) {
+            responseCache = new DiskResponseCache(new File(cacheDir, RESPONSE_CACHE_DIR),
+                    RESPONSE_CACHE_BYTES, RESPONSE_CACHE_TTL_MILLIS);
+        }
+        return responseCache;
+    }
+
+    /**
+     * Replace the response cache, or remove it by passing null.
+     */
+    public static synchronized void setResponseCache(DiskResponseCache cache) {
+        responseCache = cache;
+    }
+
+    /**
+     * @return the installed response cache, or null if there is none.
+     */
+    public static DiskResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Send all requests through the transport, e.g. a fake one in tests.
+     */
+    public static void setTransport(HttpTransport transport) {
+        QueryUtils.transport = transport;
+    }
+
+    public static HttpTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Download GeoJSON responses without a callback first and then parse them on all cores with
+     * {@link ParallelGeoJsonParser}, instead of parsing them on one core while they download.
+     */
+    public static void setParallelParsing(boolean parallelParsing) {
+        QueryUtils.parallelParsing = parallelParsing;
+    }
+
+    public static List<Earthquake> fetchEarthquakeData(String strUrl) {
+        // Slow networks are simulated by the benchmarks' MockFdsnServer, not in here.
+        return fetchEarthquakeData(strUrl, null, null);
+    }
+
+    /**
+     * Like {@link #fetchEarthquakeData(String)}, but every earthquake is also handed to the
+     * callback as soon as it has been parsed, while the rest of the response is still
+     * downloading.
+     *
+     * @param cancellation to stop the download and the parse with, or null
+     * @param callback     to receive the earthquakes while parsing, or null
+     * @return the earthquakes, or null if the request failed or was cancelled.
+     */
+    public static List<Earthquake> fetchEarthquakeData(
+            String strUrl, FetchCancellation cancellation,
+            EarthquakeStreamParser.Callback callback) {
+        URL url = createUrl(strUrl);
+
+        List<Earthquake> earthquakeList = null;
+        try {
+            earthquakeList = streamEarthquakeData(url, false, cancellation, callback);
+        } catch (IOException e) {
+            LOG.severe("fetchEarthquakeData: IOException " + e.getMessage());
+        }
+
+        return earthquakeList;
+    }
+
+    /**
+     * Like {@link #fetchEarthquakeData(String)}, but when USGS answers the revalidation of a
+     * cached response with "304 Not Modified", nothing is parsed and an empty list is returned.
+     * Only use it for requests whose earlier responses the caller has already stored.
+     */
+    public static List<Earthquake> fetchEarthquakeChanges(String strUrl) {
+        return fetchEarthquakeChanges(strUrl, null, null);
+    }
+
+    /**
+     * Like {@link #fetchEarthquakeChanges(String)}, but every earthquake is also handed to the
+     * callback as soon as it has been parsed, while the rest of the response is still
+     * downloading.
+     *
+     * @param cancellation to stop the download and the parse with, or null
+     * @param callback     to receive the earthquakes while parsing, or null
+     * @return the changed earthquakes, or null if the request failed or was cancelled.
+     */
+    public static List<Earthquake> fetchEarthquakeChanges(
+            String strUrl, FetchCancellation cancellation,
+            EarthquakeStreamParser.Callback callback) {
+        URL url = createUrl(strUrl);
+
+        List<Earthquake> earthquakeList = null;
+        try {
+            earthquakeList = streamEarthquakeData(url, true, cancellation, callback);
+        } catch (IOException e) {
+            LOG.severe("fetchEarthquakeChanges: IOException " + e.getMessage());
+        }
+
+        return earthquakeList;
+    }
+
+    /**
+     * Fetch and parse the detail GeoJSON of one event, see {@link Earthquake#getDetailUrl()}.
+     *
+     * @param cancellation to stop the download and the parse with, or null
+     * @return the detail, or null if the request failed.
+     * @throws InterruptedIOException if the fetch was cancelled.
+     */
+    public static EarthquakeDetail fetchEarthquakeDetail(
+            String strUrl, FetchCancellation cancellation) throws InterruptedIOException {
+        URL url = createUrl(strUrl);
+        if (url == null) {
+            return null;
+        }
+
+        HttpResponse response = null;
+        try {
+            response = openResponse(url, cancellation);
+            if (response == null) {
+                return null;
+            }
+            return EarthquakeStreamParser.parseDetail(new BufferedInputStream(cancellation == null
+                    ? response.body : cancellation.wrap(response.body), BUFFER_SIZE));
+        } catch (IOException e) {
+            if (cancellation != null && cancellation.isCancelled()) {
+                throw new InterruptedIOException("Detail fetch cancelled");
+            }
+            LOG.severe("fetchEarthquakeDetail: IOException " + e.getMessage());
+            return null;
+        } finally {
+            if (cancellation != null) {
+                cancellation.detach();
+            }
+            if (response != null) {
+                try {
+                    response.close();
+                } catch (IOException e) {
+                    // Whatever was read is parsed already.
+                }
+            }
+        }
+    }
+
+    /**
+     * Ask an FDSN "count" URL how many events its query matches.
+     *
+     * @return the count, or -1 if the request failed.
+     */
+    public static long fetchEventCount(String strUrl) {
+        URL url = createUrl(strUrl);
+
+        try {
+            // Without a format parameter the count method answers with the bare number.
+            return Long.parseLong(makeHttpRequest(url).trim());
+        } catch (IOException | NumberFormatException e) {
+            LOG.severe("fetchEventCount: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Return a list of {@link Earthquake} objects that has been built up from
+     * parsing a JSON response.
+     */
+    public static List<Earthquake> extractEarthquakeList(String stringJson) {
+        long parseStart = PARSE_TIMER.start();
+        List<Earthquake> earthquakeList = new ArrayList<>();
+
+        try {
+            JSONObject rootJson = new JSONObject(stringJson);
+            JSONArray featuresArr = rootJson.getJSONArray("features");
+
+            for (int i = 0; i < featuresArr.length(); i++) {
+                JSONObject currentFeature = featuresArr.getJSONObject(i);
+                JSONObject propertiesObj = currentFeature.getJSONObject("properties");
+
+                String id = currentFeature.optString("id", null);
+                double mag = propertiesObj.optDouble("mag", Double.NaN);
+                String location = propertiesObj.getString("place");
+                long time = propertiesObj.getLong("time");
+                long updated = propertiesObj.optLong("updated");
+                String url = propertiesObj.getString("url");
+
+                // Coordinates are [longitude, latitude, depth].
+                double longitude = Double.NaN;
+                double latitude = Double.NaN;
+                double depth = Double.NaN;
+                JSONObject geometryObj = currentFeature.optJSONObject("geometry");
+                JSONArray coordinatesArr =
+                        geometryObj == null ? null : geometryObj.optJSONArray("coordinates");
+                if (coordinatesArr != null) {
+                    longitude = coordinatesArr.optDouble(0);
+                    latitude = coordinatesArr.optDouble(1);
+                    depth = coordinatesArr.optDouble(2);
+                }
+
+                earthquakeList.add(new Earthquake(
+                        id, mag, location, time, updated, url, longitude, latitude, depth));
+            }
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+
+        recordParse(parseStart, earthquakeList.size());
+        return earthquakeList;
+    }
+
+    /**
+     * Record how long a parse that was started with the token took and how fast it went.
+     */
+    private static void recordParse(long parseStart, int eventCount) {
+        long micros = PARSE_TIMER.stop(parseStart);
+        if (micros > 0) {
+            PARSE_RATE.record(eventCount * 1000000L / micros);
+        }
+    }
+
+
+    /**
+     * Returns new URL object from the given string URL.
+     */
+    public static URL createUrl(String stringUrl) {
+        URL url = null;
+        try {
+            url = new URL(stringUrl);
+        } catch (MalformedURLException e) {
+            LOG.severe("createUrl: MalformedURLException " + e.getMessage());
+        }
+
+        return url;
+    }
+
+    /**
+     * Make an HTTP request to the given URL and return a String as the response.
+     */
+    public static String makeHttpRequest(URL url) throws IOException {
+        String jsonResponse = "";
+        if (url == null) {
+            return jsonResponse;
+        }
+
+        HttpResponse response = null;
+        try {
+            response = openResponse(url, null);
+            if (response != null) {
+                jsonResponse = readFromStream(response.body);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            if (response != null) {
+                // Closing the input stream could throw an IOException, which is why
+                // the makeHttpRequest(URL url) method signature specifies than an IOException
+                // could be thrown.
+                response.close();
+            }
+        }
+
+        return jsonResponse;
+    }
+
+    /**
+     * Make an HTTP request to the given URL and parse the response body while it is
+     * downloading, without ever holding the whole response in memory. The body may be in any of
+     * the {@link EarthquakeFormats}, it is parsed in the one it turns out to be.
+     *
+     * @param changesOnly  if true, a response the server revalidated as unchanged is not parsed
+     *                     at all and an empty list is returned instead. A fresh cached body is
+     *                     still parsed, the caller may never have seen it.
+     * @param cancellation to abort the request with, or null
+     * @param callback     to receive every earthquake as soon as it is parsed, or null
+     * @return the parsed earthquakes, or null if the request failed.
+     */
+    private static List<Earthquake> streamEarthquakeData(
+            URL url, boolean changesOnly, FetchCancellation cancellation,
+            final EarthquakeStreamParser.Callback callback) throws IOException {
+        if (url == null) {
+            return null;
+        }
+
+        HttpResponse response = openResponse(url, cancellation);
+        if (response == null) {
+            return null;
+        }
+
+        try {
+            if (changesOnly && response.notModified) {
+                return new ArrayList<>();
+            }
+
+            BufferedInputStream body = new BufferedInputStream(cancellation == null
+                    ? response.body : cancellation.wrap(response.body), BUFFER_SIZE);
+            // Parsing overlaps the download here, so this includes waiting for the network.
+            long parseStart = PARSE_TIMER.start();
+            long startNanos = System.nanoTime();
+            EarthquakeFormat format = EarthquakeFormats.detect(body);
+            final List<Earthquake> earthquakeList;
+            if (parallelParsing && callback == null && format == EarthquakeFormats.GEOJSON) {
+                // Nothing is shown before the end anyway, so download first, then use all cores.
+                earthquakeList = ParallelGeoJsonParser.parse(readBytes(body));
+            } else {
+                earthquakeList = new ArrayList<>();
+                format.parse(body, new EarthquakeStreamParser.Callback() {
+                    @Override
+                    public void onEarthquake(Earthquake earthquake) {
+                        earthquakeList.add(earthquake);
+                        if (callback != null) {
+                            callback.onEarthquake(earthquake);
+                        }
+                    }
+                });
+            }
+            recordParse(parseStart, earthquakeList.size());
+            if (!response.fromCache) {
+                // Cached bodies cost no transfer, they would make their format look cheap.
+                FormatSelector.getInstance().record(format, earthquakeList.size(),
+                        (System.nanoTime() - startNanos) / 1000);
+            }
+            return earthquakeList;
+        } finally {
+            if (cancellation != null) {
+                cancellation.detach();
+            }
+            response.close();
+        }
+    }
+
+    /**
+     * Open the response body for the URL. When a response cache is installed a fresh cached
+     * body is returned without any network traffic, and a stale one is revalidated with a
+     * conditional request so that an unchanged response costs no body transfer.
+     *
+     * @param cancellation closes the connection when the request is cancelled, or null
+     * @return the open response, or null if the server answered with an error.
+     */
+    private static HttpResponse openResponse(URL url, FetchCancellation cancellation)
+            throws IOException {
+        DiskResponseCache cache = responseCache;
+        String cacheKey = url.toString();
+        DiskResponseCache.Entry cached = cache == null ? null : cache.get(cacheKey);
+
+        long now = System.currentTimeMillis();
+        if (cached != null && cache.isFresh(cached, now)) {
+            cache.recordHit();
+            // Nothing was asked of the server, so this says nothing about what the caller has.
+            return new HttpResponse(new FileInputStream(cache.getBodyFile(cached)), true, false,
+                    null);
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        if (cached != null) {
+            if (cached.getEtag() != null) {
+                headers.put("If-None-Match", cached.getEtag());
+            }
+            if (cached.getLastModified() != null) {
+                headers.put("If-Modified-Since", cached.getLastModified());
+            }
+        }
+
+        HttpTransport.Response response = transport.get(url, headers, cancellation);
+        try {
+            int responseCode = response.getCode();
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                cache.recordRevalidation();
+                cache.markRevalidated(cached, now);
+                response.close();
+                return new HttpResponse(new FileInputStream(cache.getBodyFile(cached)), true, true,
+                        null);
+            }
+
+            /* If the request was successful (response code 200), read the input stream and get the
+             * response. */
+            if (responseCode == HttpURLConnection.HTTP_OK) {
+                InputStream inputStream = response.getBody();
+                if (cache != null) {
+                    cache.recordMiss();
+                    inputStream = cache.cacheWhileReading(cacheKey,
+                            response.getHeader("ETag"),
+                            response.getHeader("Last-Modified"),
+                            inputStream);
+                }
+                return new HttpResponse(inputStream, false, false, response);
+            }
+
+            LOG.severe("Problem making the HTTP request. Request Code: " + responseCode);
+            response.close();
+            return null;
+        } catch (IOException e) {
+            response.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Convert the {@link InputStream} into a String which contains the
+     * whole JSON response from the server.
+     */
+    public static String readFromStream(InputStream inputStream) throws IOException {
+        StringBuilder output = new StringBuilder();
+        if (inputStream != null) {
+            InputStreamReader inputStreamReader =
+                    new InputStreamReader(inputStream, Charset.forName("UTF-8"));
+            BufferedReader reader = new BufferedReader(inputStreamReader);
+            String line = reader.readLine();
+            while (line != null) {
+                output.append(line);
+                line = reader.readLine();
+            }
+        }
+
+        return output.toString();
+    }
+
+    private static byte[] readBytes(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(BUFFER_SIZE);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * An open response body, either from the network or from the {@link DiskResponseCache}.
+     */
+    private static final class HttpResponse implements Closeable {
+
+        private final InputStream body;
+
+        /* True when the body is a cached copy rather than a download. */
+        private final boolean fromCache;
+
+        /* True when the server answered a conditional request with "304 Not Modified". */
+        private final boolean notModified;
+
+        private final HttpTransport.Response response;
+
+        HttpResponse(InputStream body, boolean fromCache, boolean notModified,
+                     HttpTransport.Response response) {
+            this.body = body;
+            this.fromCache = fromCache;
+            this.notModified = notModified;
+            this.response = response;
+        }
+
+        /**
+         * Close the body before the response, so that a cached copy can still be completed
+         * and the connection goes back to the pool.
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                body.close();
+            } finally {
+                if (response != null) {
+                    response.close();
+                }
+            }
+        }
+    }
+}
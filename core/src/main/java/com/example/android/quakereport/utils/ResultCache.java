@@ -0,0 +1,179 @@
+package com.example.android.quakereport.utils;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small in-memory LRU cache of loaded results, keyed by the URL they were loaded from.
+ * <p>
+ * Callers show a cached result right away and only load again when {@link #isFresh} says the
+ * entry is older than the TTL. Loads of the same key that overlap are coalesced: the first caller
+ * runs the load and the others wait for its result instead of fetching it a second time.
+ */
+public final class ResultCache<V> {
+
+    /**
+     * A cached result and when it was loaded.
+     */
+    public static final class Entry<V> {
+        private final V value;
+        private final long loadedAt;
+
+        private Entry(V value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public long getLoadedAt() {
+            return loadedAt;
+        }
+    }
+
+    private final long ttlMillis;
+
+    /* In access order, so the eldest entry is the least recently used one. */
+    private final LinkedHashMap<String, Entry<V>> entries;
+
+    /* Loads that are running right now, by key. */
+    private final Map<String, InFlight<V>> inFlight = new HashMap<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    /**
+     * @param maxEntries how many results are kept before the least recently used is evicted
+     * @param ttlMillis  how long a result is fresh
+     */
+    public ResultCache(final int maxEntries, long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return the cached entry for the key, fresh or not, or null if there is none.
+     */
+    public synchronized Entry<V> get(String key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return entry;
+    }
+
+    public synchronized void put(String key, V value, long now) {
+        entries.put(key, new Entry<>(value, now));
+    }
+
+    public synchronized void remove(String key) {
+        entries.remove(key);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public boolean isFresh(Entry<V> entry, long now) {
+        return now - entry.loadedAt < ttlMillis;
+    }
+
+    /**
+     * Run the load for the key and cache its result, unless the same key is already being
+     * loaded, in which case wait for that load and return its result instead. A null result is
+     * returned but not cached, so the next caller tries again.
+     */
+    public V load(String key, Callable<V> loader) throws Exception {
+        InFlight<V> load;
+        boolean owner = false;
+        synchronized (this) {
+            load = inFlight.get(key);
+            if (load == null) {
+                load = new InFlight<>();
+                inFlight.put(key, load);
+                owner = true;
+            }
+        }
+
+        if (!owner) {
+            coalescedCount.incrementAndGet();
+            return load.await();
+        }
+
+        try {
+            load.value = loader.call();
+            if (load.value != null) {
+                put(key, load.value, System.currentTimeMillis());
+            }
+            return load.value;
+        } catch (Exception e) {
+            load.error = e;
+            throw e;
+        } finally {
+            synchronized (this) {
+                inFlight.remove(key);
+            }
+            load.done.countDown();
+        }
+    }
+
+    /**
+     * @return how many loads are running right now.
+     */
+    public synchronized int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return how many times {@link #get} found an entry, fresh or not.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return how many times {@link #get} found nothing.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return how many loads waited for an overlapping load of the same key.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    private static final class InFlight<V> {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile V value;
+        volatile Exception error;
+
+        V await() throws Exception {
+            done.await();
+            if (error != null) {
+                throw error;
+            }
+            return value;
+        }
+    }
+}
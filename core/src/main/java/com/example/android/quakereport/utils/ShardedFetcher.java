@@ -0,0 +1,325 @@
+package com.example.android.quakereport.utils;
+
+import com.example.android.quakereport.data.Earthquake;
+import com.example.android.quakereport.data.EarthquakeQuery;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Fetches queries that match more events than the FDSN service returns per request, by
+ * splitting them into time range shards that are fetched in parallel.
+ * <p>
+ * The shards are sized with the FDSN "count" method first: a range that matches more than
+ * {@code maxPerShard} events is split into equal time slices and counted again, until every shard
+ * fits in one request. The shards are then fetched on a pool of {@code parallelism} threads and
+ * merged into one result ordered like the query, without the events that shards sharing a
+ * boundary both returned.
+ */
+public class ShardedFetcher {
+
+    /* The FDSN event service of USGS; "/query" and "/count" are appended to it. */
+    public static final String USGS_FDSN_BASE_URL = "https://earthquake.usgs.gov/fdsnws/event/1";
+
+    /* USGS refuses queries that match more events than this. */
+    public static final int FDSN_MAX_RESULTS = 20000;
+
+    /* Smaller shards cost more in request overhead than they gain in parallelism. */
+    private static final int MIN_EVENTS_PER_SHARD = 500;
+
+    private final String baseUrl;
+
+    private final int parallelism;
+
+    private final int maxPerShard;
+
+    /**
+     * @param baseUrl     of the FDSN event service, e.g. {@link #USGS_FDSN_BASE_URL}
+     * @param parallelism number of requests in flight at once
+     * @param maxPerShard most events a single request may return
+     */
+    public ShardedFetcher(String baseUrl, int parallelism, int maxPerShard) {
+        if (parallelism < 1 || maxPerShard < 1) {
+            throw new IllegalArgumentException("parallelism and maxPerShard must be positive");
+        }
+        this.baseUrl = baseUrl;
+        this.parallelism = parallelism;
+        this.maxPerShard = maxPerShard;
+    }
+
+    /**
+     * Fetch the events matching the query's minimum magnitude between the two times, both
+     * inclusive, ordered like the query and cut off at its limit.
+     *
+     * @return the events, or null if any request failed.
+     */
+    public List<Earthquake> fetch(final EarthquakeQuery query, long startTime, long endTime) {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Shard> shards = plan(executor, query, startTime, endTime);
+            if (shards == null) {
+                return null;
+            }
+
+            List<Future<List<Earthquake>>> futures = new ArrayList<>(shards.size());
+            for (final Shard shard : shards) {
+                futures.add(executor.submit(new Callable<List<Earthquake>>() {
+                    @Override
+                    public List<Earthquake> call() {
+                        return QueryUtils.fetchEarthquakeData(queryUrl(query, shard));
+                    }
+                }));
+            }
+
+            List<List<Earthquake>> shardResults = new ArrayList<>(futures.size());
+            for (Future<List<Earthquake>> future : futures) {
+                List<Earthquake> shardResult = future.get();
+                if (shardResult == null) {
+                    return null;
+                }
+                shardResults.add(shardResult);
+            }
+
+            return merge(shardResults, query);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Split the time range into shards that each match at most maxPerShard events.
+     *
+     * @return the non-empty shards, newest first, or null if counting failed or a range too
+     * short to split still matches more than maxPerShard events.
+     */
+    List<Shard> plan(ExecutorService executor, EarthquakeQuery query, long startTime,
+                     long endTime) throws InterruptedException, ExecutionException {
+        List<Shard> pending = new ArrayList<>();
+        pending.add(new Shard(startTime, endTime));
+        if (!count(executor, query, pending)) {
+            return null;
+        }
+
+        // Split even a range that fits into one request, so the fetch can run in parallel.
+        Shard whole = pending.get(0);
+        int wanted = (int) Math.min(parallelism, whole.count / MIN_EVENTS_PER_SHARD);
+        if (wanted > 1 && whole.count <= maxPerShard) {
+            pending = whole.split(wanted);
+            if (!count(executor, query, pending)) {
+                return null;
+            }
+        }
+
+        List<Shard> shards = new ArrayList<>();
+        while (!pending.isEmpty()) {
+            List<Shard> oversized = new ArrayList<>();
+            for (Shard shard : pending) {
+                if (shard.count > maxPerShard && !shard.canSplit()) {
+                    // Fetching it would cut events off at the limit without saying so.
+                    return null;
+                } else if (shard.count > maxPerShard) {
+                    oversized.addAll(shard.split(
+                            (int) Math.max(2, Math.min(parallelism * 4,
+                                    (shard.count + maxPerShard - 1) / maxPerShard))));
+                } else if (shard.count > 0) {
+                    shards.add(shard);
+                }
+            }
+            if (!count(executor, query, oversized)) {
+                return null;
+            }
+            pending = oversized;
+        }
+
+        // Newest first, which is also the order a time-ordered result is merged in.
+        Collections.sort(shards, new Comparator<Shard>() {
+            @Override
+            public int compare(Shard a, Shard b) {
+                return Long.compare(b.startTime, a.startTime);
+            }
+        });
+        return shards;
+    }
+
+    /**
+     * Count all the shards concurrently.
+     *
+     * @return false if any count failed.
+     */
+    private boolean count(ExecutorService executor, final EarthquakeQuery query,
+                          List<Shard> shards) throws InterruptedException, ExecutionException {
+        List<Future<Long>> counts = new ArrayList<>(shards.size());
+        for (final Shard shard : shards) {
+            counts.add(executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    return QueryUtils.fetchEventCount(countUrl(query, shard));
+                }
+            }));
+        }
+
+        for (int i = 0; i < shards.size(); i++) {
+            long count = counts.get(i).get();
+            if (count < 0) {
+                return false;
+            }
+            shards.get(i).count = count;
+        }
+        return true;
+    }
+
+    /**
+     * Merge the ordered shard results into one ordered result, keeping the first of every
+     * event id and stopping at the query's limit.
+     */
+    static List<Earthquake> merge(List<List<Earthquake>> shardResults,
+                                  final EarthquakeQuery query) {
+        final Comparator<Earthquake> order = new Comparator<Earthquake>() {
+            @Override
+            public int compare(Earthquake a, Earthquake b) {
+                if (!query.isOrderedByTime()) {
+                    int byMagnitude = Double.compare(magnitudeKey(b), magnitudeKey(a));
+                    if (byMagnitude != 0) {
+                        return byMagnitude;
+                    }
+                }
+                return Long.compare(b.getTime(), a.getTime());
+            }
+        };
+
+        PriorityQueue<ShardCursor> heads = new PriorityQueue<>(
+                Math.max(1, shardResults.size()), new Comparator<ShardCursor>() {
+                    @Override
+                    public int compare(ShardCursor a, ShardCursor b) {
+                        return order.compare(a.head(), b.head());
+                    }
+                });
+        int total = 0;
+        for (List<Earthquake> shardResult : shardResults) {
+            total += shardResult.size();
+            if (!shardResult.isEmpty()) {
+                heads.add(new ShardCursor(shardResult));
+            }
+        }
+
+        List<Earthquake> merged = new ArrayList<>(Math.min(total, query.getLimit()));
+        Set<String> seenIds = new HashSet<>();
+        while (!heads.isEmpty() && merged.size() < query.getLimit()) {
+            ShardCursor cursor = heads.poll();
+            Earthquake earthquake = cursor.head();
+            if (earthquake.getId() == null || seenIds.add(earthquake.getId())) {
+                merged.add(earthquake);
+            }
+            if (cursor.advance()) {
+                heads.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * @return the magnitude to order by, lowest for events without one.
+     */
+    private static double magnitudeKey(Earthquake earthquake) {
+        double magnitude = earthquake.getMagnitude();
+        return Double.isNaN(magnitude) ? Double.NEGATIVE_INFINITY : magnitude;
+    }
+
+    private String queryUrl(EarthquakeQuery query, Shard shard) {
+        // The merge only needs times and magnitudes, any format will do.
+        EarthquakeFormat format = FormatSelector.getInstance().choose(false);
+        return baseUrl + "/query?format=" + format.getName()
+                + "&starttime=" + encode(QueryUtils.formatFdsnTime(shard.startTime))
+                + "&endtime=" + encode(QueryUtils.formatFdsnTime(shard.endTime))
+                + "&minmag=" + query.getMinMagnitude()
+                + "&orderby=" + encode(query.getOrderBy())
+                + "&limit=" + maxPerShard;
+    }
+
+    private String countUrl(EarthquakeQuery query, Shard shard) {
+        return baseUrl + "/count?"
+                + "starttime=" + encode(QueryUtils.formatFdsnTime(shard.startTime))
+                + "&endtime=" + encode(QueryUtils.formatFdsnTime(shard.endTime))
+                + "&minmag=" + query.getMinMagnitude();
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * A time range, both ends inclusive, and how many events it matches.
+     */
+    static final class Shard {
+        final long startTime;
+        final long endTime;
+        long count;
+
+        Shard(long startTime, long endTime) {
+            this.startTime = startTime;
+            this.endTime = endTime;
+        }
+
+        /**
+         * @return true if the range can be cut into smaller ones. Neighbors share their
+         * boundary, so a range of one or two milliseconds can't.
+         */
+        boolean canSplit() {
+            return endTime - startTime >= 2;
+        }
+
+        /**
+         * Cut the range into equal slices. Neighbors share their boundary millisecond, the
+         * merge drops the events both of them return.
+         */
+        List<Shard> split(int parts) {
+            long length = endTime - startTime;
+            parts = (int) Math.max(1, Math.min(parts, length));
+            List<Shard> slices = new ArrayList<>(parts);
+            for (int i = 0; i < parts; i++) {
+                slices.add(new Shard(startTime + length * i / parts,
+                        startTime + length * (i + 1) / parts));
+            }
+            return slices;
+        }
+    }
+
+    /* Walks one ordered shard result during the merge. */
+    private static final class ShardCursor {
+        private final List<Earthquake> earthquakes;
+        private int position;
+
+        ShardCursor(List<Earthquake> earthquakes) {
+            this.earthquakes = earthquakes;
+        }
+
+        Earthquake head() {
+            return earthquakes.get(position);
+        }
+
+        boolean advance() {
+            return ++position < earthquakes.size();
+        }
+    }
+}
@@ -0,0 +1,472 @@
+package com.example.android.quakereport.utils;
+
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Runs the app's background work in separate lanes, so that work nobody is waiting for never
+ * holds up work somebody is.
+ * <p>
+ * Every {@link Lane} has its own threads, at most {@link Lane#getMaxConcurrency()} of them, and
+ * its own queue, which runs the highest priority first and tasks of the same priority in the
+ * order they were submitted. The lanes behind {@link Lane#FOREGROUND} run at the lowest thread
+ * priority and don't start anything while foreground tasks are queued or running.
+ * <p>
+ * Cancelling a task drops it from its queue, or, if it is already running, cancels the
+ * {@link FetchCancellation} it was handed, which aborts its download and parse. A cancelled
+ * task never delivers a result. Results are delivered with the result executor, on Android the
+ * main thread.
+ */
+public final class TaskScheduler {
+
+    private static final Logger LOG = Logger.getLogger(TaskScheduler.class.getName());
+
+    public static final int PRIORITY_LOW = 0;
+    public static final int PRIORITY_NORMAL = 5;
+    public static final int PRIORITY_HIGH = 10;
+
+    /* Idle lane threads go away after this. */
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * The kinds of work, most urgent first.
+     */
+    public enum Lane {
+        /* What the user is looking at or waiting for: the list, its pages, an opened detail. */
+        FOREGROUND(2, Thread.NORM_PRIORITY, false),
+        /* Details of the rows on screen, in case one is opened. */
+        PREFETCH(2, Thread.MIN_PRIORITY, true),
+        /* Polling the feed for new earthquakes. */
+        SYNC(1, Thread.MIN_PRIORITY, true),
+        /* Writing snapshots and other housekeeping of files on disk. */
+        MAINTENANCE(1, Thread.MIN_PRIORITY, true);
+
+        private final int maxConcurrency;
+        private final int threadPriority;
+        private final boolean yieldsToForeground;
+
+        Lane(int maxConcurrency, int threadPriority, boolean yieldsToForeground) {
+            this.maxConcurrency = maxConcurrency;
+            this.threadPriority = threadPriority;
+            this.yieldsToForeground = yieldsToForeground;
+        }
+
+        public int getMaxConcurrency() {
+            return maxConcurrency;
+        }
+
+        private String getMetricName() {
+            return name().toLowerCase(Locale.US);
+        }
+    }
+
+    /**
+     * The work of a task, run on a lane thread.
+     */
+    public interface Job<T> {
+        /**
+         * @param cancellation cancelled with the task; pass it to fetches and check it between
+         *                     steps that don't fetch
+         * @return the result, which may be null
+         */
+        T run(FetchCancellation cancellation) throws Exception;
+    }
+
+    /**
+     * Receives the result of a task with the result executor.
+     */
+    public interface Callback<T> {
+        /**
+         * @param result of the job, or null if it failed
+         */
+        void onResult(T result);
+    }
+
+    private static TaskScheduler instance;
+
+    private final LaneState[] lanes = new LaneState[Lane.values().length];
+
+    /* Foreground tasks queued or running; the other lanes wait while there are any. */
+    private final AtomicInteger foregroundPending = new AtomicInteger();
+
+    private final Object foregroundIdle = new Object();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private volatile Executor resultExecutor;
+
+    /**
+     * @param resultExecutor delivers the results of tasks
+     */
+    public TaskScheduler(Executor resultExecutor) {
+        this.resultExecutor = resultExecutor;
+        for (Lane lane : Lane.values()) {
+            lanes[lane.ordinal()] = new LaneState(lane);
+        }
+    }
+
+    /**
+     * @return the scheduler shared by the app. Until {@link #setResultExecutor} is called it
+     * delivers results on the lane threads.
+     */
+    public static synchronized TaskScheduler getInstance() {
+        if (instance == null) {
+            instance = new TaskScheduler(new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    command.run();
+                }
+            });
+        }
+        return instance;
+    }
+
+    /**
+     * Deliver the results of tasks with the executor, e.g. one posting to the main thread.
+     */
+    public void setResultExecutor(Executor resultExecutor) {
+        this.resultExecutor = resultExecutor;
+    }
+
+    /**
+     * Queue the job in the lane.
+     *
+     * @param priority higher runs earlier, see {@link #PRIORITY_NORMAL}
+     * @param callback to deliver the result to, or null
+     * @return the task, to cancel it or wait for it with
+     */
+    public <T> Task<T> submit(Lane lane, int priority, Job<T> job, Callback<T> callback) {
+        Task<T> task = new Task<>(lanes[lane.ordinal()], priority, sequence.getAndIncrement(),
+                job, callback);
+        if (lane == Lane.FOREGROUND) {
+            foregroundPending.incrementAndGet();
+        }
+        task.lane.submitted.incrementAndGet();
+        task.lane.queued.incrementAndGet();
+        task.lane.executor.execute(task);
+        return task;
+    }
+
+    /**
+     * @return an executor running everything it is given as a task in the lane, for code that
+     * takes a plain {@link Executor}.
+     */
+    public Executor asExecutor(final Lane lane, final int priority) {
+        return new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                submit(lane, priority, new Job<Void>() {
+                    @Override
+                    public Void run(FetchCancellation cancellation) {
+                        command.run();
+                        return null;
+                    }
+                }, null);
+            }
+        };
+    }
+
+    /**
+     * @return the current counts and wait times of the lane.
+     */
+    public Stats getStats(Lane lane) {
+        return lanes[lane.ordinal()].snapshot();
+    }
+
+    /**
+     * Block a lane thread while foreground tasks are queued or running, or until the task is
+     * cancelled. The task keeps its thread while it waits, so the lane's other tasks wait too.
+     */
+    private void awaitForegroundIdle(Task<?> task) throws InterruptedException {
+        synchronized (foregroundIdle) {
+            while (foregroundPending.get() > 0 && !task.isCancelled()) {
+                foregroundIdle.wait();
+            }
+        }
+    }
+
+    private void onForegroundSettled() {
+        if (foregroundPending.decrementAndGet() == 0) {
+            wakeWaiters();
+        }
+    }
+
+    private void wakeWaiters() {
+        synchronized (foregroundIdle) {
+            foregroundIdle.notifyAll();
+        }
+    }
+
+    /**
+     * A submitted job, which can be cancelled or waited for.
+     */
+    public final class Task<T> implements Runnable, Comparable<Task<?>> {
+
+        private static final int QUEUED = 0;
+        private static final int RUNNING = 1;
+        private static final int DONE = 2;
+        private static final int CANCELLED = 3;
+
+        private final LaneState lane;
+        private final int priority;
+        private final long sequence;
+        private final Job<T> job;
+        private final Callback<T> callback;
+        private final FetchCancellation cancellation = new FetchCancellation();
+        private final long queuedAtNanos = System.nanoTime();
+        private final AtomicInteger state = new AtomicInteger(QUEUED);
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private volatile T result;
+
+        private Task(LaneState lane, int priority, long sequence, Job<T> job,
+                     Callback<T> callback) {
+            this.lane = lane;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.job = job;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (lane.lane.yieldsToForeground) {
+                    awaitForegroundIdle(this);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+            }
+            if (!state.compareAndSet(QUEUED, RUNNING)) {
+                return;
+            }
+            lane.queued.decrementAndGet();
+            lane.running.incrementAndGet();
+            lane.recordWait((System.nanoTime() - queuedAtNanos) / 1000);
+
+            T value = null;
+            try {
+                value = job.run(cancellation);
+            } catch (Exception e) {
+                if (!cancellation.isCancelled()) {
+                    LOG.severe("Task in " + lane.lane + " failed: " + e);
+                }
+            }
+
+            lane.running.decrementAndGet();
+            result = value;
+            if (state.compareAndSet(RUNNING, DONE)) {
+                lane.completed.incrementAndGet();
+                deliver(value);
+                settle();
+            }
+        }
+
+        private void deliver(final T value) {
+            if (callback == null) {
+                return;
+            }
+            resultExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // Checked where the result is delivered, so cancelling there is final.
+                    if (!isCancelled()) {
+                        callback.onResult(value);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Cancel the task: drop it from the queue, or abort its fetch if it is running. Its
+         * callback won't be called after this, if this is called with the result executor.
+         *
+         * @return false if the task had already finished.
+         */
+        public boolean cancel() {
+            int previous = state.get();
+            while (previous == QUEUED || previous == RUNNING) {
+                if (state.compareAndSet(previous, CANCELLED)) {
+                    if (previous == QUEUED) {
+                        lane.queued.decrementAndGet();
+                        lane.executor.remove(this);
+                    }
+                    lane.cancelled.incrementAndGet();
+                    cancellation.cancel();
+                    settle();
+                    // A lane thread may be waiting to start it.
+                    wakeWaiters();
+                    return true;
+                }
+                previous = state.get();
+            }
+            return false;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        /**
+         * Wait for the task to finish, on a thread that may block.
+         *
+         * @return the result, or null if the job failed or the task was cancelled.
+         */
+        public T get() throws InterruptedException {
+            finished.await();
+            return isCancelled() ? null : result;
+        }
+
+        private void settle() {
+            if (lane.lane == Lane.FOREGROUND) {
+                onForegroundSettled();
+            }
+            finished.countDown();
+        }
+
+        @Override
+        public int compareTo(Task<?> other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * What a lane is doing and has done.
+     */
+    public static final class Stats {
+        private final int queued;
+        private final int running;
+        private final long submitted;
+        private final long completed;
+        private final long cancelled;
+        private final long totalWaitMicros;
+        private final long maxWaitMicros;
+        private final long started;
+
+        private Stats(int queued, int running, long submitted, long completed, long cancelled,
+                      long totalWaitMicros, long maxWaitMicros, long started) {
+            this.queued = queued;
+            this.running = running;
+            this.submitted = submitted;
+            this.completed = completed;
+            this.cancelled = cancelled;
+            this.totalWaitMicros = totalWaitMicros;
+            this.maxWaitMicros = maxWaitMicros;
+            this.started = started;
+        }
+
+        /**
+         * @return how many tasks are waiting to run.
+         */
+        public int getQueueDepth() {
+            return queued;
+        }
+
+        public int getRunning() {
+            return running;
+        }
+
+        public long getSubmitted() {
+            return submitted;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * @return the mean time tasks waited from submit until they started, 0 if none did.
+         */
+        public long getMeanWaitMicros() {
+            return started == 0 ? 0 : totalWaitMicros / started;
+        }
+
+        public long getMaxWaitMicros() {
+            return maxWaitMicros;
+        }
+    }
+
+    /**
+     * The threads, queue and counts of one lane.
+     */
+    private static final class LaneState {
+        final Lane lane;
+        final ThreadPoolExecutor executor;
+
+        final AtomicInteger queued = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicLong submitted = new AtomicLong();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong cancelled = new AtomicLong();
+        final AtomicLong started = new AtomicLong();
+        final AtomicLong totalWaitMicros = new AtomicLong();
+        final AtomicLong maxWaitMicros = new AtomicLong();
+
+        private final Metrics.Timer waitTimer;
+
+        LaneState(final Lane lane) {
+            this.lane = lane;
+            final String name = lane.getMetricName();
+            executor = new ThreadPoolExecutor(lane.maxConcurrency, lane.maxConcurrency,
+                    KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable,
+                                    "lane-" + name + "-" + count.incrementAndGet());
+                            thread.setPriority(lane.threadPriority);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+
+            Metrics metrics = Metrics.getInstance();
+            waitTimer = metrics.timer("scheduler." + name + ".wait");
+            metrics.gauge("scheduler." + name + ".queued", new Metrics.Gauge() {
+                @Override
+                public long getValue() {
+                    return queued.get();
+                }
+            });
+            metrics.gauge("scheduler." + name + ".running", new Metrics.Gauge() {
+                @Override
+                public long getValue() {
+                    return running.get();
+                }
+            });
+        }
+
+        void recordWait(long micros) {
+            started.incrementAndGet();
+            totalWaitMicros.addAndGet(micros);
+            long max = maxWaitMicros.get();
+            while (micros > max && !maxWaitMicros.compareAndSet(max, micros)) {
+                max = maxWaitMicros.get();
+            }
+            waitTimer.record(micros);
+        }
+
+        Stats snapshot() {
+            return new Stats(queued.get(), running.get(), submitted.get(), completed.get(),
+                    cancelled.get(), totalWaitMicros.get(), maxWaitMicros.get(), started.get());
+        }
+    }
+}
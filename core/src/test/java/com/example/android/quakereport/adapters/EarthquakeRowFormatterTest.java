@@ -0,0 +1,141 @@
+package com.example.android.quakereport.adapters;
+
+import com.example.android.quakereport.data.Earthquake;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EarthquakeRowFormatterTest {
+
+    private static final int[] COLORS = {10, 20, 30, 40, 50, 60, 70, 80, 90, 100};
+
+    private Locale defaultLocale;
+    private TimeZone defaultTimeZone;
+
+    @Before
+    public void setUp() {
+        defaultLocale = Locale.getDefault();
+        defaultTimeZone = TimeZone.getDefault();
+        Locale.setDefault(Locale.US);
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+    }
+
+    @After
+    public void tearDown() {
+        Locale.setDefault(defaultLocale);
+        TimeZone.setDefault(defaultTimeZone);
+    }
+
+    @Test
+    public void magnitudeColorIndex_matchesRanges() {
+        for (int tenths = -20; tenths <= 120; tenths++) {
+            double magnitude = tenths / 10.0;
+            assertEquals("magnitude " + magnitude,
+                    rangeIndex(magnitude), EarthquakeRowFormatter.magnitudeColorIndex(magnitude));
+        }
+        assertEquals(0, EarthquakeRowFormatter.magnitudeColorIndex(Double.NaN));
+    }
+
+    @Test
+    public void format_splitsLocationAndFormatsValues() {
+        EarthquakeRowFormatter formatter = new EarthquakeRowFormatter(COLORS, "Near the");
+
+        EarthquakeRow row = formatter.format(new Earthquake(
+                "us1", 7.24, "88km N of Yelizovo, Russia", 1454124312220L, 0, "url"));
+        assertEquals("7.2", row.getMagnitude());
+        assertEquals(70, row.getMagnitudeColor());
+        assertEquals("88km N of ", row.getLocationOffset());
+        assertEquals("Yelizovo, Russia", row.getPrimaryLocation());
+        assertEquals("Jan 30, 2016", row.getDate());
+        assertEquals("3:25 AM", row.getTime());
+
+        EarthquakeRow noOffset = formatter.format(
+                new Earthquake("us2", 1.0, "Pacific-Antarctic Ridge", 0, 0, "url"));
+        assertEquals("Near the", noOffset.getLocationOffset());
+        assertEquals("Pacific-Antarctic Ridge", noOffset.getPrimaryLocation());
+
+        EarthquakeRow unsized = formatter.format(
+                new Earthquake("us3", Double.NaN, "Somewhere", 0, 0, "url"));
+        assertEquals(EarthquakeRowFormatter.UNKNOWN_MAGNITUDE, unsized.getMagnitude());
+        assertEquals(COLORS[0], unsized.getMagnitudeColor());
+    }
+
+    @Test
+    public void format_followsTimeZoneChanges() {
+        EarthquakeRowFormatter formatter = new EarthquakeRowFormatter(COLORS, "Near the");
+        Earthquake earthquake = new Earthquake("us1", 5.0, "Somewhere", 1454124312220L, 0, "u");
+
+        assertEquals("3:25 AM", formatter.format(earthquake).getTime());
+        TimeZone.setDefault(TimeZone.getTimeZone("GMT+02:00"));
+        assertEquals("5:25 AM", formatter.format(earthquake).getTime());
+    }
+
+    @Test
+    public void bind_doesNotAllocate() {
+        EarthquakeRow row = new EarthquakeRowFormatter(COLORS, "Near the").format(
+                new Earthquake("us1", 6.1, "10km S of Town", 1454124312220L, 0, "url"));
+        CountingTarget target = new CountingTarget();
+
+        // Warm up so that the measured loop runs compiled code.
+        for (int i = 0; i < 100000; i++) {
+            row.bindTo(target);
+        }
+
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100000; i++) {
+            row.bindTo(target);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(200000 * 3, target.calls);
+        // Anything left is the measurement itself, not a per-bind cost.
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    /* The ranges EarthquakeAdapter.getMagnitudeColor() used to check one by one. */
+    private static int rangeIndex(double magnitude) {
+        if (magnitude >= 0.0 && magnitude <= 2.0) {
+            return 0;
+        }
+        for (int i = 2; i < 10; i++) {
+            if (magnitude >= i && magnitude <= i + 1) {
+                return i - 1;
+            }
+        }
+        return 9;
+    }
+
+    private static final class CountingTarget implements EarthquakeRow.Target {
+        int calls;
+        int checksum;
+
+        @Override
+        public void setMagnitude(String magnitude, int magnitudeColor) {
+            calls++;
+            checksum += magnitude.length() + magnitudeColor;
+        }
+
+        @Override
+        public void setLocation(String locationOffset, String primaryLocation) {
+            calls++;
+            checksum += locationOffset.length() + primaryLocation.length();
+        }
+
+        @Override
+        public void setDateTime(String date, String time) {
+            calls++;
+            checksum += date.length() + time.length();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.android.quakereport.data;
+
+import com.example.android.quakereport.utils.EarthquakeStreamParser;
+import com.example.android.quakereport.utils.EarthquakeStreamParserTest;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class EarthquakeCatalogTest {
+
+    @Test
+    public void merge_newerRevisionReplacesInPlace_olderIsIgnored() {
+        EarthquakeCatalog catalog = new EarthquakeCatalog();
+        merge(catalog, "a", 4.0, "10km N of X", 100, 100, null);
+        merge(catalog, "b", 5.0, "20km S of Y", 200, 200, null);
+
+        assertEquals(0, merge(catalog, "a", 4.5, "12km N of X", 100, 150, null));
+        merge(catalog, "a", 3.0, "stale", 100, 120, null);
+
+        assertEquals(2, catalog.size());
+        assertEquals(4.5, catalog.getMagnitude(0), 0);
+        assertEquals("12km N of X", catalog.getPlace(0));
+        assertEquals(150, catalog.getUpdated(0));
+        assertEquals(1, catalog.indexOf("b"));
+        assertEquals(-1, catalog.indexOf("c"));
+    }
+
+    @Test
+    public void revision_changesOnlyWhenSomethingDoes() {
+        EarthquakeCatalog catalog = new EarthquakeCatalog();
+        merge(catalog, "a", 4.0, "10km N of X", 100, 100, null);
+        long revision = catalog.getRevision();
+
+        merge(catalog, "a", 4.0, "10km N of X", 100, 100, null);
+        merge(catalog, "a", 3.0, "stale", 100, 90, null);
+        assertEquals(revision, catalog.getRevision());
+
+        merge(catalog, "a", 4.1, "10km N of X", 100, 100, null);
+        assertNotEquals(revision, catalog.getRevision());
+        revision = catalog.getRevision();
+        merge(catalog, "b", 4.0, "10km N of X", 100, 100, null);
+        assertNotEquals(revision, catalog.getRevision());
+    }
+
+    @Test
+    public void places_areStoredOnce() {
+        EarthquakeCatalog catalog = new EarthquakeCatalog();
+        for (int i = 0; i < 100; i++) {
+            merge(catalog, "ev" + i, 2.0, i % 2 == 0 ? "Central Alaska" : "Hawaii", i, i, null);
+        }
+
+        assertEquals(2, catalog.getPlaceCount());
+        assertEquals(catalog.getPlaceCode(0), catalog.getPlaceCode(98));
+        assertEquals("Hawaii", catalog.getPlace(99));
+    }
+
+    @Test
+    public void url_isDerivedFromTheIdUnlessItDiffers() {
+        EarthquakeCatalog catalog = new EarthquakeCatalog();
+        merge(catalog, "us1", 5.0, "", 0, 0, Earthquake.eventPageUrl("us1"));
+        merge(catalog, "us2", 5.0, "", 0, 0, "https://example.com/us2");
+
+        assertEquals(Earthquake.eventPageUrl("us1"), catalog.getUrl(0));
+        assertEquals("https://example.com/us2", catalog.getUrl(1));
+        assertEquals(Earthquake.eventPageUrl("us1"), catalog.get(0).getUrl());
+
+        merge(catalog, "us2", 5.0, "", 0, 1, null);
+        assertEquals(Earthquake.eventPageUrl("us2"), catalog.getUrl(1));
+    }
+
+    @Test
+    public void streamedCatalog_matchesParsedList() throws Exception {
+        byte[] payload = EarthquakeStreamParserTest.samplePayload(500)
+                .getBytes(Charset.forName("UTF-8"));
+
+        List<Earthquake> expected =
+                EarthquakeStreamParser.parse(new ByteArrayInputStream(payload));
+        EarthquakeCatalog catalog = new EarthquakeCatalog();
+        EarthquakeStreamParser.parse(new ByteArrayInputStream(payload), catalog);
+
+        List<Earthquake> actual = catalog.asList();
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Earthquake e = expected.get(i);
+            Earthquake a = actual.get(i);
+            assertEquals(e.getId(), a.getId());
+            assertEquals(e.getMagnitude(), a.getMagnitude(), 0);
+            assertEquals(e.getLocation(), a.getLocation());
+            assertEquals(e.getTime(), a.getTime());
+            assertEquals(e.getUpdated(), a.getUpdated());
+            assertEquals(e.getUrl(), a.getUrl());
+            assertEquals(e.getLongitude(), a.getLongitude(), 0);
+            assertEquals(e.getLatitude(), a.getLatitude(), 0);
+            assertEquals(e.getDepth(), a.getDepth(), 0);
+        }
+    }
+
+    @Test
+    public void coordinates_areKept() {
+        EarthquakeCatalog catalog = new EarthquakeCatalog();
+        catalog.merge("us1", 5.0, "", 0, 0, null, -155.3, 19.4, 8.2);
+
+        Earthquake earthquake = catalog.get(0);
+        assertEquals(-155.3, earthquake.getLongitude(), 0);
+        assertEquals(19.4, earthquake.getLatitude(), 0);
+        assertEquals(8.2, earthquake.getDepth(), 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void get_outOfRange_throws() {
+        assertNull(new EarthquakeCatalog().get(0));
+    }
+
+    /* Merges an event without coordinates. */
+    private static int merge(EarthquakeCatalog catalog, String id, double magnitude, String place,
+                             long time, long updated, String url) {
+        return catalog.merge(id, magnitude, place, time, updated, url,
+                Double.NaN, Double.NaN, Double.NaN);
+    }
+}
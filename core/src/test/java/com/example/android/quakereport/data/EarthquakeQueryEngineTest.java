@@ -0,0 +1,197 @@
+package com.example.android.quakereport.data;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class EarthquakeQueryEngineTest {
+
+    private static final long NOW = 1600000000000L;
+
+    private static final long MAX_AGE = TimeUnit.MINUTES.toMillis(5);
+
+    /* Everything USGS knows about, with unique times and magnitudes rounded like USGS does. */
+    private final List<Earthquake> allEarthquakes = new ArrayList<>();
+
+    private EarthquakeQueryEngine engine;
+
+    @Before
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            double magnitude = Math.round(random.nextDouble() * 70) / 10.0;
+            long time = NOW - i * 60000L - random.nextInt(60000);
+            allEarthquakes.add(new Earthquake("ev" + i, magnitude, "place " + i, time, time,
+                    null));
+        }
+        engine = new EarthquakeQueryEngine(MAX_AGE);
+    }
+
+    @Test
+    public void higherMinMagnitudeAndLowerLimit_areAnsweredLocally() {
+        fetch(new EarthquakeQuery(2.0, EarthquakeQuery.ORDER_BY_TIME, 500), 0, NOW);
+
+        EarthquakeQuery query = new EarthquakeQuery(4.5, EarthquakeQuery.ORDER_BY_TIME, 50);
+        assertSameRows(usgs(query, 0, 50), engine.query(query, 0, 50, NOW), true);
+
+        query = new EarthquakeQuery(2.0, EarthquakeQuery.ORDER_BY_TIME, 100);
+        assertSameRows(usgs(query, 0, 100), engine.query(query, 0, 100, NOW), true);
+    }
+
+    @Test
+    public void lowerMinMagnitudeOrLargerLimit_needTheNetwork() {
+        fetch(new EarthquakeQuery(3.0, EarthquakeQuery.ORDER_BY_TIME, 200), 0, NOW);
+
+        assertNull(engine.query(
+                new EarthquakeQuery(2.0, EarthquakeQuery.ORDER_BY_TIME, 50), 0, 50, NOW));
+        assertNull(engine.query(
+                new EarthquakeQuery(3.0, EarthquakeQuery.ORDER_BY_TIME, 500), 0, 500, NOW));
+        assertNull(engine.query(
+                new EarthquakeQuery(3.0, EarthquakeQuery.ORDER_BY_MAGNITUDE, 50), 0, 50, NOW));
+    }
+
+    @Test
+    public void magnitudeOrder_answersTimeOrderAboveItsBoundary() {
+        EarthquakeQuery fetched = new EarthquakeQuery(1.0, EarthquakeQuery.ORDER_BY_MAGNITUDE,
+                300);
+        fetch(fetched, 0, NOW);
+        double weakestFetched = usgs(fetched, 0, 300).get(299).getMagnitude();
+
+        EarthquakeQuery query = new EarthquakeQuery(weakestFetched + 0.1,
+                EarthquakeQuery.ORDER_BY_TIME, 1000);
+        assertSameRows(usgs(query, 0, 1000), engine.query(query, 0, 1000, NOW), true);
+
+        query = new EarthquakeQuery(weakestFetched, EarthquakeQuery.ORDER_BY_TIME, 1000);
+        assertNull(engine.query(query, 0, 1000, NOW));
+
+        // Ties at the boundary may be any of the tied rows, so only compare magnitudes.
+        query = new EarthquakeQuery(1.0, EarthquakeQuery.ORDER_BY_MAGNITUDE, 300);
+        assertSameRows(usgs(query, 0, 300), engine.query(query, 0, 300, NOW), false);
+    }
+
+    @Test
+    public void completeFetch_answersAnyOrder() {
+        fetch(new EarthquakeQuery(6.5, EarthquakeQuery.ORDER_BY_TIME, 20000), 0, NOW);
+
+        EarthquakeQuery query = new EarthquakeQuery(6.5, EarthquakeQuery.ORDER_BY_MAGNITUDE,
+                20000);
+        List<Earthquake> rows = engine.query(query, 0, 20000, NOW);
+        assertSameRows(usgs(query, 0, 20000), rows, false);
+    }
+
+    @Test
+    public void pages_extendWhatIsCovered() {
+        EarthquakeQuery query = new EarthquakeQuery(2.0, EarthquakeQuery.ORDER_BY_TIME, 300);
+        fetch(query.withLimit(100), 0, NOW);
+        assertNull(engine.query(query, 100, 100, NOW));
+
+        fetch(query.withLimit(100), 100, NOW);
+        assertSameRows(usgs(query, 100, 100), engine.query(query, 100, 100, NOW), true);
+
+        // A page that doesn't follow the covered rows proves nothing.
+        fetch(query.withLimit(50), 250, NOW);
+        assertNull(engine.query(query, 200, 100, NOW));
+    }
+
+    @Test
+    public void staleFetch_isNotTrusted() {
+        EarthquakeQuery query = new EarthquakeQuery(2.0, EarthquakeQuery.ORDER_BY_TIME, 100);
+        fetch(query, 0, NOW - MAX_AGE - 1);
+
+        assertNull(engine.query(query, 0, 100, NOW));
+    }
+
+    @Test
+    public void fetchedAt_isTheNewestFetchCoveringTheQuery() {
+        EarthquakeQuery query = new EarthquakeQuery(2.0, EarthquakeQuery.ORDER_BY_TIME, 100);
+        assertEquals(-1, engine.getFetchedAt(query, NOW));
+
+        fetch(new EarthquakeQuery(1.0, EarthquakeQuery.ORDER_BY_TIME, 500), 0, NOW - 2000);
+        fetch(query, 0, NOW - 1000);
+        assertEquals(NOW - 1000, engine.getFetchedAt(query, NOW));
+        assertEquals(NOW - 2000, engine.getFetchedAt(query.withLimit(400), NOW));
+        assertEquals(-1, engine.getFetchedAt(query, NOW - 1000 + MAX_AGE + 1));
+    }
+
+    @Test
+    public void rowsOutsideTheWindow_areLeftOut() {
+        long old = NOW - EarthquakeQueryEngine.DEFAULT_WINDOW_MILLIS - 1;
+        List<Earthquake> oldEarthquakes = new ArrayList<>();
+        oldEarthquakes.add(new Earthquake("old", 9.9, "long ago", old, old, null));
+        engine.merge(oldEarthquakes);
+
+        EarthquakeQuery query = new EarthquakeQuery(6.0, EarthquakeQuery.ORDER_BY_MAGNITUDE, 10);
+        fetch(query, 0, NOW);
+
+        List<Earthquake> rows = engine.query(query, 0, 10, NOW);
+        assertNotNull(rows);
+        assertEquals(usgs(query, 0, 10).get(0).getMagnitude(), rows.get(0).getMagnitude(), 0);
+    }
+
+    @Test
+    public void unsizedEvents_rankLastAndFailEveryMinimum() {
+        List<Earthquake> unsized = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            unsized.add(new Earthquake("unsized" + i, Double.NaN, "somewhere", NOW - i,
+                    NOW - i, null));
+        }
+        engine.merge(unsized);
+
+        EarthquakeQuery query = new EarthquakeQuery(0, EarthquakeQuery.ORDER_BY_MAGNITUDE, 3000);
+        fetch(query, 0, NOW);
+        assertSameRows(usgs(query, 0, 3000), engine.query(query, 0, 3000, NOW), false);
+    }
+
+    /**
+     * Have the engine record what USGS would return for a page of limit rows at the offset.
+     */
+    private void fetch(EarthquakeQuery query, int offset, long now) {
+        List<Earthquake> page = usgs(query.withLimit(offset + query.getLimit()), offset,
+                query.getLimit());
+        engine.recordFetch(query, offset, page, now);
+    }
+
+    /**
+     * What USGS returns for the query: matches ordered newest or strongest first.
+     */
+    private List<Earthquake> usgs(final EarthquakeQuery query, int offset, int count) {
+        List<Earthquake> matches = new ArrayList<>();
+        for (Earthquake earthquake : allEarthquakes) {
+            if (earthquake.getMagnitude() >= query.getMinMagnitude()) {
+                matches.add(earthquake);
+            }
+        }
+        Collections.sort(matches, new Comparator<Earthquake>() {
+            @Override
+            public int compare(Earthquake a, Earthquake b) {
+                return query.isOrderedByTime()
+                        ? Long.compare(b.getTime(), a.getTime())
+                        : Double.compare(b.getMagnitude(), a.getMagnitude());
+            }
+        });
+        int end = Math.min(Math.min(offset + count, query.getLimit()), matches.size());
+        return new ArrayList<>(matches.subList(Math.min(offset, end), end));
+    }
+
+    private static void assertSameRows(List<Earthquake> expected, List<Earthquake> actual,
+                                       boolean compareIds) {
+        assertNotNull(actual);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getMagnitude(), actual.get(i).getMagnitude(), 0);
+            if (compareIds) {
+                assertEquals(expected.get(i).getId(), actual.get(i).getId());
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.android.quakereport.data;
+
+import com.example.android.quakereport.data.EarthquakeRegions.Region;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class EarthquakeRegionsTest {
+
+    private static final long START = 1600000000000L;
+
+    private static final String[] PLACES = {
+            "10km NNE of Ridgecrest, CA", "Central California", "5 km W of Cobb, California",
+            "south of the Fiji Islands", "Fiji Islands region", "45km E of Sand Point, Alaska",
+            "Southern Alaska", "off the east coast of Honshu, Japan", "Japan", ""
+    };
+
+    @Test
+    public void region_normalizesThePrimaryLocation() {
+        assertEquals("California", PlaceNames.region("10km NNE of Ridgecrest, CA"));
+        assertEquals("California", PlaceNames.region("offshore Northern California"));
+        assertEquals("Fiji Islands", PlaceNames.region("south of the Fiji Islands"));
+        assertEquals("Fiji Islands", PlaceNames.region("Fiji Islands  region"));
+        assertEquals("Japan", PlaceNames.region("off the east coast of Honshu, Japan"));
+        // Only the parts of a state are folded into it.
+        assertEquals("Central Mid-Atlantic Ridge", PlaceNames.region("central Mid-Atlantic Ridge"));
+        assertEquals("", PlaceNames.region(""));
+    }
+
+    @Test
+    public void incrementalRegions_matchFullRecompute() {
+        Random random = new Random(5);
+        EarthquakeCatalog catalog = new EarthquakeCatalog();
+        EarthquakeRegions regions = new EarthquakeRegions(catalog);
+        Map<String, Earthquake> latest = new LinkedHashMap<>();
+
+        for (int round = 0; round < 10; round++) {
+            List<Earthquake> batch = new ArrayList<>();
+            for (int i = 0; i < 300; i++) {
+                // Ids repeat across rounds, so later rounds move events between regions.
+                String id = "ev" + random.nextInt(1000);
+                String place = PLACES[random.nextInt(PLACES.length)];
+                long time = START + random.nextInt(100000);
+                double magnitude = Math.round(random.nextDouble() * 80) / 10.0;
+                batch.add(new Earthquake(id, magnitude, place, time, round * 1000L + i, null));
+            }
+
+            for (int position : catalog.mergeAll(batch)) {
+                regions.update(position);
+            }
+            for (Earthquake earthquake : batch) {
+                latest.put(earthquake.getId(), earthquake);
+            }
+
+            assertSameRegions(recompute(latest.values()), regions);
+        }
+    }
+
+    @Test
+    public void olderRevision_changesNothing() {
+        EarthquakeCatalog catalog = new EarthquakeCatalog();
+        EarthquakeRegions regions = new EarthquakeRegions(catalog);
+        regions.update(catalog.merge(new Earthquake("a", 5.0, "Japan", START, 200, null)));
+        long revision = regions.getRevision();
+
+        regions.update(catalog.merge(new Earthquake("a", 7.0, "Fiji", START + 1, 100, null)));
+
+        assertEquals(revision, regions.getRevision());
+        assertEquals(5.0, regions.regions().get(0).getMaxMagnitude(), 0.0);
+    }
+
+    @Test
+    public void revisedAway_maxMagnitudeIsFoundAgain() {
+        EarthquakeCatalog catalog = new EarthquakeCatalog();
+        EarthquakeRegions regions = new EarthquakeRegions(catalog);
+        regions.update(catalog.merge(new Earthquake("a", 6.0, "Japan", START, 1, null)));
+        regions.update(catalog.merge(new Earthquake("b", 4.0, "Japan", START + 1, 1, null)));
+
+        regions.update(catalog.merge(new Earthquake("a", 3.0, "Japan", START, 2, null)));
+
+        Region japan = regions.regions().get(0);
+        assertEquals(2, japan.getCount());
+        assertEquals(4.0, japan.getMaxMagnitude(), 0.0);
+        assertEquals(START + 1, japan.getLatestTime());
+    }
+
+    /**
+     * Group every latest revision from scratch.
+     */
+    private static Map<String, Expected> recompute(Iterable<Earthquake> earthquakes) {
+        Map<String, Expected> expected = new HashMap<>();
+        for (Earthquake earthquake : earthquakes) {
+            String region = PlaceNames.region(earthquake.getLocation());
+            Expected group = expected.get(region);
+            if (group == null) {
+                group = new Expected();
+                expected.put(region, group);
+            }
+            group.earthquakes.add(earthquake);
+            group.maxMagnitude = Math.max(group.maxMagnitude, earthquake.getMagnitude());
+            group.latestTime = Math.max(group.latestTime, earthquake.getTime());
+        }
+        return expected;
+    }
+
+    private static void assertSameRegions(Map<String, Expected> expected,
+                                          EarthquakeRegions regions) {
+        List<Region> actual = regions.regions();
+        assertEquals(expected.size(), actual.size());
+        long previousLatest = Long.MAX_VALUE;
+        for (Region region : actual) {
+            Expected group = expected.get(region.getName());
+            assertEquals(group.earthquakes.size(), region.getCount());
+            assertEquals(group.maxMagnitude, region.getMaxMagnitude(), 0.0);
+            assertEquals(group.latestTime, region.getLatestTime());
+            assertEquals(true, region.getLatestTime() <= previousLatest);
+            previousLatest = region.getLatestTime();
+
+            List<Earthquake> events = regions.eventsIn(region.getCode());
+            assertEquals(group.earthquakes.size(), events.size());
+            long[] times = new long[events.size()];
+            for (int i = 0; i < events.size(); i++) {
+                times[i] = events.get(i).getTime();
+                assertEquals(region.getName(), PlaceNames.region(events.get(i).getLocation()));
+                if (i > 0) {
+                    assertEquals(true, times[i] <= times[i - 1]);
+                }
+            }
+            long[] expectedTimes = new long[events.size()];
+            for (int i = 0; i < expectedTimes.length; i++) {
+                expectedTimes[i] = group.earthquakes.get(i).getTime();
+            }
+            Arrays.sort(times);
+            Arrays.sort(expectedTimes);
+            assertEquals(Arrays.toString(expectedTimes), Arrays.toString(times));
+        }
+    }
+
+    private static final class Expected {
+        final List<Earthquake> earthquakes = new ArrayList<>();
+        double maxMagnitude = Double.NEGATIVE_INFINITY;
+        long latestTime = Long.MIN_VALUE;
+    }
+}
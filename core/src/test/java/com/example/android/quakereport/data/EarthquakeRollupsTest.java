@@ -0,0 +1,146 @@
+package com.example.android.quakereport.data;
+
+import com.example.android.quakereport.data.EarthquakeRollups.Resolution;
+import com.example.android.quakereport.data.EarthquakeRollups.Summary;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EarthquakeRollupsTest {
+
+    private static final long START = 1600000000000L;
+
+    private static final long THREE_DAYS = 3 * Resolution.DAY.getMillis();
+
+    @Test
+    public void incrementalRollups_matchFullRecompute() {
+        Random random = new Random(3);
+        EarthquakeRollups rollups = new EarthquakeRollups();
+        Map<String, Earthquake> latest = new LinkedHashMap<>();
+
+        for (int round = 0; round < 20; round++) {
+            List<Earthquake> batch = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                // Ids repeat across rounds, so later rounds revise magnitudes and times.
+                String id = "ev" + random.nextInt(4000);
+                long time = START + (long) (random.nextDouble() * THREE_DAYS);
+                double magnitude = Math.round(random.nextDouble() * 80) / 10.0;
+                long updated = round * 1000L + i;
+                batch.add(new Earthquake(id, magnitude, "", time, updated, null));
+            }
+
+            rollups.mergeAll(batch);
+            for (Earthquake earthquake : batch) {
+                latest.put(earthquake.getId(), earthquake);
+            }
+
+            for (Resolution resolution : Resolution.values()) {
+                assertSameSeries(recompute(latest.values(), resolution),
+                        rollups.series(resolution, START - THREE_DAYS, START + 2 * THREE_DAYS));
+            }
+        }
+        assertTrue(rollups.getRevisedEventCount() > 0);
+    }
+
+    @Test
+    public void olderRevision_isIgnored() {
+        EarthquakeRollups rollups = new EarthquakeRollups();
+        rollups.merge(new Earthquake("a", 5.0, "", START, 200, null));
+        long revision = rollups.getRevision();
+
+        rollups.merge(new Earthquake("a", 7.0, "", START, 100, null));
+
+        Summary summary = rollups.summarize(Resolution.DAY, START, START + 1);
+        assertEquals(1, summary.getCount());
+        assertEquals(5.0, summary.getMaxMagnitude(), 0);
+        assertEquals(revision, rollups.getRevision());
+    }
+
+    @Test
+    public void revisedMaximum_isFoundAgain() {
+        EarthquakeRollups rollups = new EarthquakeRollups();
+        rollups.merge(new Earthquake("a", 6.0, "", START, 1, null));
+        rollups.merge(new Earthquake("b", 4.0, "", START + 3600000, 1, null));
+        rollups.merge(new Earthquake("a", 3.0, "", START, 2, null));
+
+        Summary summary = rollups.summarize(Resolution.DAY, START, START + 1);
+        assertEquals(2, summary.getCount());
+        assertEquals(4.0, summary.getMaxMagnitude(), 0);
+        assertEquals(3.5, summary.getMeanMagnitude(), 1e-9);
+        assertEquals(EarthquakeRollups.energyJoules(4.0) + EarthquakeRollups.energyJoules(3.0),
+                summary.getEnergyJoules(), 1);
+    }
+
+    @Test
+    public void summarize_addsUpItsBuckets() {
+        EarthquakeRollups rollups = new EarthquakeRollups();
+        Random random = new Random(5);
+        for (int i = 0; i < 1000; i++) {
+            long time = START + (long) (random.nextDouble() * THREE_DAYS);
+            rollups.merge(new Earthquake("ev" + i, random.nextDouble() * 6, "", time, 0, null));
+        }
+
+        long from = Resolution.DAY.bucketStart(START) + Resolution.DAY.getMillis();
+        long to = from + 6 * Resolution.HOUR.getMillis();
+        Summary hours = rollups.summarize(Resolution.HOUR, from, to);
+        Summary minutes = rollups.summarize(Resolution.MINUTE, from, to);
+        assertEquals(minutes.getCount(), hours.getCount());
+        assertEquals(minutes.getMaxMagnitude(), hours.getMaxMagnitude(), 0);
+        assertEquals(minutes.getMeanMagnitude(), hours.getMeanMagnitude(), 1e-9);
+
+        Summary empty = rollups.summarize(Resolution.HOUR, START - THREE_DAYS,
+                Resolution.HOUR.bucketStart(START));
+        assertEquals(0, empty.getCount());
+        assertTrue(Double.isNaN(empty.getMaxMagnitude()));
+    }
+
+    private static Map<Long, Summary> recompute(Collection<Earthquake> earthquakes,
+                                                Resolution resolution) {
+        Map<Long, List<Earthquake>> byBucket = new TreeMap<>();
+        for (Earthquake earthquake : earthquakes) {
+            long start = resolution.bucketStart(earthquake.getTime());
+            if (!byBucket.containsKey(start)) {
+                byBucket.put(start, new ArrayList<Earthquake>());
+            }
+            byBucket.get(start).add(earthquake);
+        }
+
+        Map<Long, Summary> series = new TreeMap<>();
+        for (Map.Entry<Long, List<Earthquake>> entry : byBucket.entrySet()) {
+            double max = Double.NEGATIVE_INFINITY;
+            double sum = 0;
+            double energy = 0;
+            for (Earthquake earthquake : entry.getValue()) {
+                max = Math.max(max, earthquake.getMagnitude());
+                sum += earthquake.getMagnitude();
+                energy += EarthquakeRollups.energyJoules(earthquake.getMagnitude());
+            }
+            series.put(entry.getKey(), new Summary(entry.getKey(),
+                    entry.getKey() + resolution.getMillis(), entry.getValue().size(), max, sum,
+                    energy));
+        }
+        return series;
+    }
+
+    private static void assertSameSeries(Map<Long, Summary> expected, List<Summary> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (Summary summary : actual) {
+            Summary recomputed = expected.get(summary.getStart());
+            assertEquals(recomputed.getCount(), summary.getCount());
+            assertEquals(recomputed.getMaxMagnitude(), summary.getMaxMagnitude(), 0);
+            assertEquals(recomputed.getMeanMagnitude(), summary.getMeanMagnitude(), 1e-9);
+            assertEquals(recomputed.getEnergyJoules(), summary.getEnergyJoules(),
+                    recomputed.getEnergyJoules() * 1e-9);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.android.quakereport.data;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class EarthquakeSnapshotTest {
+
+    private static final String KEY = "https://earthquake.usgs.gov/fdsnws/event/1/query?limit=100";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void write_thenOpen_returnsTheSameEarthquakes() throws IOException {
+        List<Earthquake> earthquakes = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            earthquakes.add(new Earthquake("us" + i, i % 80 / 10.0, (i % 7) + "km N of Town",
+                    1600000000000L + i, 1600000500000L + i, null, -150 + i * 0.01,
+                    60 - i * 0.01, i % 30));
+        }
+        earthquakes.add(new Earthquake(null, Double.NaN, "Café “Quote”", 1, 2,
+                "https://example.com/other"));
+        earthquakes.add(new Earthquake("ci1", 2.5, null, 3, 4, "https://example.com/ci1"));
+
+        File file = temporaryFolder.newFile();
+        EarthquakeSnapshot.write(file, KEY, earthquakes);
+        EarthquakeSnapshot snapshot = EarthquakeSnapshot.open(file);
+
+        assertNotNull(snapshot);
+        assertEquals(KEY, snapshot.getKey());
+        assertEquals(earthquakes.size(), snapshot.size());
+        for (int i = 0; i < earthquakes.size(); i++) {
+            assertSameEarthquake(earthquakes.get(i), snapshot.get(i));
+        }
+    }
+
+    @Test
+    public void write_replacesThePreviousSnapshot() throws IOException {
+        File file = temporaryFolder.newFile();
+        EarthquakeSnapshot.write(file, "first", Arrays.asList(
+                new Earthquake("a", 1, "here", 1, 1, null),
+                new Earthquake("b", 2, "there", 2, 2, null)));
+        EarthquakeSnapshot.write(file, "second", Collections.<Earthquake>emptyList());
+
+        EarthquakeSnapshot snapshot = EarthquakeSnapshot.open(file);
+        assertEquals("second", snapshot.getKey());
+        assertEquals(0, snapshot.size());
+        assertEquals(1, file.getParentFile().list().length);
+    }
+
+    @Test
+    public void open_rejectsMissingCorruptTruncatedAndOtherVersions() throws IOException {
+        assertNull(EarthquakeSnapshot.open(new File(temporaryFolder.getRoot(), "missing")));
+
+        File file = temporaryFolder.newFile();
+        EarthquakeSnapshot.write(file, KEY, Collections.singletonList(
+                new Earthquake("a", 4.5, "somewhere", 1, 1, null)));
+        long length = file.length();
+
+        // A flipped bit in a record.
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.seek(30);
+            int original = randomAccessFile.read();
+            randomAccessFile.seek(30);
+            randomAccessFile.write(original ^ 1);
+            assertNull(EarthquakeSnapshot.open(file));
+
+            randomAccessFile.seek(30);
+            randomAccessFile.write(original);
+            assertNotNull(EarthquakeSnapshot.open(file));
+
+            // A newer format.
+            randomAccessFile.seek(4);
+            randomAccessFile.writeInt(EarthquakeSnapshot.VERSION + 1);
+            assertNull(EarthquakeSnapshot.open(file));
+            randomAccessFile.seek(4);
+            randomAccessFile.writeInt(EarthquakeSnapshot.VERSION);
+
+            // A write that didn't finish.
+            randomAccessFile.setLength(length - 3);
+            assertNull(EarthquakeSnapshot.open(file));
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private static void assertSameEarthquake(Earthquake expected, Earthquake actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getMagnitude(), actual.getMagnitude(), 0);
+        assertEquals(expected.getLocation(), actual.getLocation());
+        assertEquals(expected.getTime(), actual.getTime());
+        assertEquals(expected.getUpdated(), actual.getUpdated());
+        assertEquals(expected.getUrl(), actual.getUrl());
+        assertEquals(expected.getLongitude(), actual.getLongitude(), 0);
+        assertEquals(expected.getLatitude(), actual.getLatitude(), 0);
+        assertEquals(expected.getDepth(), actual.getDepth(), 0);
+    }
+}
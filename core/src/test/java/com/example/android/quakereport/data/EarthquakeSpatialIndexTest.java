@@ -0,0 +1,111 @@
+package com.example.android.quakereport.data;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class EarthquakeSpatialIndexTest {
+
+    private static final int EVENT_COUNT = 50000;
+
+    private EarthquakeCatalog catalog;
+
+    private EarthquakeSpatialIndex index;
+
+    @Before
+    public void setUp() {
+        Random random = new Random(7);
+        catalog = new EarthquakeCatalog();
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            double latitude = -90 + random.nextDouble() * 180;
+            double longitude = -180 + random.nextDouble() * 360;
+            catalog.merge("ev" + i, 3.0, "", i, i, null, longitude, latitude, 10);
+        }
+        // An event without coordinates is never found.
+        catalog.merge("nowhere", 3.0, "", 0, 0, null, Double.NaN, Double.NaN, Double.NaN);
+        index = new EarthquakeSpatialIndex(catalog);
+    }
+
+    @Test
+    public void withinRadius_matchesBruteForce() {
+        double[][] points = {
+                {19.4, -155.3}, {61.2, -149.9}, {35.7, 139.7}, {-33.4, -70.6},
+                {0, 179.9}, {0, -179.9}, {89.5, 0}, {-89.9, 45}
+        };
+        double[] radii = {0, 50, 250, 1000, 5000};
+
+        for (double[] point : points) {
+            for (double radius : radii) {
+                assertArrayEquals("radius " + radius + " around " + Arrays.toString(point),
+                        bruteForceRadius(point[0], point[1], radius),
+                        sorted(index.withinRadius(point[0], point[1], radius)));
+            }
+        }
+    }
+
+    @Test
+    public void withinRadius_largerThanTheEarth_findsEverything() {
+        assertEquals(EVENT_COUNT, index.withinRadius(0, 0, 25000).length);
+        assertEquals(EVENT_COUNT, index.size());
+    }
+
+    @Test
+    public void inBoundingBox_matchesBruteForce() {
+        double[][] boxes = {
+                {18, -161, 23, -154}, {-60, -20, 60, 40}, {50, 170, 70, -170},
+                {-90, -180, 90, 180}, {10, 10, 10.5, 10.5}
+        };
+
+        for (double[] box : boxes) {
+            assertArrayEquals("box " + Arrays.toString(box),
+                    bruteForceBox(box[0], box[1], box[2], box[3]),
+                    sorted(index.inBoundingBox(box[0], box[1], box[2], box[3])));
+        }
+    }
+
+    @Test
+    public void haversine_knownDistance() {
+        // London to Paris is about 344 km.
+        assertEquals(344, EarthquakeSpatialIndex.haversineKm(51.5074, -0.1278, 48.8566, 2.3522),
+                1);
+    }
+
+    private int[] bruteForceRadius(double latitude, double longitude, double radiusKm) {
+        int[] result = new int[catalog.size()];
+        int count = 0;
+        for (int i = 0; i < catalog.size(); i++) {
+            if (!Double.isNaN(catalog.getLatitude(i)) && EarthquakeSpatialIndex.haversineKm(
+                    latitude, longitude, catalog.getLatitude(i), catalog.getLongitude(i))
+                    <= radiusKm) {
+                result[count++] = i;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private int[] bruteForceBox(double south, double west, double north, double east) {
+        int[] result = new int[catalog.size()];
+        int count = 0;
+        for (int i = 0; i < catalog.size(); i++) {
+            double latitude = catalog.getLatitude(i);
+            double longitude = catalog.getLongitude(i);
+            boolean insideLongitudes = west <= east
+                    ? longitude >= west && longitude <= east
+                    : longitude >= west || longitude <= east;
+            if (insideLongitudes && latitude >= south && latitude <= north) {
+                result[count++] = i;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static int[] sorted(int[] positions) {
+        Arrays.sort(positions);
+        return positions;
+    }
+}
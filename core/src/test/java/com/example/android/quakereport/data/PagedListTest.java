@@ -0,0 +1,146 @@
+package com.example.android.quakereport.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PagedListTest {
+
+    private static final int PAGE_SIZE = 10;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    /* Serves a catalog of the given size and counts the requests. */
+    private static class FakeSource implements PagedList.PageSource<Earthquake> {
+        final int total;
+        int requests;
+
+        FakeSource(int total) {
+            this.total = total;
+        }
+
+        @Override
+        public List<Earthquake> loadPage(int offset, int count) {
+            requests++;
+            List<Earthquake> page = new ArrayList<>();
+            for (int i = offset; i < Math.min(offset + count, total); i++) {
+                page.add(new Earthquake("ev" + i, 5.0, "place " + i, i, i, "url"));
+            }
+            return page;
+        }
+
+        @Override
+        public Object getKey(Earthquake earthquake) {
+            return earthquake.getId();
+        }
+    }
+
+    /* Like FakeSource, but a new earthquake arrives at the head before every request. */
+    private static final class GrowingSource extends FakeSource {
+        int arrived;
+
+        GrowingSource(int total) {
+            super(total);
+        }
+
+        @Override
+        public List<Earthquake> loadPage(int offset, int count) {
+            List<Earthquake> page = super.loadPage(offset - arrived, count);
+            arrived++;
+            return page;
+        }
+    }
+
+    private static final PagedList.Listener NO_OP = new PagedList.Listener() {
+        @Override
+        public void onPagedListChanged() {
+        }
+    };
+
+    @Test
+    public void nextPage_isPrefetchedNearTheEnd() {
+        FakeSource source = new FakeSource(1000);
+        PagedList<Earthquake> list = new PagedList<>(source.loadPage(0, PAGE_SIZE), source,
+                PAGE_SIZE, 3, 3, 1000, DIRECT, DIRECT, NO_OP);
+        source.requests = 0;
+
+        list.onRowsVisible(0, 5);
+        assertEquals(0, source.requests);
+        assertEquals(10, list.size());
+
+        list.onRowsVisible(2, 7);
+        assertEquals(1, source.requests);
+        assertEquals(20, list.size());
+        assertEquals("ev15", list.get(15).getId());
+    }
+
+    @Test
+    public void farPages_areDroppedAndReloaded() {
+        FakeSource source = new FakeSource(1000);
+        PagedList<Earthquake> list = new PagedList<>(source.loadPage(0, PAGE_SIZE), source,
+                PAGE_SIZE, 3, 3, 1000, DIRECT, DIRECT, NO_OP);
+
+        for (int first = 0; first < 60; first++) {
+            list.onRowsVisible(first, first + 5);
+        }
+        assertTrue(list.size() >= 60);
+        assertNull(list.get(0));
+        assertNotNull(list.get(60));
+
+        list.onRowsVisible(0, 5);
+        assertEquals("ev0", list.get(0).getId());
+    }
+
+    @Test
+    public void end_isReachedOnShortPageAndLimit() {
+        FakeSource source = new FakeSource(25);
+        PagedList<Earthquake> list = new PagedList<>(source.loadPage(0, PAGE_SIZE), source,
+                PAGE_SIZE, 5, 5, 1000, DIRECT, DIRECT, NO_OP);
+        for (int first = 0; first < 25; first++) {
+            list.onRowsVisible(first, Math.min(first + 5, list.size() - 1));
+        }
+        assertEquals(25, list.size());
+        assertTrue(list.isEndReached());
+
+        FakeSource unbounded = new FakeSource(1000);
+        PagedList<Earthquake> limited = new PagedList<>(unbounded.loadPage(0, PAGE_SIZE),
+                unbounded, PAGE_SIZE, 5, 5, 15, DIRECT, DIRECT, NO_OP);
+        assertFalse(limited.isEndReached());
+        limited.onRowsVisible(5, 9);
+        assertEquals(15, limited.size());
+        assertTrue(limited.isEndReached());
+    }
+
+    @Test
+    public void repeatedItems_areLeftOutWhenTheSourceShifts() {
+        GrowingSource source = new GrowingSource(1000);
+        PagedList<Earthquake> list = new PagedList<>(source.loadPage(0, PAGE_SIZE), source,
+                PAGE_SIZE, 10, 3, 1000, DIRECT, DIRECT, NO_OP);
+        for (int first = 0; first < 40; first++) {
+            list.onRowsVisible(first, Math.min(first + 5, list.size() - 1));
+        }
+
+        assertTrue(list.size() >= 40);
+        Set<String> ids = new HashSet<>();
+        for (int position = 0; position < list.size(); position++) {
+            Earthquake earthquake = list.get(position);
+            assertTrue(ids.add(earthquake.getId()));
+            assertEquals("ev" + position, earthquake.getId());
+        }
+    }
+}
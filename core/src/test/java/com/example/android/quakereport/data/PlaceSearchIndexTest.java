@@ -0,0 +1,255 @@
+package com.example.android.quakereport.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PlaceSearchIndexTest {
+
+    private static final long NOW = 1600000000000L;
+
+    private static final String[] PLACES = {
+            "10km NNE of Ridgecrest, CA", "Central California", "5 km W of Cobb, California",
+            "south of the Fiji Islands", "Fiji Islands region", "45km E of Sand Point, Alaska",
+            "Southern Alaska", "off the east coast of Honshu, Japan", "Japan", ""
+    };
+
+    private static final String[] TYPED = {
+            "a", "al", "ala", "alas", "alaska", "ca", "cal", "ridge ca", "RIDGE", "fiji isl",
+            "of the", "10", "5 km", "s", "so", "sou", "x", "", "  ", "japan,"
+    };
+
+    @Test
+    public void find_matchesPlacesWithEveryWordAsAPrefix() {
+        EarthquakeCatalog catalog = new EarthquakeCatalog();
+        for (int i = 0; i < PLACES.length; i++) {
+            catalog.merge("ev" + i, 1, PLACES[i], NOW, NOW, null, Double.NaN, Double.NaN,
+                    Double.NaN);
+        }
+        PlaceSearchIndex index = new PlaceSearchIndex(catalog);
+        index.update();
+        PlaceSearchIndex.Matches matches = new PlaceSearchIndex.Matches();
+
+        index.find("ridge CA", matches);
+        assertTrue(matches.isMatch(catalog.getPlaceCode(0)));
+        assertFalse(matches.isMatch(catalog.getPlaceCode(1)));
+        assertEquals(1, matches.getCount());
+
+        // "Central California" has two words starting with "c", it counts once.
+        index.find("c", matches);
+        assertEquals(4, matches.getCount());
+
+        index.find("islands fiji", matches);
+        assertEquals(2, matches.getCount());
+
+        index.find("islandz", matches);
+        assertEquals(0, matches.getCount());
+
+        index.find(" ,", matches);
+        assertEquals(PLACES.length, matches.getCount());
+        assertTrue(matches.isMatch(catalog.getPlaceCode(PLACES.length - 1)));
+    }
+
+    @Test
+    public void copy_isNotChangedByLaterUpdates() {
+        EarthquakeCatalog catalog = new EarthquakeCatalog();
+        catalog.merge("ev0", 1, PLACES[0], NOW, NOW, null, Double.NaN, Double.NaN, Double.NaN);
+        PlaceSearchIndex index = new PlaceSearchIndex(catalog);
+        index.update();
+        PlaceSearchIndex copy = index.copy();
+
+        catalog.merge("ev1", 1, "Ridgecrest Valley", NOW, NOW, null, Double.NaN, Double.NaN,
+                Double.NaN);
+        index.update();
+
+        PlaceSearchIndex.Matches matches = new PlaceSearchIndex.Matches();
+        copy.find("ridge", matches);
+        assertEquals(1, matches.getCount());
+        assertFalse(matches.isMatch(catalog.getPlaceCode(1)));
+        index.find("ridge", matches);
+        assertEquals(2, matches.getCount());
+        assertEquals(1, copy.getPlaceCount());
+    }
+
+    @Test
+    public void search_matchesFullScanWhileTypingAndMerging() {
+        Random random = new Random(11);
+        EarthquakeQueryEngine engine = new EarthquakeQueryEngine(0);
+        engine.startSearching();
+        List<Earthquake> merged = new ArrayList<>();
+        EarthquakeQueryEngine.SearchResults results = new EarthquakeQueryEngine.SearchResults();
+        EarthquakeQuery[] queries = {
+                new EarthquakeQuery(0, EarthquakeQuery.ORDER_BY_TIME, 10),
+                new EarthquakeQuery(3.5, EarthquakeQuery.ORDER_BY_MAGNITUDE, 10)
+        };
+
+        for (int round = 0; round < 20; round++) {
+            if (round % 4 == 0) {
+                List<Earthquake> batch = new ArrayList<>();
+                for (int i = 0; i < 200; i++) {
+                    int n = merged.size() + batch.size();
+                    // Some places are new to the index, and some events too old to be found.
+                    String place = random.nextInt(4) == 0 ? n + "km S of Town" + n + ", CA"
+                            : PLACES[random.nextInt(PLACES.length)];
+                    long time = NOW - random.nextInt(40) * 86400000L - n;
+                    batch.add(new Earthquake("ev" + n, Math.round(random.nextDouble() * 70) / 10.0,
+                            place, time, time, null));
+                }
+                engine.merge(batch);
+                merged.addAll(batch);
+            }
+
+            EarthquakeQuery query = queries[round % queries.length];
+            for (String text : TYPED) {
+                engine.search(text, query, NOW, results);
+                List<Earthquake> expected = scan(merged, text, query);
+                assertEquals(text, expected.size(), results.size());
+                for (int i = 0; i < expected.size(); i++) {
+                    assertEquals(text, expected.get(i).getId(), results.get(i).getId());
+                }
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void search_doesNotWaitForARunningMerge() throws InterruptedException {
+        final EarthquakeQueryEngine engine = new EarthquakeQueryEngine(0);
+        List<Earthquake> earthquakes = new ArrayList<>();
+        for (int i = 0; i < PLACES.length; i++) {
+            earthquakes.add(new Earthquake("ev" + i, 5.0, PLACES[i], NOW - i, NOW - i, null));
+        }
+        engine.merge(earthquakes);
+        engine.startSearching();
+
+        // Holding the engine's lock stands in for a merge that takes a while.
+        final CountDownLatch locked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Thread merge = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (engine) {
+                    locked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        });
+        merge.start();
+        locked.await();
+
+        EarthquakeQueryEngine.SearchResults results = new EarthquakeQueryEngine.SearchResults();
+        engine.search("fiji", new EarthquakeQuery(0, EarthquakeQuery.ORDER_BY_TIME, 10), NOW,
+                results);
+        assertEquals(2, results.size());
+
+        release.countDown();
+        merge.join();
+    }
+
+    @Test
+    public void search_findsOnlyWhileSearching() {
+        EarthquakeQueryEngine engine = new EarthquakeQueryEngine(0);
+        List<Earthquake> earthquakes = new ArrayList<>();
+        for (int i = 0; i < PLACES.length; i++) {
+            earthquakes.add(new Earthquake("ev" + i, 5.0, PLACES[i], NOW - i, NOW - i, null));
+        }
+        engine.merge(earthquakes);
+        EarthquakeQuery query = new EarthquakeQuery(0, EarthquakeQuery.ORDER_BY_TIME, 10);
+        EarthquakeQueryEngine.SearchResults results = new EarthquakeQueryEngine.SearchResults();
+
+        engine.search("fiji", query, NOW, results);
+        assertEquals(0, results.size());
+
+        engine.startSearching();
+        engine.search("fiji", query, NOW, results);
+        assertEquals(2, results.size());
+
+        engine.stopSearching();
+        engine.search("fiji", query, NOW, results);
+        assertEquals(0, results.size());
+    }
+
+    @Test
+    public void search_keepsItsRevisionWhenAMergeChangesNothing() {
+        EarthquakeQueryEngine engine = new EarthquakeQueryEngine(0);
+        engine.startSearching();
+        List<Earthquake> earthquakes = new ArrayList<>();
+        for (int i = 0; i < PLACES.length; i++) {
+            earthquakes.add(new Earthquake("ev" + i, 5.0, PLACES[i], NOW - i, NOW - i, null));
+        }
+        engine.merge(earthquakes);
+        EarthquakeQuery query = new EarthquakeQuery(0, EarthquakeQuery.ORDER_BY_TIME, 10);
+        EarthquakeQueryEngine.SearchResults results = new EarthquakeQueryEngine.SearchResults();
+        engine.search("fiji", query, NOW, results);
+        long revision = results.getRevision();
+
+        engine.merge(earthquakes);
+        engine.search("fiji", query, NOW, results);
+        assertEquals(revision, results.getRevision());
+
+        engine.merge(Collections.singletonList(
+                new Earthquake("ev0", 5.5, PLACES[0], NOW, NOW + 1, null)));
+        engine.search("fiji", query, NOW, results);
+        assertNotEquals(revision, results.getRevision());
+    }
+
+    /**
+     * Search by looking at every earthquake.
+     */
+    private static List<Earthquake> scan(List<Earthquake> earthquakes, String text,
+                                         EarthquakeQuery query) {
+        String[] queryWords = words(text);
+        List<Earthquake> matches = new ArrayList<>();
+        for (Earthquake earthquake : earthquakes) {
+            if (earthquake.getMagnitude() < query.getMinMagnitude()
+                    || earthquake.getTime() < NOW - EarthquakeQueryEngine.DEFAULT_WINDOW_MILLIS) {
+                continue;
+            }
+            String[] placeWords = words(earthquake.getLocation());
+            boolean all = true;
+            for (String queryWord : queryWords) {
+                boolean any = false;
+                for (String placeWord : placeWords) {
+                    any |= placeWord.startsWith(queryWord);
+                }
+                all &= any;
+            }
+            if (all) {
+                matches.add(earthquake);
+            }
+        }
+
+        // Times and magnitudes may tie, so order like the engine's stable sort of the merges.
+        List<Earthquake> ordered = new ArrayList<>();
+        for (Earthquake match : matches) {
+            int i = ordered.size();
+            while (i > 0 && key(ordered.get(i - 1), query) < key(match, query)) {
+                i--;
+            }
+            ordered.add(i, match);
+        }
+        return ordered;
+    }
+
+    private static double key(Earthquake earthquake, EarthquakeQuery query) {
+        return query.isOrderedByTime() ? earthquake.getTime() : earthquake.getMagnitude();
+    }
+
+    private static String[] words(String text) {
+        String trimmed = text.toLowerCase(Locale.US).replaceAll("[^\\p{L}\\p{N}]+", " ").trim();
+        return trimmed.isEmpty() ? new String[0] : trimmed.split(" ");
+    }
+}
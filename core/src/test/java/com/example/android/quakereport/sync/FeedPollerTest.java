@@ -0,0 +1,178 @@
+package com.example.android.quakereport.sync;
+
+import com.example.android.quakereport.data.Earthquake;
+import com.example.android.quakereport.utils.DiskResponseCache;
+import com.example.android.quakereport.utils.QueryUtils;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Polls a local stand-in for the USGS summary feed, which serves whatever feed the test sets
+ * with an ETag per version.
+ */
+public class FeedPollerTest {
+
+    private static final double NOTIFY_MAGNITUDE = 4.5;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String feedUrl;
+
+    /* The feed currently served, and its version for the ETag. */
+    private volatile byte[] feed;
+    private volatile int feedVersion;
+
+    private final AtomicInteger bodyCount = new AtomicInteger();
+
+    private final Map<String, Earthquake> stored = new HashMap<>();
+
+    private final FeedPoller.EventStore eventStore = new FeedPoller.EventStore() {
+        @Override
+        public Map<String, Earthquake> getByIds(List<String> ids) {
+            Map<String, Earthquake> found = new HashMap<>();
+            for (String id : ids) {
+                if (stored.containsKey(id)) {
+                    found.put(id, stored.get(id));
+                }
+            }
+            return found;
+        }
+
+        @Override
+        public void upsert(List<Earthquake> earthquakes) {
+            for (Earthquake earthquake : earthquakes) {
+                stored.put(earthquake.getId(), earthquake);
+            }
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/earthquakes/feed/v1.0/summary/all_hour.geojson",
+                new HttpHandler() {
+                    @Override
+                    public void handle(HttpExchange exchange) throws IOException {
+                        String etag = "\"feed-" + feedVersion + "\"";
+                        exchange.getResponseHeaders().add("ETag", etag);
+                        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                            exchange.sendResponseHeaders(304, -1);
+                        } else {
+                            bodyCount.incrementAndGet();
+                            byte[] body = feed;
+                            exchange.sendResponseHeaders(200, body.length);
+                            OutputStream out = exchange.getResponseBody();
+                            out.write(body);
+                            out.close();
+                        }
+                        exchange.close();
+                    }
+                });
+        server.start();
+        feedUrl = "http://127.0.0.1:" + server.getAddress().getPort()
+                + "/earthquakes/feed/v1.0/summary/all_hour.geojson";
+
+        // Like the worker: every poll revalidates the feed.
+        DiskResponseCache cache = new DiskResponseCache(temporaryFolder.newFolder(),
+                1024 * 1024, 0);
+        QueryUtils.setResponseCache(cache);
+    }
+
+    @After
+    public void tearDown() {
+        QueryUtils.setResponseCache(null);
+        server.stop(0);
+    }
+
+    @Test
+    public void poll_mergesOnlyChangesAndNotifiesOnce() {
+        FeedPoller poller = new FeedPoller(feedUrl, eventStore, NOTIFY_MAGNITUDE);
+
+        setFeed(feature("a", 5.1, 100), feature("b", 4.0, 100));
+        FeedPoller.Result first = poller.poll();
+        assertEquals(2, first.getChanged().size());
+        assertEquals(1, first.getSignificant().size());
+        assertEquals("a", first.getSignificant().get(0).getId());
+
+        // Unchanged feed: a 304, nothing parsed or merged.
+        FeedPoller.Result unchanged = poller.poll();
+        assertFalse(unchanged.isFeedChanged());
+        assertEquals(1, bodyCount.get());
+
+        // "b" is revised over the magnitude, "a" is revised but was notified already, "c" is
+        // new and small, and "b"'s old revision would be ignored.
+        setFeed(feature("a", 5.3, 200), feature("b", 4.6, 200), feature("c", 2.0, 200));
+        FeedPoller.Result second = poller.poll();
+        assertTrue(second.isFeedChanged());
+        assertEquals(3, second.getChanged().size());
+        assertEquals(1, second.getSignificant().size());
+        assertEquals("b", second.getSignificant().get(0).getId());
+        assertEquals(4.6, stored.get("b").getMagnitude(), 0);
+
+        // Same events with the same revisions under a new ETag: nothing to merge.
+        setFeed(feature("c", 2.0, 200), feature("b", 4.6, 200));
+        FeedPoller.Result repeated = poller.poll();
+        assertFalse(repeated.isFeedChanged());
+        assertTrue(repeated.getSignificant().isEmpty());
+    }
+
+    @Test
+    public void poll_unreachableFeed_returnsNull() {
+        server.stop(0);
+        assertNull(new FeedPoller(feedUrl, eventStore, NOTIFY_MAGNITUDE).poll());
+    }
+
+    @Test
+    public void nextInterval_backsOffWhileIdleAndResetsOnChange() {
+        long min = FeedPoller.MIN_INTERVAL_MILLIS;
+        long max = FeedPoller.MAX_INTERVAL_MILLIS;
+
+        long interval = min;
+        for (int i = 0; i < 10; i++) {
+            interval = FeedPoller.nextInterval(interval, false, min, max);
+        }
+        assertEquals(max, interval);
+        assertEquals(min, FeedPoller.nextInterval(interval, true, min, max));
+        assertEquals(2 * min, FeedPoller.nextInterval(min, false, min, max));
+    }
+
+    private void setFeed(String... features) {
+        StringBuilder json = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+        for (int i = 0; i < features.length; i++) {
+            json.append(i == 0 ? "" : ",").append(features[i]);
+        }
+        json.append("]}");
+        feed = json.toString().getBytes(Charset.forName("UTF-8"));
+        feedVersion++;
+    }
+
+    private static String feature(String id, double magnitude, long updated) {
+        return "{\"type\":\"Feature\",\"properties\":{\"mag\":" + magnitude
+                + ",\"place\":\"somewhere\",\"time\":1,\"updated\":" + updated
+                + ",\"url\":\"u\"},\"geometry\":{\"type\":\"Point\","
+                + "\"coordinates\":[1,2,3]},\"id\":\"" + id + "\"}";
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.android.quakereport.utils;
+
+import com.example.android.quakereport.data.Earthquake;
+import com.example.android.quakereport.data.EarthquakeDetail;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DetailPrefetcherTest {
+
+    private final TaskScheduler scheduler = new TaskScheduler(new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    });
+
+    private final FakeSource source = new FakeSource();
+
+    private final DetailPrefetcher prefetcher =
+            new DetailPrefetcher(source, scheduler, 16, 60 * 1000);
+
+    @After
+    public void tearDown() {
+        source.release.countDown();
+    }
+
+    @Test
+    public void settledRows_arePrefetchedAndOpenedFromTheCache() throws Exception {
+        source.release.countDown();
+        Earthquake a = earthquake("a");
+        Earthquake b = earthquake("b");
+
+        prefetcher.onRowsVisible(Arrays.asList(a, b), true);
+        awaitIdle();
+
+        assertEquals(2, source.fetched().size());
+        assertTrue(source.fetched().contains(a.getDetailUrl()));
+        EarthquakeDetail detail = prefetcher.load(b);
+        assertEquals("b", detail.getEarthquake().getId());
+        assertEquals(2, source.fetched().size());
+
+        // Cached rows are not prefetched again.
+        prefetcher.onRowsVisible(Arrays.asList(a, b), true);
+        awaitIdle();
+        assertEquals(2, source.fetched().size());
+    }
+
+    @Test
+    public void scrolling_startsNothing() throws Exception {
+        source.release.countDown();
+
+        prefetcher.onRowsVisible(Collections.singletonList(earthquake("a")), false);
+        awaitIdle();
+
+        assertEquals(0, source.fetched().size());
+    }
+
+    @Test
+    public void rowsScrolledAway_areCancelledQueuedOrRunning() throws Exception {
+        Earthquake a = earthquake("a");
+        Earthquake b = earthquake("b");
+        Earthquake c = earthquake("c");
+        prefetcher.onRowsVisible(Arrays.asList(a, b), true);
+        assertTrue(source.started.await(5, TimeUnit.SECONDS));
+
+        // At least one of them is downloading when both scroll away.
+        prefetcher.onRowsVisible(Collections.singletonList(c), false);
+        source.release.countDown();
+        awaitIdle();
+
+        assertFalse(source.fetched().contains(c.getDetailUrl()));
+        assertTrue(source.cancelled);
+        assertNull(prefetcher.getCached(a));
+        assertNull(prefetcher.getCached(b));
+        assertEquals(0, prefetcher.getPendingCount());
+        assertEquals(2, scheduler.getStats(TaskScheduler.Lane.PREFETCH).getCancelled());
+    }
+
+    @Test
+    public void load_sharesTheRunningPrefetch() throws Exception {
+        final Earthquake a = earthquake("a");
+        prefetcher.onRowsVisible(Collections.singletonList(a), true);
+        assertTrue(source.started.await(5, TimeUnit.SECONDS));
+
+        final EarthquakeDetail[] opened = new EarthquakeDetail[1];
+        Thread opener = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    opened[0] = prefetcher.load(a);
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        opener.start();
+        source.release.countDown();
+        opener.join(5000);
+
+        assertEquals(1, source.fetched().size());
+        assertSame(prefetcher.getCached(a), opened[0]);
+    }
+
+    private void awaitIdle() throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        TaskScheduler.Stats stats = scheduler.getStats(TaskScheduler.Lane.PREFETCH);
+        while (stats.getQueueDepth() + stats.getRunning() > 0
+                || prefetcher.getPendingCount() > 0) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+            stats = scheduler.getStats(TaskScheduler.Lane.PREFETCH);
+        }
+    }
+
+    private static Earthquake earthquake(String id) {
+        return new Earthquake(id, 5.0, "Somewhere", 0, 0, null);
+    }
+
+    /**
+     * Answers with a detail once released, or fails once cancelled.
+     */
+    private static final class FakeSource implements DetailPrefetcher.DetailSource {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        private final List<String> fetched = new ArrayList<>();
+        volatile boolean cancelled;
+
+        @Override
+        public EarthquakeDetail fetch(String detailUrl, FetchCancellation cancellation)
+                throws IOException {
+            synchronized (this) {
+                fetched.add(detailUrl);
+            }
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            if (cancellation != null && cancellation.isCancelled()) {
+                cancelled = true;
+                throw new InterruptedIOException();
+            }
+            String id = detailUrl.substring(Earthquake.DETAIL_URL_PREFIX.length());
+            return new EarthquakeDetail(earthquake(id), id, null, -1, Double.NaN, Double.NaN,
+                    null, false, -1, null, -1, Double.NaN);
+        }
+
+        synchronized List<String> fetched() {
+            return new ArrayList<>(fetched);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.android.quakereport.utils;
+
+import com.example.android.quakereport.data.Earthquake;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Exercises {@link DiskResponseCache} through {@link QueryUtils} against a local server which
+ * serves a fixed GeoJSON payload with an ETag.
+ */
+public class DiskResponseCacheTest {
+
+    private static final String ETAG = "\"payload-v1\"";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String url;
+    private byte[] payload;
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger bodyCount = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        payload = EarthquakeStreamParserTest.samplePayload(100).getBytes(Charset.forName("UTF-8"));
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/fdsnws/event/1/query", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                requestCount.incrementAndGet();
+                exchange.getResponseHeaders().add("ETag", ETAG);
+                if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                } else {
+                    bodyCount.incrementAndGet();
+                    exchange.sendResponseHeaders(200, payload.length);
+                    OutputStream body = exchange.getResponseBody();
+                    body.write(payload);
+                    body.close();
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort()
+                + "/fdsnws/event/1/query?format=geojson&limit=100";
+    }
+
+    @After
+    public void tearDown() {
+        QueryUtils.setResponseCache(null);
+        server.stop(0);
+    }
+
+    @Test
+    public void freshEntry_isServedWithoutNetwork() throws IOException {
+        DiskResponseCache cache =
+                new DiskResponseCache(temporaryFolder.newFolder(), 1024 * 1024, 60 * 1000);
+        QueryUtils.setResponseCache(cache);
+
+        List<Earthquake> first = QueryUtils.fetchEarthquakeData(url);
+        List<Earthquake> second = QueryUtils.fetchEarthquakeData(url);
+        // Only USGS can say nothing changed; a cached body may be new to the caller.
+        List<Earthquake> changes = QueryUtils.fetchEarthquakeChanges(url);
+
+        assertEquals(100, first.size());
+        assertEquals(100, second.size());
+        assertEquals(100, changes.size());
+        assertEquals(1, requestCount.get());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(payload.length, cache.size());
+    }
+
+    @Test
+    public void staleEntry_isRevalidatedWithoutBody() throws IOException {
+        DiskResponseCache cache =
+                new DiskResponseCache(temporaryFolder.newFolder(), 1024 * 1024, 0);
+        QueryUtils.setResponseCache(cache);
+
+        assertEquals(100, QueryUtils.fetchEarthquakeData(url).size());
+        assertEquals(100, QueryUtils.fetchEarthquakeData(url).size());
+        // An unchanged response is not parsed when only changes are wanted.
+        assertEquals(0, QueryUtils.fetchEarthquakeChanges(url).size());
+
+        assertEquals(3, requestCount.get());
+        assertEquals(1, bodyCount.get());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(2, cache.getRevalidationCount());
+    }
+
+    @Test
+    public void perUrlTtl_overridesDefault() throws IOException {
+        DiskResponseCache cache =
+                new DiskResponseCache(temporaryFolder.newFolder(), 1024 * 1024, 60 * 1000);
+        cache.setTtl("http://127.0.0.1:" + server.getAddress().getPort() + "/fdsnws/", 0);
+        QueryUtils.setResponseCache(cache);
+
+        QueryUtils.fetchEarthquakeData(url);
+        QueryUtils.fetchEarthquakeData(url);
+
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getRevalidationCount());
+    }
+
+    @Test
+    public void index_survivesReopen() throws IOException {
+        File directory = temporaryFolder.newFolder();
+        QueryUtils.setResponseCache(new DiskResponseCache(directory, 1024 * 1024, 60 * 1000));
+        QueryUtils.fetchEarthquakeData(url);
+
+        DiskResponseCache reopened = new DiskResponseCache(directory, 1024 * 1024, 60 * 1000);
+        QueryUtils.setResponseCache(reopened);
+        assertEquals(100, QueryUtils.fetchEarthquakeData(url).size());
+
+        assertEquals(1, requestCount.get());
+        assertEquals(1, reopened.getHitCount());
+    }
+
+    @Test
+    public void leastRecentlyUsed_isEvictedFirst() throws IOException {
+        DiskResponseCache cache = new DiskResponseCache(temporaryFolder.newFolder(), 25, 60 * 1000);
+
+        store(cache, "a", "0123456789");
+        store(cache, "b", "0123456789");
+        assertNotNull(cache.get("a"));
+        store(cache, "c", "0123456789");
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(20, cache.size());
+    }
+
+    private static void store(DiskResponseCache cache, String url, String body)
+            throws IOException {
+        InputStream in = cache.cacheWhileReading(url, null, null,
+                new ByteArrayInputStream(body.getBytes(Charset.forName("UTF-8"))));
+        QueryUtils.readFromStream(in);
+        in.close();
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.android.quakereport.utils;
+
+import com.example.android.quakereport.data.Earthquake;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Streams a response from a local server that sends it in slow chunks, and checks that batches
+ * are published long before the download is done.
+ */
+public class EarthquakeBatcherTest {
+
+    private static final int FEATURE_COUNT = 500;
+
+    private static final int CHUNK_COUNT = 10;
+
+    private static final long CHUNK_DELAY_MILLIS = 50;
+
+    private HttpServer server;
+    private String url;
+
+    @Before
+    public void setUp() throws IOException {
+        final byte[] payload = EarthquakeStreamParserTest.samplePayload(FEATURE_COUNT)
+                .getBytes(Charset.forName("UTF-8"));
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/slow", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream out = exchange.getResponseBody();
+                try {
+                    int chunkSize = (payload.length + CHUNK_COUNT - 1) / CHUNK_COUNT;
+                    for (int offset = 0; offset < payload.length; offset += chunkSize) {
+                        out.write(payload, offset, Math.min(chunkSize, payload.length - offset));
+                        out.flush();
+                        Thread.sleep(CHUNK_DELAY_MILLIS);
+                    }
+                    out.close();
+                } catch (InterruptedException | IOException e) {
+                    // The client went away.
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/slow";
+        QueryUtils.setResponseCache(null);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void batches_growUpToTheMaximum() {
+        final List<Integer> sizes = new ArrayList<>();
+        EarthquakeBatcher batcher = new EarthquakeBatcher(20, 100,
+                new EarthquakeBatcher.Listener() {
+                    @Override
+                    public void onBatch(List<Earthquake> batch) {
+                        sizes.add(batch.size());
+                    }
+                });
+
+        for (int i = 0; i < 400; i++) {
+            batcher.onEarthquake(new Earthquake("ev" + i, 1, "", i, i, null));
+        }
+        batcher.flush();
+
+        assertEquals(Arrays.asList(20, 40, 80, 100, 100, 60), sizes);
+        assertEquals(6, batcher.getBatchCount());
+    }
+
+    @Test
+    public void fetch_publishesTheFirstBatchBeforeTheDownloadEnds() {
+        final List<Earthquake> published = new ArrayList<>();
+        final long[] firstBatchAt = {-1};
+        EarthquakeBatcher batcher = new EarthquakeBatcher(20, 200,
+                new EarthquakeBatcher.Listener() {
+                    @Override
+                    public void onBatch(List<Earthquake> batch) {
+                        if (firstBatchAt[0] < 0) {
+                            firstBatchAt[0] = System.nanoTime();
+                        }
+                        published.addAll(batch);
+                    }
+                });
+
+        long started = System.nanoTime();
+        List<Earthquake> earthquakes =
+                QueryUtils.fetchEarthquakeChanges(url, new FetchCancellation(), batcher);
+        long done = System.nanoTime();
+        batcher.flush();
+
+        assertNotNull(earthquakes);
+        assertEquals(FEATURE_COUNT, earthquakes.size());
+        assertEquals(earthquakes, published);
+
+        // The first rows came with the first chunks, not with the last one.
+        long firstBatchMillis = (firstBatchAt[0] - started) / 1000000;
+        long totalMillis = (done - started) / 1000000;
+        assertTrue(firstBatchMillis + " ms of " + totalMillis,
+                firstBatchMillis < totalMillis / 2);
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.android.quakereport.utils;
+
+import com.example.android.quakereport.data.Earthquake;
+
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Parses the same events from USGS GeoJSON, CSV and text responses.
+ */
+public class EarthquakeFormatsTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String CSV = "time,latitude,longitude,depth,mag,magType,nst,gap,dmin,"
+            + "rms,net,id,updated,place,type,horizontalError,depthError,magError,magNst,status,"
+            + "locationSource,magSource\r\n"
+            + "2020-09-13T12:34:56.789Z,38.1234,-118.5678,7.5,4.6,mb,,45,1.2,0.8,us,us7000abcd,"
+            + "2020-09-14T01:02:03.040Z,\"25 km SSE of Mina, Nevada\",earthquake,3.1,1.9,0.05,"
+            + "120,reviewed,us,us\r\n"
+            + "2020-09-13T10:00:00Z,-20.5,170.25,35,,mb,,,,,us,us7000abce,"
+            + "2020-09-13T11:00:00.000Z,\"Vanuatu \"\"Islands\"\"\",earthquake,,,,,reviewed,us,us"
+            + "\r\n";
+
+    private static final String TEXT = "#EventID|Time|Latitude|Longitude|Depth/km|Author|Catalog|"
+            + "Contributor|ContributorID|MagType|Magnitude|MagAuthor|EventLocationName|EventType\n"
+            + "us7000abcd|2020-09-13T12:34:56.789|38.1234|-118.5678|7.5|us|us|us|us7000abcd|mb|"
+            + "4.6|us|25 km SSE of Mina, Nevada|earthquake\n"
+            + "us7000abce|2020-09-13T10:00:00|-20.5|170.25|35|us|us|us|us7000abce|mb||us|"
+            + "Vanuatu \"Islands\"|earthquake\n";
+
+    @Test
+    public void csv_readsEveryField() throws IOException {
+        List<Earthquake> earthquakes = parse(EarthquakeFormats.CSV, CSV);
+
+        assertEquals(2, earthquakes.size());
+        Earthquake first = earthquakes.get(0);
+        assertEquals("us7000abcd", first.getId());
+        assertEquals(4.6, first.getMagnitude(), 0);
+        assertEquals("25 km SSE of Mina, Nevada", first.getLocation());
+        assertEquals(time("2020-09-13 12:34:56.789"), first.getTime());
+        assertEquals(time("2020-09-14 01:02:03.040"), first.getUpdated());
+        assertEquals(Earthquake.eventPageUrl("us7000abcd"), first.getUrl());
+        assertEquals(-118.5678, first.getLongitude(), 0);
+        assertEquals(38.1234, first.getLatitude(), 0);
+        assertEquals(7.5, first.getDepth(), 0);
+
+        Earthquake second = earthquakes.get(1);
+        assertTrue(Double.isNaN(second.getMagnitude()));
+        assertEquals("Vanuatu \"Islands\"", second.getLocation());
+        assertEquals(time("2020-09-13 10:00:00.000"), second.getTime());
+    }
+
+    @Test
+    public void text_readsEveryFieldButTheRevisionTime() throws IOException {
+        List<Earthquake> csv = parse(EarthquakeFormats.CSV, CSV);
+        List<Earthquake> text = parse(EarthquakeFormats.TEXT, TEXT);
+
+        assertEquals(csv.size(), text.size());
+        for (int i = 0; i < csv.size(); i++) {
+            assertEquals(csv.get(i).getId(), text.get(i).getId());
+            assertEquals(csv.get(i).getMagnitude(), text.get(i).getMagnitude(), 0);
+            assertEquals(csv.get(i).getLocation(), text.get(i).getLocation());
+            assertEquals(csv.get(i).getTime(), text.get(i).getTime());
+            assertEquals(csv.get(i).getUrl(), text.get(i).getUrl());
+            assertEquals(csv.get(i).getLongitude(), text.get(i).getLongitude(), 0);
+            assertEquals(csv.get(i).getLatitude(), text.get(i).getLatitude(), 0);
+            assertEquals(csv.get(i).getDepth(), text.get(i).getDepth(), 0);
+            assertEquals(0, text.get(i).getUpdated());
+        }
+    }
+
+    @Test
+    public void allFormats_yieldTheSameEarthquakes() throws IOException {
+        List<Earthquake> geoJson = parse(EarthquakeFormats.GEOJSON,
+                EarthquakeStreamParserTest.samplePayload(100));
+
+        StringBuilder csv =
+                new StringBuilder("time,latitude,longitude,depth,mag,id,updated,place\n");
+        for (Earthquake earthquake : geoJson) {
+            csv.append(isoTime(earthquake.getTime())).append(',')
+                    .append(earthquake.getLatitude()).append(',')
+                    .append(earthquake.getLongitude()).append(',')
+                    .append(earthquake.getDepth()).append(',')
+                    .append(earthquake.getMagnitude()).append(',')
+                    .append(earthquake.getId()).append(',')
+                    .append(isoTime(earthquake.getUpdated())).append(',')
+                    .append('"').append(earthquake.getLocation().replace("\"", "\"\""))
+                    .append("\"\n");
+        }
+        List<Earthquake> fromCsv = parse(EarthquakeFormats.CSV, csv.toString());
+
+        assertEquals(geoJson.size(), fromCsv.size());
+        for (int i = 0; i < geoJson.size(); i++) {
+            assertEquals(geoJson.get(i).getId(), fromCsv.get(i).getId());
+            assertEquals(geoJson.get(i).getMagnitude(), fromCsv.get(i).getMagnitude(), 0);
+            assertEquals(geoJson.get(i).getLocation(), fromCsv.get(i).getLocation());
+            assertEquals(geoJson.get(i).getTime(), fromCsv.get(i).getTime());
+            assertEquals(geoJson.get(i).getUpdated(), fromCsv.get(i).getUpdated());
+            assertEquals(geoJson.get(i).getLatitude(), fromCsv.get(i).getLatitude(), 0);
+            assertEquals(geoJson.get(i).getLongitude(), fromCsv.get(i).getLongitude(), 0);
+            assertEquals(geoJson.get(i).getDepth(), fromCsv.get(i).getDepth(), 0);
+        }
+    }
+
+    @Test
+    public void detect_tellsTheFormatsApartAndRewinds() throws IOException {
+        String geoJson = "\n  {\"type\":\"FeatureCollection\",\"features\":[]}";
+        assertSame(EarthquakeFormats.GEOJSON, detect(geoJson));
+        assertSame(EarthquakeFormats.CSV, detect(CSV));
+        assertSame(EarthquakeFormats.TEXT, detect(TEXT));
+
+        BufferedInputStream body = stream(CSV);
+        EarthquakeFormats.detect(body);
+        assertEquals(2, EarthquakeFormats.CSV.parse(body, new ListCallback()));
+    }
+
+    @Test
+    public void parseIsoTime_matchesSimpleDateFormat() {
+        String[] times = {"1969-12-31 23:59:59.999", "2000-02-29 00:00:00.000",
+                "2020-12-31 23:59:59.500", "1900-03-01 12:00:00.001"};
+        for (String time : times) {
+            assertEquals(time, time(time),
+                    DelimitedEarthquakeFormat.parseIsoTime(time.replace(' ', 'T') + "Z"));
+        }
+        assertEquals(time("2020-01-02 03:04:05.600"),
+                DelimitedEarthquakeFormat.parseIsoTime("2020-01-02T03:04:05.6"));
+        assertEquals(0, DelimitedEarthquakeFormat.parseIsoTime(""));
+        assertEquals(0, DelimitedEarthquakeFormat.parseIsoTime("not a time at all"));
+    }
+
+    @Test
+    public void withFormat_setsTheParameter() {
+        assertEquals("https://x/query?format=csv&limit=10", EarthquakeFormats.withFormat(
+                "https://x/query?format=geojson&limit=10", EarthquakeFormats.CSV));
+        assertEquals("https://x/query?limit=10&format=text", EarthquakeFormats.withFormat(
+                "https://x/query?limit=10&format=geojson", EarthquakeFormats.TEXT));
+        assertEquals("https://x/query?limit=10&format=csv", EarthquakeFormats.withFormat(
+                "https://x/query?limit=10", EarthquakeFormats.CSV));
+        assertEquals("https://x/query?dformat=1&format=csv", EarthquakeFormats.withFormat(
+                "https://x/query?dformat=1", EarthquakeFormats.CSV));
+        assertEquals("https://x/query?format=csv", EarthquakeFormats.withFormat(
+                "https://x/query", EarthquakeFormats.CSV));
+    }
+
+    @Test
+    public void forName_findsKnownFormats() {
+        assertSame(EarthquakeFormats.TEXT, EarthquakeFormats.forName("text"));
+        assertNull(EarthquakeFormats.forName("auto"));
+    }
+
+    private static List<Earthquake> parse(EarthquakeFormat format, String body)
+            throws IOException {
+        ListCallback callback = new ListCallback();
+        format.parse(stream(body), callback);
+        return callback.earthquakes;
+    }
+
+    private static EarthquakeFormat detect(String body) throws IOException {
+        return EarthquakeFormats.detect(stream(body));
+    }
+
+    private static BufferedInputStream stream(String body) {
+        return new BufferedInputStream(new ByteArrayInputStream(body.getBytes(UTF_8)));
+    }
+
+    private static long time(String utc) {
+        try {
+            return utcFormat().parse(utc).getTime();
+        } catch (java.text.ParseException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static String isoTime(long millis) {
+        return utcFormat().format(millis).replace(' ', 'T') + "Z";
+    }
+
+    private static SimpleDateFormat utcFormat() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format;
+    }
+
+    private static final class ListCallback implements EarthquakeStreamParser.Callback {
+        final List<Earthquake> earthquakes = new ArrayList<>();
+
+        @Override
+        public void onEarthquake(Earthquake earthquake) {
+            earthquakes.add(earthquake);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.android.quakereport.utils;
+
+import com.example.android.quakereport.data.Earthquake;
+import com.example.android.quakereport.data.EarthquakeDetail;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that {@link EarthquakeStreamParser} yields exactly what
+ * {@link QueryUtils#extractEarthquakeList(String)} does.
+ */
+public class EarthquakeStreamParserTest {
+
+    @Test
+    public void parse_matchesExtractEarthquakeList() throws IOException {
+        String json = samplePayload(250);
+
+        List<Earthquake> expected = QueryUtils.extractEarthquakeList(json);
+        List<Earthquake> actual = EarthquakeStreamParser.parse(toStream(json));
+
+        assertEquals(250, expected.size());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), actual.get(i).getId());
+            assertEquals(expected.get(i).getUpdated(), actual.get(i).getUpdated());
+            assertEquals(expected.get(i).getMagnitude(), actual.get(i).getMagnitude(), 0.0);
+            assertEquals(expected.get(i).getLocation(), actual.get(i).getLocation());
+            assertEquals(expected.get(i).getTime(), actual.get(i).getTime());
+            assertEquals(expected.get(i).getUrl(), actual.get(i).getUrl());
+            assertEquals(expected.get(i).getLongitude(), actual.get(i).getLongitude(), 0.0);
+            assertEquals(expected.get(i).getLatitude(), actual.get(i).getLatitude(), 0.0);
+            assertEquals(expected.get(i).getDepth(), actual.get(i).getDepth(), 0.0);
+        }
+    }
+
+    @Test
+    public void parse_skipsUnusedAndNullFields() throws IOException {
+        String json = "{\"type\":\"FeatureCollection\",\"metadata\":{\"count\":1,\"title\":\"x\"},"
+                + "\"features\":[{\"type\":\"Feature\",\"properties\":{\"mag\":null,"
+                + "\"place\":\"Caf\\u00e9 \\\"Quote\\\"\",\"time\":1388620296020,"
+                + "\"tz\":-240,\"nested\":{\"a\":[1,2,{\"b\":true}]},\"url\":\"u\"},"
+                + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[-1.5,2.5e1,10]},"
+                + "\"id\":\"ci1\"}],\"bbox\":[1,2,3]}";
+
+        List<Earthquake> actual = EarthquakeStreamParser.parse(toStream(json));
+
+        assertEquals(1, actual.size());
+        assertEquals("ci1", actual.get(0).getId());
+        assertTrue(Double.isNaN(actual.get(0).getMagnitude()));
+        assertEquals("Caf\u00e9 \"Quote\"", actual.get(0).getLocation());
+        assertEquals(1388620296020L, actual.get(0).getTime());
+        assertEquals("u", actual.get(0).getUrl());
+        assertEquals(-1.5, actual.get(0).getLongitude(), 0.0);
+        assertEquals(25.0, actual.get(0).getLatitude(), 0.0);
+        assertEquals(10.0, actual.get(0).getDepth(), 0.0);
+    }
+
+    @Test
+    public void parse_emptyFeatures() throws IOException {
+        assertEquals(0, EarthquakeStreamParser.parse(toStream("{\"features\":[]}")).size());
+    }
+
+    @Test
+    public void parseDetail_readsDetailPropertiesAndSkipsProducts() throws IOException {
+        String json = "{\"type\":\"Feature\",\"properties\":{\"mag\":6.4,"
+                + "\"place\":\"11km SW of Searles Valley, CA\",\"time\":1562261689120,"
+                + "\"updated\":1600000000000,\"url\":\"u\",\"felt\":22000,\"cdi\":8.6,"
+                + "\"mmi\":8.2,\"alert\":\"orange\",\"status\":\"reviewed\",\"tsunami\":0,"
+                + "\"sig\":1557,\"nst\":null,\"gap\":27,\"magType\":\"mw\","
+                + "\"title\":\"M 6.4 - Searles Valley\",\"products\":{\"origin\":[{"
+                + "\"properties\":{\"title\":\"not this\",\"mag\":\"1\"}}]}},"
+                + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[-117.5,35.7,10.7]},"
+                + "\"id\":\"ci38443183\"}";
+
+        EarthquakeDetail detail = EarthquakeStreamParser.parseDetail(toStream(json));
+
+        assertEquals("ci38443183", detail.getEarthquake().getId());
+        assertEquals(6.4, detail.getEarthquake().getMagnitude(), 0.0);
+        assertEquals(35.7, detail.getEarthquake().getLatitude(), 0.0);
+        assertEquals("M 6.4 - Searles Valley", detail.getTitle());
+        assertEquals("mw", detail.getMagnitudeType());
+        assertEquals(22000, detail.getFeltReports());
+        assertEquals(8.6, detail.getReportedIntensity(), 0.0);
+        assertEquals(8.2, detail.getInstrumentalIntensity(), 0.0);
+        assertEquals("orange", detail.getAlert());
+        assertEquals(1557, detail.getSignificance());
+        assertEquals(-1, detail.getStationCount());
+        assertEquals(27.0, detail.getAzimuthalGap(), 0.0);
+        assertFalse(detail.isTsunami());
+    }
+
+    @Test
+    public void parseDetail_withoutTitle_usesPlace() throws IOException {
+        EarthquakeDetail detail = EarthquakeStreamParser.parseDetail(toStream(
+                "{\"properties\":{\"place\":\"Fiji\",\"alert\":null},\"id\":\"a\"}"));
+
+        assertEquals("Fiji", detail.getTitle());
+        assertNull(detail.getAlert());
+        assertEquals(-1, detail.getFeltReports());
+        assertTrue(Double.isNaN(detail.getReportedIntensity()));
+    }
+
+    private static InputStream toStream(String json) {
+        return new ByteArrayInputStream(json.getBytes(Charset.forName("UTF-8")));
+    }
+
+    /**
+     * Builds a USGS-shaped GeoJSON document with the given number of features.
+     */
+    public static String samplePayload(int featureCount) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"type\":\"FeatureCollection\",\"metadata\":{\"generated\":1605000000000,")
+                .append("\"url\":\"https://earthquake.usgs.gov/fdsnws/event/1/query\",")
+                .append("\"title\":\"USGS Earthquakes\",\"status\":200,\"count\":")
+                .append(featureCount).append("},\"features\":[");
+        for (int i = 0; i < featureCount; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            String id = "us" + (7000000 + i);
+            json.append("{\"type\":\"Feature\",\"properties\":{\"mag\":")
+                    .append(1 + (i % 80) / 10.0)
+                    .append(",\"place\":\"").append(i % 7).append("km NNE of Town ").append(i % 50)
+                    .append(", Region\",\"time\":").append(1600000000000L + i * 60000L)
+                    .append(",\"updated\":").append(1600000500000L + i * 60000L)
+                    .append(",\"tz\":null,\"url\":\"https://earthquake.usgs.gov/earthquakes/eventpage/")
+                    .append(id).append("\",\"detail\":\"https://earthquake.usgs.gov/fdsnws/event/1/")
+                    .append("query?eventid=").append(id).append("&format=geojson\",\"felt\":null,")
+                    .append("\"cdi\":null,\"mmi\":null,\"alert\":null,\"status\":\"reviewed\",")
+                    .append("\"tsunami\":0,\"sig\":").append(i % 900)
+                    .append(",\"net\":\"us\",\"code\":\"").append(7000000 + i)
+                    .append("\",\"ids\":\",").append(id).append(",\",\"sources\":\",us,\",")
+                    .append("\"types\":\",origin,phase-data,\",\"nst\":null,\"dmin\":1.2,")
+                    .append("\"rms\":0.8,\"gap\":40,\"magType\":\"mb\",\"type\":\"earthquake\",")
+                    .append("\"title\":\"M ").append(1 + (i % 80) / 10.0).append(" - Town\"},")
+                    .append("\"geometry\":{\"type\":\"Point\",\"coordinates\":[")
+                    .append(-180 + (i * 7) % 360).append('.').append(i % 10).append(',')
+                    .append(-80 + (i * 3) % 160).append(".25,").append(i % 600).append(".5]},")
+                    .append("\"id\":\"").append(id).append("\"}");
+        }
+        json.append("],\"bbox\":[-180,-80,0,180,80,600]}");
+        return json.toString();
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.android.quakereport.utils;
+
+import com.example.android.quakereport.data.Earthquake;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Cancels fetches from a local server that sends the first features right away and then stalls.
+ */
+public class FetchCancellationTest {
+
+    /* Far longer than any test may take, so only cancelling can end the fetch in time. */
+    private static final long STALL_MILLIS = 10000;
+
+    private HttpServer server;
+    private String url;
+
+    private final CountDownLatch clientGone = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws IOException {
+        // The first half of the features, cut between two of them, so the spaces sent after it
+        // are valid whitespace.
+        String payload = EarthquakeStreamParserTest.samplePayload(100);
+        final byte[] head = payload.substring(0,
+                payload.indexOf(",{\"type\":\"Feature\"", payload.length() / 2))
+                .getBytes(Charset.forName("UTF-8"));
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/stall", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream out = exchange.getResponseBody();
+                try {
+                    // The head, then nothing but whitespace until the client gives up.
+                    out.write(head);
+                    out.flush();
+                    long stallUntil = System.currentTimeMillis() + STALL_MILLIS;
+                    while (System.currentTimeMillis() < stallUntil) {
+                        Thread.sleep(20);
+                        out.write(' ');
+                        out.flush();
+                    }
+                } catch (InterruptedException | IOException e) {
+                    clientGone.countDown();
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/stall";
+        QueryUtils.setResponseCache(null);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void cancel_abortsABlockedDownload() throws InterruptedException {
+        final FetchCancellation cancellation = new FetchCancellation();
+        final AtomicInteger parsed = new AtomicInteger();
+
+        // Cancel from another thread once the first features have been parsed.
+        EarthquakeStreamParser.Callback callback = new EarthquakeStreamParser.Callback() {
+            @Override
+            public void onEarthquake(Earthquake earthquake) {
+                if (parsed.incrementAndGet() == 10) {
+                    new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            sleepQuietly(200);
+                            cancellation.cancel();
+                        }
+                    }).start();
+                }
+            }
+        };
+
+        long started = System.nanoTime();
+        assertNull(QueryUtils.fetchEarthquakeChanges(url, cancellation, callback));
+        long elapsedMillis = (System.nanoTime() - started) / 1000000;
+
+        assertTrue(cancellation.isCancelled());
+        assertTrue(parsed.get() >= 10);
+        assertTrue(elapsedMillis + " ms", elapsedMillis < STALL_MILLIS / 4);
+        assertTrue(clientGone.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void cancel_beforeTheFetch_failsWithoutParsing() {
+        FetchCancellation cancellation = new FetchCancellation();
+        cancellation.cancel();
+        final AtomicInteger parsed = new AtomicInteger();
+
+        assertNull(QueryUtils.fetchEarthquakeChanges(url, cancellation,
+                new EarthquakeStreamParser.Callback() {
+                    @Override
+                    public void onEarthquake(Earthquake earthquake) {
+                        parsed.incrementAndGet();
+                    }
+                }));
+        assertEquals(0, parsed.get());
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.android.quakereport.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FormatSelectorTest {
+
+    private FormatSelector selector;
+
+    @Before
+    public void setUp() {
+        selector = new FormatSelector(EarthquakeFormats.all());
+    }
+
+    @Test
+    public void choose_triesEveryFormatBeforeComparing() {
+        assertSame(EarthquakeFormats.GEOJSON, selector.choose(false));
+        selector.record(EarthquakeFormats.GEOJSON, 100, 10000);
+        assertSame(EarthquakeFormats.CSV, selector.choose(false));
+        selector.record(EarthquakeFormats.CSV, 100, 4000);
+        assertSame(EarthquakeFormats.TEXT, selector.choose(false));
+        selector.record(EarthquakeFormats.TEXT, 100, 6000);
+
+        assertSame(EarthquakeFormats.CSV, selector.choose(false));
+    }
+
+    @Test
+    public void choose_needingRevisionTimes_neverPicksText() {
+        selector.record(EarthquakeFormats.GEOJSON, 100, 10000);
+        selector.record(EarthquakeFormats.CSV, 100, 8000);
+        selector.record(EarthquakeFormats.TEXT, 100, 1000);
+
+        assertSame(EarthquakeFormats.TEXT, selector.choose(false));
+        for (int i = 0; i < 50; i++) {
+            assertTrue(selector.choose(true).hasUpdatedTimes());
+        }
+    }
+
+    @Test
+    public void choose_preferred_isUsedWhereItFits() {
+        selector.setPreferred(EarthquakeFormats.TEXT);
+
+        assertSame(EarthquakeFormats.TEXT, selector.choose(false));
+        assertSame(EarthquakeFormats.GEOJSON, selector.choose(true));
+    }
+
+    @Test
+    public void choose_regularlyRemeasuresTheStalestFormat() {
+        selector.record(EarthquakeFormats.GEOJSON, 100, 10000);
+        selector.record(EarthquakeFormats.CSV, 100, 3000);
+        selector.record(EarthquakeFormats.TEXT, 100, 5000);
+
+        int geoJsonChoices = 0;
+        for (int i = 0; i < 40; i++) {
+            if (selector.choose(false) == EarthquakeFormats.GEOJSON) {
+                geoJsonChoices++;
+            }
+        }
+        assertEquals(2, geoJsonChoices);
+    }
+
+    @Test
+    public void record_averagesMeasurements() {
+        selector.record(EarthquakeFormats.CSV, 10, 1000);
+        selector.record(EarthquakeFormats.CSV, 10, 2000);
+        selector.record(EarthquakeFormats.CSV, 0, 5000);
+
+        assertEquals(130, selector.getMicrosPerEvent(EarthquakeFormats.CSV), 1e-9);
+        assertTrue(Double.isNaN(selector.getMicrosPerEvent(EarthquakeFormats.TEXT)));
+    }
+}
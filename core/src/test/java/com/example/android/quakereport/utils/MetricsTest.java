@@ -0,0 +1,110 @@
+package com.example.android.quakereport.utils;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsTest {
+
+    private Metrics metrics;
+
+    @Before
+    public void setUp() {
+        metrics = new Metrics();
+        metrics.setEnabled(true);
+    }
+
+    @Test
+    public void counter_addsUp() {
+        Metrics.Counter counter = metrics.counter("bytes");
+        counter.add(100);
+        counter.increment();
+
+        assertEquals(101, counter.getCount());
+        assertSame(counter, metrics.counter("bytes"));
+    }
+
+    @Test
+    public void disabled_recordsNothing() {
+        metrics.setEnabled(false);
+        Metrics.Counter counter = metrics.counter("requests");
+        Metrics.Histogram histogram = metrics.histogram("sizes", "bytes");
+        Metrics.Timer timer = metrics.timer("parse");
+
+        counter.increment();
+        histogram.record(5);
+        long token = timer.start();
+        metrics.setEnabled(true);
+
+        assertEquals(-1, timer.stop(token));
+        assertEquals(0, counter.getCount());
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, timer.getCount());
+    }
+
+    @Test
+    public void histogram_percentilesAreWithinTheirBucket() {
+        Metrics.Histogram histogram = metrics.histogram("latency", "ms");
+        for (int value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(500.5, histogram.getMean(), 1e-9);
+        // Power of two buckets are at most a factor of two off.
+        long median = histogram.getPercentile(50);
+        assertTrue(String.valueOf(median), median >= 250 && median <= 1000);
+        long p99 = histogram.getPercentile(99);
+        assertTrue(String.valueOf(p99), p99 >= 512 && p99 <= 1000);
+        assertEquals(1, histogram.getPercentile(0));
+    }
+
+    @Test
+    public void timer_recordsMicroseconds() throws InterruptedException {
+        Metrics.Timer timer = metrics.timer("sleep");
+
+        long token = timer.start();
+        Thread.sleep(20);
+        long micros = timer.stop(token);
+
+        assertTrue(String.valueOf(micros), micros >= 20000);
+        assertEquals(1, timer.getCount());
+        assertEquals("us", timer.getUnit());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void timer_nameOfAHistogram_throws() {
+        metrics.histogram("parse", "ms");
+        metrics.timer("parse");
+    }
+
+    @Test
+    public void toJson_reportsEveryInstrument() throws Exception {
+        metrics.counter("http.requests").add(3);
+        metrics.histogram("parse.rate", "events/s").record(4000);
+        metrics.gauge("cache.hits", new Metrics.Gauge() {
+            @Override
+            public long getValue() {
+                return 7;
+            }
+        });
+
+        JSONObject report = metrics.toJson();
+
+        assertEquals(3, report.getJSONObject("counters").getLong("http.requests"));
+        assertEquals(7, report.getJSONObject("gauges").getLong("cache.hits"));
+        JSONObject rate = report.getJSONObject("histograms").getJSONObject("parse.rate");
+        assertEquals(1, rate.getLong("count"));
+        assertEquals(4000, rate.getLong("p50"));
+        assertEquals("events/s", rate.getString("unit"));
+
+        metrics.reset();
+        assertEquals(0, metrics.toJson().getJSONObject("counters").getLong("http.requests"));
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.android.quakereport.utils;
+
+import com.example.android.quakereport.data.Earthquake;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that {@link ParallelGeoJsonParser} yields exactly what {@link EarthquakeStreamParser}
+ * does, however the body is cut into chunks.
+ */
+public class ParallelGeoJsonParserTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void parse_matchesSequentialParser() throws IOException {
+        byte[] body = EarthquakeStreamParserTest.samplePayload(2000).getBytes(UTF_8);
+
+        // Small chunks, so that there are many more of them than threads.
+        assertSameEarthquakes(body, ParallelGeoJsonParser.parse(body, pool, 0, 4096));
+        // One feature per chunk.
+        assertSameEarthquakes(body, ParallelGeoJsonParser.parse(body, pool, 0, 1));
+        // Big enough for the default threshold.
+        assertSameEarthquakes(body, ParallelGeoJsonParser.parse(body));
+    }
+
+    @Test
+    public void parse_stringsThatLookLikeStructure() throws IOException {
+        String json = "{\"metadata\":{\"features\":[{\"x\":1}],\"title\":\"]}\"},\"features\" :\n"
+                + "[ {\"properties\":{\"mag\":1.5,\"place\":\"A \\\"},{\\\" B, \\u00e9\","
+                + "\"time\":1,\"url\":\"u1\"},\"id\":\"a\"} ,\n"
+                + "{\"properties\":{\"mag\":2.5,\"place\":\"Caf\u00e9 ],[ \\\\\",\"time\":2,"
+                + "\"url\":\"u2\"},\"geometry\":{\"coordinates\":[1,2,3]},\"id\":\"b\"},"
+                + "{\"properties\":{\"mag\":3.5,\"place\":\"\",\"time\":3,\"url\":\"u3\"},"
+                + "\"id\":\"c\"} ],\"bbox\":[1,2,3]}";
+        byte[] body = json.getBytes(UTF_8);
+
+        // Scanned in slices of one byte, so that slices start inside strings and escapes.
+        ParallelGeoJsonParser.Split split =
+                ParallelGeoJsonParser.split(body, 1, pool, body.length);
+        assertEquals(3, split.chunks.size());
+        assertEquals(']', body[split.arrayEnd]);
+        int[] second = split.chunks.get(1);
+        assertTrue(new String(body, second[0], second[1] - second[0], UTF_8).trim()
+                .startsWith("{\"properties\":{\"mag\":2.5,"));
+        List<Earthquake> earthquakes = ParallelGeoJsonParser.parse(body, pool, 0, 1);
+        assertSameEarthquakes(body, earthquakes);
+        assertEquals("A \"},{\" B, \u00e9", earthquakes.get(0).getLocation());
+        assertEquals("Caf\u00e9 ],[ \\", earthquakes.get(1).getLocation());
+    }
+
+    @Test
+    public void parse_emptyFeatures() throws IOException {
+        byte[] body = "{\"features\":[ ]}".getBytes(UTF_8);
+
+        assertEquals(0, ParallelGeoJsonParser.split(body, 1, pool, 4).chunks.size());
+        assertEquals(0, ParallelGeoJsonParser.parse(body, pool, 0, 1).size());
+    }
+
+    @Test
+    public void split_withoutWholeFeaturesArray_returnsNull() {
+        assertNull(split("{\"type\":\"x\"}"));
+        assertNull(split("{\"features\":[{}"));
+        assertNull(split("{\"features\":[{},{},]}"));
+    }
+
+    @Test
+    public void split_anySliceCount_findsTheSameChunks() {
+        byte[] body = EarthquakeStreamParserTest.samplePayload(50).getBytes(UTF_8);
+        List<int[]> expected = ParallelGeoJsonParser.split(body, 1, pool, 1).chunks;
+
+        assertEquals(50, expected.size());
+        for (int sliceCount : new int[]{2, 7, 64, 1000, body.length}) {
+            List<int[]> chunks = ParallelGeoJsonParser.split(body, 1, pool, sliceCount).chunks;
+            assertEquals(expected.size(), chunks.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i)[0], chunks.get(i)[0]);
+                assertEquals(expected.get(i)[1], chunks.get(i)[1]);
+            }
+        }
+    }
+
+    @Test
+    public void parse_anotherFeaturesArrayAfterTheFirst_isReadToo() throws IOException {
+        byte[] body = ("{\"features\":[{\"id\":\"a\"},{\"id\":\"b\"}],"
+                + "\"features\":[{\"id\":\"c\"}]}").getBytes(UTF_8);
+
+        List<Earthquake> earthquakes = ParallelGeoJsonParser.parse(body, pool, 0, 1);
+
+        assertSameEarthquakes(body, earthquakes);
+        assertEquals("c", earthquakes.get(2).getId());
+    }
+
+    @Test
+    public void parse_malformedChunk_throwsIOException() {
+        byte[] body = ("{\"features\":[{\"properties\":{\"mag\":1}},"
+                + "{\"properties\":{\"mag\":1}},{\"properties\":{\"mag\":}}]}").getBytes(UTF_8);
+        try {
+            ParallelGeoJsonParser.parse(body, pool, 0, 1);
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    private ParallelGeoJsonParser.Split split(String json) {
+        return ParallelGeoJsonParser.split(json.getBytes(UTF_8), 1, pool, 4);
+    }
+
+    private static void assertSameEarthquakes(byte[] body, List<Earthquake> actual)
+            throws IOException {
+        List<Earthquake> expected = EarthquakeStreamParser.parse(new ByteArrayInputStream(body));
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), actual.get(i).getId());
+            assertEquals(expected.get(i).getUpdated(), actual.get(i).getUpdated());
+            assertEquals(expected.get(i).getMagnitude(), actual.get(i).getMagnitude(), 0.0);
+            assertEquals(expected.get(i).getLocation(), actual.get(i).getLocation());
+            assertEquals(expected.get(i).getTime(), actual.get(i).getTime());
+            assertEquals(expected.get(i).getUrl(), actual.get(i).getUrl());
+            assertEquals(expected.get(i).getLongitude(), actual.get(i).getLongitude(), 0.0);
+            assertEquals(expected.get(i).getLatitude(), actual.get(i).getLatitude(), 0.0);
+            assertEquals(expected.get(i).getDepth(), actual.get(i).getDepth(), 0.0);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.android.quakereport.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Sends requests to a local server whose answers each test scripts: compressed bodies, server
+ * errors before a success and responses that stall.
+ */
+public class PooledHttpTransportTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String BODY = "{\"type\":\"FeatureCollection\",\"features\":[]}";
+
+    private HttpServer server;
+    private String baseUrl;
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    /* Client ports of the requests, one per request. */
+    private final List<Integer> clientPorts =
+            Collections.synchronizedList(new ArrayList<Integer>());
+
+    /* Status codes of the first requests to /flaky, after which it answers 200. */
+    private volatile int[] flakyCodes = new int[0];
+
+    private final PooledHttpTransport transport = new PooledHttpTransport(1000, 300, 2, 5);
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                int request = requestCount.getAndIncrement();
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+                try {
+                    answer(exchange, request);
+                } catch (InterruptedException e) {
+                    exchange.sendResponseHeaders(500, -1);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private void answer(HttpExchange exchange, int request)
+            throws IOException, InterruptedException {
+        String path = exchange.getRequestURI().getPath();
+        byte[] body = BODY.getBytes(UTF_8);
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+
+        if (path.equals("/gzip") && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            OutputStream out = new GZIPOutputStream(compressed);
+            out.write(body);
+            out.close();
+            body = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        } else if (path.startsWith("/deflate") && acceptEncoding.contains("deflate")) {
+            // /deflate-raw leaves out the zlib header, as some servers do.
+            boolean raw = path.equals("/deflate-raw");
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            OutputStream out = new DeflaterOutputStream(compressed,
+                    new Deflater(Deflater.DEFAULT_COMPRESSION, raw));
+            out.write(body);
+            out.close();
+            body = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "deflate");
+        } else if (path.equals("/flaky") && request < flakyCodes.length) {
+            exchange.getResponseHeaders().set("Retry-After", "0");
+            exchange.sendResponseHeaders(flakyCodes[request], -1);
+            return;
+        } else if (path.equals("/missing")) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        } else if (path.equals("/slow-first") && request == 0) {
+            // Longer than the read timeout.
+            Thread.sleep(1000);
+        }
+
+        exchange.sendResponseHeaders(200, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    @Test
+    public void get_gzipBody_isDecoded() throws IOException {
+        assertEquals(BODY, read("/gzip"));
+    }
+
+    @Test
+    public void get_deflateBody_isDecodedWithOrWithoutZlibHeader() throws IOException {
+        assertEquals(BODY, read("/deflate"));
+        assertEquals(BODY, read("/deflate-raw"));
+    }
+
+    @Test
+    public void get_serverErrors_areRetried() throws IOException {
+        flakyCodes = new int[]{503, 500};
+
+        assertEquals(BODY, read("/flaky"));
+        assertEquals(3, requestCount.get());
+    }
+
+    @Test
+    public void get_moreErrorsThanRetries_returnsTheLastError() throws IOException {
+        flakyCodes = new int[]{503, 502, 500, 500};
+
+        HttpTransport.Response response = transport.get(url("/flaky"), null, null);
+        response.close();
+
+        assertEquals(500, response.getCode());
+        assertEquals(3, requestCount.get());
+    }
+
+    @Test
+    public void get_clientError_isNotRetried() throws IOException {
+        HttpTransport.Response response = transport.get(url("/missing"), null, null);
+        response.close();
+
+        assertEquals(404, response.getCode());
+        assertEquals(1, requestCount.get());
+    }
+
+    @Test
+    public void get_readTimeout_isRetried() throws IOException {
+        assertEquals(BODY, read("/slow-first"));
+        assertEquals(2, requestCount.get());
+    }
+
+    @Test
+    public void get_readTimeoutWithoutRetries_throws() throws IOException {
+        PooledHttpTransport noRetries = new PooledHttpTransport(1000, 300, 0, 5);
+        try {
+            noRetries.get(url("/slow-first"), null, null).close();
+            fail();
+        } catch (SocketTimeoutException expected) {
+            assertEquals(1, requestCount.get());
+        }
+    }
+
+    @Test
+    public void get_bodiesReadToTheEnd_reuseTheConnection() throws IOException {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(BODY, read("/gzip"));
+        }
+
+        assertEquals(5, clientPorts.size());
+        assertEquals(1, new HashSet<>(clientPorts).size());
+    }
+
+    @Test
+    public void get_cancelled_throwsWithoutRequesting() throws IOException {
+        FetchCancellation cancellation = new FetchCancellation();
+        cancellation.cancel();
+
+        try {
+            transport.get(url("/gzip"), null, cancellation);
+            fail();
+        } catch (InterruptedIOException expected) {
+            assertEquals(0, requestCount.get());
+        }
+    }
+
+    private String read(String path) throws IOException {
+        HttpTransport.Response response = transport.get(url(path), null, null);
+        try {
+            assertEquals(200, response.getCode());
+            return QueryUtils.readFromStream(response.getBody());
+        } finally {
+            response.close();
+        }
+    }
+
+    private URL url(String path) throws IOException {
+        return new URL(baseUrl + path);
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.android.quakereport.utils;
+
+import com.example.android.quakereport.data.Earthquake;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Runs {@link QueryUtils} against an in-process fake transport instead of the network.
+ */
+public class QueryUtilsTest {
+
+    private static final String FEATURE = "{\"type\":\"Feature\",\"properties\":{\"mag\":4.7,"
+            + "\"place\":\"10km N of Somewhere\",\"time\":1600000000000,"
+            + "\"updated\":1600000600000,\"url\":\"https://example.com/us1\"},"
+            + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[1.5,2.5,10]},\"id\":\"us1\"}";
+
+    private final List<String> requestedUrls = new ArrayList<>();
+
+    /* Answers by URL path, anything else is a 404. */
+    private final Map<String, String> bodies = new HashMap<>();
+
+    private HttpTransport originalTransport;
+
+    @Before
+    public void setUp() {
+        originalTransport = QueryUtils.getTransport();
+        QueryUtils.setTransport(new HttpTransport() {
+            @Override
+            public Response get(URL url, Map<String, String> headers,
+                                FetchCancellation cancellation) {
+                requestedUrls.add(url.toString());
+                String body = bodies.get(url.getPath());
+                if (body == null) {
+                    return new Response(404, null, null, null);
+                }
+                return new Response(200, null,
+                        new ByteArrayInputStream(body.getBytes(Charset.forName("UTF-8"))), null);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        QueryUtils.setTransport(originalTransport);
+    }
+
+    @Test
+    public void fetchEarthquakeData_parsesTheResponse() {
+        bodies.put("/query", "{\"type\":\"FeatureCollection\",\"features\":[" + FEATURE + "]}");
+
+        List<Earthquake> earthquakes =
+                QueryUtils.fetchEarthquakeData("https://example.com/query?minmag=4");
+
+        assertEquals(1, earthquakes.size());
+        assertEquals("us1", earthquakes.get(0).getId());
+        assertEquals(4.7, earthquakes.get(0).getMagnitude(), 0);
+        assertEquals(2.5, earthquakes.get(0).getLatitude(), 0);
+        assertEquals("https://example.com/query?minmag=4", requestedUrls.get(0));
+    }
+
+    @Test
+    public void fetchEarthquakeData_parallelParsing_parsesInOrder() {
+        bodies.put("/query", EarthquakeStreamParserTest.samplePayload(2000));
+        QueryUtils.setParallelParsing(true);
+        try {
+            List<Earthquake> earthquakes =
+                    QueryUtils.fetchEarthquakeData("https://example.com/query");
+
+            assertEquals(2000, earthquakes.size());
+            for (int i = 0; i < earthquakes.size(); i++) {
+                assertEquals("us" + (7000000 + i), earthquakes.get(i).getId());
+            }
+        } finally {
+            QueryUtils.setParallelParsing(false);
+        }
+    }
+
+    @Test
+    public void fetchEarthquakeData_errorStatus_returnsNull() {
+        assertNull(QueryUtils.fetchEarthquakeData("https://example.com/query"));
+    }
+
+    @Test
+    public void fetchEventCount_readsTheBareNumber() {
+        bodies.put("/count", "1234\n");
+
+        assertEquals(1234, QueryUtils.fetchEventCount("https://example.com/count"));
+    }
+}
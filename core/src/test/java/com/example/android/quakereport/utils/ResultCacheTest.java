@@ -0,0 +1,114 @@
+package com.example.android.quakereport.utils;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResultCacheTest {
+
+    @Test
+    public void get_evictsLeastRecentlyUsed() {
+        ResultCache<String> cache = new ResultCache<>(2, 1000);
+        cache.put("a", "A", 0);
+        cache.put("b", "B", 0);
+        cache.get("a");
+        cache.put("c", "C", 0);
+
+        assertEquals("A", cache.get("a").getValue());
+        assertNull(cache.get("b"));
+        assertEquals("C", cache.get("c").getValue());
+    }
+
+    @Test
+    public void isFresh_untilTheTtlPasses() {
+        ResultCache<String> cache = new ResultCache<>(2, 1000);
+        cache.put("a", "A", 5000);
+        ResultCache.Entry<String> entry = cache.get("a");
+
+        assertTrue(cache.isFresh(entry, 5999));
+        assertFalse(cache.isFresh(entry, 6000));
+    }
+
+    @Test
+    public void load_coalescesConcurrentLoadsOfTheSameKey() throws Exception {
+        final ResultCache<String> cache = new ResultCache<>(4, 1000);
+        final AtomicInteger loadCount = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            results.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return cache.load("a", new Callable<String>() {
+                        @Override
+                        public String call() throws InterruptedException {
+                            loadCount.incrementAndGet();
+                            release.await();
+                            return "A";
+                        }
+                    });
+                }
+            }));
+        }
+
+        // Wait until the first load runs, give the others time to join it, then finish it.
+        while (cache.getInFlightCount() == 0) {
+            Thread.sleep(1);
+        }
+        Thread.sleep(100);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertEquals("A", result.get(5, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        assertEquals(1, loadCount.get());
+        assertEquals(0, cache.getInFlightCount());
+        assertEquals("A", cache.get("a").getValue());
+        assertEquals(results.size() - 1, cache.getCoalescedCount());
+    }
+
+    @Test
+    public void load_failedLoadIsNotCached() throws Exception {
+        ResultCache<String> cache = new ResultCache<>(4, 1000);
+
+        assertNull(cache.load("a", new Callable<String>() {
+            @Override
+            public String call() {
+                return null;
+            }
+        }));
+        assertNull(cache.get("a"));
+
+        try {
+            cache.load("a", new Callable<String>() {
+                @Override
+                public String call() throws IOException {
+                    throw new IOException("offline");
+                }
+            });
+            fail();
+        } catch (IOException expected) {
+            assertNull(cache.get("a"));
+            assertEquals(0, cache.getInFlightCount());
+        }
+    }
+}
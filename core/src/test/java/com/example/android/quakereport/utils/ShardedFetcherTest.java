@@ -0,0 +1,270 @@
+package com.example.android.quakereport.utils;
+
+import com.example.android.quakereport.data.Earthquake;
+import com.example.android.quakereport.data.EarthquakeQuery;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Fetches from a local stand-in for the FDSN event service, which answers "count" and "query"
+ * requests from an in-memory catalog after a fixed delay and refuses queries over the cap.
+ */
+public class ShardedFetcherTest {
+
+    private static final long START = 1600000000000L;
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private static final int MAX_PER_SHARD = 200;
+
+    private static final int PARALLELISM = 4;
+
+    private static final long LATENCY_MILLIS = 40;
+
+    private HttpServer server;
+    private String baseUrl;
+
+    private final List<Earthquake> catalog = new ArrayList<>();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final AtomicInteger largestResult = new AtomicInteger();
+
+    /* Query requests for a time range starting here fail. */
+    private volatile long failingStartTime = Long.MIN_VALUE;
+
+    @Before
+    public void setUp() throws IOException {
+        Random random = new Random(11);
+        for (int i = 0; i < 3000; i++) {
+            // Half of the events fall into a single day, like an aftershock sequence, so that
+            // equal time slices are not enough.
+            long time = i % 2 == 0
+                    ? START + (long) (random.nextDouble() * 30 * DAY)
+                    : START + 10 * DAY + (long) (random.nextDouble() * DAY);
+            double magnitude = Math.round(random.nextDouble() * 60) / 10.0;
+            catalog.add(new Earthquake("ev" + i, magnitude, "somewhere", time, time, null));
+        }
+        // A second event exactly on the start of the range.
+        catalog.add(new Earthquake("edge", 4.2, "somewhere", START, START, null));
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/fdsnws/event/1", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                int current = inFlight.incrementAndGet();
+                synchronized (maxInFlight) {
+                    maxInFlight.set(Math.max(maxInFlight.get(), current));
+                }
+                try {
+                    Thread.sleep(LATENCY_MILLIS);
+                    answer(exchange);
+                } catch (InterruptedException | ParseException e) {
+                    exchange.sendResponseHeaders(500, -1);
+                } finally {
+                    inFlight.decrementAndGet();
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/fdsnws/event/1";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void fetch_byTime_matchesTheWholeCatalog() {
+        EarthquakeQuery query = new EarthquakeQuery(0, "time", 100000);
+        ShardedFetcher fetcher = new ShardedFetcher(baseUrl, PARALLELISM, MAX_PER_SHARD);
+
+        long started = System.nanoTime();
+        List<Earthquake> actual = fetcher.fetch(query, START, START + 30 * DAY);
+        long parallelNanos = System.nanoTime() - started;
+
+        assertSameIds(expected(query, START, START + 30 * DAY), actual);
+        assertTrue(largestResult.get() <= MAX_PER_SHARD);
+        assertTrue(maxInFlight.get() > 1);
+
+        // The same shards one after the other take at least twice as long.
+        started = System.nanoTime();
+        new ShardedFetcher(baseUrl, 1, MAX_PER_SHARD).fetch(query, START, START + 30 * DAY);
+        long serialNanos = System.nanoTime() - started;
+        assertTrue(parallelNanos + " ns of " + serialNanos, parallelNanos < serialNanos / 2);
+    }
+
+    @Test
+    public void fetch_byMagnitude_mergesShardsAndStopsAtTheLimit() {
+        EarthquakeQuery query = new EarthquakeQuery(2.5, "magnitude", 500);
+        ShardedFetcher fetcher = new ShardedFetcher(baseUrl, PARALLELISM, MAX_PER_SHARD);
+
+        List<Earthquake> actual = fetcher.fetch(query, START, START + 20 * DAY);
+
+        assertSameIds(expected(query, START, START + 20 * DAY), actual);
+        assertTrue(largestResult.get() <= MAX_PER_SHARD);
+    }
+
+    @Test
+    public void fetch_failedShard_returnsNull() {
+        EarthquakeQuery query = new EarthquakeQuery(0, "time", 100000);
+        failingStartTime = START;
+
+        assertNull(new ShardedFetcher(baseUrl, PARALLELISM, MAX_PER_SHARD)
+                .fetch(query, START, START + 30 * DAY));
+    }
+
+    @Test
+    public void fetch_moreEventsInOneMillisecondThanAShardHolds_returnsNull() {
+        long burst = START + 5 * DAY;
+        for (int i = 0; i <= MAX_PER_SHARD; i++) {
+            catalog.add(new Earthquake("burst" + i, 3.0, "somewhere", burst, burst, null));
+        }
+        EarthquakeQuery query = new EarthquakeQuery(0, "time", 100000);
+
+        assertNull(new ShardedFetcher(baseUrl, PARALLELISM, MAX_PER_SHARD)
+                .fetch(query, burst - 1000, burst + 1000));
+    }
+
+    @Test
+    public void merge_dropsEventsReturnedByTwoShards() {
+        Earthquake a = new Earthquake("a", 5.0, "", 300, 0, null);
+        Earthquake b = new Earthquake("b", 4.0, "", 200, 0, null);
+        Earthquake c = new Earthquake("c", 3.0, "", 100, 0, null);
+        EarthquakeQuery query = new EarthquakeQuery(0, "magnitude", 10);
+
+        List<Earthquake> merged = ShardedFetcher.merge(Arrays.asList(
+                Arrays.asList(a, b), Arrays.asList(b, c), Collections.<Earthquake>emptyList()),
+                query);
+
+        assertEquals(Arrays.asList(a, b, c), merged);
+    }
+
+    private void answer(HttpExchange exchange) throws IOException, ParseException {
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+        long startTime = parseTime(params.get("starttime"));
+        long endTime = parseTime(params.get("endtime"));
+        EarthquakeQuery query = new EarthquakeQuery(Double.parseDouble(params.get("minmag")),
+                params.containsKey("orderby") ? params.get("orderby") : "time",
+                Integer.MAX_VALUE);
+        List<Earthquake> matching = expected(query, startTime, endTime);
+
+        String body;
+        if (exchange.getRequestURI().getPath().endsWith("/count")) {
+            body = String.valueOf(matching.size());
+        } else if (matching.size() > Integer.parseInt(params.get("limit"))
+                || startTime == failingStartTime) {
+            exchange.sendResponseHeaders(400, -1);
+            return;
+        } else {
+            synchronized (largestResult) {
+                largestResult.set(Math.max(largestResult.get(), matching.size()));
+            }
+            body = toGeoJson(matching);
+        }
+
+        byte[] bytes = body.getBytes(Charset.forName("UTF-8"));
+        exchange.sendResponseHeaders(200, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    /**
+     * @return the catalog's events between the times, both inclusive, sorted like the query.
+     */
+    private List<Earthquake> expected(final EarthquakeQuery query, long startTime,
+                                      long endTime) {
+        List<Earthquake> matching = new ArrayList<>();
+        for (Earthquake earthquake : catalog) {
+            if (earthquake.getTime() >= startTime && earthquake.getTime() <= endTime
+                    && earthquake.getMagnitude() >= query.getMinMagnitude()) {
+                matching.add(earthquake);
+            }
+        }
+        Collections.sort(matching, new Comparator<Earthquake>() {
+            @Override
+            public int compare(Earthquake a, Earthquake b) {
+                if (!query.isOrderedByTime()) {
+                    int byMagnitude = Double.compare(b.getMagnitude(), a.getMagnitude());
+                    if (byMagnitude != 0) {
+                        return byMagnitude;
+                    }
+                }
+                return Long.compare(b.getTime(), a.getTime());
+            }
+        });
+        return matching.subList(0, Math.min(matching.size(), query.getLimit()));
+    }
+
+    private static void assertSameIds(List<Earthquake> expected, List<Earthquake> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getId(), actual.get(i).getId());
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            params.put(pair.substring(0, equals),
+                    URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+        }
+        return params;
+    }
+
+    private static long parseTime(String fdsnTime) throws ParseException {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.parse(fdsnTime).getTime();
+    }
+
+    private static String toGeoJson(List<Earthquake> earthquakes) {
+        StringBuilder json = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+        for (int i = 0; i < earthquakes.size(); i++) {
+            Earthquake earthquake = earthquakes.get(i);
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"type\":\"Feature\",\"properties\":{\"mag\":")
+                    .append(earthquake.getMagnitude())
+                    .append(",\"place\":\"somewhere\",\"time\":").append(earthquake.getTime())
+                    .append(",\"updated\":").append(earthquake.getUpdated())
+                    .append(",\"url\":null},\"geometry\":{\"type\":\"Point\",")
+                    .append("\"coordinates\":[1,2,3]},\"id\":\"").append(earthquake.getId())
+                    .append("\"}");
+        }
+        return json.append("]}").toString();
+    }
+}
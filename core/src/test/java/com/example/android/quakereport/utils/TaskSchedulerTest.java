@@ -0,0 +1,213 @@
+package com.example.android.quakereport.utils;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TaskSchedulerTest {
+
+    private final TaskScheduler scheduler = new TaskScheduler(new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    });
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        release.countDown();
+    }
+
+    @Test
+    public void queuedTasks_runHighestPriorityFirstThenInOrder() throws Exception {
+        CountDownLatch blocking = block(TaskScheduler.Lane.MAINTENANCE);
+        assertTrue(blocking.await(5, TimeUnit.SECONDS));
+
+        List<String> order = new ArrayList<>();
+        List<TaskScheduler.Task<String>> tasks = new ArrayList<>();
+        tasks.add(submitRecording(TaskScheduler.PRIORITY_LOW, "low", order));
+        tasks.add(submitRecording(TaskScheduler.PRIORITY_NORMAL, "normal 1", order));
+        tasks.add(submitRecording(TaskScheduler.PRIORITY_HIGH, "high", order));
+        tasks.add(submitRecording(TaskScheduler.PRIORITY_NORMAL, "normal 2", order));
+        release.countDown();
+        for (TaskScheduler.Task<String> task : tasks) {
+            task.get();
+        }
+
+        assertEquals(Arrays.asList("high", "normal 1", "normal 2", "low"), order);
+    }
+
+    @Test
+    public void cancellingAQueuedTask_dropsIt() throws Exception {
+        CountDownLatch blocking = block(TaskScheduler.Lane.MAINTENANCE);
+        assertTrue(blocking.await(5, TimeUnit.SECONDS));
+        final AtomicInteger runs = new AtomicInteger();
+        final AtomicInteger results = new AtomicInteger();
+
+        TaskScheduler.Task<String> task = scheduler.submit(TaskScheduler.Lane.MAINTENANCE,
+                TaskScheduler.PRIORITY_NORMAL, new TaskScheduler.Job<String>() {
+                    @Override
+                    public String run(FetchCancellation cancellation) {
+                        runs.incrementAndGet();
+                        return "done";
+                    }
+                }, new TaskScheduler.Callback<String>() {
+                    @Override
+                    public void onResult(String result) {
+                        results.incrementAndGet();
+                    }
+                });
+        assertEquals(1, scheduler.getStats(TaskScheduler.Lane.MAINTENANCE).getQueueDepth());
+
+        assertTrue(task.cancel());
+        release.countDown();
+
+        assertNull(task.get());
+        assertEquals(0, runs.get());
+        assertEquals(0, results.get());
+        TaskScheduler.Stats stats = scheduler.getStats(TaskScheduler.Lane.MAINTENANCE);
+        assertEquals(0, stats.getQueueDepth());
+        assertEquals(1, stats.getCancelled());
+    }
+
+    @Test
+    public void cancellingARunningTask_cancelsItsFetch() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicInteger results = new AtomicInteger();
+
+        TaskScheduler.Task<String> task = scheduler.submit(TaskScheduler.Lane.FOREGROUND,
+                TaskScheduler.PRIORITY_HIGH, new TaskScheduler.Job<String>() {
+                    @Override
+                    public String run(FetchCancellation cancellation) throws Exception {
+                        started.countDown();
+                        // Stands in for a download, which fails once the connection is closed.
+                        while (!cancellation.isCancelled()) {
+                            Thread.sleep(5);
+                        }
+                        throw new InterruptedIOException();
+                    }
+                }, new TaskScheduler.Callback<String>() {
+                    @Override
+                    public void onResult(String result) {
+                        results.incrementAndGet();
+                    }
+                });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertTrue(task.cancel());
+
+        assertNull(task.get());
+        assertTrue(task.isCancelled());
+        assertEquals(0, results.get());
+        assertFalse(task.cancel());
+    }
+
+    @Test
+    public void backgroundLanes_waitForTheForeground() throws Exception {
+        final CountDownLatch syncRan = new CountDownLatch(1);
+        CountDownLatch foregroundRunning = block(TaskScheduler.Lane.FOREGROUND);
+        assertTrue(foregroundRunning.await(5, TimeUnit.SECONDS));
+
+        scheduler.submit(TaskScheduler.Lane.SYNC, TaskScheduler.PRIORITY_HIGH,
+                new TaskScheduler.Job<Void>() {
+                    @Override
+                    public Void run(FetchCancellation cancellation) {
+                        syncRan.countDown();
+                        return null;
+                    }
+                }, null);
+
+        assertFalse(syncRan.await(100, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(syncRan.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void results_areDeliveredAndCounted() throws Exception {
+        final List<String> results = new ArrayList<>();
+        TaskScheduler.Callback<String> callback = new TaskScheduler.Callback<String>() {
+            @Override
+            public void onResult(String result) {
+                synchronized (results) {
+                    results.add(result);
+                }
+            }
+        };
+
+        TaskScheduler.Task<String> ok = scheduler.submit(TaskScheduler.Lane.PREFETCH,
+                TaskScheduler.PRIORITY_NORMAL, new TaskScheduler.Job<String>() {
+                    @Override
+                    public String run(FetchCancellation cancellation) {
+                        return "ok";
+                    }
+                }, callback);
+        TaskScheduler.Task<String> failing = scheduler.submit(TaskScheduler.Lane.PREFETCH,
+                TaskScheduler.PRIORITY_NORMAL, new TaskScheduler.Job<String>() {
+                    @Override
+                    public String run(FetchCancellation cancellation) throws Exception {
+                        throw new IllegalStateException("failed");
+                    }
+                }, callback);
+
+        assertEquals("ok", ok.get());
+        assertNull(failing.get());
+        synchronized (results) {
+            assertTrue(results.contains("ok"));
+            assertTrue(results.contains(null));
+        }
+        TaskScheduler.Stats stats = scheduler.getStats(TaskScheduler.Lane.PREFETCH);
+        assertEquals(2, stats.getSubmitted());
+        assertEquals(2, stats.getCompleted());
+        assertEquals(0, stats.getCancelled());
+        assertTrue(stats.getMaxWaitMicros() >= stats.getMeanWaitMicros());
+    }
+
+    /**
+     * Occupy every thread of the lane until {@link #release} is counted down.
+     *
+     * @return counted down once they are all busy.
+     */
+    private CountDownLatch block(TaskScheduler.Lane lane) {
+        final CountDownLatch running = new CountDownLatch(lane.getMaxConcurrency());
+        for (int i = 0; i < lane.getMaxConcurrency(); i++) {
+            scheduler.submit(lane, TaskScheduler.PRIORITY_HIGH, new TaskScheduler.Job<Void>() {
+                @Override
+                public Void run(FetchCancellation cancellation) throws Exception {
+                    running.countDown();
+                    release.await();
+                    return null;
+                }
+            }, null);
+        }
+        return running;
+    }
+
+    private TaskScheduler.Task<String> submitRecording(int priority, final String name,
+                                                       final List<String> order) {
+        return scheduler.submit(TaskScheduler.Lane.MAINTENANCE, priority,
+                new TaskScheduler.Job<String>() {
+                    @Override
+                    public String run(FetchCancellation cancellation) {
+                        synchronized (order) {
+                            order.add(name);
+                        }
+                        return name;
+                    }
+                }, null);
+    }
+}